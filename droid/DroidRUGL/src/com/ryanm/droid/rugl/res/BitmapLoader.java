@@ -31,6 +31,18 @@ public abstract class BitmapLoader extends Loader<BitmapImage>
 		resource = new BitmapImage( b );
 	}
 
+	@Override
+	protected Object cacheKey()
+	{
+		return "bitmap " + id;
+	}
+
+	@Override
+	protected long cacheWeight()
+	{
+		return resource.bitmap.getRowBytes() * resource.bitmap.getHeight();
+	}
+
 	@Override
 	public String toString()
 	{
@@ -1,18 +1,15 @@
 package com.ryanm.droid.rugl.res;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
-
 import android.content.res.Resources;
 import android.util.Log;
 
+import com.ryanm.util.LoadQueue;
+import com.ryanm.util.LoadQueue.Priority;
+
 /**
- * An asynchronous resource-loading service. Maintains two threads: one to do
- * the loading IO, one to do post-loading processing
+ * An asynchronous resource-loading service. Loading is done by a
+ * {@link LoadQueue}, on a pool of {@link #workers} threads, with
+ * decoded resources kept in a cache of {@link #cacheCapacity} bytes
  * 
  * @author ryanm
  */
@@ -21,39 +18,70 @@ public class ResourceLoader
 	/***/
 	public static Resources resources;
 
-	private static List<Loader> complete = Collections
-			.synchronizedList( new LinkedList<Loader>() );
-
-	private static ExecutorService loaderService = Executors
-			.newSingleThreadExecutor();
+	/**
+	 * The number of loading threads. Set before the first load
+	 */
+	public static int workers = 1;
 
-	private static AtomicInteger queueSize = new AtomicInteger( 0 );
+	/**
+	 * The size, in bytes, of the cache of decoded resources. Set before
+	 * the first load
+	 */
+	public static long cacheCapacity = 8 * 1024 * 1024;
 
-	private static ExecutorService postLoaderService = Executors
-			.newSingleThreadExecutor();
+	private static LoadQueue queue;
 
 	/***/
 	public static final String LOG_TAG = "ResourceLoader";
 
 	/**
-	 * Starts the loader thread
+	 * Starts the loader threads
 	 * 
 	 * @param resources
 	 */
 	public static void start( final Resources resources )
 	{
 		ResourceLoader.resources = resources;
+		queue();
+	}
+
+	private static synchronized LoadQueue queue()
+	{
+		if( queue == null )
+		{
+			queue = new LoadQueue( LOG_TAG, workers, cacheCapacity ) {
+				@Override
+				protected void completing( final LoadQueue.Loader<?> l )
+				{
+					Log.i( LOG_TAG, "Loaded resource " + l );
+				}
+			};
+		}
+		return queue;
 	}
 
 	/**
-	 * Asynchronously load a resource
+	 * Asynchronously load a resource, and any resources it is
+	 * {@link Loader#after(LoadQueue.Loader...)}
 	 * 
 	 * @param l
 	 */
 	public static void load( final Loader l )
 	{
-		queueSize.incrementAndGet();
-		loaderService.submit( new LoaderRunnable( l ) );
+		queue().load( l );
+	}
+
+	/**
+	 * Asynchronously load a resource
+	 * 
+	 * @param l
+	 * @param priority
+	 *           {@link Priority#NOW} if it's needed for this frame,
+	 *           {@link Priority#PREFETCH} if it'll be needed later
+	 */
+	public static void load( final Loader l, final Priority priority )
+	{
+		queue().load( l, priority );
 	}
 
 	/**
@@ -63,9 +91,7 @@ public class ResourceLoader
 	 */
 	public static void loadNow( final Loader l )
 	{
-		l.load();
-		l.postLoad();
-		l.complete();
+		queue().loadNow( l );
 	}
 
 	/**
@@ -74,24 +100,17 @@ public class ResourceLoader
 	 */
 	public static void checkCompletion()
 	{
-		while( !complete.isEmpty() )
-		{
-			final Loader l = complete.remove( 0 );
-			queueSize.decrementAndGet();
-			Log.i( LOG_TAG, "Loaded resource " + l );
-
-			l.complete();
-		}
+		queue().checkCompletion();
 	}
 
 	/**
 	 * Gets the size of the loader queue
 	 * 
-	 * @return the number of loaders waiting to be executed
+	 * @return the number of loaders that have not yet completed
 	 */
 	public static int queueSize()
 	{
-		return queueSize.get();
+		return queue().queueSize();
 	}
 
 	/**
@@ -100,78 +119,7 @@ public class ResourceLoader
 	 * @author ryanm
 	 * @param <T>
 	 */
-	public static abstract class Loader<T>
-	{
-		/**
-		 * The loaded resource
-		 */
-		protected T resource;
-
-		/**
-		 * If an exception is encountered during loading, save it here and you can
-		 * deal with it later
-		 */
-		protected Throwable exception;
-
-		/**
-		 * Indicates if the loader should {@link #complete()} as soon as possible,
-		 * or if it should be deferred to whenever
-		 * {@link ResourceLoader#checkCompletion()} is called.
-		 */
-		public boolean selfCompleting = false;
-
-		/**
-		 * Overload this to do the loading IO and set {@link #resource}. This is
-		 * called on a shared loading thread
-		 */
-		public abstract void load();
-
-		/**
-		 * This method is called on shared thread. Use it to do any processing
-		 */
-		public void postLoad()
-		{
-		}
-
-		/**
-		 * This is called on the main thread when loading is complete
-		 */
-		public abstract void complete();
-	}
-
-	private static class LoaderRunnable implements Runnable
+	public static abstract class Loader<T> extends LoadQueue.Loader<T>
 	{
-		private final Loader loader;
-
-		private boolean loaded = false;
-
-		private LoaderRunnable( final Loader loader )
-		{
-			this.loader = loader;
-		}
-
-		@Override
-		public void run()
-		{
-			if( !loaded )
-			{
-				loader.load();
-				loaded = true;
-				postLoaderService.submit( this );
-			}
-			else
-			{
-				loader.postLoad();
-
-				if( loader.selfCompleting )
-				{
-					loader.complete();
-				}
-				else
-				{
-					complete.add( loader );
-				}
-			}
-		}
 	}
 }
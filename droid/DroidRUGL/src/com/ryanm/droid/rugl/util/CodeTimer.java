@@ -1,9 +1,13 @@
 package com.ryanm.droid.rugl.util;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import android.util.Log;
 
@@ -12,7 +16,11 @@ import com.ryanm.preflect.annote.Summary;
 import com.ryanm.preflect.annote.Variable;
 
 /**
- * A convenience class to do code profiling.
+ * A convenience class to do code profiling. As well as the mean, the
+ * durations of periods and intervals are kept in {@link Histogram}s so that
+ * percentiles can be reported. Named scopes can be nested within intervals
+ * with {@link #push(String)} and {@link #pop()}. Results can be exported with
+ * {@link #writeCSV(Writer)} and {@link #writeJSON(Writer)}
  * 
  * @author Keith Woodward
  */
@@ -67,6 +75,43 @@ public class CodeTimer
 	 */
 	private long[] maxIntervalDurations = new long[intervalNames.length];
 
+	/**
+	 * Interval durations since the last log
+	 */
+	private Histogram[] intervalHistograms = new Histogram[intervalNames.length];
+
+	/**
+	 * Period durations since the last log
+	 */
+	private final Histogram periodHistogram = new Histogram();
+
+	/**
+	 * Durations of everything before the last log, by name
+	 */
+	private final Map<String, Histogram> totals =
+			new LinkedHashMap<String, Histogram>();
+
+	/**
+	 * The root of the tree of nested scopes. Its children are the outermost
+	 * scopes
+	 */
+	private final Scope rootScope = new Scope( null, null );
+
+	/**
+	 * The innermost open scope
+	 */
+	private Scope currentScope = rootScope;
+
+	/**
+	 * Names, start times and durations of the most recent periods, intervals
+	 * and scopes, or <code>null</code> if we're not tracing
+	 */
+	private String[] traceNames;
+
+	private long[] traceStarts, traceDurations;
+
+	private int traceCount = 0;
+
 	/**
 	 * The index of the current interval
 	 */
@@ -175,6 +220,7 @@ public class CodeTimer
 			{
 				final long duration = clickTime - lastClickTime;
 				intervalDurationSums[ intervalIndex ] += duration;
+				recordInterval( lastClickTime, duration );
 				if( duration < minIntervalDurations[ intervalIndex ] )
 				{
 					minIntervalDurations[ intervalIndex ] = duration;
@@ -192,6 +238,11 @@ public class CodeTimer
 					intervalDurationSums = ArrayUtil.grow( intervalDurationSums );
 					minIntervalDurations = ArrayUtil.grow( minIntervalDurations );
 					maxIntervalDurations = ArrayUtil.grow( maxIntervalDurations );
+
+					final Histogram[] nh = new Histogram[intervalNames.length];
+					System.arraycopy( intervalHistograms, 0, nh, 0,
+							intervalHistograms.length );
+					intervalHistograms = nh;
 				}
 
 				intervalNames[ intervalIndex ] = name;
@@ -225,6 +276,7 @@ public class CodeTimer
 
 			final long intervalDuration = clickTime - lastClickTime;
 			intervalDurationSums[ intervalIndex ] += intervalDuration;
+			recordInterval( lastClickTime, intervalDuration );
 			if( intervalDuration < minIntervalDurations[ intervalIndex ] )
 			{
 				minIntervalDurations[ intervalIndex ] = intervalDuration;
@@ -238,6 +290,8 @@ public class CodeTimer
 
 			final long periodDuration = clickTime - periodStartTime;
 			periodDurationSum += periodDuration;
+			periodHistogram.record( periodDuration );
+			trace( name, periodStartTime, periodDuration );
 			if( periodDuration < minPeriodDuration )
 			{
 				minPeriodDuration = periodDuration;
@@ -257,6 +311,10 @@ public class CodeTimer
 						.append( period.format( minPeriodDuration, 1 ) )
 						.append( "\tmean=" )
 						.append( period.format( periodDurationSum, periodCount ) )
+						.append( "\tp50=" )
+						.append( period.format( periodHistogram.valueAt( 0.5 ), 1 ) )
+						.append( "\tp99=" )
+						.append( period.format( periodHistogram.valueAt( 0.99 ), 1 ) )
 						.append( "\tmax=" )
 						.append( period.format( maxPerdiodDuration, 1 ) );
 				Log.i( LOGTAG, buff.toString() );
@@ -278,11 +336,17 @@ public class CodeTimer
 							.append(
 									interval.format( intervalDurationSums[ i ],
 											periodCount ) ).append( "\t" )
+							.append( percentiles( intervalHistograms[ i ] ) )
+							.append( "\t" )
 							.append( interval.format( maxIntervalDurations[ i ], 1 ) );
 					Log.i( LOGTAG, buff.toString() );
 					buff.delete( 0, buff.length() );
 				}
 
+				logScopes( rootScope );
+
+				rollOver();
+
 				for( int i = 0; i < intervalDurationSums.length; i++ )
 				{
 					intervalDurationSums[ i ] = 0;
@@ -300,6 +364,273 @@ public class CodeTimer
 		}
 	}
 
+	/**
+	 * Opens a named scope within the current interval or scope. Scopes can be
+	 * nested, and each must be closed with {@link #pop()}
+	 * 
+	 * @param name
+	 */
+	public void push( final String name )
+	{
+		if( enabled )
+		{
+			currentScope = currentScope.child( name );
+			currentScope.start = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Closes the innermost scope opened by {@link #push(String)}
+	 */
+	public void pop()
+	{
+		if( enabled && currentScope != rootScope )
+		{
+			final long duration = System.nanoTime() - currentScope.start;
+			currentScope.window.record( duration );
+			trace( currentScope.name, currentScope.start, duration );
+
+			currentScope = currentScope.parent;
+		}
+	}
+
+	/**
+	 * Starts keeping a trace of the most recent periods, intervals and scopes,
+	 * to be written by {@link #writeJSON(Writer)}
+	 * 
+	 * @param events
+	 *           The number of events to keep, or 0 to stop tracing
+	 */
+	public void trace( final int events )
+	{
+		if( events > 0 )
+		{
+			traceNames = new String[events];
+			traceStarts = new long[events];
+			traceDurations = new long[events];
+		}
+		else
+		{
+			traceNames = null;
+			traceStarts = traceDurations = null;
+		}
+		traceCount = 0;
+	}
+
+	private void recordInterval( final long start, final long duration )
+	{
+		Histogram h = intervalHistograms[ intervalIndex ];
+		if( h == null )
+		{
+			h = intervalHistograms[ intervalIndex ] = new Histogram();
+		}
+		h.record( duration );
+
+		trace( intervalNames[ intervalIndex ], start, duration );
+	}
+
+	private void trace( final String name, final long start, final long duration )
+	{
+		if( traceNames != null )
+		{
+			final int i = traceCount++ % traceNames.length;
+			traceNames[ i ] = name;
+			traceStarts[ i ] = start;
+			traceDurations[ i ] = duration;
+		}
+	}
+
+	private String percentiles( final Histogram h )
+	{
+		return interval.format( h.valueAt( 0.5 ), 1 ) + "\t"
+				+ interval.format( h.valueAt( 0.99 ), 1 );
+	}
+
+	private void logScopes( final Scope parent )
+	{
+		for( int i = 0; i < parent.children.size(); i++ )
+		{
+			final Scope s = parent.children.get( i );
+
+			if( s.window.count() > 0 )
+			{
+				buff.append( "\t" );
+				for( int j = 0; j < s.depth; j++ )
+				{
+					buff.append( "  " );
+				}
+				buff.append( s.name ).append( "\t" ).append( s.window.count() )
+						.append( "x\t" )
+						.append( interval.format( s.window.min(), 1 ) )
+						.append( "\t" )
+						.append( interval.format( s.window.sum(), s.window.count() ) )
+						.append( "\t" ).append( percentiles( s.window ) )
+						.append( "\t" ).append( interval.format( s.window.max(), 1 ) );
+				Log.i( LOGTAG, buff.toString() );
+				buff.delete( 0, buff.length() );
+			}
+
+			logScopes( s );
+		}
+	}
+
+	/**
+	 * Adds the histograms since the last log to the totals, and resets them
+	 */
+	private void rollOver()
+	{
+		total( name ).add( periodHistogram );
+		periodHistogram.reset();
+
+		for( int i = 0; i < intervalNames.length && intervalNames[ i ] != null; i++ )
+		{
+			if( intervalHistograms[ i ] != null )
+			{
+				total( intervalNames[ i ] ).add( intervalHistograms[ i ] );
+				intervalHistograms[ i ].reset();
+			}
+		}
+
+		rollOver( rootScope );
+	}
+
+	private static void rollOver( final Scope parent )
+	{
+		for( int i = 0; i < parent.children.size(); i++ )
+		{
+			final Scope s = parent.children.get( i );
+			s.total.add( s.window );
+			s.window.reset();
+
+			rollOver( s );
+		}
+	}
+
+	private Histogram total( final String n )
+	{
+		Histogram h = totals.get( n );
+		if( h == null )
+		{
+			h = new Histogram();
+			totals.put( n, h );
+		}
+		return h;
+	}
+
+	/**
+	 * Collects the whole-run histograms, by name. Scopes are named by their
+	 * path, e.g. "draw/game/terrain"
+	 * 
+	 * @return name to histogram
+	 */
+	public Map<String, Histogram> getHistograms()
+	{
+		rollOver();
+
+		final Map<String, Histogram> m =
+				new LinkedHashMap<String, Histogram>( totals );
+		addScopes( rootScope, "", m );
+		return m;
+	}
+
+	private static void addScopes( final Scope parent, final String prefix,
+			final Map<String, Histogram> m )
+	{
+		for( int i = 0; i < parent.children.size(); i++ )
+		{
+			final Scope s = parent.children.get( i );
+			m.put( prefix + s.name, s.total );
+			addScopes( s, prefix + s.name + "/", m );
+		}
+	}
+
+	/**
+	 * Writes whole-run statistics, one line per period, interval or scope, in
+	 * nanoseconds
+	 * 
+	 * @param w
+	 * @throws IOException
+	 */
+	public void writeCSV( final Writer w ) throws IOException
+	{
+		w.write( "name,count,mean,p50,p90,p99,p999,max\n" );
+
+		for( final Map.Entry<String, Histogram> e : getHistograms().entrySet() )
+		{
+			final Histogram h = e.getValue();
+			w.write( "\"" + e.getKey().trim() + "\"," + h.count() + ","
+					+ ( long ) h.mean() + "," + h.valueAt( 0.5 ) + ","
+					+ h.valueAt( 0.9 ) + "," + h.valueAt( 0.99 ) + ","
+					+ h.valueAt( 0.999 ) + "," + h.max() + "\n" );
+		}
+	}
+
+	/**
+	 * Writes the trace started with {@link #trace(int)} in the trace event
+	 * format that chrome://tracing and Perfetto can load, along with whole-run
+	 * statistics
+	 * 
+	 * @param w
+	 * @throws IOException
+	 */
+	public void writeJSON( final Writer w ) throws IOException
+	{
+		w.write( "{\"traceEvents\":[" );
+
+		if( traceNames != null && traceCount > 0 )
+		{
+			final int n = Math.min( traceCount, traceNames.length );
+			final int first = traceCount - n;
+			long origin = Long.MAX_VALUE;
+			for( int i = 0; i < n; i++ )
+			{
+				origin = Math.min( origin, traceStarts[ i ] );
+			}
+
+			for( int j = 0; j < n; j++ )
+			{
+				final int i = ( first + j ) % traceNames.length;
+
+				w.write( j == 0 ? "\n" : ",\n" );
+				w.write( "{\"name\":\"" + escape( traceNames[ i ] )
+						+ "\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":"
+						+ ( traceStarts[ i ] - origin ) / 1000.0 + ",\"dur\":"
+						+ traceDurations[ i ] / 1000.0 + "}" );
+			}
+		}
+
+		w.write( "\n],\"displayTimeUnit\":\"ms\",\"histograms\":{" );
+
+		boolean first = true;
+		for( final Map.Entry<String, Histogram> e : getHistograms().entrySet() )
+		{
+			final Histogram h = e.getValue();
+			w.write( first ? "\n" : ",\n" );
+			w.write( "\"" + escape( e.getKey().trim() ) + "\":{\"count\":"
+					+ h.count() + ",\"mean\":" + ( long ) h.mean() + ",\"p50\":"
+					+ h.valueAt( 0.5 ) + ",\"p90\":" + h.valueAt( 0.9 ) + ",\"p99\":"
+					+ h.valueAt( 0.99 ) + ",\"p999\":" + h.valueAt( 0.999 )
+					+ ",\"max\":" + h.max() + "}" );
+			first = false;
+		}
+
+		w.write( "\n}}\n" );
+	}
+
+	private static String escape( final String s )
+	{
+		return s.replace( "\\", "\\\\" ).replace( "\"", "\\\"" );
+	}
+
+	/**
+	 * @return How long a call to {@link #tick(String)} takes, as found by
+	 *         {@link #recalibrate(int)}
+	 */
+	public static long getSelfTime()
+	{
+		return SELF_TIME;
+	}
+
 	/**
 	 * Calibrates the timer for the machine
 	 * 
@@ -386,6 +717,53 @@ public class CodeTimer
 		}
 	}
 
+	/**
+	 * A named, nestable timing scope
+	 */
+	private static class Scope
+	{
+		private final String name;
+
+		private final Scope parent;
+
+		private final int depth;
+
+		private final ArrayList<Scope> children = new ArrayList<Scope>();
+
+		private final Histogram window = new Histogram();
+
+		private final Histogram total = new Histogram();
+
+		private long start;
+
+		private Scope( final String name, final Scope parent )
+		{
+			this.name = name;
+			this.parent = parent;
+			depth = parent == null ? -1 : parent.depth + 1;
+		}
+
+		/**
+		 * @param n
+		 * @return The child scope with that name, created if need be
+		 */
+		private Scope child( final String n )
+		{
+			for( int i = 0; i < children.size(); i++ )
+			{
+				final Scope s = children.get( i );
+				if( s.name == n || s.name.equals( n ) )
+				{
+					return s;
+				}
+			}
+
+			final Scope s = new Scope( n, this );
+			children.add( s );
+			return s;
+		}
+	}
+
 	/**
 	 * Time unit that is printed
 	 * 
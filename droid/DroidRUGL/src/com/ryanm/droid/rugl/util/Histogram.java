@@ -0,0 +1,207 @@
+package com.ryanm.droid.rugl.util;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of non-negative long values, such as
+ * nanosecond durations. Buckets are log-linear: each power of two is
+ * split into {@link #SUB_BUCKETS} equal parts, so any recorded value
+ * is known to within about 3%, whatever its size. Recording is a few
+ * shifts and an array increment, and never allocates
+ *
+ * @author ryanm
+ */
+public class Histogram
+{
+	/**
+	 * log2( {@link #SUB_BUCKETS} )
+	 */
+	private static final int SUB_BITS = 5;
+
+	/**
+	 * The number of buckets each power of two is split into
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/**
+	 * Enough buckets for any positive long
+	 */
+	private static final int BUCKETS = ( 64 - SUB_BITS ) * SUB_BUCKETS;
+
+	private final long[] counts = new long[ BUCKETS ];
+
+	private long count = 0;
+
+	private long sum = 0;
+
+	private long min = Long.MAX_VALUE;
+
+	private long max = 0;
+
+	/**
+	 * Records a value
+	 *
+	 * @param v
+	 *           Negative values are recorded as 0
+	 */
+	public void record( final long v )
+	{
+		final long value = v < 0 ? 0 : v;
+
+		counts[ index( value ) ]++;
+		count++;
+		sum += value;
+
+		if( value < min )
+		{
+			min = value;
+		}
+		if( value > max )
+		{
+			max = value;
+		}
+	}
+
+	/**
+	 * Adds all the values recorded in another histogram to this one
+	 *
+	 * @param h
+	 */
+	public void add( final Histogram h )
+	{
+		if( h.count > 0 )
+		{
+			for( int i = 0; i < BUCKETS; i++ )
+			{
+				counts[ i ] += h.counts[ i ];
+			}
+			count += h.count;
+			sum += h.sum;
+			min = Math.min( min, h.min );
+			max = Math.max( max, h.max );
+		}
+	}
+
+	/**
+	 * Forgets all recorded values
+	 */
+	public void reset()
+	{
+		if( count > 0 )
+		{
+			Arrays.fill( counts, 0 );
+			count = 0;
+			sum = 0;
+			min = Long.MAX_VALUE;
+			max = 0;
+		}
+	}
+
+	/**
+	 * @return The number of recorded values
+	 */
+	public long count()
+	{
+		return count;
+	}
+
+	/**
+	 * @return The sum of all recorded values
+	 */
+	public long sum()
+	{
+		return sum;
+	}
+
+	/**
+	 * @return The smallest recorded value, or 0 if there are none
+	 */
+	public long min()
+	{
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * @return The largest recorded value, or 0 if there are none
+	 */
+	public long max()
+	{
+		return max;
+	}
+
+	/**
+	 * @return The mean of the recorded values, or 0 if there are none
+	 */
+	public double mean()
+	{
+		return count == 0 ? 0 : ( double ) sum / count;
+	}
+
+	/**
+	 * @param quantile
+	 *           In the range 0 to 1, so 0.99 for the 99th percentile
+	 * @return The value that that proportion of recorded values are at
+	 *         or below. This is the top of the bucket that holds it, so
+	 *         may overestimate by about 3%, but is never more than
+	 *         {@link #max()}
+	 */
+	public long valueAt( final double quantile )
+	{
+		if( count == 0 )
+		{
+			return 0;
+		}
+
+		final long target = Math.max( 1, ( long ) Math.ceil( quantile * count ) );
+
+		long seen = 0;
+		for( int i = 0; i < BUCKETS; i++ )
+		{
+			seen += counts[ i ];
+			if( seen >= target )
+			{
+				return Math.max( min, Math.min( max, highest( i ) ) );
+			}
+		}
+
+		return max;
+	}
+
+	/**
+	 * @param value
+	 *           non-negative
+	 * @return The index of the bucket that holds the value
+	 */
+	private static int index( final long value )
+	{
+		if( value < SUB_BUCKETS )
+		{ // exact
+			return ( int ) value;
+		}
+
+		final int exp = 63 - Long.numberOfLeadingZeros( value );
+		final int shift = exp - SUB_BITS;
+
+		// the top SUB_BITS + 1 bits, minus the leading one
+		final int sub = ( int ) ( value >>> shift ) - SUB_BUCKETS;
+
+		return ( shift + 1 << SUB_BITS ) + sub;
+	}
+
+	/**
+	 * @param index
+	 * @return The largest value that goes in that bucket
+	 */
+	private static long highest( final int index )
+	{
+		if( index < SUB_BUCKETS )
+		{
+			return index;
+		}
+
+		final int shift = ( index >>> SUB_BITS ) - 1;
+		final long lowest = ( long ) ( SUB_BUCKETS + ( index & SUB_BUCKETS - 1 ) ) << shift;
+
+		return lowest + ( 1L << shift ) - 1;
+	}
+}
@@ -0,0 +1,27 @@
+
+package com.ryanm.config;
+
+import java.util.Set;
+
+import com.ryanm.config.imp.AbstractConfigurator;
+
+/**
+ * A {@link ValueListener} that would rather hear about a batch of
+ * changes all at once, as made by
+ * {@link AbstractConfigurator#setValues(java.util.Map)}, than about
+ * each variable in turn
+ *
+ * @author ryanm
+ */
+public interface BatchValueListener extends ValueListener
+{
+	/**
+	 * Is called by the configurator when several variables have been
+	 * changed together. {@link #valueChanged(String)} is not called
+	 * for them
+	 *
+	 * @param names
+	 *           The names of the variables
+	 */
+	public void valuesChanged( Set<String> names );
+}
@@ -6,6 +6,7 @@ package com.ryanm.config.imp;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -14,6 +15,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.ryanm.config.BatchValueListener;
 import com.ryanm.config.Configurator;
 import com.ryanm.config.ConfiguratorListener;
 import com.ryanm.config.ValueListener;
@@ -302,6 +304,52 @@ public abstract class AbstractConfigurator implements Configurator
 		}
 	}
 
+	/**
+	 * Sets several values at once. Each {@link ValueListener} is told
+	 * about the changes after they have all been applied: a
+	 * {@link BatchValueListener} once, others once per variable
+	 * 
+	 * @param values
+	 *           Maps variable names to their new values, and is
+	 *           applied in iteration order
+	 */
+	public final void setValues( Map<String, Object> values )
+	{
+		if( values.isEmpty() )
+		{
+			return;
+		}
+
+		for( Map.Entry<String, Object> e : values.entrySet() )
+		{
+			ApplicationTarget at = applicationTargets.get( e.getKey() );
+
+			if( at != null )
+			{
+				at.applyValue( e.getValue() );
+			}
+
+			applyValue( e.getKey(), e.getValue() );
+		}
+
+		Set<String> changed = Collections.unmodifiableSet( values.keySet() );
+
+		for( ValueListener listener : valueListeners )
+		{
+			if( listener instanceof BatchValueListener )
+			{
+				( ( BatchValueListener ) listener ).valuesChanged( changed );
+			}
+			else
+			{
+				for( String name : changed )
+				{
+					listener.valueChanged( name );
+				}
+			}
+		}
+	}
+
 	/**
 	 * This should be overridden to actually apply the new value
 	 * 
@@ -0,0 +1,547 @@
+
+package com.ryanm.config.imp;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ryanm.config.Configurable;
+
+/**
+ * What an {@link AnnotatedConfigurator} needs to know about a class:
+ * its name, description, variables and sub-configurators, in order,
+ * with their getters and setters bound as {@link MethodHandle}s. This
+ * is found by reflection once per class and cached, so building a
+ * configurator for an object is a matter of copying it out, and
+ * setting a value doesn't go through {@link Method#invoke(Object,
+ * Object...)}
+ *
+ * @author ryanm
+ */
+final class ConfigurableClass
+{
+	private static final ClassValue<ConfigurableClass> cache =
+			new ClassValue<ConfigurableClass>() {
+				@Override
+				protected ConfigurableClass computeValue( Class<?> type )
+				{
+					return new ConfigurableClass( type );
+				}
+			};
+
+	private static final MethodType GETTER = MethodType.methodType( Object.class,
+			Object.class );
+
+	private static final MethodType SETTER = MethodType.methodType( void.class,
+			Object.class, Object.class );
+
+	private static final MethodType ACTION = MethodType.methodType( void.class,
+			Object.class );
+
+	/**
+	 * @param type
+	 * @return The metadata for that class
+	 */
+	static ConfigurableClass get( Class<?> type )
+	{
+		return cache.get( type );
+	}
+
+	/**
+	 * <code>true</code> if the class is annotated with
+	 * {@link ConfigurableType}. If not, nothing else is filled in
+	 */
+	final boolean configurable;
+
+	/**
+	 * From the {@link ConfigurableType} annotation
+	 */
+	final String name;
+
+	/**
+	 * From the {@link Description} annotation, or <code>null</code>
+	 */
+	final String description;
+
+	/**
+	 * In priority order
+	 */
+	final Member[] members;
+
+	private final Map<String, Member> variables = new HashMap<String, Member>();
+
+	@SuppressWarnings( "unchecked" )
+	private ConfigurableClass( Class<?> type )
+	{
+		ConfigurableType ct = type.getAnnotation( ConfigurableType.class );
+		configurable = ct != null;
+
+		if( !configurable )
+		{
+			name = null;
+			description = null;
+			members = new Member[ 0 ];
+			return;
+		}
+
+		name = ct.value();
+		Description d = type.getAnnotation( Description.class );
+		description = d != null ? d.value() : null;
+
+		List<Member> elements = new ArrayList<Member>();
+
+		// scan the fields for sub-configurators and public members
+		for( Field f : type.getFields() )
+		{
+			if( f.isAnnotationPresent( Variable.class ) )
+			{
+				Class c = f.getType();
+				if( Configurable.class.isAssignableFrom( c )
+						|| c.isAnnotationPresent( ConfigurableType.class ) )
+				{
+					elements.add( Member.subConfigurator( f ) );
+				}
+				else
+				{
+					elements.add( Member.field( f ) );
+				}
+			}
+		}
+
+		Map<String, Member> methods = new HashMap<String, Member>();
+
+		// scan the methods for variables
+		for( Method m : type.getMethods() )
+		{
+			if( m.isAnnotationPresent( Variable.class ) )
+			{
+				String n = m.getAnnotation( Variable.class ).value();
+
+				if( methods.containsKey( n ) )
+				{
+					methods.get( n ).update( m );
+				}
+				else
+				{
+					methods.put( n, Member.encapsulated( m ) );
+				}
+			}
+		}
+
+		elements.addAll( methods.values() );
+
+		// stable, so equal priorities stay in the order found
+		Collections.sort( elements, new Comparator<Member>() {
+			@Override
+			public int compare( Member o1, Member o2 )
+			{
+				return o1.priority < o2.priority ? -1 : o1.priority > o2.priority ? 1 : 0;
+			}
+		} );
+
+		members = elements.toArray( new Member[ elements.size() ] );
+
+		for( Member m : members )
+		{
+			m.bind();
+
+			if( !m.subConfigurator )
+			{
+				assert !variables.containsKey( m.name ) : "Duplicate variable name \""
+						+ m.name + "\" found when constructing configurator " + name;
+				variables.put( m.name, m );
+			}
+		}
+	}
+
+	/**
+	 * @param variable
+	 * @return The named variable, or <code>null</code>
+	 */
+	Member variable( String variable )
+	{
+		return variables.get( variable );
+	}
+
+	/**
+	 * A variable or sub-configurator of a class
+	 *
+	 * @author ryanm
+	 */
+	static final class Member
+	{
+		/**
+		 * The variable name. For sub-configurators, the overriding name
+		 * or the empty string
+		 */
+		final String name;
+
+		/**
+		 * <code>true</code> for a field that holds a sub-configurator
+		 */
+		final boolean subConfigurator;
+
+		float priority = 0;
+
+		Class type = null;
+
+		String description = null;
+
+		Object range = null;
+
+		/**
+		 * For variables and sub-configurators held in public fields
+		 */
+		Field field = null;
+
+		/**
+		 * For variables with getter and setter methods
+		 */
+		Method getterMethod = null, setterMethod = null;
+
+		/**
+		 * ( Object )Object
+		 */
+		private MethodHandle getter = null;
+
+		/**
+		 * ( Object, Object )void, or ( Object )void for actions
+		 */
+		private MethodHandle setter = null;
+
+		private boolean prioritySet = false;
+
+		private Member( String name, boolean subConfigurator )
+		{
+			this.name = name;
+			this.subConfigurator = subConfigurator;
+		}
+
+		private static Member field( Field f )
+		{
+			assert Modifier.isPublic( f.getModifiers() ) : "Variable \"" + f
+					+ "\" is not accessible";
+
+			String n = f.getAnnotation( Variable.class ).value().trim();
+			if( n.length() == 0 )
+			{
+				n = f.getName();
+			}
+
+			Member m = new Member( n, false );
+			m.field = f;
+			m.type = f.getType();
+			m.range = getRangeObject( f );
+
+			Description d = f.getAnnotation( Description.class );
+			if( d != null )
+			{
+				m.description = d.value();
+			}
+
+			Priority p = f.getAnnotation( Priority.class );
+			if( p != null )
+			{
+				m.priority = p.value();
+			}
+
+			return m;
+		}
+
+		private static Member subConfigurator( Field f )
+		{
+			Member m = new Member( f.getAnnotation( Variable.class ).value(), true );
+			m.field = f;
+
+			Description d = f.getAnnotation( Description.class );
+			if( d != null )
+			{
+				m.description = d.value();
+			}
+
+			Priority p = f.getAnnotation( Priority.class );
+			if( p != null )
+			{
+				m.priority = p.value();
+			}
+
+			return m;
+		}
+
+		private static Member encapsulated( Method method )
+		{
+			Member m = new Member( method.getAnnotation( Variable.class ).value(), false );
+			m.update( method );
+			return m;
+		}
+
+		private void update( Method m )
+		{
+			Variable cv = m.getAnnotation( Variable.class );
+
+			assert name.equals( cv.value() );
+
+			// determine if a setter or a getter
+			if( m.getParameterTypes().length == 0 )
+			{ // there are no arguments, it's a getter or an action
+				if( m.getReturnType().equals( void.class ) )
+				{ // it's void return, it's an action
+					setterMethod = m;
+
+					assert type == null : "Second methods marked as same ACTION configurable :\""
+							+ m.getName() + "\"";
+
+					type = m.getReturnType();
+
+					assert type.equals( void.class );
+				}
+				else
+				{ // it's a getter, check the return type to see if it
+					// matches a legal type
+					getterMethod = m;
+
+					// set or confirm the type
+					if( type != null )
+					{
+						assert type.equals( m.getReturnType() ) : "Expecting return type "
+								+ type + " on method " + m.getName();
+					}
+					else
+					{
+						type = m.getReturnType();
+					}
+				}
+			}
+			else if( m.getParameterTypes().length == 1 )
+			{ // there's one argument, it's a setter
+				setterMethod = m;
+
+				// set or confirm the type
+				if( type != null )
+				{
+					assert type.equals( m.getParameterTypes()[ 0 ] ) : "Expecting parameter type "
+							+ type + " on method " + m.getName();
+				}
+				else
+				{
+					type = m.getParameterTypes()[ 0 ];
+				}
+			}
+			else
+			{
+				assert false : m;
+			}
+
+			Priority p = m.getAnnotation( Priority.class );
+			if( p != null )
+			{
+				assert !prioritySet : "Variable \"" + name + "\" has it's priority set twice";
+				priority = p.value();
+				prioritySet = true;
+			}
+
+			Description d = m.getAnnotation( Description.class );
+			if( d != null )
+			{
+				assert description == null : "Variable \"" + name
+						+ "\" has it's description set twice";
+				description = d.value();
+			}
+
+			Object r = getRangeObject( m );
+
+			assert !( range != null && r != null ) : "Variable \"" + name
+					+ "\" has its range set twice";
+
+			if( r != null )
+			{
+				range = r;
+			}
+		}
+
+		/**
+		 * Builds the method handles. Anything that can't be bound is
+		 * left to reflection, which will report the problem when it's
+		 * used
+		 */
+		private void bind()
+		{
+			if( field == null )
+			{
+				assert type != null;
+
+				assert type.equals( void.class ) || getterMethod != null : "Variable \"" + name
+						+ "\" of type \"" + type
+						+ "\" lacks a getter method. Is the method present and public?";
+
+				assert setterMethod != null : "Variable \"" + name
+						+ "\" lacks a setter method. Is the method present and public?";
+			}
+
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+			try
+			{
+				if( field != null )
+				{
+					getter = receiver( lookup.unreflectGetter( field ), field.getModifiers() );
+					if( !Modifier.isFinal( field.getModifiers() ) )
+					{
+						setter =
+								receiver( lookup.unreflectSetter( field ), field.getModifiers() );
+					}
+				}
+				else
+				{
+					if( getterMethod != null )
+					{
+						getter =
+								receiver( lookup.unreflect( getterMethod ), getterMethod
+										.getModifiers() );
+					}
+					if( setterMethod != null )
+					{
+						setter =
+								receiver( lookup.unreflect( setterMethod ), setterMethod
+										.getModifiers() );
+					}
+				}
+
+				getter = getter == null ? null : getter.asType( GETTER );
+				setter =
+						setter == null ? null : setter.asType( type == void.class ? ACTION
+								: SETTER );
+			}
+			catch( IllegalAccessException e )
+			{
+				// not public, leave it to reflection
+				getter = null;
+				setter = null;
+			}
+		}
+
+		/**
+		 * Static members still take the object as their first argument,
+		 * and ignore it
+		 */
+		private static MethodHandle receiver( MethodHandle mh, int modifiers )
+		{
+			if( Modifier.isStatic( modifiers ) )
+			{
+				return MethodHandles.dropArguments( mh, 0, Object.class );
+			}
+			return mh;
+		}
+
+		/**
+		 * @param o
+		 * @return The value of this variable in that object
+		 * @throws Throwable
+		 */
+		Object get( Object o ) throws Throwable
+		{
+			if( getter != null )
+			{
+				return getter.invokeExact( o );
+			}
+
+			try
+			{
+				if( field != null )
+				{
+					return field.get( o );
+				}
+				return getterMethod == null ? null : getterMethod.invoke( o );
+			}
+			catch( InvocationTargetException e )
+			{
+				throw e.getCause();
+			}
+		}
+
+		/**
+		 * @param o
+		 * @param value
+		 *           Numbers are converted to the type of int or float
+		 *           fields
+		 * @throws Throwable
+		 */
+		void set( Object o, Object value ) throws Throwable
+		{
+			if( field != null && type == int.class )
+			{
+				value = new Integer( ( ( Number ) value ).intValue() );
+			}
+			else if( field != null && type == float.class )
+			{
+				value = new Float( ( ( Number ) value ).floatValue() );
+			}
+
+			if( setter != null )
+			{
+				if( type == void.class )
+				{
+					setter.invokeExact( o );
+				}
+				else
+				{
+					setter.invokeExact( o, value );
+				}
+				return;
+			}
+
+			try
+			{
+				if( field != null )
+				{
+					field.set( o, value );
+				}
+				else if( type == void.class )
+				{
+					setterMethod.invoke( o );
+				}
+				else
+				{
+					setterMethod.invoke( o, value );
+				}
+			}
+			catch( InvocationTargetException e )
+			{
+				throw e.getCause();
+			}
+		}
+	}
+
+	private static Object getRangeObject( AccessibleObject m )
+	{
+		Object range = null;
+
+		NumberRange nr = m.getAnnotation( NumberRange.class );
+		if( nr != null )
+		{
+			range = nr.value();
+		}
+
+		StringRange sr = m.getAnnotation( StringRange.class );
+		if( sr != null )
+		{
+			assert range == null : "Variable \"" + m.toString()
+					+ "\" has it's range set as numerical AND String. Make up your mind!";
+
+			range = sr.value();
+		}
+
+		return range;
+	}
+}
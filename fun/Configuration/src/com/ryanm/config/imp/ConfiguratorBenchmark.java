@@ -0,0 +1,553 @@
+
+package com.ryanm.config.imp;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ryanm.config.Configurator;
+
+/**
+ * Measures building {@link AnnotatedConfigurator}s and setting and
+ * getting their values, against a copy of the old configurator that
+ * scanned each object's class by reflection and went through
+ * {@link Method#invoke(Object, Object...)}. Also checks that both
+ * produce the same variables in the same order
+ *
+ * @author ryanm
+ */
+public class ConfiguratorBenchmark
+{
+	/**
+	 * @param args
+	 *           The number of timed rounds
+	 */
+	public static void main( String[] args )
+	{
+		int rounds = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 10;
+		int objects = 5000;
+		int sets = 200000;
+
+		Subject[] subjects = new Subject[ objects ];
+		for( int i = 0; i < subjects.length; i++ )
+		{
+			subjects[ i ] = new Subject();
+		}
+
+		check( AnnotatedConfigurator.buildConfigurator( new Subject() ),
+				new LegacyConfigurator( new Subject() ) );
+
+		Configurator conf = AnnotatedConfigurator.buildConfigurator( new Subject() );
+		Configurator legacy = new LegacyConfigurator( new Subject() );
+
+		// warm up
+		for( int r = 0; r < 5; r++ )
+		{
+			build( subjects, false );
+			build( subjects, true );
+			set( conf, sets );
+			set( legacy, sets );
+		}
+
+		long[] best = new long[ 4 ];
+		Arrays.fill( best, Long.MAX_VALUE );
+		for( int r = 0; r < rounds; r++ )
+		{
+			long start = System.nanoTime();
+			build( subjects, true );
+			best[ 0 ] = Math.min( best[ 0 ], System.nanoTime() - start );
+
+			start = System.nanoTime();
+			build( subjects, false );
+			best[ 1 ] = Math.min( best[ 1 ], System.nanoTime() - start );
+
+			start = System.nanoTime();
+			set( legacy, sets );
+			best[ 2 ] = Math.min( best[ 2 ], System.nanoTime() - start );
+
+			start = System.nanoTime();
+			set( conf, sets );
+			best[ 3 ] = Math.min( best[ 3 ], System.nanoTime() - start );
+		}
+
+		System.out.println( "best of " + rounds + " rounds" );
+		System.out.println( "\tbuild, reflection : " + best[ 0 ] / ( float ) objects
+				/ 1000 + " us per object" );
+		System.out.println( "\tbuild, cached     : " + best[ 1 ] / ( float ) objects
+				/ 1000 + " us per object" );
+		System.out.println( "\tset+get, invoke   : " + best[ 2 ] / ( float ) sets
+				+ " ns per pair" );
+		System.out.println( "\tset+get, handles  : " + best[ 3 ] / ( float ) sets
+				+ " ns per pair" );
+	}
+
+	private static int sink = 0;
+
+	private static void build( Subject[] subjects, boolean legacy )
+	{
+		for( Subject s : subjects )
+		{
+			Configurator c =
+					legacy ? new LegacyConfigurator( s ) : AnnotatedConfigurator
+							.buildConfigurator( s );
+			sink += c.getNames().length;
+		}
+	}
+
+	private static final String[] variables = { "count", "scale", "label", "speed",
+			"enabled", "limit" };
+
+	private static void set( Configurator conf, int sets )
+	{
+		for( int i = 0; i < sets; i++ )
+		{
+			switch( i % variables.length )
+			{
+				case 0:
+					conf.setValue( "count", Float.valueOf( i ) );
+					break;
+				case 1:
+					conf.setValue( "scale", Float.valueOf( i ) );
+					break;
+				case 2:
+					conf.setValue( "label", "label" );
+					break;
+				case 3:
+					conf.setValue( "speed", Float.valueOf( i ) );
+					break;
+				case 4:
+					conf.setValue( "enabled", Boolean.valueOf( ( i & 1 ) == 0 ) );
+					break;
+				default:
+					conf.setValue( "limit", Integer.valueOf( i ) );
+			}
+			sink += conf.getValue( variables[ i % variables.length ] ).hashCode();
+		}
+	}
+
+	private static void check( Configurator a, Configurator b )
+	{
+		Object[] an = a.getNames();
+		Object[] bn = b.getNames();
+
+		if( an.length != bn.length )
+		{
+			throw new AssertionError( a.getPath() + " " + Arrays.toString( an ) + " vs "
+					+ Arrays.toString( bn ) );
+		}
+
+		for( int i = 0; i < an.length; i++ )
+		{
+			if( an[ i ] instanceof Configurator )
+			{
+				Configurator ac = ( Configurator ) an[ i ];
+				Configurator bc = ( Configurator ) bn[ i ];
+				if( !ac.getName().equals( bc.getName() ) )
+				{
+					throw new AssertionError( ac.getName() + " vs " + bc.getName() );
+				}
+				check( ac, bc );
+			}
+			else
+			{
+				String n = ( String ) an[ i ];
+				if( !n.equals( bn[ i ] )
+						|| a.getType( n ) != b.getType( n )
+						|| !equal( a.getDescription( n ), b.getDescription( n ) )
+						|| !Arrays.deepEquals( new Object[] { a.getRange( n ) },
+								new Object[] { b.getRange( n ) } ) )
+				{
+					throw new AssertionError( a.getPath() + "/" + n + " differs" );
+				}
+
+				if( a.getType( n ) != void.class )
+				{
+					if( !equal( a.getValue( n ), b.getValue( n ) ) )
+					{
+						throw new AssertionError( a.getPath() + "/" + n + " = "
+								+ a.getValue( n ) + " vs " + b.getValue( n ) );
+					}
+				}
+			}
+		}
+
+		a.setValue( "count", Float.valueOf( 7.9f ) );
+		b.setValue( "count", Float.valueOf( 7.9f ) );
+		a.setValue( "speed", Float.valueOf( 2.5f ) );
+		b.setValue( "speed", Float.valueOf( 2.5f ) );
+		a.setValue( "reset", null );
+		b.setValue( "reset", null );
+		for( String n : variables )
+		{
+			if( !equal( a.getValue( n ), b.getValue( n ) ) )
+			{
+				throw new AssertionError( n + " = " + a.getValue( n ) + " vs "
+						+ b.getValue( n ) );
+			}
+		}
+	}
+
+	private static boolean equal( Object a, Object b )
+	{
+		return a == null ? b == null : a.equals( b );
+	}
+
+	/**
+	 * Something to configure
+	 *
+	 * @author ryanm
+	 */
+	@ConfigurableType( "subject" )
+	@Description( "A benchmark subject" )
+	public static class Subject
+	{
+		/***/
+		@Variable
+		@Description( "How many" )
+		@NumberRange( { 0, 100 } )
+		public int count = 3;
+
+		/***/
+		@Variable( "scale" )
+		@Priority( 2 )
+		public float scale = 1;
+
+		/***/
+		@Variable( "label" )
+		@StringRange( { "label", "other" } )
+		public String label = "other";
+
+		/***/
+		@Variable( "enabled" )
+		@Priority( -1 )
+		public boolean enabled = true;
+
+		/***/
+		@Variable( "nested" )
+		@Description( "Overridden description" )
+		public final Nested nested = new Nested();
+
+		private float speed = 1;
+
+		private int limit = 10;
+
+		/**
+		 * @return speed
+		 */
+		@Variable( "speed" )
+		@Description( "How fast" )
+		@NumberRange( { 0, 10 } )
+		public float getSpeed()
+		{
+			return speed;
+		}
+
+		/**
+		 * @param speed
+		 */
+		@Variable( "speed" )
+		public void setSpeed( float speed )
+		{
+			this.speed = speed;
+		}
+
+		/**
+		 * @return limit
+		 */
+		@Variable( "limit" )
+		@Priority( 1 )
+		public int getLimit()
+		{
+			return limit;
+		}
+
+		/**
+		 * @param limit
+		 */
+		@Variable( "limit" )
+		public void setLimit( int limit )
+		{
+			this.limit = limit;
+		}
+
+		/**
+		 * Resets the values
+		 */
+		@Variable( "reset" )
+		public void reset()
+		{
+			count = 3;
+			scale = 1;
+		}
+	}
+
+	/**
+	 * A sub-configurator
+	 *
+	 * @author ryanm
+	 */
+	@ConfigurableType( "nested" )
+	public static class Nested
+	{
+		/***/
+		@Variable
+		public float x = 1;
+
+		/***/
+		@Variable
+		public float y = 2;
+	}
+
+	/**
+	 * {@link AnnotatedConfigurator} as it was: the class is scanned for
+	 * every object, and values go through reflection
+	 */
+	private static class LegacyConfigurator extends AbstractConfigurator
+	{
+		private final Object configurable;
+
+		private Map<String, Method> getters = new HashMap<String, Method>();
+
+		private Map<String, Method> setters = new HashMap<String, Method>();
+
+		private Map<String, Field> fields = new HashMap<String, Field>();
+
+		private LegacyConfigurator( Object configurable )
+		{
+			this( configurable, configurable.getClass().getAnnotation(
+					ConfigurableType.class ).value(), null );
+		}
+
+		private LegacyConfigurator( Object configurable, String name, String description )
+		{
+			super( name, description != null ? description : configurable.getClass()
+					.getAnnotation( Description.class ) != null ? configurable.getClass()
+					.getAnnotation( Description.class ).value() : null );
+			this.configurable = configurable;
+
+			List<Object[]> elements = new ArrayList<Object[]>();
+
+			for( Field f : configurable.getClass().getFields() )
+			{
+				if( f.isAnnotationPresent( Variable.class ) )
+				{
+					Priority p = f.getAnnotation( Priority.class );
+					elements.add( new Object[] { Float.valueOf( p == null ? 0 : p.value() ), f } );
+				}
+			}
+
+			Map<String, List<Method>> methods = new HashMap<String, List<Method>>();
+			for( Method m : configurable.getClass().getMethods() )
+			{
+				if( m.isAnnotationPresent( Variable.class ) )
+				{
+					String n = m.getAnnotation( Variable.class ).value();
+					if( !methods.containsKey( n ) )
+					{
+						methods.put( n, new ArrayList<Method>() );
+					}
+					methods.get( n ).add( m );
+				}
+			}
+
+			for( List<Method> l : methods.values() )
+			{
+				float priority = 0;
+				for( Method m : l )
+				{
+					Priority p = m.getAnnotation( Priority.class );
+					if( p != null )
+					{
+						priority = p.value();
+					}
+				}
+				elements.add( new Object[] { Float.valueOf( priority ), l } );
+			}
+
+			Collections.sort( elements, new Comparator<Object[]>() {
+				@Override
+				public int compare( Object[] o1, Object[] o2 )
+				{
+					return ( ( Float ) o1[ 0 ] ).compareTo( ( Float ) o2[ 0 ] );
+				}
+			} );
+
+			try
+			{
+				for( Object[] e : elements )
+				{
+					if( e[ 1 ] instanceof Field )
+					{
+						addField( ( Field ) e[ 1 ] );
+					}
+					else
+					{
+						@SuppressWarnings( "unchecked" )
+						List<Method> l = ( List<Method> ) e[ 1 ];
+						addMethods( l );
+					}
+				}
+			}
+			catch( IllegalAccessException e )
+			{
+				throw new RuntimeException( e );
+			}
+
+			buildPaths();
+		}
+
+		private void addField( Field f ) throws IllegalAccessException
+		{
+			Description d = f.getAnnotation( Description.class );
+			String n = f.getAnnotation( Variable.class ).value().trim();
+
+			if( f.getType().isAnnotationPresent( ConfigurableType.class ) )
+			{
+				addVariable( new LegacyConfigurator( f.get( configurable ), n,
+						d == null ? null : d.value() ) );
+				return;
+			}
+
+			if( n.length() == 0 )
+			{
+				n = f.getName();
+			}
+
+			addVariable( n );
+			setType( n, f.getType() );
+			if( d != null )
+			{
+				setDescription( n, d.value() );
+			}
+			setRange( n, range( f.getAnnotation( NumberRange.class ), f
+					.getAnnotation( StringRange.class ) ) );
+			fields.put( n, f );
+		}
+
+		private void addMethods( List<Method> l )
+		{
+			String n = l.get( 0 ).getAnnotation( Variable.class ).value();
+			Class type = null;
+			String description = null;
+			Object range = null;
+
+			for( Method m : l )
+			{
+				if( m.getParameterTypes().length == 0 )
+				{
+					if( m.getReturnType() == void.class )
+					{
+						setters.put( n, m );
+					}
+					else
+					{
+						getters.put( n, m );
+					}
+					type = m.getReturnType();
+				}
+				else
+				{
+					setters.put( n, m );
+					type = m.getParameterTypes()[ 0 ];
+				}
+
+				Description d = m.getAnnotation( Description.class );
+				if( d != null )
+				{
+					description = d.value();
+				}
+				Object r =
+						range( m.getAnnotation( NumberRange.class ), m
+								.getAnnotation( StringRange.class ) );
+				if( r != null )
+				{
+					range = r;
+				}
+			}
+
+			addVariable( n );
+			setType( n, type );
+			if( description != null )
+			{
+				setDescription( n, description );
+			}
+			if( range != null )
+			{
+				setRange( n, range );
+			}
+		}
+
+		private static Object range( NumberRange nr, StringRange sr )
+		{
+			return nr != null ? nr.value() : sr != null ? sr.value() : null;
+		}
+
+		@Override
+		protected void applyValue( String name, Object value )
+		{
+			try
+			{
+				if( setters.containsKey( name ) )
+				{
+					Method m = setters.get( name );
+					if( getType( name ) == void.class )
+					{
+						m.invoke( configurable );
+					}
+					else
+					{
+						m.invoke( configurable, value );
+					}
+				}
+				else if( fields.containsKey( name ) )
+				{
+					Field f = fields.get( name );
+					if( f.getType().equals( int.class ) )
+					{
+						f.set( configurable, Integer.valueOf( ( ( Number ) value ).intValue() ) );
+					}
+					else if( f.getType().equals( float.class ) )
+					{
+						f.set( configurable, Float.valueOf( ( ( Number ) value ).floatValue() ) );
+					}
+					else
+					{
+						f.set( configurable, value );
+					}
+				}
+			}
+			catch( Exception e )
+			{
+				System.err.println( name + " = " + value );
+				e.printStackTrace();
+			}
+		}
+
+		@Override
+		public Object retrieveValue( String name )
+		{
+			try
+			{
+				if( getters.containsKey( name ) )
+				{
+					return getters.get( name ).invoke( configurable );
+				}
+				else if( fields.containsKey( name ) )
+				{
+					return fields.get( name ).get( configurable );
+				}
+			}
+			catch( Exception e )
+			{
+				e.printStackTrace();
+			}
+			return null;
+		}
+	}
+}
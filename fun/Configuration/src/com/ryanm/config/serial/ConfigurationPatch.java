@@ -0,0 +1,137 @@
+
+package com.ryanm.config.serial;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of edits to a formatted configuration, as found by
+ * {@link ConfigurationStreamFormatter#diff(com.ryanm.config.Configurator[], Reader)}
+ * . Everything that isn't edited is copied through untouched
+ *
+ * @author ryanm
+ */
+public class ConfigurationPatch
+{
+	private final List<Edit> edits = new ArrayList<Edit>();
+
+	/**
+	 * Replaces a range of the previous configuration. Edits must be
+	 * added in order and not overlap
+	 *
+	 * @param offset
+	 *           The index of the first character to replace
+	 * @param length
+	 *           The number of characters to replace, 0 to insert
+	 * @param text
+	 *           What to replace them with
+	 */
+	public void replace( long offset, int length, String text )
+	{
+		assert edits.isEmpty()
+				|| offset >= edits.get( edits.size() - 1 ).offset
+						+ edits.get( edits.size() - 1 ).length : "Edits out of order";
+
+		edits.add( new Edit( offset, length, text ) );
+	}
+
+	/**
+	 * @return The number of edits
+	 */
+	public int size()
+	{
+		return edits.size();
+	}
+
+	/**
+	 * Writes the patched configuration
+	 *
+	 * @param previous
+	 *           The configuration that this patch was found from
+	 * @param writer
+	 *           Where to write the patched configuration
+	 * @throws IOException
+	 */
+	public void apply( Reader previous, Writer writer ) throws IOException
+	{
+		char[] buffer = new char[ 8192 ];
+		long position = 0;
+
+		for( Edit e : edits )
+		{
+			copy( previous, writer, buffer, e.offset - position );
+			skip( previous, e.length );
+			writer.write( e.text );
+			position = e.offset + e.length;
+		}
+
+		copy( previous, writer, buffer, -1 );
+	}
+
+	/**
+	 * @param count
+	 *           The number of characters to copy, or -1 to copy
+	 *           everything
+	 */
+	private static void copy( Reader reader, Writer writer, char[] buffer, long count )
+			throws IOException
+	{
+		while( count != 0 )
+		{
+			int r =
+					reader.read( buffer, 0, count < 0 ? buffer.length : ( int ) Math.min(
+							buffer.length, count ) );
+			if( r < 0 )
+			{
+				if( count > 0 )
+				{
+					throw new IOException( "Configuration is shorter than the patch expects" );
+				}
+				return;
+			}
+			writer.write( buffer, 0, r );
+			if( count > 0 )
+			{
+				count -= r;
+			}
+		}
+	}
+
+	private static void skip( Reader reader, long count ) throws IOException
+	{
+		while( count > 0 )
+		{
+			long s = reader.skip( count );
+			if( s <= 0 )
+			{
+				throw new IOException( "Configuration is shorter than the patch expects" );
+			}
+			count -= s;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return edits.size() + " edits";
+	}
+
+	private static class Edit
+	{
+		private final long offset;
+
+		private final int length;
+
+		private final String text;
+
+		private Edit( long offset, int length, String text )
+		{
+			this.offset = offset;
+			this.length = length;
+			this.text = text;
+		}
+	}
+}
@@ -2,12 +2,17 @@
 package com.ryanm.config.serial;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -96,6 +101,12 @@ public class ConfigurationSerialiser
 	{
 		if( stream != null )
 		{
+			if( formatter instanceof ConfigurationStreamFormatter )
+			{
+				read( new InputStreamReader( stream ), confs );
+				return;
+			}
+
 			String s = readStream( stream );
 
 			if( s != null )
@@ -121,6 +132,12 @@ public class ConfigurationSerialiser
 	public static void loadConfiguration( File file, Configurator... confs )
 			throws IOException, ParseException
 	{
+		if( formatter instanceof ConfigurationStreamFormatter )
+		{
+			read( new FileReader( file ), confs );
+			return;
+		}
+
 		// read to a string
 		String s = readFile( file );
 
@@ -142,16 +159,107 @@ public class ConfigurationSerialiser
 	public static void saveConfiguration( File file, Configurator... confs )
 			throws IOException
 	{
-		// construct the map
+		Writer w = new BufferedWriter( new FileWriter( file ) );
+		try
+		{
+			if( formatter instanceof ConfigurationStreamFormatter )
+			{
+				( ( ConfigurationStreamFormatter ) formatter ).write( confs, w );
+			}
+			else
+			{
+				w.write( formatter.format( confs ) );
+			}
+		}
+		finally
+		{
+			w.close();
+		}
+	}
 
-		// format to a string
-		String s = formatter.format( confs );
+	/**
+	 * Saves the state of the supplied Configurators into a file that
+	 * they have been saved to before, rewriting only the variables that
+	 * have changed. Variables that the configurators no longer have are
+	 * removed, but the state of other configurators in the file is left
+	 * alone. If the file doesn't exist or
+	 * can't be read, it is saved as
+	 * {@link #saveConfiguration(File, Configurator...)} does
+	 * 
+	 * @param file
+	 *           The file to save to
+	 * @param confs
+	 *           The configurators to save
+	 * @return <code>true</code> if the file was written,
+	 *         <code>false</code> if it was already up to date
+	 * @throws IOException
+	 */
+	public static boolean saveChanges( File file, Configurator... confs )
+			throws IOException
+	{
+		if( !file.exists() || !( formatter instanceof ConfigurationStreamFormatter ) )
+		{
+			saveConfiguration( file, confs );
+			return true;
+		}
 
-		// write to file
-		FileWriter fw = new FileWriter( file );
-		fw.write( s );
-		fw.flush();
-		fw.close();
+		ConfigurationPatch patch = null;
+		boolean readable = true;
+		Reader r = new BufferedReader( new FileReader( file ) );
+		try
+		{
+			patch = ( ( ConfigurationStreamFormatter ) formatter ).diff( confs, r );
+		}
+		catch( ParseException e )
+		{
+			readable = false;
+		}
+		finally
+		{
+			r.close();
+		}
+
+		if( !readable )
+		{
+			saveConfiguration( file, confs );
+			return true;
+		}
+		else if( patch == null )
+		{
+			return false;
+		}
+
+		// patch into a temporary file, then swap it in
+		File temp = new File( file.getPath() + ".tmp" );
+		r = new BufferedReader( new FileReader( file ) );
+		Writer w = new BufferedWriter( new FileWriter( temp ) );
+		try
+		{
+			patch.apply( r, w );
+		}
+		finally
+		{
+			r.close();
+			w.close();
+		}
+
+		Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+
+		return true;
+	}
+
+	private static void read( Reader reader, Configurator... confs ) throws IOException,
+			ParseException
+	{
+		Reader r = new BufferedReader( reader );
+		try
+		{
+			( ( ConfigurationStreamFormatter ) formatter ).read( confs, r );
+		}
+		finally
+		{
+			r.close();
+		}
 	}
 
 	/**
@@ -0,0 +1,430 @@
+
+package com.ryanm.config.serial;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.ryanm.config.Configurator;
+import com.ryanm.config.imp.AbstractConfigurator;
+import com.ryanm.config.serial.imp.NanoXMLFormatter;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures loading and saving a configuration of about 10MB by
+ * streaming, and saving only the changes, against reading the file
+ * into a {@link String} and parsing and formatting a whole XML tree.
+ * Also checks that both ways read and write the same thing
+ *
+ * @author ryanm
+ */
+public class ConfigurationSerialiserBenchmark
+{
+	private static final ThreadMXBean threads = ( ThreadMXBean ) ManagementFactory
+			.getThreadMXBean();
+
+	private static final NanoXMLFormatter formatter = new NanoXMLFormatter();
+
+	/**
+	 * @param args
+	 *           The number of timed rounds
+	 * @throws Exception
+	 */
+	public static void main( String[] args ) throws Exception
+	{
+		int rounds = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 3;
+
+		checkReading();
+
+		File file = File.createTempFile( "config", ".xml" );
+		file.deleteOnExit();
+		File temp = new File( file.getPath() + ".tmp" );
+		temp.deleteOnExit();
+
+		Configurator[] saved = tree( new Random( 1 ) );
+
+		// the streamed output is what the tree would have printed
+		StringWriter sw = new StringWriter();
+		formatter.write( saved, sw );
+		String formatted = formatter.format( saved );
+		check( sw.toString().equals( formatted ), "Streamed output differs" );
+		sw = null;
+
+		FileWriter fw = new FileWriter( file );
+		fw.write( formatted );
+		fw.close();
+		formatted = null;
+
+		System.out.println( "configuration of " + file.length() / 1024 + "KB" );
+
+		// both ways load the same values
+		Configurator[] legacy = tree( null );
+		legacyLoad( file, legacy );
+		Configurator[] streamed = tree( null );
+		ConfigurationSerialiser.loadConfiguration( file, streamed );
+		checkEqual( saved, legacy );
+		checkEqual( saved, streamed );
+
+		// nothing to save
+		check( !ConfigurationSerialiser.saveChanges( file, saved ), "Unchanged file written" );
+
+		// change one value in a hundred, and the patched file matches a
+		// full save
+		int changed = change( saved, new Random( 2 ), 100 );
+		ConfigurationPatch patch = diff( file, saved );
+		check( patch.size() == changed, patch + " for " + changed + " changes" );
+		ConfigurationSerialiser.saveChanges( file, saved );
+		sw = new StringWriter();
+		formatter.write( saved, sw );
+		check( sw.toString().equals( read( file ) ), "Patched file differs" );
+		sw = null;
+
+		// and again with a variable that wasn't there before
+		( ( TestConfigurator ) saved[ 1 ] ).add( "added", String.class, "new" );
+		ConfigurationSerialiser.saveChanges( file, saved );
+		sw = new StringWriter();
+		formatter.write( saved, sw );
+		check( sw.toString().equals( read( file ) ), "Patched file with insertion differs" );
+		sw = null;
+		saved = tree( new Random( 1 ) );
+		ConfigurationSerialiser.saveConfiguration( file, saved );
+
+		long[] time = new long[ 7 ];
+		long[] bytes = new long[ 7 ];
+		for( int r = 0; r < rounds + 1; r++ )
+		{
+			boolean timed = r > 0;
+
+			legacy = tree( null );
+			long t = System.nanoTime();
+			long b = allocated();
+			legacyLoad( file, legacy );
+			record( 0, t, b, time, bytes, timed );
+
+			streamed = tree( null );
+			t = System.nanoTime();
+			b = allocated();
+			ConfigurationSerialiser.loadConfiguration( file, streamed );
+			record( 1, t, b, time, bytes, timed );
+
+			t = System.nanoTime();
+			b = allocated();
+			legacySave( file, saved );
+			record( 2, t, b, time, bytes, timed );
+
+			t = System.nanoTime();
+			b = allocated();
+			ConfigurationSerialiser.saveConfiguration( file, saved );
+			record( 3, t, b, time, bytes, timed );
+
+			t = System.nanoTime();
+			b = allocated();
+			ConfigurationSerialiser.saveChanges( file, saved );
+			record( 4, t, b, time, bytes, timed );
+
+			change( saved, new Random( r ), 100 );
+			t = System.nanoTime();
+			b = allocated();
+			ConfigurationSerialiser.saveChanges( file, saved );
+			record( 5, t, b, time, bytes, timed );
+
+			change( saved, new Random( r ), 10000 );
+			t = System.nanoTime();
+			b = allocated();
+			ConfigurationSerialiser.saveChanges( file, saved );
+			record( 6, t, b, time, bytes, timed );
+		}
+
+		String[] names =
+				{ "load, string and tree ", "load, streamed        ", "save, string and tree ",
+						"save, streamed        ", "save changes, none    ",
+						"save changes, 1%      ", "save changes, 0.01%   " };
+		System.out.println( "best of " + rounds + " rounds, ms and MB allocated" );
+		for( int i = 0; i < names.length; i++ )
+		{
+			System.out.println( "\t" + names[ i ] + ": " + time[ i ] / 1000000 + "ms\t"
+					+ bytes[ i ] / ( 1024 * 1024 ) + "MB" );
+		}
+
+		file.delete();
+	}
+
+	private static void record( int i, long start, long allocated, long[] time,
+			long[] bytes, boolean timed )
+	{
+		long t = System.nanoTime() - start;
+		long b = allocated() - allocated;
+		if( timed )
+		{
+			time[ i ] = time[ i ] == 0 ? t : Math.min( time[ i ], t );
+			bytes[ i ] = b;
+		}
+	}
+
+	private static long allocated()
+	{
+		return threads.getThreadAllocatedBytes( Thread.currentThread().getId() );
+	}
+
+	/**
+	 * Checks that text and entities are read as they always have been
+	 */
+	private static void checkReading() throws Exception
+	{
+		String xml =
+				"<?xml version=\"1.0\"?>\n<!-- comment -->\n<root>\n<conf name=\"test\">\n"
+						+ "\t<var name=\"a\">\n   one two  \n  three\n\t</var>\n"
+						+ "\t<var name=\"b\">x &amp; y &#x41;</var>\n"
+						+ "\t<var name=\"c\"><![CDATA[<z>]]></var>\n"
+						+ "\t<var name=\"a\">ignored</var>\n" + "\t<var name=\"d\"/>\n"
+						+ "</conf>\n</root>\n";
+
+		TestConfigurator legacy = new TestConfigurator( "test" );
+		TestConfigurator streamed = new TestConfigurator( "test" );
+		for( String n : new String[] { "a", "b", "c", "d" } )
+		{
+			legacy.add( n, String.class, "default" );
+			streamed.add( n, String.class, "default" );
+		}
+
+		StringBuilder trimmed = new StringBuilder();
+		for( String line : xml.split( "\n" ) )
+		{
+			trimmed.append( line.trim() );
+		}
+
+		formatter.parse( new Configurator[] { legacy }, trimmed.toString() );
+		formatter.read( new Configurator[] { streamed }, new StringReader( xml ) );
+
+		checkEqual( new Configurator[] { legacy }, new Configurator[] { streamed } );
+		check( "one twothree".equals( streamed.getValue( "a" ) ), "Line trimming" );
+		check( "x & y A".equals( streamed.getValue( "b" ) ), "Entities" );
+
+		// escaped on the way out, and read back
+		streamed.setValue( "c", "<&\"'\u00e9>" );
+		StringWriter sw = new StringWriter();
+		formatter.write( new Configurator[] { streamed }, sw );
+		formatter.read( new Configurator[] { legacy }, new StringReader( sw.toString() ) );
+		check( "<&\"'\u00e9>".equals( legacy.getValue( "c" ) ), "Escaping" );
+	}
+
+	private static void legacyLoad( File file, Configurator[] confs ) throws Exception
+	{
+		BufferedReader reader = new BufferedReader( new FileReader( file ) );
+		StringBuilder buffy = new StringBuilder();
+		String line = null;
+		while( ( line = reader.readLine() ) != null )
+		{
+			buffy.append( line.trim() );
+		}
+		reader.close();
+
+		formatter.parse( confs, buffy.toString() );
+	}
+
+	private static void legacySave( File file, Configurator[] confs ) throws IOException
+	{
+		String s = formatter.format( confs );
+		FileWriter fw = new FileWriter( file );
+		fw.write( s );
+		fw.flush();
+		fw.close();
+	}
+
+	private static ConfigurationPatch diff( File file, Configurator[] confs )
+			throws Exception
+	{
+		BufferedReader r = new BufferedReader( new FileReader( file ) );
+		try
+		{
+			return formatter.diff( confs, r );
+		}
+		finally
+		{
+			r.close();
+		}
+	}
+
+	private static String read( File file ) throws IOException
+	{
+		FileReader r = new FileReader( file );
+		StringWriter sw = new StringWriter();
+		char[] buffer = new char[ 8192 ];
+		int n;
+		while( ( n = r.read( buffer ) ) > 0 )
+		{
+			sw.write( buffer, 0, n );
+		}
+		r.close();
+		return sw.toString();
+	}
+
+	/**
+	 * Two configurators of 200 sub-configurators of 5 of 128 variables
+	 * each. About 10MB when saved
+	 *
+	 * @param rng
+	 *           for values, or <code>null</code> for defaults
+	 */
+	private static Configurator[] tree( Random rng )
+	{
+		Configurator[] roots = new Configurator[ 2 ];
+		for( int i = 0; i < roots.length; i++ )
+		{
+			TestConfigurator root = new TestConfigurator( "root" + i );
+			for( int j = 0; j < 200; j++ )
+			{
+				TestConfigurator group = new TestConfigurator( "group" + j );
+				for( int k = 0; k < 5; k++ )
+				{
+					TestConfigurator leaf = new TestConfigurator( "leaf" + k );
+					for( int v = 0; v < 128; v++ )
+					{
+						switch( v % 4 )
+						{
+							case 0:
+								leaf.add( "speed" + v, float.class, Float.valueOf( rng == null ? 0
+										: rng.nextFloat() ) );
+								break;
+							case 1:
+								leaf.add( "count" + v, int.class, Integer.valueOf( rng == null ? 0
+										: rng.nextInt() ) );
+								break;
+							case 2:
+								leaf.add( "name" + v, String.class, rng == null ? "" : "value "
+										+ rng.nextInt( 1000 ) );
+								break;
+							default:
+								leaf.add( "enabled" + v, boolean.class, Boolean
+										.valueOf( rng != null && rng.nextBoolean() ) );
+						}
+					}
+					leaf.add( "reset", void.class, null );
+					group.addVariable( leaf );
+				}
+				root.addVariable( group );
+			}
+			roots[ i ] = root;
+		}
+		return roots;
+	}
+
+	/**
+	 * Changes one in every so many variables
+	 *
+	 * @return The number changed
+	 */
+	private static int change( Configurator[] confs, Random rng, int oneIn )
+	{
+		int changed = 0;
+		for( Configurator c : confs )
+		{
+			for( Object o : c.getNames() )
+			{
+				if( o instanceof Configurator )
+				{
+					changed += change( new Configurator[] { ( Configurator ) o }, rng, oneIn );
+				}
+				else if( c.getType( ( String ) o ) != void.class && rng.nextInt( oneIn ) == 0 )
+				{
+					String n = ( String ) o;
+					Object v = c.getValue( n );
+					if( v instanceof Float )
+					{
+						v = Float.valueOf( ( ( Float ) v ).floatValue() + 1 );
+					}
+					else if( v instanceof Integer )
+					{
+						v = Integer.valueOf( ( ( Integer ) v ).intValue() + 1 );
+					}
+					else if( v instanceof Boolean )
+					{
+						v = Boolean.valueOf( !( ( Boolean ) v ).booleanValue() );
+					}
+					else
+					{
+						v = v + "+";
+					}
+					c.setValue( n, v );
+					changed++;
+				}
+			}
+		}
+		return changed;
+	}
+
+	private static void checkEqual( Configurator[] a, Configurator[] b )
+	{
+		for( int i = 0; i < a.length; i++ )
+		{
+			Object[] an = a[ i ].getNames();
+			Object[] bn = b[ i ].getNames();
+			for( int j = 0; j < an.length; j++ )
+			{
+				if( an[ j ] instanceof Configurator )
+				{
+					checkEqual( new Configurator[] { ( Configurator ) an[ j ] },
+							new Configurator[] { ( Configurator ) bn[ j ] } );
+				}
+				else
+				{
+					String n = ( String ) an[ j ];
+					Object av = a[ i ].getValue( n );
+					Object bv = b[ i ].getValue( n );
+					check( av == null ? bv == null : av.equals( bv ), a[ i ].getPath() + "/" + n
+							+ " = " + av + " vs " + bv );
+				}
+			}
+		}
+	}
+
+	private static void check( boolean condition, String message )
+	{
+		if( !condition )
+		{
+			throw new AssertionError( message );
+		}
+	}
+
+	/**
+	 * Keeps its values in a map
+	 *
+	 * @author ryanm
+	 */
+	private static class TestConfigurator extends AbstractConfigurator
+	{
+		private final Map<String, Object> values = new HashMap<String, Object>();
+
+		private TestConfigurator( String name )
+		{
+			super( name );
+		}
+
+		private void add( String name, Class type, Object value )
+		{
+			addVariable( name );
+			setType( name, type );
+			values.put( name, value );
+		}
+
+		@Override
+		protected void applyValue( String name, Object value )
+		{
+			values.put( name, value );
+		}
+
+		@Override
+		public Object retrieveValue( String name )
+		{
+			return values.get( name );
+		}
+	}
+}
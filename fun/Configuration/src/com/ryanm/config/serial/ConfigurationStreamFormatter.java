@@ -0,0 +1,66 @@
+
+package com.ryanm.config.serial;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.ryanm.config.Configurator;
+
+/**
+ * A {@link ConfigurationStringFormatter} that can also work on
+ * streams, so that the whole of a configuration never has to be held
+ * in memory at once
+ *
+ * @author ryanm
+ */
+public interface ConfigurationStreamFormatter extends ConfigurationStringFormatter
+{
+	/**
+	 * Writes the state of the supplied configurators, in the same form
+	 * as {@link #format(Configurator[])}
+	 *
+	 * @param confs
+	 *           The configurators to write
+	 * @param writer
+	 *           Where to write them
+	 * @throws IOException
+	 */
+	public void write( Configurator[] confs, Writer writer ) throws IOException;
+
+	/**
+	 * Sets the state of the supplied configurators, in the same order
+	 * as {@link #parse(Configurator[], String)}. Nothing is applied
+	 * until the whole configuration has been read
+	 *
+	 * @param confs
+	 *           The configurators to set
+	 * @param reader
+	 *           The formatted configuration
+	 * @throws IOException
+	 * @throws ParseException
+	 *            If the configuration is malformed, in which case
+	 *            nothing is applied
+	 */
+	public void read( Configurator[] confs, Reader reader ) throws IOException,
+			ParseException;
+
+	/**
+	 * Finds the changes needed to bring a previously-written
+	 * configuration up to date with the current state of the supplied
+	 * configurators. Variables and configurators that they no longer
+	 * have are removed
+	 *
+	 * @param confs
+	 *           The configurators
+	 * @param previous
+	 *           The previously-written configuration
+	 * @return The changes to make, or <code>null</code> if the
+	 *         configuration is already up to date
+	 * @throws IOException
+	 * @throws ParseException
+	 *            If the previous configuration is malformed
+	 */
+	public ConfigurationPatch diff( Configurator[] confs, Reader previous )
+			throws IOException, ParseException;
+}
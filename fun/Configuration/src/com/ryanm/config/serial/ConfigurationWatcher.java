@@ -0,0 +1,687 @@
+
+package com.ryanm.config.serial;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.ryanm.config.BatchValueListener;
+import com.ryanm.config.Configurator;
+import com.ryanm.config.imp.AbstractConfigurator;
+
+/**
+ * Watches configuration files for edits, and reloads them into their
+ * {@link Configurator}s. Files are read and compared with their
+ * previous contents on a separate thread, once they have stopped
+ * changing for a while. Only the variables that were edited are set,
+ * all at once, when {@link #apply()} is called on the main thread.
+ * Each {@link AbstractConfigurator} gets a single
+ * {@link AbstractConfigurator#setValues(Map)} call, so
+ * {@link BatchValueListener}s hear about the whole edit at once.
+ * Configurators are found by name when the edits are applied, so a
+ * tree that has been rebuilt since watching started gets them
+ *
+ * @author ryanm
+ */
+public class ConfigurationWatcher
+{
+	private final String name;
+
+	private final long debounce;
+
+	private WatchService service = null;
+
+	private Thread thread = null;
+
+	/**
+	 * Watched files, by path. Guarded by itself
+	 */
+	private final Map<Path, Watched> files = new HashMap<Path, Watched>();
+
+	/**
+	 * Directories that are registered with the service
+	 */
+	private final Set<Path> directories = new HashSet<Path>();
+
+	/**
+	 * Reloaded changes and failures, waiting for the main thread
+	 */
+	private final ConcurrentLinkedQueue<Batch> batches = new ConcurrentLinkedQueue<Batch>();
+
+	private int reloads = 0, variables = 0;
+
+	private long totalLatency = 0, maxLatency = 0, totalCost = 0, maxCost = 0;
+
+	/**
+	 * @param name
+	 *           The name of the watching thread
+	 * @param debounce
+	 *           How long, in milliseconds, a file must go unchanged
+	 *           before it is reloaded
+	 */
+	public ConfigurationWatcher( String name, long debounce )
+	{
+		this.name = name;
+		this.debounce = TimeUnit.MILLISECONDS.toNanos( debounce );
+	}
+
+	/**
+	 * Starts watching a file. Its current contents are taken as the
+	 * starting point, so only later edits are applied. Call this on
+	 * the main thread
+	 *
+	 * @param file
+	 *           The configuration file
+	 * @param confs
+	 *           The {@link Configurator}s to apply it to. The array is
+	 *           read again whenever edits are applied, so elements can
+	 *           be replaced
+	 * @throws IOException
+	 *            If the file's directory can't be watched
+	 */
+	public void watch( File file, Configurator... confs ) throws IOException
+	{
+		Path path = file.getCanonicalFile().toPath();
+		Path dir = path.getParent();
+
+		Watched w = new Watched( file, confs );
+		try
+		{
+			w.last = w.read();
+		}
+		catch( ParseException e )
+		{
+			// start from nothing, so the first good edit is applied in full
+			w.last = w.copy();
+		}
+
+		synchronized( files )
+		{
+			if( service == null )
+			{
+				service = FileSystems.getDefault().newWatchService();
+
+				thread = new Thread( name ) {
+					@Override
+					public void run()
+					{
+						listen();
+					}
+				};
+				thread.setDaemon( true );
+				thread.start();
+			}
+
+			if( directories.add( dir ) )
+			{
+				dir.register( service, ENTRY_CREATE, ENTRY_MODIFY );
+			}
+
+			files.put( path, w );
+		}
+	}
+
+	/**
+	 * Stops watching a file
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void unwatch( File file ) throws IOException
+	{
+		synchronized( files )
+		{
+			files.remove( file.getCanonicalFile().toPath() );
+		}
+	}
+
+	/**
+	 * Sets the values of any variables that have been edited since the
+	 * last call. Call this on the main thread
+	 *
+	 * @return The number of variables set
+	 */
+	public int apply()
+	{
+		if( batches.isEmpty() )
+		{
+			return 0;
+		}
+
+		long start = System.nanoTime();
+
+		// later edits override earlier ones
+		Map<Configurator, Map<String, Object>> merged =
+				new LinkedHashMap<Configurator, Map<String, Object>>();
+		List<Batch> applied = new ArrayList<Batch>();
+		Batch b;
+		while( ( b = batches.poll() ) != null )
+		{
+			if( b.error != null )
+			{
+				failed( b.file, b.error );
+				continue;
+			}
+
+			for( Map.Entry<List<String>, Map<String, Object>> e : b.values.entrySet() )
+			{
+				Configurator c = resolve( b.roots, e.getKey() );
+				if( c == null )
+				{
+					continue;
+				}
+
+				Map<String, Object> values = merged.get( c );
+				if( values == null )
+				{
+					values = new LinkedHashMap<String, Object>();
+					merged.put( c, values );
+				}
+				for( Map.Entry<String, Object> v : e.getValue().entrySet() )
+				{
+					if( c.getType( v.getKey() ) != null )
+					{
+						values.put( v.getKey(), v.getValue() );
+					}
+				}
+			}
+			applied.add( b );
+		}
+
+		if( applied.isEmpty() )
+		{
+			return 0;
+		}
+
+		int count = 0;
+		for( Map.Entry<Configurator, Map<String, Object>> e : merged.entrySet() )
+		{
+			Configurator c = e.getKey();
+			if( c instanceof AbstractConfigurator )
+			{
+				( ( AbstractConfigurator ) c ).setValues( e.getValue() );
+			}
+			else
+			{
+				for( Map.Entry<String, Object> v : e.getValue().entrySet() )
+				{
+					c.setValue( v.getKey(), v.getValue() );
+				}
+			}
+			count += e.getValue().size();
+		}
+
+		long end = System.nanoTime();
+		long cost = end - start;
+
+		reloads += applied.size();
+		variables += count;
+		totalCost += cost;
+		maxCost = Math.max( maxCost, cost );
+
+		for( Batch a : applied )
+		{
+			long latency = end - a.edited;
+			totalLatency += latency;
+			maxLatency = Math.max( maxLatency, latency );
+
+			applied( a.file, a.count, latency, cost );
+		}
+
+		return count;
+	}
+
+	/**
+	 * Finds a configurator by its path from the roots
+	 *
+	 * @return The configurator, or <code>null</code> if the tree no
+	 *         longer has it
+	 */
+	private static Configurator resolve( Configurator[] roots, List<String> path )
+	{
+		int root = Integer.parseInt( path.get( 0 ) );
+		Configurator c = root < roots.length ? roots[ root ] : null;
+
+		for( int i = 1; i < path.size() && c != null; i++ )
+		{
+			Configurator parent = c;
+			c = null;
+			for( Object o : parent.getNames() )
+			{
+				if( o instanceof Configurator
+						&& ( ( Configurator ) o ).getName().equals( path.get( i ) ) )
+				{
+					c = ( Configurator ) o;
+					break;
+				}
+			}
+		}
+
+		return c;
+	}
+
+	/**
+	 * Stops watching all files
+	 */
+	public void close()
+	{
+		synchronized( files )
+		{
+			files.clear();
+			directories.clear();
+
+			if( service != null )
+			{
+				try
+				{
+					service.close();
+				}
+				catch( IOException e )
+				{
+					e.printStackTrace();
+				}
+				service = null;
+			}
+		}
+	}
+
+	/**
+	 * Called on the main thread after the edits to a file have been
+	 * applied. Override to log
+	 *
+	 * @param file
+	 *           The file
+	 * @param count
+	 *           The number of variables set
+	 * @param latency
+	 *           Nanoseconds between the first edit to the file being
+	 *           noticed and the values being set
+	 * @param cost
+	 *           Nanoseconds that {@link #apply()} took on the main
+	 *           thread
+	 */
+	protected void applied( File file, int count, long latency, long cost )
+	{
+	}
+
+	/**
+	 * Called on the main thread, from {@link #apply()}, when an edited
+	 * file couldn't be read. It will be tried again the next time it
+	 * changes. Override to log
+	 *
+	 * @param file
+	 * @param e
+	 */
+	protected void failed( File file, Exception e )
+	{
+		System.err.println( "Could not reload " + file );
+		e.printStackTrace();
+	}
+
+	@Override
+	public String toString()
+	{
+		return reloads + " reloads, " + variables + " variables, latency "
+				+ ms( totalLatency / Math.max( 1, reloads ) ) + "ms mean "
+				+ ms( maxLatency ) + "ms max, main thread "
+				+ ms( totalCost / Math.max( 1, reloads ) ) + "ms mean " + ms( maxCost )
+				+ "ms max";
+	}
+
+	private static float ms( long nanos )
+	{
+		return nanos / 10000 / 100f;
+	}
+
+	private void listen()
+	{
+		WatchService service;
+		synchronized( files )
+		{
+			service = this.service;
+		}
+
+		// edited files, waiting for them to settle
+		Set<Watched> pending = new HashSet<Watched>();
+
+		try
+		{
+			for( ;; )
+			{
+				WatchKey key;
+				if( pending.isEmpty() )
+				{
+					key = service.take();
+				}
+				else
+				{
+					long wait = Long.MAX_VALUE;
+					for( Watched w : pending )
+					{
+						wait = Math.min( wait, w.changed + debounce - System.nanoTime() );
+					}
+					key = service.poll( Math.max( 0, wait ), TimeUnit.NANOSECONDS );
+				}
+
+				if( key != null )
+				{
+					Path dir = ( Path ) key.watchable();
+					long now = System.nanoTime();
+
+					for( WatchEvent<?> event : key.pollEvents() )
+					{
+						synchronized( files )
+						{
+							for( Watched w : files.values() )
+							{
+								if( event.kind() == OVERFLOW ? w.path.getParent().equals( dir )
+										: w.path.equals( dir.resolve( ( Path ) event.context() ) ) )
+								{
+									if( pending.add( w ) )
+									{
+										w.edited = now;
+									}
+									w.changed = now;
+								}
+							}
+						}
+					}
+
+					key.reset();
+				}
+
+				long now = System.nanoTime();
+				for( Iterator<Watched> iter = pending.iterator(); iter.hasNext(); )
+				{
+					Watched w = iter.next();
+					if( now - w.changed >= debounce )
+					{
+						iter.remove();
+						reload( w );
+					}
+				}
+			}
+		}
+		catch( InterruptedException e )
+		{
+			// stopped
+		}
+		catch( ClosedWatchServiceException e )
+		{
+			// stopped
+		}
+	}
+
+	private void reload( Watched w )
+	{
+		synchronized( files )
+		{
+			if( files.get( w.path ) != w )
+			{
+				return;
+			}
+		}
+
+		Shadow[] current;
+		try
+		{
+			current = w.read();
+		}
+		catch( Exception e )
+		{
+			Batch f = new Batch( w, w.edited );
+			f.error = e;
+			batches.add( f );
+			return;
+		}
+
+		Batch b = new Batch( w, w.edited );
+		for( int i = 0; i < current.length; i++ )
+		{
+			diff( w.last[ i ], current[ i ], b );
+		}
+		w.last = current;
+
+		if( b.count > 0 )
+		{
+			batches.add( b );
+		}
+	}
+
+	/**
+	 * Finds the variables whose encoded values differ between two
+	 * readings of a file
+	 */
+	private static void diff( Shadow previous, Shadow current, Batch b )
+	{
+		Map<String, Object> changed = null;
+
+		for( Map.Entry<String, Object> e : current.values.entrySet() )
+		{
+			String var = e.getKey();
+			String encoded = ConfigurationSerialiser.encode( current, var );
+
+			if( !previous.values.containsKey( var )
+					|| !equal( encoded, ConfigurationSerialiser.encode( previous, var ) ) )
+			{
+				if( changed == null )
+				{
+					changed = new LinkedHashMap<String, Object>();
+					b.values.put( current.path, changed );
+				}
+				changed.put( var, e.getValue() );
+				b.count++;
+			}
+		}
+
+		for( int i = 0; i < current.children.size(); i++ )
+		{
+			diff( previous.children.get( i ), current.children.get( i ), b );
+		}
+	}
+
+	private static boolean equal( Object a, Object b )
+	{
+		return a == null ? b == null : a.equals( b );
+	}
+
+	/**
+	 * A watched file
+	 */
+	private static class Watched
+	{
+		private final File file;
+
+		private final Path path;
+
+		private final Configurator[] roots;
+
+		private final Shadow[] template;
+
+		/**
+		 * The file as it was last read. Only touched on the watching
+		 * thread once watching starts
+		 */
+		private Shadow[] last;
+
+		/**
+		 * When the file was first seen to change since it was last
+		 * reloaded, and when it was last seen to change
+		 */
+		private long edited, changed;
+
+		private Watched( File file, Configurator[] confs ) throws IOException
+		{
+			this.file = file;
+			path = file.getCanonicalFile().toPath();
+			roots = confs;
+			template = new Shadow[ confs.length ];
+			for( int i = 0; i < confs.length; i++ )
+			{
+				template[ i ] =
+						new Shadow( confs[ i ], Collections.singletonList( String.valueOf( i ) ) );
+			}
+		}
+
+		/**
+		 * @return The values in the file, or none if it doesn't exist
+		 */
+		private Shadow[] read() throws IOException, ParseException
+		{
+			Shadow[] s = copy();
+
+			if( file.exists() )
+			{
+				ConfigurationSerialiser.loadConfiguration( file, s );
+			}
+
+			return s;
+		}
+
+		/**
+		 * @return Shadows with no values
+		 */
+		private Shadow[] copy()
+		{
+			Shadow[] s = new Shadow[ template.length ];
+			for( int i = 0; i < s.length; i++ )
+			{
+				s[ i ] = new Shadow( template[ i ] );
+			}
+			return s;
+		}
+	}
+
+	/**
+	 * Has the same shape as a real {@link Configurator}, and holds the
+	 * values read from a file so they can be compared off the main
+	 * thread
+	 */
+	private static class Shadow extends AbstractConfigurator
+	{
+		/**
+		 * The index of the root configurator, then the names of the
+		 * configurators below it
+		 */
+		private final List<String> path;
+
+		private final List<Shadow> children = new ArrayList<Shadow>();
+
+		/**
+		 * Only the values that were read
+		 */
+		private final Map<String, Object> values = new HashMap<String, Object>();
+
+		/**
+		 * Copies the shape of a real configurator
+		 */
+		private Shadow( Configurator real, List<String> path )
+		{
+			super( real.getName() );
+			this.path = path;
+
+			for( Object o : real.getNames() )
+			{
+				if( o instanceof String )
+				{
+					addVariable( ( String ) o );
+					setType( ( String ) o, real.getType( ( String ) o ) );
+				}
+				else if( o instanceof Configurator )
+				{
+					Configurator c = ( Configurator ) o;
+					List<String> p = new ArrayList<String>( path );
+					p.add( c.getName() );
+					Shadow s = new Shadow( c, Collections.unmodifiableList( p ) );
+					children.add( s );
+					addVariable( s );
+				}
+			}
+		}
+
+		/**
+		 * Copies the shape of another shadow
+		 */
+		private Shadow( Shadow template )
+		{
+			super( template.getName() );
+			path = template.path;
+
+			for( Object o : template.getNames() )
+			{
+				if( o instanceof String )
+				{
+					addVariable( ( String ) o );
+					setType( ( String ) o, template.getType( ( String ) o ) );
+				}
+				else
+				{
+					Shadow s = new Shadow( ( Shadow ) o );
+					children.add( s );
+					addVariable( s );
+				}
+			}
+		}
+
+		@Override
+		protected void applyValue( String name, Object value )
+		{
+			values.put( name, value );
+		}
+
+		@Override
+		public Object retrieveValue( String name )
+		{
+			return values.get( name );
+		}
+	}
+
+	/**
+	 * The edits from one reload of a file, or why it couldn't be read
+	 */
+	private static class Batch
+	{
+		private final File file;
+
+		private final Configurator[] roots;
+
+		private final long edited;
+
+		/**
+		 * Edited values, by {@link Shadow#path}
+		 */
+		private final Map<List<String>, Map<String, Object>> values =
+				new LinkedHashMap<List<String>, Map<String, Object>>();
+
+		private int count = 0;
+
+		private Exception error = null;
+
+		private Batch( Watched w, long edited )
+		{
+			file = w.file;
+			roots = w.roots;
+			this.edited = edited;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+
+package com.ryanm.config.serial;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ryanm.config.BatchValueListener;
+import com.ryanm.config.Configurator;
+import com.ryanm.config.ValueListener;
+import com.ryanm.config.imp.AbstractConfigurator;
+
+/**
+ * Edits a watched configuration file and checks that only the edited
+ * variables are set, once per edit and in one batch per configurator.
+ * Reports the time from the file being written to the values being
+ * set, and what that costs the main thread
+ *
+ * @author ryanm
+ */
+public class ConfigurationWatcherTest
+{
+	private static final long DEBOUNCE = 50;
+
+	/**
+	 * @param args
+	 *           The number of timed edits
+	 * @throws Exception
+	 */
+	public static void main( String[] args ) throws Exception
+	{
+		int edits = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 20;
+
+		File dir = File.createTempFile( "watched", "" );
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		File file = new File( dir, "options.xml" );
+		file.deleteOnExit();
+
+		// what the game has, and what the editor writes
+		TestConfigurator game = tree();
+		TestConfigurator editor = tree();
+		TestConfigurator client = ( TestConfigurator ) game.getNames()[ 2 ];
+		ConfigurationSerialiser.saveConfiguration( file, editor );
+
+		final List<String> failures = new ArrayList<String>();
+		final Thread main = Thread.currentThread();
+		ConfigurationWatcher watcher = new ConfigurationWatcher( "Watcher", DEBOUNCE ) {
+			@Override
+			protected void failed( File f, Exception e )
+			{
+				check( Thread.currentThread() == main, "failure reported on the main thread" );
+				failures.add( e.getMessage() );
+			}
+		};
+		Configurator[] roots = new Configurator[] { game };
+		watcher.watch( file, roots );
+
+		Listener gameListener = new Listener();
+		game.addValueListener( gameListener );
+		Listener clientListener = new Listener();
+		client.addValueListener( clientListener );
+		final List<String> plain = new ArrayList<String>();
+		client.addValueListener( new ValueListener() {
+			@Override
+			public void valueChanged( String name )
+			{
+				plain.add( name );
+			}
+		} );
+
+		// one variable
+		editor.setValue( "speed", Float.valueOf( 2 ) );
+		ConfigurationSerialiser.saveConfiguration( file, editor );
+		check( waitFor( watcher ) == 1, "one variable" );
+		check( game.getValue( "speed" ).equals( Float.valueOf( 2 ) ), "value set" );
+		check( gameListener.batches.size() == 1 && gameListener.batches.get( 0 ).size() == 1,
+				"one notification " + gameListener.batches );
+		check( clientListener.batches.isEmpty() && plain.isEmpty(), "client untouched" );
+
+		// a burst of saves, across two configurators, is one batch
+		gameListener.batches.clear();
+		for( int i = 0; i < 5; i++ )
+		{
+			editor.setValue( "count", Integer.valueOf( 10 + i ) );
+			( ( Configurator ) editor.getNames()[ 2 ] ).setValue( "name", "client " + i );
+			( ( Configurator ) editor.getNames()[ 2 ] ).setValue( "enabled", Boolean
+					.valueOf( i % 2 == 1 ) );
+			ConfigurationSerialiser.saveConfiguration( file, editor );
+			Thread.sleep( DEBOUNCE / 5 );
+		}
+		check( waitFor( watcher ) == 3, "three variables" );
+		check( game.getValue( "count" ).equals( Integer.valueOf( 14 ) ), "last count" );
+		check( client.getValue( "name" ).equals( "client 4" ), "last name" );
+		check( gameListener.batches.size() == 1 && gameListener.batches.get( 0 ).size() == 1,
+				"one game notification " + gameListener.batches );
+		check( clientListener.batches.size() == 1
+				&& clientListener.batches.get( 0 ).size() == 2, "one client notification "
+				+ clientListener.batches );
+		check( plain.size() == 2, "plain listener told of each variable " + plain );
+
+		// a broken save is skipped, and the next good one applied
+		FileWriter fw = new FileWriter( file );
+		fw.write( "<root><conf name=\"game\"><var name=\"speed\">" );
+		fw.close();
+		Thread.sleep( DEBOUNCE * 4 );
+		check( failures.isEmpty(), "failure waits for apply()" );
+		check( watcher.apply() == 0 && failures.size() == 1, "broken file " + failures );
+		editor.setValue( "speed", Float.valueOf( 3 ) );
+		ConfigurationSerialiser.saveConfiguration( file, editor );
+		check( waitFor( watcher ) == 1, "recovered" );
+		check( game.getValue( "speed" ).equals( Float.valueOf( 3 ) ), "recovered value" );
+
+		// a rebuilt tree gets the edits, not the one that was watched
+		TestConfigurator rebuilt = tree();
+		roots[ 0 ] = rebuilt;
+		( ( Configurator ) editor.getNames()[ 2 ] ).setValue( "name", "rebuilt" );
+		ConfigurationSerialiser.saveConfiguration( file, editor );
+		check( waitFor( watcher ) == 1, "rebuilt" );
+		check( ( ( Configurator ) rebuilt.getNames()[ 2 ] ).getValue( "name" ).equals(
+				"rebuilt" ), "edit applied to the rebuilt tree" );
+		check( client.getValue( "name" ).equals( "client 4" ), "old tree untouched" );
+
+		// timing
+		long total = 0, max = 0;
+		for( int i = 0; i < edits; i++ )
+		{
+			editor.setValue( "speed", Float.valueOf( 10 + i ) );
+
+			long start = System.nanoTime();
+			ConfigurationSerialiser.saveConfiguration( file, editor );
+			waitFor( watcher );
+			long latency = System.nanoTime() - start;
+
+			total += latency;
+			max = Math.max( max, latency );
+			Thread.sleep( DEBOUNCE );
+		}
+
+		// the main-thread cost on its own, for a big edit
+		for( int i = 0; i < 100; i++ )
+		{
+			( ( TestConfigurator ) editor.getNames()[ 3 ] ).setValue( "v" + i, Float.valueOf( i ) );
+		}
+		ConfigurationSerialiser.saveConfiguration( file, editor );
+		Thread.sleep( DEBOUNCE * 4 );
+		long start = System.nanoTime();
+		int applied = watcher.apply();
+		long cost = System.nanoTime() - start;
+		check( applied == 100, applied + " of 100" );
+
+		System.out.println( "save to set, over " + edits + " edits with " + DEBOUNCE
+				+ "ms debounce: mean " + total / edits / 1000000f + "ms, max " + max / 1000000f
+				+ "ms" );
+		System.out.println( "apply() for 100 variables: " + cost / 1000 + "us" );
+		System.out.println( watcher );
+
+		watcher.close();
+		file.delete();
+		dir.delete();
+
+		System.out.println( "ok" );
+	}
+
+	/**
+	 * Calls {@link ConfigurationWatcher#apply()} every millisecond, as
+	 * a main loop would, until something is applied
+	 */
+	private static int waitFor( ConfigurationWatcher watcher ) throws InterruptedException
+	{
+		long limit = System.currentTimeMillis() + 5000;
+		int n;
+		while( ( n = watcher.apply() ) == 0 )
+		{
+			check( System.currentTimeMillis() < limit, "timed out" );
+			Thread.sleep( 1 );
+		}
+		return n;
+	}
+
+	private static TestConfigurator tree()
+	{
+		TestConfigurator game = new TestConfigurator( "game" );
+		game.add( "speed", float.class, Float.valueOf( 1 ) );
+		game.add( "count", int.class, Integer.valueOf( 5 ) );
+
+		TestConfigurator client = new TestConfigurator( "client" );
+		client.add( "name", String.class, "player" );
+		client.add( "enabled", boolean.class, Boolean.TRUE );
+		client.add( "reset", void.class, null );
+		game.addVariable( client );
+
+		TestConfigurator many = new TestConfigurator( "many" );
+		for( int i = 0; i < 100; i++ )
+		{
+			many.add( "v" + i, float.class, Float.valueOf( -1 ) );
+		}
+		game.addVariable( many );
+
+		return game;
+	}
+
+	private static void check( boolean condition, String message )
+	{
+		if( !condition )
+		{
+			throw new AssertionError( message );
+		}
+	}
+
+	private static class Listener implements BatchValueListener
+	{
+		private final List<Set<String>> batches = new ArrayList<Set<String>>();
+
+		@Override
+		public void valuesChanged( Set<String> names )
+		{
+			batches.add( names );
+		}
+
+		@Override
+		public void valueChanged( String name )
+		{
+			throw new AssertionError( "Told of " + name + " alone" );
+		}
+	}
+
+	/**
+	 * Keeps its values in a map
+	 *
+	 * @author ryanm
+	 */
+	private static class TestConfigurator extends AbstractConfigurator
+	{
+		private final Map<String, Object> values = new HashMap<String, Object>();
+
+		private TestConfigurator( String name )
+		{
+			super( name );
+		}
+
+		private void add( String name, Class type, Object value )
+		{
+			addVariable( name );
+			setType( name, type );
+			values.put( name, value );
+		}
+
+		@Override
+		protected void applyValue( String name, Object value )
+		{
+			values.put( name, value );
+		}
+
+		@Override
+		public Object retrieveValue( String name )
+		{
+			return values.get( name );
+		}
+	}
+}
@@ -2,23 +2,36 @@
 package com.ryanm.config.serial.imp;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import nanoxml.XMLElement;
 import nanoxml.XMLParseException;
 
 import com.ryanm.config.Configurator;
+import com.ryanm.config.serial.ConfigurationPatch;
 import com.ryanm.config.serial.ConfigurationSerialiser;
-import com.ryanm.config.serial.ConfigurationStringFormatter;
+import com.ryanm.config.serial.ConfigurationStreamFormatter;
 import com.ryanm.config.serial.ParseException;
 
 /**
- * Serialises to XML
+ * Serialises to XML. The {@link String} methods build a whole
+ * {@link XMLElement} tree, the stream methods work an element at a
+ * time
  * 
  * @author ryanm
  */
-public class NanoXMLFormatter implements ConfigurationStringFormatter
+public class NanoXMLFormatter implements ConfigurationStreamFormatter
 {
 
 	@Override
@@ -155,4 +168,457 @@ public class NanoXMLFormatter implements ConfigurationStringFormatter
 			}
 		}
 	}
+
+	@Override
+	public void write( Configurator[] confs, Writer writer ) throws IOException
+	{
+		writer.write( "<root>" );
+
+		for( Configurator c : confs )
+		{
+			writer.write( '\n' );
+			write( c, writer, 1 );
+		}
+
+		writer.write( confs.length == 0 ? "</root>" : "\n</root>" );
+	}
+
+	/**
+	 * Writes a configurator as {@link XMLElement#indentPrint()} would
+	 */
+	private void write( Configurator c, Writer writer, int indent ) throws IOException
+	{
+		indent( writer, indent );
+		writer.write( "<conf name=\"" );
+		encode( writer, c.getName() );
+		writer.write( "\">" );
+
+		boolean children = false;
+
+		for( Object o : c.getNames() )
+		{
+			if( o instanceof String )
+			{
+				String var = ( String ) o;
+
+				if( c.getType( var ) != void.class )
+				{ // ignore action variables
+					writer.write( '\n' );
+					writeVariable( c, var, writer, indent + 1 );
+					children = true;
+				}
+			}
+			else if( o instanceof Configurator )
+			{
+				writer.write( '\n' );
+				write( ( Configurator ) o, writer, indent + 1 );
+				children = true;
+			}
+		}
+
+		if( children )
+		{
+			writer.write( '\n' );
+			indent( writer, indent );
+		}
+
+		writer.write( "</conf>" );
+	}
+
+	private void writeVariable( Configurator c, String var, Writer writer, int indent )
+			throws IOException
+	{
+		indent( writer, indent );
+		writer.write( "<var name=\"" );
+		encode( writer, var );
+		writer.write( "\">" );
+		encode( writer, ConfigurationSerialiser.encode( c, var ) );
+		writer.write( "</var>" );
+	}
+
+	private static void indent( Writer writer, int indent ) throws IOException
+	{
+		for( int i = 0; i < indent; i++ )
+		{
+			writer.write( '\t' );
+		}
+	}
+
+	/**
+	 * Escapes as {@link XMLElement} does
+	 */
+	private static void encode( Writer writer, String s ) throws IOException
+	{
+		if( s == null )
+		{
+			return;
+		}
+
+		for( int i = 0; i < s.length(); i++ )
+		{
+			char c = s.charAt( i );
+			switch( c )
+			{
+				case '<':
+					writer.write( "&lt;" );
+					break;
+				case '>':
+					writer.write( "&gt;" );
+					break;
+				case '&':
+					writer.write( "&amp;" );
+					break;
+				case '"':
+					writer.write( "&quot;" );
+					break;
+				case '\'':
+					writer.write( "&apos;" );
+					break;
+				default:
+					if( c < 32 || c > 126 )
+					{
+						writer.write( "&#x" );
+						writer.write( Integer.toString( c, 16 ) );
+						writer.write( ';' );
+					}
+					else
+					{
+						writer.write( c );
+					}
+			}
+		}
+	}
+
+	@Override
+	public void read( Configurator[] confs, Reader reader ) throws IOException,
+			ParseException
+	{
+		Map<Configurator, Map<String, String>> values =
+				new IdentityHashMap<Configurator, Map<String, String>>();
+
+		walk( confs, new XMLTokeniser( reader ), values, null );
+
+		// the whole stream is good, so now we can apply it
+		for( int i = 0; i < confs.length; i++ )
+		{
+			apply( confs[ i ], values );
+		}
+	}
+
+	/**
+	 * Applies read values in the same order as
+	 * {@link #parseXMLElement(Configurator, XMLElement)}
+	 */
+	private void apply( Configurator conf, Map<Configurator, Map<String, String>> values )
+	{
+		Map<String, String> vars = values.get( conf );
+
+		for( Object o : conf.getNames() )
+		{
+			if( o instanceof String && vars != null && vars.containsKey( o ) )
+			{
+				String var = ( String ) o;
+
+				try
+				{
+					Object decoded = ConfigurationSerialiser.decode( conf, var, vars.get( var ) );
+					conf.setValue( var, decoded );
+				}
+				catch( ParseException e )
+				{
+					e.printStackTrace();
+				}
+			}
+			else if( o instanceof Configurator )
+			{
+				apply( ( Configurator ) o, values );
+			}
+		}
+	}
+
+	@Override
+	public ConfigurationPatch diff( Configurator[] confs, Reader previous )
+			throws IOException, ParseException
+	{
+		ConfigurationPatch patch = new ConfigurationPatch();
+
+		walk( confs, new XMLTokeniser( previous ), null, patch );
+
+		return patch.size() == 0 ? null : patch;
+	}
+
+	/**
+	 * Matches elements to configurators as {@link #parse(Configurator[],
+	 * String)} does, but in the order they appear in the stream. Each
+	 * variable is either collected or, if there is a patch, compared
+	 * with the current value. Elements in a configurator's element that
+	 * don't match its variables or children are patched out
+	 */
+	private void walk( Configurator[] confs, XMLTokeniser xml,
+			Map<Configurator, Map<String, String>> values, ConfigurationPatch patch )
+			throws IOException, ParseException
+	{
+		// one per open element, null for those we're ignoring
+		List<Level> levels = new ArrayList<Level>();
+
+		// the variable being read, and where
+		String var = null;
+		int varDepth = -1;
+		long varStart = 0;
+		StringBuilder content = new StringBuilder();
+
+		// the stale element being dropped, and where
+		int dropDepth = -1;
+		long dropStart = 0;
+
+		int token;
+		while( ( token = xml.next() ) != XMLTokeniser.EOF )
+		{
+			if( token == XMLTokeniser.START )
+			{
+				Level parent = levels.isEmpty() ? null : levels.get( levels.size() - 1 );
+				Level level = null;
+
+				if( levels.isEmpty() )
+				{
+					level = new Level( null, confs, 0, xml );
+				}
+				else if( parent != null && var == null )
+				{
+					String name = xml.attribute( "name" );
+
+					if( parent.conf == null || xml.name().equals( "conf" ) )
+					{
+						Configurator c = parent.claimConfigurator( name );
+						if( c != null )
+						{
+							level = new Level( c, null, levels.size(), xml );
+						}
+					}
+					else if( xml.name().equals( "var" ) && parent.claimVariable( name ) )
+					{
+						var = name;
+						varDepth = levels.size();
+						varStart = xml.end();
+						content.setLength( 0 );
+					}
+
+					if( level == null && var == null && parent.conf != null && patch != null )
+					{ // the configurator doesn't have this any more
+						dropDepth = levels.size();
+						dropStart = parent.lastChild;
+					}
+				}
+
+				levels.add( level );
+			}
+			else if( token == XMLTokeniser.TEXT )
+			{
+				if( var != null && levels.size() == varDepth + 1 )
+				{
+					content.append( xml.text() );
+				}
+			}
+			else
+			{
+				Level level = levels.remove( levels.size() - 1 );
+				Level parent = levels.isEmpty() ? null : levels.get( levels.size() - 1 );
+
+				if( var != null && levels.size() == varDepth )
+				{
+					variable( parent.conf, var, content.toString(), values, patch, varStart, xml );
+					var = null;
+				}
+				else if( levels.size() == dropDepth )
+				{ // along with the whitespace before it
+					patch.replace( dropStart, ( int ) ( xml.end() - dropStart ), "" );
+					dropDepth = -1;
+				}
+				else if( level != null && patch != null )
+				{
+					level.insertMissing( this, patch, xml );
+				}
+
+				if( parent != null )
+				{
+					parent.lastChild = xml.end();
+				}
+			}
+		}
+	}
+
+	private void variable( Configurator conf, String var, String content,
+			Map<Configurator, Map<String, String>> values, ConfigurationPatch patch,
+			long start, XMLTokeniser xml ) throws IOException
+	{
+		if( patch == null )
+		{
+			Map<String, String> vars = values.get( conf );
+			if( vars == null )
+			{
+				vars = new HashMap<String, String>();
+				values.put( conf, vars );
+			}
+			vars.put( var, content );
+		}
+		else if( conf.getType( var ) != void.class )
+		{
+			String encoded = ConfigurationSerialiser.encode( conf, var );
+			if( !content.equals( encoded == null ? "" : encoded ) )
+			{
+				StringWriter sw = new StringWriter();
+
+				if( xml.empty() )
+				{ // no room for content, replace the whole element
+					patch.replace( xml.start() - 2, 2, "" );
+					sw.write( ">" );
+					encode( sw, encoded );
+					sw.write( "</var>" );
+					patch.replace( xml.start(), 0, sw.toString() );
+				}
+				else
+				{
+					encode( sw, encoded );
+					patch.replace( start, ( int ) ( xml.start() - start ), sw.toString() );
+				}
+			}
+		}
+	}
+
+	/**
+	 * An open element that we're reading into a configurator
+	 */
+	private static class Level
+	{
+		/**
+		 * <code>null</code> for the root element
+		 */
+		private final Configurator conf;
+
+		private final Configurator[] roots;
+
+		private final int depth;
+
+		private final long start;
+
+		/**
+		 * Where to insert anything that's missing: the end of the last
+		 * child element
+		 */
+		private long lastChild;
+
+		private Set<String> variables = null;
+
+		private Map<String, Configurator> configurators = null;
+
+		private final Set<Object> claimed = new HashSet<Object>();
+
+		private Level( Configurator conf, Configurator[] roots, int depth, XMLTokeniser xml )
+		{
+			this.conf = conf;
+			this.roots = roots;
+			this.depth = depth;
+			start = xml.start();
+			lastChild = xml.end();
+		}
+
+		private Object[] names()
+		{
+			return conf == null ? roots : conf.getNames();
+		}
+
+		private void index()
+		{
+			if( configurators == null )
+			{
+				variables = new HashSet<String>();
+				configurators = new HashMap<String, Configurator>();
+
+				for( Object o : names() )
+				{
+					if( o instanceof String )
+					{
+						variables.add( ( String ) o );
+					}
+					else if( o instanceof Configurator )
+					{
+						Configurator c = ( Configurator ) o;
+						if( !configurators.containsKey( c.getName() ) )
+						{
+							configurators.put( c.getName(), c );
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return The configurator to read the named element into, or
+		 *         <code>null</code> if there isn't one or it has been
+		 *         read already
+		 */
+		private Configurator claimConfigurator( String name )
+		{
+			index();
+			Configurator c = configurators.get( name );
+			return c != null && claimed.add( c ) ? c : null;
+		}
+
+		/**
+		 * @return <code>true</code> if the named variable should be read
+		 */
+		private boolean claimVariable( String name )
+		{
+			index();
+			return variables.contains( name ) && claimed.add( name );
+		}
+
+		/**
+		 * Adds the variables and configurators that the element lacks
+		 */
+		private void insertMissing( NanoXMLFormatter f, ConfigurationPatch patch,
+				XMLTokeniser xml ) throws IOException
+		{
+			StringWriter sw = new StringWriter();
+
+			for( Object o : names() )
+			{
+				if( !claimed.contains( o ) )
+				{
+					if( o instanceof String && conf.getType( ( String ) o ) != void.class )
+					{
+						sw.write( '\n' );
+						f.writeVariable( conf, ( String ) o, sw, depth + 1 );
+					}
+					else if( o instanceof Configurator )
+					{
+						sw.write( '\n' );
+						f.write( ( Configurator ) o, sw, depth + 1 );
+					}
+				}
+			}
+
+			if( sw.getBuffer().length() > 0 )
+			{
+				if( xml.empty() )
+				{ // <conf name="x"/>, so rewrite the whole thing
+					sw.getBuffer().setLength( 0 );
+					if( conf == null )
+					{
+						f.write( roots, sw );
+					}
+					else
+					{
+						f.write( conf, sw, depth );
+						sw.getBuffer().delete( 0, depth );
+					}
+					patch.replace( start, ( int ) ( xml.end() - start ), sw.toString() );
+				}
+				else
+				{
+					patch.replace( lastChild, 0, sw.toString() );
+				}
+			}
+		}
+	}
 }
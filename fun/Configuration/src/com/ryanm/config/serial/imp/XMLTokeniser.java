@@ -0,0 +1,552 @@
+
+package com.ryanm.config.serial.imp;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ryanm.config.serial.ParseException;
+
+/**
+ * Pulls elements and text out of a stream of XML one at a time, and
+ * notes where each was in the stream. Comments, processing
+ * instructions and doctypes are skipped, CDATA sections are returned
+ * as text. Text and attribute values have entities resolved, and
+ * each line of them is trimmed, as configurations have always been
+ * read that way
+ *
+ * @author ryanm
+ */
+final class XMLTokeniser
+{
+	/**
+	 * The end of the stream
+	 */
+	static final int EOF = 0;
+
+	/**
+	 * An opening tag. {@link #name()} and {@link #attribute(String)}
+	 * are valid
+	 */
+	static final int START = 1;
+
+	/**
+	 * A closing tag, or the end of an empty element.
+	 * {@link #name()} is valid
+	 */
+	static final int END = 2;
+
+	/**
+	 * Some text. {@link #text()} is valid
+	 */
+	static final int TEXT = 3;
+
+	private final Reader reader;
+
+	private final char[] buffer = new char[ 8192 ];
+
+	private int position = 0, limit = 0;
+
+	/**
+	 * Characters consumed before the start of the buffer
+	 */
+	private long buffered = 0;
+
+	private long tokenStart = 0, tokenEnd = 0;
+
+	private String name;
+
+	private final List<String> attributes = new ArrayList<String>();
+
+	private final StringBuilder text = new StringBuilder();
+
+	private final StringBuilder scratch = new StringBuilder();
+
+	/**
+	 * Recently-seen element and attribute names, so the same few
+	 * aren't allocated over and over
+	 */
+	private final String[] identifiers = new String[ 8 ];
+
+	private int nextIdentifier = 0;
+
+	/**
+	 * Names of open elements
+	 */
+	private final List<String> open = new ArrayList<String>();
+
+	private boolean emptyElement = false;
+
+	private boolean empty = false;
+
+	/**
+	 * Line-trimming state: whitespace after a line break is dropped,
+	 * and characters before <code>keep</code> are not trimmed
+	 */
+	private boolean lineStart = false;
+
+	private int keep = 0;
+
+	/**
+	 * @param reader
+	 */
+	XMLTokeniser( Reader reader )
+	{
+		this.reader = reader;
+	}
+
+	/**
+	 * @return The type of the next token
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	int next() throws IOException, ParseException
+	{
+		empty = emptyElement;
+
+		if( emptyElement )
+		{
+			emptyElement = false;
+			tokenStart = tokenEnd;
+			open.remove( open.size() - 1 );
+			return END;
+		}
+
+		for( ;; )
+		{
+			tokenStart = offset();
+
+			int c = read();
+
+			if( c < 0 )
+			{
+				if( !open.isEmpty() )
+				{
+					throw new ParseException( "Unexpected end of data, <" + open.get( 0 )
+							+ "> is not closed" );
+				}
+				tokenEnd = tokenStart;
+				return EOF;
+			}
+			else if( c != '<' )
+			{
+				text.setLength( 0 );
+				startLine();
+				while( c >= 0 && c != '<' )
+				{
+					if( c == '&' )
+					{
+						entity( text );
+					}
+					else
+					{
+						append( text, ( char ) c );
+					}
+					c = read();
+				}
+				if( c == '<' )
+				{
+					position--;
+				}
+				tokenEnd = offset();
+				return TEXT;
+			}
+
+			c = read();
+
+			if( c == '?' )
+			{
+				skipPast( "?>" );
+			}
+			else if( c == '!' )
+			{
+				if( lookingAt( "--" ) )
+				{
+					skipPast( "-->" );
+				}
+				else if( lookingAt( "[CDATA[" ) )
+				{
+					text.setLength( 0 );
+					startLine();
+					cdata();
+					tokenEnd = offset();
+					return TEXT;
+				}
+				else
+				{
+					skipPast( ">" );
+				}
+			}
+			else if( c == '/' )
+			{
+				name = identifier( read() );
+				if( open.isEmpty() || !open.get( open.size() - 1 ).equals( name ) )
+				{
+					throw new ParseException( "Unexpected </" + name + ">" );
+				}
+				expect( '>', whitespace() );
+				open.remove( open.size() - 1 );
+				tokenEnd = offset();
+				return END;
+			}
+			else
+			{
+				name = identifier( c );
+				attributes.clear();
+
+				c = whitespace();
+				while( c != '>' && c != '/' )
+				{
+					String key = identifier( c );
+					expect( '=', whitespace() );
+					int quote = whitespace();
+					if( quote != '"' && quote != '\'' )
+					{
+						throw new ParseException( "Expected ' or \" at " + offset() );
+					}
+
+					scratch.setLength( 0 );
+					startLine();
+					for( c = read(); c != quote; c = read() )
+					{
+						if( c < 0 )
+						{
+							throw new ParseException( "Unexpected end of data" );
+						}
+						else if( c == '&' )
+						{
+							entity( scratch );
+						}
+						else
+						{
+							append( scratch, ( char ) c );
+						}
+					}
+
+					attributes.add( key );
+					attributes.add( scratch.toString() );
+					c = whitespace();
+				}
+
+				if( c == '/' )
+				{
+					expect( '>', read() );
+					emptyElement = true;
+				}
+
+				open.add( name );
+				tokenEnd = offset();
+				return START;
+			}
+		}
+	}
+
+	/**
+	 * @return The name of the current element
+	 */
+	String name()
+	{
+		return name;
+	}
+
+	/**
+	 * @param key
+	 * @return The value of the attribute on the current element, or
+	 *         <code>null</code>
+	 */
+	String attribute( String key )
+	{
+		for( int i = 0; i < attributes.size(); i += 2 )
+		{
+			if( attributes.get( i ).equals( key ) )
+			{
+				return attributes.get( i + 1 );
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return <code>true</code> if the current {@link #END} token
+	 *         closes an element written as <code>&lt;name/&gt;</code>
+	 */
+	boolean empty()
+	{
+		return empty;
+	}
+
+	/**
+	 * @return The current text. Only valid until the next call to
+	 *         {@link #next()}
+	 */
+	CharSequence text()
+	{
+		return text;
+	}
+
+	/**
+	 * @return The number of open elements
+	 */
+	int depth()
+	{
+		return open.size();
+	}
+
+	/**
+	 * @return The index in the stream of the first character of the
+	 *         current token
+	 */
+	long start()
+	{
+		return tokenStart;
+	}
+
+	/**
+	 * @return The index in the stream of the character after the
+	 *         current token
+	 */
+	long end()
+	{
+		return tokenEnd;
+	}
+
+	private long offset()
+	{
+		return buffered + position;
+	}
+
+	private int read() throws IOException
+	{
+		if( position == limit )
+		{
+			buffered += limit;
+			position = 0;
+			limit = 0;
+
+			int r = reader.read( buffer );
+			if( r <= 0 )
+			{
+				return -1;
+			}
+			limit = r;
+		}
+
+		return buffer[ position++ ];
+	}
+
+	/**
+	 * Only valid immediately after a {@link #read()}
+	 */
+	private void unread()
+	{
+		position--;
+	}
+
+	private int whitespace() throws IOException
+	{
+		int c = read();
+		while( c == ' ' || c == '\t' || c == '\n' || c == '\r' )
+		{
+			c = read();
+		}
+		return c;
+	}
+
+	private String identifier( int c ) throws IOException, ParseException
+	{
+		scratch.setLength( 0 );
+		while( c >= 0 && !Character.isWhitespace( c ) && c != '>' && c != '/' && c != '='
+				&& c != '<' )
+		{
+			scratch.append( ( char ) c );
+			c = read();
+		}
+
+		if( scratch.length() == 0 )
+		{
+			throw new ParseException( "Expected a name at " + offset() );
+		}
+		if( c >= 0 )
+		{
+			unread();
+		}
+
+		for( String id : identifiers )
+		{
+			if( id != null && id.contentEquals( scratch ) )
+			{
+				return id;
+			}
+		}
+
+		String id = scratch.toString();
+		identifiers[ nextIdentifier ] = id;
+		nextIdentifier = ( nextIdentifier + 1 ) % identifiers.length;
+		return id;
+	}
+
+	private void expect( char expected, int c ) throws ParseException
+	{
+		if( c != expected )
+		{
+			throw new ParseException( "Expected " + expected + " at " + offset() );
+		}
+	}
+
+	private boolean lookingAt( String literal ) throws IOException
+	{
+		for( int i = 0; i < literal.length(); i++ )
+		{
+			int c = read();
+			if( c != literal.charAt( i ) )
+			{
+				if( c >= 0 )
+				{
+					unread();
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void skipPast( String terminator ) throws IOException, ParseException
+	{
+		int matched = 0;
+		while( matched < terminator.length() )
+		{
+			int c = read();
+			if( c < 0 )
+			{
+				throw new ParseException( "Expected " + terminator );
+			}
+			else if( c == terminator.charAt( matched ) )
+			{
+				matched++;
+			}
+			else
+			{
+				matched = c == terminator.charAt( 0 ) ? 1 : 0;
+			}
+		}
+	}
+
+	private void cdata() throws IOException, ParseException
+	{
+		int brackets = 0;
+		for( ;; )
+		{
+			int c = read();
+			if( c < 0 )
+			{
+				throw new ParseException( "Expected ]]>" );
+			}
+			else if( c == ']' )
+			{
+				brackets++;
+			}
+			else if( c == '>' && brackets >= 2 )
+			{
+				for( int i = 2; i < brackets; i++ )
+				{
+					append( text, ']' );
+				}
+				return;
+			}
+			else
+			{
+				for( ; brackets > 0; brackets-- )
+				{
+					append( text, ']' );
+				}
+				append( text, ( char ) c );
+			}
+		}
+	}
+
+	private void entity( StringBuilder sb ) throws IOException, ParseException
+	{
+		int start = scratch.length();
+		for( int c = read(); c != ';'; c = read() )
+		{
+			if( c < 0 )
+			{
+				throw new ParseException( "Unexpected end of data" );
+			}
+			scratch.append( ( char ) c );
+		}
+		String key = scratch.substring( start );
+		scratch.setLength( start );
+
+		if( key.equals( "amp" ) )
+		{
+			sb.append( '&' );
+		}
+		else if( key.equals( "lt" ) )
+		{
+			sb.append( '<' );
+		}
+		else if( key.equals( "gt" ) )
+		{
+			sb.append( '>' );
+		}
+		else if( key.equals( "quot" ) )
+		{
+			sb.append( '"' );
+		}
+		else if( key.equals( "apos" ) )
+		{
+			sb.append( '\'' );
+		}
+		else if( key.startsWith( "#" ) )
+		{
+			try
+			{
+				sb.append( ( char ) ( key.startsWith( "#x" ) ? Integer.parseInt( key
+						.substring( 2 ), 16 ) : Integer.parseInt( key.substring( 1 ) ) ) );
+			}
+			catch( NumberFormatException e )
+			{
+				throw new ParseException( "Unknown entity &" + key + ";" );
+			}
+		}
+		else
+		{
+			throw new ParseException( "Unknown entity &" + key + ";" );
+		}
+
+		// entities are never trimmed
+		lineStart = false;
+		keep = sb.length();
+	}
+
+	private void startLine()
+	{
+		lineStart = false;
+		keep = 0;
+	}
+
+	/**
+	 * Appends a character, trimming each line
+	 */
+	private void append( StringBuilder sb, char c )
+	{
+		if( c == '\n' || c == '\r' )
+		{
+			int l = sb.length();
+			while( l > keep && sb.charAt( l - 1 ) <= ' ' )
+			{
+				l--;
+			}
+			sb.setLength( l );
+			keep = l;
+			lineStart = true;
+		}
+		else if( !lineStart || c > ' ' )
+		{
+			lineStart = false;
+			sb.append( c );
+		}
+	}
+}
@@ -27,8 +27,11 @@
 
 package com.rugl;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 
 import org.lwjgl.LWJGLException;
@@ -49,6 +52,7 @@ import com.rugl.input.KeyListener;
 import com.rugl.input.KeyPress;
 import com.rugl.input.MouseListener;
 import com.rugl.sound.SoundSystem;
+import com.rugl.texture.TextureResidency;
 import com.ryanm.config.Configurator;
 import com.ryanm.config.imp.ConfGet;
 import com.ryanm.config.imp.ConfigurableType;
@@ -56,9 +60,11 @@ import com.ryanm.config.imp.Description;
 import com.ryanm.config.imp.NumberRange;
 import com.ryanm.config.imp.Variable;
 import com.ryanm.config.serial.ConfigurationSerialiser;
+import com.ryanm.config.serial.ConfigurationWatcher;
 import com.ryanm.config.serial.ParseException;
 import com.ryanm.util.CodeTimer;
 import com.ryanm.util.CodeTimer.Output;
+import com.ryanm.util.LoadQueue;
 
 /**
  * Container framework for games, handles setup, configuration etc
@@ -127,6 +133,15 @@ public class GameBox
 
 	private static Timer timer;
 
+	/**
+	 * Profiles the main loop, if the "com.rugl.profile" system property
+	 * is set. Games can time parts of their advance and draw with
+	 * {@link CodeTimer#push(String)} and {@link CodeTimer#pop()}. The
+	 * results are written to profile.csv and profile.json on exit
+	 */
+	public static final CodeTimer profiler = new CodeTimer( "RUGL loop ", Output.Millis,
+			Output.Millis );
+
 	/**
 	 * The console toggle keypress. Defaults to
 	 * {@link Keyboard#KEY_GRAVE}
@@ -166,6 +181,28 @@ public class GameBox
 	private static ArrayList<MouseListener> mouseListeners =
 			new ArrayList<MouseListener>();
 
+	private static volatile LoadQueue loader = null;
+
+	/**
+	 * Watches configuration files loaded with the "loadconf" command,
+	 * and applies edits to them at the start of each frame
+	 */
+	public static final ConfigurationWatcher confWatcher = new ConfigurationWatcher(
+			"Configuration watcher", 100 ) {
+		@Override
+		protected void applied( File file, int count, long latency, long cost )
+		{
+			Console.log( "Reloaded " + count + " variables from " + file.getName() + " in "
+					+ latency / 1000000 + "ms, " + cost / 1000 + "us on the main thread" );
+		}
+
+		@Override
+		protected void failed( File file, Exception e )
+		{
+			Console.error( "Could not reload " + file.getName() + " : " + e.getMessage() );
+		}
+	};
+
 	private static Thread resourceLoader = new Thread( "Resource loader" ) {
 		@Override
 		public void run()
@@ -177,6 +214,25 @@ public class GameBox
 		};
 	};
 
+	/**
+	 * Gets the resource loader, starting it on first use. It loads on a
+	 * pool of threads, as many as the "com.rugl.loaders" system
+	 * property or one per processor. Loaders complete on the main
+	 * thread at the start of each frame
+	 * 
+	 * @return the resource loader
+	 */
+	public static synchronized LoadQueue loader()
+	{
+		if( loader == null )
+		{
+			loader =
+					new LoadQueue( "Resource loader", Integer.getInteger( "com.rugl.loaders",
+							Runtime.getRuntime().availableProcessors() ), 64L * 1024 * 1024 );
+		}
+		return loader;
+	}
+
 	/**
 	 * Holds the roots of the configurator forest. First element is the
 	 * rugl stuff - display config, console, etc, second element is the
@@ -217,10 +273,16 @@ public class GameBox
 	 */
 	public static void startGame( Game g, String configurationPath )
 	{
-		CodeTimer ct = new CodeTimer( "RUGL loop ", Output.Millis, Output.Millis );
+		CodeTimer ct = new CodeTimer( "RUGL startup ", Output.Millis, Output.Millis );
 		ct.enabled = System.getProperty( "com.rugl.profile" ) != null;
 		ct.tick( "start" );
 
+		profiler.enabled = ct.enabled;
+		if( profiler.enabled )
+		{
+			profiler.trace( 20000 );
+		}
+
 		game = g;
 
 		long loadStart = System.currentTimeMillis();
@@ -248,7 +310,7 @@ public class GameBox
 		// save default configuration
 		try
 		{
-			ConfigurationSerialiser.saveConfiguration( new File( filebase, "defaults.xml" ),
+			ConfigurationSerialiser.saveChanges( new File( filebase, "defaults.xml" ),
 					configurators );
 		}
 		catch( IOException e1 )
@@ -305,7 +367,7 @@ public class GameBox
 
 			while( !shouldStop )
 			{
-				ct.tick( "updt" );
+				profiler.tick( "updt" );
 
 				if( resourceLoader != null && !resourceLoader.isAlive() )
 				{
@@ -317,9 +379,18 @@ public class GameBox
 					resourceLoader = null;
 				}
 
+				if( loader != null )
+				{
+					loader.checkCompletion();
+				}
+
+				confWatcher.apply();
+
+				SoundSystem.advance();
+
 				Display.update();
 
-				ct.tick( "inpt" );
+				profiler.tick( "inpt" );
 
 				delta = processTimer( lastTime );
 				lastTime += delta;
@@ -334,7 +405,7 @@ public class GameBox
 				}
 				else if( Display.isActive() )
 				{
-					ct.tick( "adva" );
+					profiler.tick( "adva" );
 
 					console.advance( delta );
 
@@ -343,11 +414,13 @@ public class GameBox
 						game.advance( delta * timeMultiplier );
 					}
 
-					ct.tick( "draw" );
+					profiler.tick( "draw" );
 
 					draw();
 
-					ct.tick( "sync" );
+					TextureResidency.advance();
+
+					profiler.tick( "sync" );
 
 					Display.sync( dispConf.frameRate );
 				}
@@ -366,14 +439,14 @@ public class GameBox
 						draw();
 					}
 
-					ct.tick( "adva" );
-					ct.tick( "draw" );
-					ct.tick( "sync" );
+					profiler.tick( "adva" );
+					profiler.tick( "draw" );
+					profiler.tick( "sync" );
 				}
 
 				Util.checkGLError();
 
-				ct.lastTick();
+				profiler.lastTick();
 			}
 		}
 		catch( Exception e )
@@ -382,10 +455,15 @@ public class GameBox
 		}
 		finally
 		{
+			if( profiler.enabled )
+			{
+				writeProfile();
+			}
+
 			try
 			{
-				ConfigurationSerialiser.saveConfiguration(
-						new File( filebase, "lastConf.xml" ), configurators );
+				ConfigurationSerialiser.saveChanges( new File( filebase, "lastConf.xml" ),
+						configurators );
 			}
 			catch( IOException e )
 			{
@@ -432,13 +510,41 @@ public class GameBox
 
 	private static void draw()
 	{
+		profiler.push( "game" );
 		game.draw();
+		profiler.pop();
 
+		profiler.push( "console" );
 		Console.draw();
+		profiler.pop();
 
 		frames++;
 	}
 
+	/**
+	 * Writes the {@link #profiler} results into the {@link #filebase}
+	 */
+	private static void writeProfile()
+	{
+		try
+		{
+			Writer w =
+					new BufferedWriter( new FileWriter( new File( filebase, "profile.csv" ) ) );
+			profiler.writeCSV( w );
+			w.close();
+
+			w = new BufferedWriter( new FileWriter( new File( filebase, "profile.json" ) ) );
+			profiler.writeJSON( w );
+			w.close();
+
+			System.out.println( "Profile written to " + filebase );
+		}
+		catch( IOException e )
+		{
+			e.printStackTrace();
+		}
+	}
+
 	private static float processTimer( float lastTime )
 	{
 		Timer.tick();
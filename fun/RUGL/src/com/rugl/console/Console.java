@@ -1,11 +1,9 @@
 
 package com.rugl.console;
 
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.prefs.Preferences;
 
 import org.lwjgl.opengl.Display;
@@ -25,6 +23,7 @@ import com.rugl.console.commands.PrintConfig;
 import com.rugl.console.commands.SaveBinds;
 import com.rugl.console.commands.SaveConf;
 import com.rugl.console.commands.Set;
+import com.rugl.console.commands.Textures;
 import com.rugl.console.commands.Unbind;
 import com.rugl.geom.ColouredShape;
 import com.rugl.geom.ShapeUtil;
@@ -38,6 +37,7 @@ import com.rugl.renderer.StackedRenderer;
 import com.rugl.sound.SoundSystem;
 import com.rugl.sound.Source;
 import com.rugl.text.Font;
+import com.rugl.text.LayoutCache;
 import com.rugl.text.TextLayout;
 import com.rugl.text.TextLayout.Alignment;
 import com.rugl.texture.Texture;
@@ -129,7 +129,7 @@ public class Console
 
 	static StackedRenderer r = new StackedRenderer();
 
-	private static LinkedList<LogMessage> messages = new LinkedList<LogMessage>();
+	private static MessageRing messages = new MessageRing( 100 );
 
 	/**
 	 * The maximum number of log messages to keep
@@ -150,11 +150,19 @@ public class Console
 	@Description( "Write logging to file \"log.txt\"" )
 	public static boolean logFile = false;
 
-	private static FileWriter fw;
+	/**
+	 * The size at which the log file is rotated
+	 */
+	@Variable( "log file size" )
+	@Description( "The size, in kilobytes, at which \"log.txt\" is moved to \"log.1.txt\"" )
+	public static int logFileSize = 1024;
+
+	private static LogFile logWriter;
 
 	static Command[] commands = new Command[] { new Add(), new Bind(), new Unbind(),
 			new Set(), new LoadBinds(), new SaveBinds(), new PrintBinds(),
-			new PrintConfig(), new InspectTexture(), new SaveConf(), new LoadConf() };
+			new PrintConfig(), new InspectTexture(), new Textures(), new SaveConf(),
+			new LoadConf() };
 
 	private static Source[] pausedSources = null;
 
@@ -170,9 +178,9 @@ public class Console
 				{
 					backGround = null;
 					// need to lay out the messages again
-					for( LogMessage lm : messages )
+					for( int i = 0; i < messages.size(); i++ )
 					{
-						lm.shape = null;
+						messages.get( i ).shape = null;
 					}
 
 					// need to resize the inspector
@@ -256,7 +264,7 @@ public class Console
 	{
 		if( message == null )
 		{
-			if( messages.size() > 0 && messages.getFirst().type == LogMessage.Type.SUGGEST )
+			if( messages.size() > 0 && messages.get( 0 ).type == LogMessage.Type.SUGGEST )
 			{ // remove the suggest
 				messages.removeFirst();
 			}
@@ -276,53 +284,46 @@ public class Console
 
 	private static void log( LogMessage lm )
 	{
-		if( messages.size() > 0 && messages.getFirst().type == LogMessage.Type.SUGGEST )
+		if( messages.size() > 0 && messages.get( 0 ).type == LogMessage.Type.SUGGEST )
 		{ // remove the suggest
 			messages.removeFirst();
 		}
 
-		messages.addFirst( lm );
-
-		while( messages.size() > maxLog )
+		if( messages.capacity() != maxLog )
 		{
-			messages.removeLast();
+			messages.resize( maxLog );
 		}
 
+		// the oldest message falls off the end
+		messages.addFirst( lm );
+
 		if( logFile && lm.type != LogMessage.Type.SUGGEST )
 		{
-			if( fw == null )
+			if( logWriter == null )
 			{
-				try
-				{
-					fw = new FileWriter( "log.txt" );
-				}
-				catch( IOException e )
-				{
-					System.err.println( "Failed to open log file writer" );
-					e.printStackTrace();
-				}
+				logWriter =
+						new LogFile( new File( "log.txt" ), logFileSize * 1024L, 3, 4096, 100 );
 			}
 
-			if( fw != null )
-			{
-				try
-				{
-					fw.append( lm.toString() );
-					fw.write( "\n" );
-					fw.flush();
-				}
-				catch( IOException e )
-				{
-					System.err.println( "Error writing to log, abandoning file" );
-					e.printStackTrace();
+			logWriter.add( lm.message );
 
-					fw = null;
-					logFile = false;
-				}
+			if( logWriter.failed() )
+			{
+				logWriter = null;
+				logFile = false;
 			}
 		}
 	}
 
+	/**
+	 * @return The file log, or <code>null</code> if file logging has
+	 *         not been started
+	 */
+	public static LogFile getLogFile()
+	{
+		return logWriter;
+	}
+
 	/**
 	 * Toggles displaying the console
 	 */
@@ -486,25 +487,23 @@ public class Console
 	{
 		if( font != null )
 		{
-			Iterator<LogMessage> iter = messages.iterator();
-
 			float height = 0;
+			int screenHeight = Display.getDisplayMode().getHeight();
 
-			while( iter.hasNext() )
+			for( int i = 0; i < messages.size(); i++ )
 			{
-				LogMessage lm = iter.next();
+				LogMessage lm = messages.get( i );
 
-				int screenHeight = Display.getDisplayMode().getHeight();
 				if( height > screenHeight )
-				{
-					iter.remove();
+				{ // the rest won't be seen
+					messages.truncate( i );
 				}
 				else
 				{
 					if( lm.shape == null && lm.message.length() > 0 )
 					{
 						lm.shape =
-								new TextLayout( lm.message, font, Alignment.LEFT, Display
+								LayoutCache.shared.get( lm.message, font, Alignment.LEFT, Display
 										.getDisplayMode().getWidth() - 4 * border,
 										lm.type.getColour() );
 
@@ -632,24 +631,109 @@ public class Console
 	}
 
 	/**
-	 * Closes the log file amd saves the command history
+	 * A fixed-size ring of messages, newest first. Adding to a full ring
+	 * overwrites the oldest message, so logging doesn't allocate list
+	 * nodes or trim
 	 */
-	public static void exit()
+	private static class MessageRing
 	{
-		input.saveHistory();
+		private LogMessage[] ring;
+
+		/**
+		 * The index of the newest message
+		 */
+		private int head = 0;
 
-		if( fw != null )
+		private int size = 0;
+
+		private MessageRing( int capacity )
 		{
-			try
+			ring = new LogMessage[ Math.max( 1, capacity ) ];
+		}
+
+		private int capacity()
+		{
+			return ring.length;
+		}
+
+		private int size()
+		{
+			return size;
+		}
+
+		/**
+		 * @param i
+		 * @return The message, where 0 is the newest
+		 */
+		private LogMessage get( int i )
+		{
+			return ring[ ( head + i ) % ring.length ];
+		}
+
+		private void addFirst( LogMessage lm )
+		{
+			head = ( head + ring.length - 1 ) % ring.length;
+			ring[ head ] = lm;
+			size = Math.min( size + 1, ring.length );
+		}
+
+		private void removeFirst()
+		{
+			ring[ head ] = null;
+			head = ( head + 1 ) % ring.length;
+			size--;
+		}
+
+		/**
+		 * Discards all but the newest messages
+		 * 
+		 * @param keep
+		 *           The number of messages to keep
+		 */
+		private void truncate( int keep )
+		{
+			while( size > keep )
 			{
-				fw.flush();
-				fw.close();
+				size--;
+				ring[ ( head + size ) % ring.length ] = null;
 			}
-			catch( IOException e )
+		}
+
+		private void clear()
+		{
+			truncate( 0 );
+		}
+
+		/**
+		 * Changes the capacity, keeping as many of the newest messages as
+		 * will fit
+		 * 
+		 * @param capacity
+		 */
+		private void resize( int capacity )
+		{
+			LogMessage[] nr = new LogMessage[ Math.max( 1, capacity ) ];
+			size = Math.min( size, nr.length );
+			for( int i = 0; i < size; i++ )
 			{
-				System.err.println( "Error closing log file" );
-				e.printStackTrace();
+				nr[ i ] = get( i );
 			}
+			ring = nr;
+			head = 0;
+		}
+	}
+
+	/**
+	 * Closes the log file amd saves the command history
+	 */
+	public static void exit()
+	{
+		input.saveHistory();
+
+		if( logWriter != null )
+		{
+			logWriter.close();
+			logWriter = null;
 		}
 	}
 
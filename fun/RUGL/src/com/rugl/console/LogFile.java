@@ -0,0 +1,326 @@
+package com.rugl.console;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes log lines to a file without blocking the thread that logs
+ * them. Lines are passed through a lock-free queue to a daemon thread
+ * that writes them in batches and rotates the file when it gets too
+ * big. If the writer falls behind and the queue fills up, new lines
+ * are dropped and counted rather than waited on
+ *
+ * @author ryanm
+ */
+public class LogFile
+{
+	/**
+	 * The file being written to
+	 */
+	public final File file;
+
+	/**
+	 * The size at which the file is rotated, in bytes
+	 */
+	public final long maxBytes;
+
+	/**
+	 * The number of rotated files to keep, as name.1.ext, name.2.ext
+	 * and so on
+	 */
+	public final int keep;
+
+	/**
+	 * The maximum number of lines that can be waiting to be written
+	 */
+	public final int capacity;
+
+	/**
+	 * How long the writer thread waits between batches, in
+	 * milliseconds
+	 */
+	public final long interval;
+
+	private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>();
+
+	/**
+	 * The number of lines in {@link #queue}. Counting it ourselves
+	 * avoids {@link ConcurrentLinkedQueue#size()}, which traverses
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile long written = 0;
+
+	private volatile long batches = 0;
+
+	private volatile int rotations = 0;
+
+	private volatile int maxBatch = 0;
+
+	private volatile boolean running = true;
+
+	private volatile boolean failed = false;
+
+	private final Thread writer;
+
+	private Writer out;
+
+	private long fileBytes = 0;
+
+	/**
+	 * @param file
+	 *           The file to write to. Any existing file is overwritten
+	 * @param maxBytes
+	 *           The size at which to rotate the file, in bytes
+	 * @param keep
+	 *           The number of rotated files to keep
+	 * @param capacity
+	 *           The maximum number of lines waiting to be written
+	 * @param interval
+	 *           The time between batches, in milliseconds
+	 */
+	public LogFile( File file, long maxBytes, int keep, int capacity, long interval )
+	{
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.keep = keep;
+		this.capacity = capacity;
+		this.interval = interval;
+
+		writer = new Thread( "Log writer" ) {
+			@Override
+			public void run()
+			{
+				write();
+			}
+		};
+		writer.setDaemon( true );
+		writer.start();
+	}
+
+	/**
+	 * Queues a line for writing. This never blocks
+	 *
+	 * @param line
+	 * @return <code>true</code> if the line was queued,
+	 *         <code>false</code> if it was dropped
+	 */
+	public boolean add( String line )
+	{
+		if( !running )
+		{
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		if( pending.incrementAndGet() > capacity )
+		{
+			pending.decrementAndGet();
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		queue.offer( line );
+		return true;
+	}
+
+	/**
+	 * Writes out everything that's been queued and stops the writer
+	 * thread. Lines added after this are dropped
+	 */
+	public void close()
+	{
+		running = false;
+		LockSupport.unpark( writer );
+
+		try
+		{
+			writer.join();
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if writing failed and the writer has
+	 *         given up
+	 */
+	public boolean failed()
+	{
+		return failed;
+	}
+
+	/**
+	 * @return The number of lines that were dropped because the queue
+	 *         was full or the writer had stopped
+	 */
+	public long dropped()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * @return The number of lines written
+	 */
+	public long written()
+	{
+		return written;
+	}
+
+	/**
+	 * @return The number of lines waiting to be written
+	 */
+	public int pending()
+	{
+		return pending.get();
+	}
+
+	@Override
+	public String toString()
+	{
+		return file + " : " + written + " lines in " + batches + " batches (largest "
+				+ maxBatch + "), " + dropped.get() + " dropped, " + pending.get()
+				+ " pending, " + rotations + " rotations" + ( failed ? ", FAILED" : "" );
+	}
+
+	private void write()
+	{
+		try
+		{
+			open();
+
+			boolean more = true;
+			while( more )
+			{
+				// read the flag before draining, so nothing queued before
+				// close() is missed
+				more = running;
+
+				int batch = 0;
+				String line;
+				while( ( line = queue.poll() ) != null )
+				{
+					pending.decrementAndGet();
+
+					if( fileBytes >= maxBytes )
+					{
+						rotate();
+					}
+
+					out.write( line );
+					out.write( '\n' );
+
+					// near enough, for the usual ASCII
+					fileBytes += line.length() + 1;
+					batch++;
+				}
+
+				if( batch > 0 )
+				{
+					out.flush();
+
+					written += batch;
+					batches++;
+					maxBatch = Math.max( maxBatch, batch );
+				}
+
+				if( more )
+				{
+					LockSupport.parkNanos( TimeUnit.MILLISECONDS.toNanos( interval ) );
+				}
+			}
+		}
+		catch( IOException e )
+		{
+			System.err.println( "Error writing to log, abandoning file" );
+			e.printStackTrace();
+
+			failed = true;
+			running = false;
+
+			// anything left is lost
+			while( queue.poll() != null )
+			{
+				pending.decrementAndGet();
+				dropped.incrementAndGet();
+			}
+		}
+		finally
+		{
+			if( out != null )
+			{
+				try
+				{
+					out.close();
+				}
+				catch( IOException e )
+				{
+					System.err.println( "Error closing log file" );
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void open() throws IOException
+	{
+		out =
+				new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ),
+						"UTF-8" ), 1 << 16 );
+		fileBytes = 0;
+	}
+
+	/**
+	 * Closes the current file, shuffles the older ones along and opens
+	 * a new one
+	 *
+	 * @throws IOException
+	 */
+	private void rotate() throws IOException
+	{
+		out.close();
+		out = null;
+
+		if( keep > 0 )
+		{
+			rotated( keep ).delete();
+			for( int i = keep - 1; i >= 1; i-- )
+			{
+				rotated( i ).renameTo( rotated( i + 1 ) );
+			}
+			file.renameTo( rotated( 1 ) );
+		}
+
+		rotations++;
+
+		open();
+	}
+
+	/**
+	 * @param n
+	 * @return name.n.ext
+	 */
+	private File rotated( int n )
+	{
+		String name = file.getName();
+		int dot = name.lastIndexOf( '.' );
+		name =
+				dot == -1 ? name + "." + n : name.substring( 0, dot ) + "." + n
+						+ name.substring( dot );
+
+		return new File( file.getAbsoluteFile().getParentFile(), name );
+	}
+}
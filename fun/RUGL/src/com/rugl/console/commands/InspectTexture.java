@@ -53,7 +53,7 @@ public class InspectTexture extends Command
 					if( texture != null )
 					{
 						Console.inspectedTexture = texture;
-						Console.log( texture.parent.toString() );
+						Console.log( texture.getParent().toString() );
 					}
 					else
 					{
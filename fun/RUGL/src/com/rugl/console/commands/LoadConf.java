@@ -45,6 +45,9 @@ public class LoadConf extends Command
 				{
 					ConfigurationSerialiser.loadConfiguration( file, GameBox.configurators );
 					Console.log( "Configuration loaded from " + file.getPath() );
+
+					// apply later edits as they're saved
+					GameBox.confWatcher.watch( file, GameBox.configurators );
 				}
 				catch( IOException ioe )
 				{
@@ -69,7 +72,7 @@ public class LoadConf extends Command
 	@Override
 	public String getUsage()
 	{
-		return "loadconf <filename>\n\tLoads a configuration file. File paths are relative to /RUGL/Console/Save base";
+		return "loadconf <filename>\n\tLoads a configuration file, and reloads it whenever it is saved. File paths are relative to /RUGL/Console/Save base";
 	}
 
 	@Override
@@ -0,0 +1,98 @@
+package com.rugl.console.commands;
+
+import java.util.List;
+
+import com.rugl.console.Command;
+import com.rugl.console.Console;
+import com.rugl.texture.TextureResidency;
+
+/**
+ * Shows and controls texture atlas residency
+ * 
+ * @author ryanm
+ */
+public class Textures extends Command
+{
+	private static final String[] SUBCOMMANDS = new String[] { "budget ", "evict ",
+			"defrag" };
+
+	/***/
+	public Textures()
+	{
+		super( "textures" );
+	}
+
+	@Override
+	public void execute( String command )
+	{
+		String[] args = command.trim().split( "\\s+" );
+
+		try
+		{
+			if( args.length == 1 )
+			{
+				Console.log( TextureResidency.status() );
+			}
+			else if( "budget".equals( args[ 1 ] ) && args.length == 3 )
+			{
+				TextureResidency.budget = Integer.parseInt( args[ 2 ] ) * 1024 * 1024;
+				TextureResidency.enforceBudget();
+				Console.log( TextureResidency.status() );
+			}
+			else if( "evict".equals( args[ 1 ] ) && args.length == 3 )
+			{
+				int n = TextureResidency.evict( Integer.parseInt( args[ 2 ] ) );
+				Console.log( "Evicted " + n + " textures" );
+			}
+			else if( "defrag".equals( args[ 1 ] ) )
+			{
+				if( TextureResidency.defragment() )
+				{
+					Console.log( "Defragmenting..." );
+				}
+				else
+				{
+					Console.error( "Already defragmenting" );
+				}
+			}
+			else
+			{
+				Console.error( getUsage() );
+			}
+		}
+		catch( NumberFormatException nfe )
+		{
+			Console.error( getUsage() );
+		}
+	}
+
+	@Override
+	public String getUsage()
+	{
+		return "textures\n\tLists the texture atlases and residency statistics\n"
+				+ "textures budget <MB>\n\tSets the video memory budget for shared atlases\n"
+				+ "textures evict <n>\n\tEvicts the n least-recently drawn textures\n"
+				+ "textures defrag\n\tRepacks the shared atlases in the background";
+	}
+
+	@Override
+	public void suggest( String current, List<Suggestion> suggestions )
+	{
+		if( current.length() < 9 && "textures".startsWith( current ) )
+		{
+			suggestions.add( new Suggestion( "textures ", 0 ) );
+		}
+		else if( current.startsWith( "textures " ) )
+		{
+			String sub = current.substring( 9 ).trim();
+
+			for( String s : SUBCOMMANDS )
+			{
+				if( s.startsWith( sub ) && !s.trim().equals( sub ) )
+				{
+					suggestions.add( new Suggestion( s, 9 ) );
+				}
+			}
+		}
+	}
+}
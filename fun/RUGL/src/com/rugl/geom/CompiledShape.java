@@ -0,0 +1,201 @@
+package com.rugl.geom;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.rugl.gl.State;
+import com.rugl.renderer.RenderBackend;
+import com.rugl.renderer.Renderer;
+
+/**
+ * Static geometry, welded together from shapes that share a rendering
+ * state. It cannot be altered, but it can be kept in buffer objects
+ * by a {@link com.rugl.renderer.GeometryCache} and drawn in one go.
+ * Pass it to {@link Renderer#addCompiled(CompiledShape...)} to do so
+ *
+ * @author ryanm
+ */
+public class CompiledShape
+{
+	/**
+	 * The rendering state
+	 */
+	public final State state;
+
+	private final float[] vertices;
+
+	private final float[] texCoords;
+
+	private final int[] colours;
+
+	private final int[] triangles;
+
+	/**
+	 * Welds shapes together. They should all share the same state
+	 *
+	 * @param shapes
+	 *           The shapes to weld. {@link TexturedShape}s will have
+	 *           their texture coordinates corrected for their texture
+	 */
+	public CompiledShape( ColouredShape... shapes )
+	{
+		assert shapes.length > 0;
+
+		state = shapes[ 0 ].state;
+
+		int vc = 0, ic = 0;
+		for( ColouredShape cs : shapes )
+		{
+			assert cs.state.equals( state ) : "Mismatched states";
+
+			vc += cs.vertexCount();
+			ic += cs.triangles.length;
+		}
+
+		vertices = new float[ vc * 3 ];
+		texCoords = new float[ vc * 2 ];
+		colours = new int[ vc ];
+		triangles = new int[ ic ];
+
+		vc = 0;
+		ic = 0;
+		for( ColouredShape cs : shapes )
+		{
+			System.arraycopy( cs.vertices, 0, vertices, vc * 3, cs.vertices.length );
+			System.arraycopy( cs.colours, 0, colours, vc, cs.colours.length );
+
+			if( cs instanceof TexturedShape )
+			{
+				TexturedShape ts = ( TexturedShape ) cs;
+				float[] tc = Arrays.copyOf( ts.texCoords, ts.texCoords.length );
+				ts.texture.correctTexCoords( tc );
+				System.arraycopy( tc, 0, texCoords, vc * 2, tc.length );
+			}
+
+			for( int i = 0; i < cs.triangles.length; i++ )
+			{
+				triangles[ ic + i ] = cs.triangles[ i ] + vc;
+			}
+
+			vc += cs.vertexCount();
+			ic += cs.triangles.length;
+		}
+	}
+
+	/**
+	 * Welds shapes together, one {@link CompiledShape} for each
+	 * distinct state
+	 *
+	 * @param shapes
+	 * @return The compiled shapes, in order of the states' first
+	 *         appearance
+	 */
+	public static CompiledShape[] compile( ColouredShape... shapes )
+	{
+		// State has no hashCode, so no HashMap
+		List<State> states = new ArrayList<State>();
+		List<List<ColouredShape>> byState = new ArrayList<List<ColouredShape>>();
+
+		for( ColouredShape cs : shapes )
+		{
+			int index = states.indexOf( cs.state );
+			if( index == -1 )
+			{
+				index = states.size();
+				states.add( cs.state );
+				byState.add( new ArrayList<ColouredShape>() );
+			}
+			byState.get( index ).add( cs );
+		}
+
+		CompiledShape[] compiled = new CompiledShape[ byState.size() ];
+		for( int i = 0; i < compiled.length; i++ )
+		{
+			List<ColouredShape> l = byState.get( i );
+			compiled[ i ] = new CompiledShape( l.toArray( new ColouredShape[ l.size() ] ) );
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * @return The number of vertices
+	 */
+	public int vertexCount()
+	{
+		return colours.length;
+	}
+
+	/**
+	 * @return The number of triangle indices
+	 */
+	public int indexCount()
+	{
+		return triangles.length;
+	}
+
+	/**
+	 * @return The size of the interleaved vertex data, in bytes
+	 */
+	public int vertexBytes()
+	{
+		return vertexCount() * RenderBackend.VERTEX_STRIDE;
+	}
+
+	/**
+	 * @return The size of the index data, in bytes
+	 */
+	public int indexBytes()
+	{
+		return indexCount() * 4;
+	}
+
+	/**
+	 * Writes the interleaved vertex data, as laid out in
+	 * {@link RenderBackend}
+	 *
+	 * @param bb
+	 *           The destination buffer, which should be in native byte
+	 *           order
+	 */
+	public void writeVertices( ByteBuffer bb )
+	{
+		for( int i = 0; i < colours.length; i++ )
+		{
+			bb.putFloat( vertices[ 3 * i ] );
+			bb.putFloat( vertices[ 3 * i + 1 ] );
+			bb.putFloat( vertices[ 3 * i + 2 ] );
+			bb.putInt( colours[ i ] );
+			bb.putFloat( texCoords[ 2 * i ] );
+			bb.putFloat( texCoords[ 2 * i + 1 ] );
+		}
+	}
+
+	/**
+	 * Writes the triangle indices
+	 *
+	 * @param bb
+	 *           The destination buffer, which should be in native byte
+	 *           order
+	 */
+	public void writeIndices( ByteBuffer bb )
+	{
+		for( int i = 0; i < triangles.length; i++ )
+		{
+			bb.putInt( triangles[ i ] );
+		}
+	}
+
+	/**
+	 * Submits the shape to a {@link Renderer}, for when buffer objects
+	 * are not available
+	 *
+	 * @param r
+	 */
+	public void render( Renderer r )
+	{
+		r.addTriangles( vertices, texCoords, colours, triangles, state );
+	}
+}
@@ -32,6 +32,12 @@ public class TexturedShape extends ColouredShape
 	 */
 	public boolean texCoordsDirty = true;
 
+	/**
+	 * The {@link Texture#version()} that the texture coordinates were
+	 * corrected for
+	 */
+	private int correctedVersion;
+
 	private boolean sanity()
 	{
 		assert texCoords.length == vertexCount() * 2;
@@ -73,13 +79,16 @@ public class TexturedShape extends ColouredShape
 	@Override
 	public void render( Renderer r )
 	{
-		if( texCoordsDirty )
+		// this may move the texture, so do it first
+		state = texture.applyTo( state );
+
+		if( texCoordsDirty || correctedVersion != texture.version() )
 		{
+			correctedVersion = texture.version();
 			System.arraycopy( texCoords, 0, correctedTexCoords, 0, texCoords.length );
 			texture.correctTexCoords( correctedTexCoords );
 			texCoordsDirty = false;
 		}
-		state = texture.applyTo( state );
 
 		r.addTriangles( vertices, correctedTexCoords, colours, triangles, state );
 	}
@@ -0,0 +1,156 @@
+package com.rugl.renderer;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GLContext;
+import org.lwjgl.util.vector.Matrix4f;
+
+import com.rugl.DisplayConfigurable;
+import com.rugl.GameBox;
+import com.rugl.gl.State;
+
+/**
+ * Streams through OpenGL 1.5 buffer objects
+ *
+ * @author ryanm
+ */
+public class GLBackend implements RenderBackend
+{
+	/**
+	 * Incremented whenever the context is recreated
+	 */
+	private static int contextGeneration = 0;
+
+	static
+	{
+		GameBox.dispConf.addListener( new DisplayConfigurable.Listener() {
+			@Override
+			public void displayChanged( boolean res, boolean fs, boolean vsync, boolean fr,
+					boolean fsaa )
+			{
+				if( fsaa )
+				{
+					// the display was destroyed
+					contextGeneration++;
+				}
+			}
+		} );
+	}
+
+	private final FloatBuffer matrix = BufferUtils.createFloatBuffer( 16 );
+
+	/**
+	 * @return <code>true</code> if the current context supports
+	 *         buffer objects
+	 */
+	public static boolean isSupported()
+	{
+		return GLContext.getCapabilities().OpenGL15;
+	}
+
+	@Override
+	public int contextGeneration()
+	{
+		return contextGeneration;
+	}
+
+	@Override
+	public int createBuffer()
+	{
+		return GL15.glGenBuffers();
+	}
+
+	@Override
+	public void deleteBuffer( int buffer )
+	{
+		GL15.glDeleteBuffers( buffer );
+	}
+
+	@Override
+	public void bindBuffer( Target target, int buffer )
+	{
+		GL15.glBindBuffer( glTarget( target ), buffer );
+	}
+
+	@Override
+	public void allocate( Target target, int bytes )
+	{
+		GL15.glBufferData( glTarget( target ), bytes, GL15.GL_STREAM_DRAW );
+	}
+
+	@Override
+	public void store( Target target, ByteBuffer data )
+	{
+		GL15.glBufferData( glTarget( target ), data, GL15.GL_STATIC_DRAW );
+	}
+
+	@Override
+	public void upload( Target target, int offset, ByteBuffer data )
+	{
+		GL15.glBufferSubData( glTarget( target ), offset, data );
+	}
+
+	@Override
+	public void enableVertices( int offset )
+	{
+		GL11.glEnableClientState( GL11.GL_VERTEX_ARRAY );
+		GL11.glEnableClientState( GL11.GL_TEXTURE_COORD_ARRAY );
+		GL11.glEnableClientState( GL11.GL_COLOR_ARRAY );
+
+		GL11.glVertexPointer( 3, GL11.GL_FLOAT, VERTEX_STRIDE, offset );
+		GL11.glColorPointer( 4, GL11.GL_UNSIGNED_BYTE, VERTEX_STRIDE, offset
+				+ COLOUR_OFFSET );
+		GL11.glTexCoordPointer( 2, GL11.GL_FLOAT, VERTEX_STRIDE, offset + TEXCOORD_OFFSET );
+	}
+
+	@Override
+	public void disableVertices()
+	{
+		GL11.glDisableClientState( GL11.GL_VERTEX_ARRAY );
+		GL11.glDisableClientState( GL11.GL_TEXTURE_COORD_ARRAY );
+		GL11.glDisableClientState( GL11.GL_COLOR_ARRAY );
+
+		// client-side arrays need these unbound
+		GL15.glBindBuffer( GL15.GL_ARRAY_BUFFER, 0 );
+		GL15.glBindBuffer( GL15.GL_ELEMENT_ARRAY_BUFFER, 0 );
+	}
+
+	@Override
+	public void apply( State state )
+	{
+		state.apply();
+	}
+
+	@Override
+	public void drawTriangles( int count, int offset )
+	{
+		GL11.glDrawElements( GL11.GL_TRIANGLES, count, GL11.GL_UNSIGNED_INT, offset );
+	}
+
+	@Override
+	public void pushTransform( Matrix4f m )
+	{
+		matrix.clear();
+		m.store( matrix );
+		matrix.flip();
+
+		GL11.glPushMatrix();
+		GL11.glMultMatrix( matrix );
+	}
+
+	@Override
+	public void popTransform()
+	{
+		GL11.glPopMatrix();
+	}
+
+	private static int glTarget( Target target )
+	{
+		return target == Target.VERTICES ? GL15.GL_ARRAY_BUFFER
+				: GL15.GL_ELEMENT_ARRAY_BUFFER;
+	}
+}
@@ -0,0 +1,287 @@
+package com.rugl.renderer;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.lwjgl.BufferUtils;
+
+import com.rugl.geom.CompiledShape;
+import com.rugl.renderer.RenderBackend.Target;
+
+/**
+ * Keeps {@link CompiledShape}s in buffer objects so that static
+ * geometry doesn't have to be pushed through a {@link Renderer} every
+ * frame. Each shape is one draw call. Shapes are uploaded when first
+ * drawn, and the least-recently drawn are evicted to stay within a
+ * memory budget. Geometry is drawn as-is, so any transformation has
+ * to be done with the OpenGL matrix stack rather than a
+ * {@link StackedRenderer}. Each {@link Renderer} keeps one for the
+ * shapes passed to {@link Renderer#addCompiled(CompiledShape...)},
+ * and pushes its transform onto that stack when drawing them
+ *
+ * @author ryanm
+ */
+public class GeometryCache
+{
+	private final RenderBackend backend;
+
+	/**
+	 * Maximum resident bytes
+	 */
+	private int budget;
+
+	/**
+	 * In order of least-recently drawn
+	 */
+	private final LinkedHashMap<CompiledShape, Resident> resident =
+			new LinkedHashMap<CompiledShape, Resident>( 16, 0.75f, true );
+
+	private int residentBytes = 0;
+
+	private int generation;
+
+	private ByteBuffer scratch;
+
+	private int hits = 0;
+
+	private int misses = 0;
+
+	private int evictions = 0;
+
+	/**
+	 * @param backend
+	 * @param budget
+	 *           The maximum number of bytes to keep in buffer objects
+	 */
+	public GeometryCache( RenderBackend backend, int budget )
+	{
+		this.backend = backend;
+		this.budget = budget;
+		generation = backend.contextGeneration();
+	}
+
+	/**
+	 * Draws shapes, uploading them if they're not already resident
+	 *
+	 * @param shapes
+	 */
+	public void draw( CompiledShape... shapes )
+	{
+		if( generation != backend.contextGeneration() )
+		{
+			recreate();
+		}
+
+		for( CompiledShape cs : shapes )
+		{
+			Resident r = resident.get( cs );
+
+			if( r == null )
+			{
+				misses++;
+				r = upload( cs );
+				resident.put( cs, r );
+				residentBytes += r.bytes;
+
+				trim( cs );
+			}
+			else
+			{
+				hits++;
+			}
+
+			backend.bindBuffer( Target.VERTICES, r.vertices );
+			backend.enableVertices( 0 );
+			backend.bindBuffer( Target.INDICES, r.indices );
+			backend.apply( cs.state );
+			backend.drawTriangles( cs.indexCount(), 0 );
+		}
+
+		backend.disableVertices();
+	}
+
+	/**
+	 * Removes a shape from the cache, deleting its buffers
+	 *
+	 * @param cs
+	 */
+	public void evict( CompiledShape cs )
+	{
+		Resident r = resident.remove( cs );
+		if( r != null )
+		{
+			delete( r );
+		}
+	}
+
+	/**
+	 * Deletes all buffers
+	 */
+	public void clear()
+	{
+		for( Resident r : resident.values() )
+		{
+			delete( r );
+		}
+		resident.clear();
+	}
+
+	/**
+	 * Called in response to the opengl context going away. The old
+	 * buffers went with it, so we upload every resident shape afresh.
+	 * This happens automatically on the next {@link #draw(CompiledShape...)}
+	 */
+	public void recreate()
+	{
+		generation = backend.contextGeneration();
+
+		for( Map.Entry<CompiledShape, Resident> e : resident.entrySet() )
+		{
+			e.setValue( upload( e.getKey() ) );
+		}
+	}
+
+	/**
+	 * @param budget
+	 *           The maximum number of bytes to keep in buffer objects
+	 */
+	public void setBudget( int budget )
+	{
+		this.budget = budget;
+		trim( null );
+	}
+
+	/**
+	 * @return The maximum number of bytes to keep in buffer objects
+	 */
+	public int getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * @return The number of bytes currently in buffer objects
+	 */
+	public int residentBytes()
+	{
+		return residentBytes;
+	}
+
+	/**
+	 * @return The number of shapes currently in buffer objects
+	 */
+	public int residentCount()
+	{
+		return resident.size();
+	}
+
+	/**
+	 * @return The number of draws of shapes that were already resident
+	 */
+	public int hits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return The number of draws that had to upload the shape
+	 */
+	public int misses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return The number of shapes evicted to stay within budget
+	 */
+	public int evictions()
+	{
+		return evictions;
+	}
+
+	@Override
+	public String toString()
+	{
+		return resident.size() + " shapes, " + residentBytes + "/" + budget + " bytes, "
+				+ hits + " hits, " + misses + " misses, " + evictions + " evictions";
+	}
+
+	/**
+	 * Evicts least-recently drawn shapes until we're within budget
+	 *
+	 * @param keep
+	 *           A shape not to evict, or null
+	 */
+	private void trim( CompiledShape keep )
+	{
+		Iterator<Map.Entry<CompiledShape, Resident>> iter = resident.entrySet().iterator();
+		while( residentBytes > budget && iter.hasNext() )
+		{
+			Map.Entry<CompiledShape, Resident> e = iter.next();
+
+			if( e.getKey() != keep )
+			{
+				iter.remove();
+				delete( e.getValue() );
+				evictions++;
+			}
+		}
+	}
+
+	private Resident upload( CompiledShape cs )
+	{
+		int size = Math.max( cs.vertexBytes(), cs.indexBytes() );
+		if( scratch == null || scratch.capacity() < size )
+		{
+			scratch = BufferUtils.createByteBuffer( size );
+		}
+
+		Resident r = new Resident( backend.createBuffer(), backend.createBuffer(), cs );
+
+		scratch.clear();
+		cs.writeVertices( scratch );
+		scratch.flip();
+		backend.bindBuffer( Target.VERTICES, r.vertices );
+		backend.store( Target.VERTICES, scratch );
+
+		scratch.clear();
+		cs.writeIndices( scratch );
+		scratch.flip();
+		backend.bindBuffer( Target.INDICES, r.indices );
+		backend.store( Target.INDICES, scratch );
+
+		return r;
+	}
+
+	private void delete( Resident r )
+	{
+		residentBytes -= r.bytes;
+
+		if( generation == backend.contextGeneration() )
+		{
+			backend.deleteBuffer( r.vertices );
+			backend.deleteBuffer( r.indices );
+		}
+	}
+
+	/**
+	 * Buffer names for a resident shape
+	 */
+	private static class Resident
+	{
+		private final int vertices;
+
+		private final int indices;
+
+		private final int bytes;
+
+		private Resident( int vertices, int indices, CompiledShape cs )
+		{
+			this.vertices = vertices;
+			this.indices = indices;
+			bytes = cs.vertexBytes() + cs.indexBytes();
+		}
+	}
+}
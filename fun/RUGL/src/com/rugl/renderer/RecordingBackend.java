@@ -0,0 +1,407 @@
+package com.rugl.renderer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import com.rugl.geom.ColouredShape;
+import com.rugl.geom.CompiledShape;
+import com.rugl.geom.Shape;
+import com.rugl.gl.State;
+import com.rugl.gl.enums.ComparisonFunction;
+import com.rugl.gl.facets.AlphaTest;
+
+/**
+ * A {@link RenderBackend} that doesn't need OpenGL. It keeps the
+ * contents of its buffers and a log of the calls made on it, so the
+ * streaming behaviour of the {@link Renderer} and the
+ * {@link GeometryCache} can be checked without a display
+ *
+ * @author ryanm
+ */
+public class RecordingBackend implements RenderBackend
+{
+	/**
+	 * The calls made on this backend, in order
+	 */
+	public final List<String> calls = new ArrayList<String>();
+
+	/**
+	 * Buffer contents, indexed by name
+	 */
+	public final Map<Integer, ByteBuffer> buffers = new HashMap<Integer, ByteBuffer>();
+
+	private int generation = 0;
+
+	private int nextName = 1;
+
+	private final int[] bound = new int[ Target.values().length ];
+
+	/**
+	 * Simulates the loss of the rendering context. All buffers are
+	 * forgotten
+	 */
+	public void loseContext()
+	{
+		generation++;
+		buffers.clear();
+		bound[ 0 ] = 0;
+		bound[ 1 ] = 0;
+		calls.add( "loseContext" );
+	}
+
+	/**
+	 * @param prefix
+	 * @return The number of recorded calls that start with the prefix
+	 */
+	public int count( String prefix )
+	{
+		int c = 0;
+		for( String s : calls )
+		{
+			if( s.startsWith( prefix ) )
+			{
+				c++;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * @param target
+	 * @return The contents of the buffer bound to the target
+	 */
+	public ByteBuffer bound( Target target )
+	{
+		return buffers.get( bound[ target.ordinal() ] );
+	}
+
+	@Override
+	public int contextGeneration()
+	{
+		return generation;
+	}
+
+	@Override
+	public int createBuffer()
+	{
+		int name = nextName++;
+		calls.add( "create " + name );
+		return name;
+	}
+
+	@Override
+	public void deleteBuffer( int buffer )
+	{
+		check( buffers.containsKey( buffer ), "deleting unknown buffer " + buffer );
+		buffers.remove( buffer );
+		calls.add( "delete " + buffer );
+	}
+
+	@Override
+	public void bindBuffer( Target target, int buffer )
+	{
+		bound[ target.ordinal() ] = buffer;
+		calls.add( "bind " + target + " " + buffer );
+	}
+
+	@Override
+	public void allocate( Target target, int bytes )
+	{
+		check( bound[ target.ordinal() ] != 0, "allocating with nothing bound" );
+		buffers.put( bound[ target.ordinal() ], ByteBuffer.allocate( bytes ) );
+		calls.add( "allocate " + target + " " + bytes );
+	}
+
+	@Override
+	public void store( Target target, ByteBuffer data )
+	{
+		check( bound[ target.ordinal() ] != 0, "storing with nothing bound" );
+		ByteBuffer b = ByteBuffer.allocate( data.remaining() );
+		b.put( data.duplicate() );
+		buffers.put( bound[ target.ordinal() ], b );
+		calls.add( "store " + target + " " + data.remaining() );
+	}
+
+	@Override
+	public void upload( Target target, int offset, ByteBuffer data )
+	{
+		ByteBuffer b = bound( target );
+		check( b != null, "uploading to unallocated buffer" );
+		check( offset + data.remaining() <= b.capacity(), "upload overflows buffer" );
+
+		calls.add( "upload " + target + " " + offset + " " + data.remaining() );
+
+		b.position( offset );
+		b.put( data.duplicate() );
+	}
+
+	@Override
+	public void enableVertices( int offset )
+	{
+		check( bound( Target.VERTICES ) != null, "no vertex buffer bound" );
+		calls.add( "enableVertices " + offset );
+	}
+
+	@Override
+	public void disableVertices()
+	{
+		bound[ 0 ] = 0;
+		bound[ 1 ] = 0;
+		calls.add( "disableVertices" );
+	}
+
+	@Override
+	public void apply( State state )
+	{
+		calls.add( "apply " + state.getCompiledIndex() );
+	}
+
+	@Override
+	public void drawTriangles( int count, int offset )
+	{
+		check( bound( Target.INDICES ) != null, "no index buffer bound" );
+		calls.add( "draw " + count + " " + offset );
+	}
+
+	@Override
+	public void pushTransform( Matrix4f m )
+	{
+		calls.add( "pushTransform " + m.m30 + " " + m.m31 + " " + m.m32 );
+	}
+
+	@Override
+	public void popTransform()
+	{
+		calls.add( "popTransform" );
+	}
+
+	private static void check( boolean condition, String message )
+	{
+		if( !condition )
+		{
+			throw new IllegalStateException( message );
+		}
+	}
+
+	/**
+	 * Drives a {@link Renderer} and a {@link GeometryCache} through a
+	 * few frames and checks what they ask of the backend
+	 *
+	 * @param args
+	 */
+	public static void main( String[] args )
+	{
+		RecordingBackend rb = new RecordingBackend();
+
+		Renderer r = new Renderer( 8 );
+		r.setBackend( rb );
+
+		State a = new State();
+		State b = new State().with( new AlphaTest( ComparisonFunction.GREATER, 0 ) );
+
+		float[] quad = new float[] { 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0 };
+		float[] tc = new float[] { 0, 0, 1, 0, 1, 1, 0, 1 };
+		int[] tris = new int[] { 0, 1, 2, 0, 2, 3 };
+
+		// one frame, two states
+		r.addTriangles( quad, tc, tris, 0x11223344, a );
+		r.addTriangles( quad, tc, tris, 0x55667788, b );
+		r.addTriangles( quad, tc, tris, 0x11223344, a );
+		r.render();
+
+		expect( r.countVertices() == 12, "vertex count " + r.countVertices() );
+		expect( r.countTriangles() == 6, "triangle count " + r.countTriangles() );
+		expect( rb.count( "draw" ) == 2, "one draw per state" );
+		expect( rb.count( "store INDICES" ) == 2, "one index buffer per state" );
+		expect( rb.count( "upload VERTICES" ) == 1, "one vertex upload per frame" );
+
+		// check the interleaved layout
+		ByteBuffer vb = rb.buffers.get( 1 ).duplicate().order( java.nio.ByteOrder.nativeOrder() );
+		expect( vb.getFloat( VERTEX_STRIDE + 0 ) == 1, "second vertex x" );
+		expect( vb.getInt( 4 * VERTEX_STRIDE + COLOUR_OFFSET ) == 0x55667788,
+				"fifth vertex colour" );
+		expect( vb.getFloat( 2 * VERTEX_STRIDE + TEXCOORD_OFFSET + 4 ) == 1,
+				"third vertex t" );
+
+		// each state draws from the start of its own index buffer
+		expect( rb.calls.contains( "draw 12 0" ), "first state's draw " + rb.calls );
+		expect( rb.calls.contains( "draw 6 0" ), "second state's draw " + rb.calls );
+		ByteBuffer ib = rb.bound( Target.INDICES );
+		expect( ib == null, "indices unbound after drawing" );
+
+		// the same geometry again: the indices are not uploaded again
+		rb.calls.clear();
+		r.addTriangles( quad, tc, tris, 0x11223344, a );
+		r.addTriangles( quad, tc, tris, 0x55667788, b );
+		r.addTriangles( quad, tc, tris, 0x11223344, a );
+		r.render();
+		expect( rb.count( "store" ) == 0, "unchanged indices reuploaded " + rb.calls );
+		expect( rb.count( "draw" ) == 2, "still drawn" );
+
+		// fill the ring, forcing rotation and orphaning. The topology
+		// changes once, on the first of these frames
+		rb.calls.clear();
+		for( int i = 0; i < 20; i++ )
+		{
+			r.addTriangles( quad, tc, tris, 0xffffffff, a );
+			r.render();
+		}
+
+		expect( rb.count( "store INDICES" ) == 1, "indices stored on change only, not "
+				+ rb.count( "store INDICES" ) + " times" );
+		expect( rb.buffers.size() == 5, "three vertex buffers and one index buffer per state, not "
+				+ rb.buffers.size() + " buffers" );
+		expect( rb.count( "allocate" ) > 3, "buffers are orphaned when reused" );
+
+		// a bigger frame than the buffers can hold
+		for( int i = 0; i < 100; i++ )
+		{
+			r.addTriangles( quad, tc, tris, 0xffffffff, b );
+		}
+		r.render();
+		expect( r.countTriangles() == 200, "big frame" );
+
+		// context loss
+		rb.loseContext();
+		rb.calls.clear();
+		r.addTriangles( quad, tc, tris, 0xffffffff, a );
+		r.render();
+		expect( rb.count( "create" ) == 2, "buffers recreated after context loss" );
+		expect( rb.count( "store INDICES" ) == 1, "indices reuploaded after context loss" );
+		expect( rb.count( "delete" ) == 0, "stale buffers are not deleted" );
+
+		// the other state's index buffer went with the old context
+		r.setBackend( null );
+		expect( rb.count( "delete" ) == 2, "buffers deleted with the backend " + rb.calls );
+
+		checkGeometryCache( a, b, quad, tris );
+
+		checkCompiled( a, b, quad, tc, tris );
+
+		System.out.println( "All checks passed" );
+	}
+
+	private static void checkGeometryCache( State a, State b, float[] quad, int[] tris )
+	{
+		RecordingBackend rb = new RecordingBackend();
+
+		Shape s = new Shape( quad, tris );
+		CompiledShape[] compiled =
+				CompiledShape.compile( new ColouredShape( s, 0xffffffff, a ),
+						new ColouredShape( s, 0xff0000ff, b ), new ColouredShape( s
+								.transform( new Matrix4f().translate( new Vector3f( 2, 0, 0 ) ) ),
+								0xffffffff, a ) );
+
+		expect( compiled.length == 2, "one shape per state" );
+		expect( compiled[ 0 ].vertexCount() == 8 && compiled[ 0 ].indexCount() == 12,
+				"welded shapes" );
+
+		int size = compiled[ 0 ].vertexBytes() + compiled[ 0 ].indexBytes();
+		GeometryCache cache = new GeometryCache( rb, 2 * size );
+
+		for( int i = 0; i < 3; i++ )
+		{
+			cache.draw( compiled );
+		}
+
+		expect( rb.count( "store" ) == 4, "uploaded once" );
+		expect( rb.count( "draw" ) == 6, "one draw per state per frame" );
+		expect( cache.hits() == 4 && cache.misses() == 2, cache.toString() );
+		expect( cache.residentBytes() == size + compiled[ 1 ].vertexBytes()
+				+ compiled[ 1 ].indexBytes(), cache.toString() );
+
+		// the welded indices refer to the second quad's vertices
+		ByteBuffer ib = rb.buffers.get( 2 ).duplicate().order( java.nio.ByteOrder.nativeOrder() );
+		expect( ib.getInt( 4 * 6 ) == 4, "welded index offset" );
+
+		// over budget
+		CompiledShape[] more =
+				CompiledShape.compile( new ColouredShape( s, 0xffffffff, a ) );
+		cache.setBudget( size - 1 );
+		expect( cache.residentCount() == 1, "trimmed to budget " + cache );
+		cache.draw( more );
+		expect( cache.residentCount() == 1 && cache.evictions() == 2, "LRU eviction " + cache );
+
+		// context loss
+		rb.loseContext();
+		rb.calls.clear();
+		cache.draw( more );
+		expect( rb.count( "store" ) == 2 && rb.count( "delete" ) == 0,
+				"reuploaded after context loss " + rb.calls );
+
+		cache.clear();
+		expect( cache.residentBytes() == 0 && rb.count( "delete" ) == 2, "cleared" );
+	}
+
+	private static void checkCompiled( State a, State b, float[] quad, float[] tc,
+			int[] tris )
+	{
+		RecordingBackend rb = new RecordingBackend();
+
+		Renderer r = new Renderer( 8 );
+		r.setBackend( rb );
+
+		CompiledShape[] arena =
+				CompiledShape.compile( new ColouredShape( new Shape( quad, tris ), 0xffffffff,
+						b ) );
+
+		for( int i = 0; i < 3; i++ )
+		{
+			r.addCompiled( arena );
+			r.addTriangles( quad, tc, tris, 0x11223344, a );
+			r.render();
+
+			expect( r.countTriangles() == 4, "compiled triangles are counted" );
+		}
+
+		GeometryCache cache = r.getGeometryCache();
+		expect( cache.misses() == 1 && cache.hits() == 2, "compiled shape uploaded once "
+				+ cache );
+		expect( rb.count( "store VERTICES" ) == 1, "static vertices stored once" );
+		expect( rb.count( "upload VERTICES" ) == 3, "dynamic vertices streamed each frame" );
+
+		// drawn between the triangles of its state that were added
+		// before and after it, with the transform it was added under
+		rb.calls.clear();
+		Matrix4f m = new Matrix4f().translate( new Vector3f( 2, 0, 0 ) );
+		r.setTransform( m );
+		r.addTriangles( quad, tc, tris, 0x11223344, b );
+		r.addCompiled( arena );
+		m.translate( new Vector3f( 1, 0, 0 ) );
+		r.addTriangles( quad, tc, tris, 0x11223344, b );
+		r.setTransform( null );
+		r.render();
+
+		List<String> order = new ArrayList<String>();
+		for( String c : rb.calls )
+		{
+			if( c.startsWith( "draw" ) || c.contains( "Transform" ) )
+			{
+				order.add( c );
+			}
+		}
+		expect( order.equals( Arrays.asList( "draw 6 0", "pushTransform 2.0 0.0 0.0",
+				"draw 6 0", "popTransform", "draw 6 24" ) ), "painter's order " + rb.calls );
+
+		// without buffer objects, they're drawn as normal triangles
+		r.setBackend( null );
+		expect( cache.residentCount() == 0, "cache cleared with the backend" );
+		r.addCompiled( arena );
+		expect( r.vertices.position() == 12, "added as normal triangles" );
+	}
+
+	private static void expect( boolean condition, String message )
+	{
+		if( !condition )
+		{
+			throw new AssertionError( message );
+		}
+	}
+}
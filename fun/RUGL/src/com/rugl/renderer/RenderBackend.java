@@ -0,0 +1,154 @@
+package com.rugl.renderer;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+import com.rugl.gl.State;
+
+/**
+ * The buffer and drawing operations that the {@link Renderer} needs
+ * in order to stream vertex data through buffer objects. Vertex data
+ * is interleaved as {@link #VERTEX_STRIDE}-byte records of three
+ * float coordinates, four colour bytes and two float texture
+ * coordinates, and indices are unsigned ints.
+ *
+ * @author ryanm
+ */
+public interface RenderBackend
+{
+	/**
+	 * The size of an interleaved vertex, in bytes
+	 */
+	public static final int VERTEX_STRIDE = 3 * 4 + 4 + 2 * 4;
+
+	/**
+	 * Offset of the colour in an interleaved vertex, in bytes
+	 */
+	public static final int COLOUR_OFFSET = 3 * 4;
+
+	/**
+	 * Offset of the texture coordinates in an interleaved vertex, in
+	 * bytes
+	 */
+	public static final int TEXCOORD_OFFSET = 3 * 4 + 4;
+
+	/**
+	 * Buffer binding points
+	 *
+	 * @author ryanm
+	 */
+	public enum Target
+	{
+		/**
+		 * Interleaved vertex data
+		 */
+		VERTICES,
+		/**
+		 * Triangle indices
+		 */
+		INDICES
+	}
+
+	/**
+	 * Buffer names from an earlier context are not valid in this one,
+	 * and should be forgotten rather than deleted
+	 *
+	 * @return A number that changes whenever the rendering context is
+	 *         recreated
+	 */
+	public int contextGeneration();
+
+	/**
+	 * @return The name of a new buffer
+	 */
+	public int createBuffer();
+
+	/**
+	 * @param buffer
+	 *           The name of the buffer to delete
+	 */
+	public void deleteBuffer( int buffer );
+
+	/**
+	 * @param target
+	 * @param buffer
+	 *           The buffer name, or 0 to unbind
+	 */
+	public void bindBuffer( Target target, int buffer );
+
+	/**
+	 * Allocates new storage for the bound buffer. Any previous
+	 * contents are orphaned, so this won't wait for pending draws to
+	 * finish with them
+	 *
+	 * @param target
+	 * @param bytes
+	 *           The size of the buffer
+	 */
+	public void allocate( Target target, int bytes );
+
+	/**
+	 * Allocates storage for the bound buffer and fills it with data
+	 * that won't be changed
+	 *
+	 * @param target
+	 * @param data
+	 *           The data, from position to limit
+	 */
+	public void store( Target target, ByteBuffer data );
+
+	/**
+	 * Writes into the bound buffer
+	 *
+	 * @param target
+	 * @param offset
+	 *           The byte offset to write at
+	 * @param data
+	 *           The data, from position to limit
+	 */
+	public void upload( Target target, int offset, ByteBuffer data );
+
+	/**
+	 * Points the vertex, colour and texture coordinate arrays at the
+	 * bound vertex buffer, and enables them
+	 *
+	 * @param offset
+	 *           The byte offset of the first vertex
+	 */
+	public void enableVertices( int offset );
+
+	/**
+	 * Disables the vertex arrays and unbinds the buffers
+	 */
+	public void disableVertices();
+
+	/**
+	 * @param state
+	 *           The state to apply before following draws
+	 */
+	public void apply( State state );
+
+	/**
+	 * Draws triangles from the bound index buffer
+	 *
+	 * @param count
+	 *           The number of indices
+	 * @param offset
+	 *           The byte offset of the first index
+	 */
+	public void drawTriangles( int count, int offset );
+
+	/**
+	 * Transforms following draws, on top of the current transform,
+	 * until {@link #popTransform()}
+	 *
+	 * @param m
+	 */
+	public void pushTransform( Matrix4f m );
+
+	/**
+	 * Undoes the last {@link #pushTransform(Matrix4f)}
+	 */
+	public void popTransform();
+}
@@ -39,8 +39,8 @@ import java.util.List;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.util.vector.Matrix4f;
-import org.lwjgl.util.vector.Vector4f;
 
+import com.rugl.geom.CompiledShape;
 import com.rugl.gl.State;
 import com.rugl.util.Colour;
 import com.rugl.util.GLUtil;
@@ -75,7 +75,10 @@ public class Renderer
 	 */
 	protected Matrix4f transform;
 
-	private Vector4f t = new Vector4f( 0, 0, 0, 1 );
+	/**
+	 * Transformed vertex coordinates, before they go in the buffer
+	 */
+	private float[] transformed = new float[ 0 ];
 
 	/**
 	 * Holds triangle indices, before rendering
@@ -96,6 +99,51 @@ public class Renderer
 
 	private LinkedList<Processor> processorStack = new LinkedList<Processor>();
 
+	/**
+	 * The backend that new {@link Renderer}s stream vertex data
+	 * through. If <code>null</code>, they'll use a {@link GLBackend}
+	 * if the context supports buffer objects, and draw from
+	 * client-side arrays if it doesn't
+	 */
+	public static RenderBackend defaultBackend = null;
+
+	private RenderBackend backend = null;
+
+	/**
+	 * The backend is chosen at the first render, unless it has been
+	 * set
+	 */
+	private boolean backendChosen = false;
+
+	private StreamBuffer vertexStream;
+
+	/**
+	 * Interleaved vertex data, before streaming
+	 */
+	private ByteBuffer interleaved;
+
+	/**
+	 * Triangle indices for one state, before uploading
+	 */
+	private ByteBuffer indexBytes;
+
+	/**
+	 * The memory budget for the {@link GeometryCache} of new
+	 * {@link Renderer}s, in bytes
+	 */
+	public static int geometryBudget = 4 * 1024 * 1024;
+
+	/**
+	 * Static geometry to draw at the next render, in the order it was
+	 * added
+	 */
+	private List<PendingShape> compiled = new ArrayList<PendingShape>();
+
+	/**
+	 * Keeps {@link #compiled} shapes in buffer objects
+	 */
+	private GeometryCache geometryCache;
+
 	/**
 	 * Pushes a processor onto the top of the stack
 	 * 
@@ -255,14 +303,47 @@ public class Renderer
 	public void addTriangles( float[] verts, float[] textureCoordinates,
 			int[] vertexColours, int[] triangleIndices, State state )
 	{
-		int vc = verts.length / 3;
-
 		assert vertexColours != null;
-		assert vertexColours.length == vc : vc + " vertices but " + vertexColours.length
-				+ " colours";
-		assert textureCoordinates == null || textureCoordinates.length / 2 == vc : vc
+		assert vertexColours.length == verts.length / 3 : verts.length / 3
+				+ " vertices but " + vertexColours.length + " colours";
+		assert textureCoordinates == null
+				|| textureCoordinates.length / 2 == verts.length / 3 : verts.length / 3
 				+ " vertices but " + textureCoordinates.length / 2 + " texCoords";
-		assert triangleIndices != null && triangleIndices.length > 0 : "You do need to specify some triangles";
+
+		addTriangles( verts, textureCoordinates, vertexColours, verts.length / 3,
+				triangleIndices, triangleIndices.length, state );
+	}
+
+	/**
+	 * Adds a set of triangles to be rendered from the start of arrays
+	 * that may be longer than needed, so that batches of varying size
+	 * can be built without reallocating
+	 * 
+	 * @param verts
+	 *           The vertex coordinates, in [x1,y1,z1,x2,y2,z2...]
+	 *           form.
+	 * @param textureCoordinates
+	 *           The texture coordinates, in [s1,t1,s2,t2,...] form.
+	 *           Can be null, for (0,0) coords
+	 * @param vertexColours
+	 *           The vertex {@link Colour}s.
+	 * @param vc
+	 *           The number of vertices to use
+	 * @param triangleIndices
+	 *           The indices of triangle vertices.
+	 * @param ic
+	 *           The number of indices to use
+	 * @param state
+	 *           The rendering state for this set of triangles. Can be
+	 *           null for the default state
+	 */
+	public void addTriangles( float[] verts, float[] textureCoordinates,
+			int[] vertexColours, int vc, int[] triangleIndices, int ic, State state )
+	{
+		assert verts.length >= 3 * vc;
+		assert vertexColours != null && vertexColours.length >= vc;
+		assert textureCoordinates == null || textureCoordinates.length >= 2 * vc;
+		assert triangleIndices != null && ic > 0 : "You do need to specify some triangles";
 
 		if( state == null )
 		{
@@ -273,7 +354,7 @@ public class Renderer
 
 		int indexOffset = vertices.position() / 3;
 
-		while( vertices.remaining() < verts.length )
+		while( vertices.remaining() < 3 * vc )
 		{ // need to get bigger buffers
 			growArrays();
 		}
@@ -282,35 +363,28 @@ public class Renderer
 		int texCoordPos = texCoords.position();
 		int colourPos = colours.position();
 
-		boolean doTransform = transform != null && !MatrixUtils.isidentity( transform );
-
 		// write vertex data to buffers
-		if( transform == null )
+		if( transform == null || MatrixUtils.isidentity( transform ) )
 		{
-			vertices.put( verts );
+			vertices.put( verts, 0, 3 * vc );
 		}
 		else
 		{
-			for( int i = 0; i < vc; i++ )
+			if( transformed.length < 3 * vc )
 			{
-				t.set( verts[ 3 * i ], verts[ 3 * i + 1 ], verts[ 3 * i + 2 ], 1 );
+				transformed = new float[ 3 * vc ];
+			}
 
-				if( doTransform )
-				{
-					Matrix4f.transform( transform, t, t );
-				}
+			VertexTransform.transform( transform, verts, transformed, vc );
 
-				vertices.put( t.x );
-				vertices.put( t.y );
-				vertices.put( t.z );
-			}
+			vertices.put( transformed, 0, 3 * vc );
 		}
 
-		colours.put( vertexColours );
+		colours.put( vertexColours, 0, vc );
 
 		if( textureCoordinates != null )
 		{
-			texCoords.put( textureCoordinates );
+			texCoords.put( textureCoordinates, 0, 2 * vc );
 		}
 		else
 		{
@@ -344,7 +418,54 @@ public class Renderer
 		}
 
 		// insert triangle indices
-		triangles[ state.getCompiledIndex() ].add( triangleIndices, indexOffset );
+		triangles[ state.getCompiledIndex() ].add( triangleIndices, ic, indexOffset );
+	}
+
+	/**
+	 * Adds static geometry to be drawn at the next {@link #render()}.
+	 * When we're streaming through buffer objects, the shapes are kept
+	 * in a {@link GeometryCache} rather than being sent every frame.
+	 * Otherwise they're added as normal triangles. Either way, they're
+	 * drawn in the same order as if they had been added as normal
+	 * triangles, and the current transform is applied, but the
+	 * processors are not
+	 * 
+	 * @param shapes
+	 */
+	public void addCompiled( CompiledShape... shapes )
+	{
+		chooseBackend();
+
+		if( backend == null )
+		{
+			LinkedList<Processor> ps = processorStack;
+			processorStack = new LinkedList<Processor>();
+
+			for( CompiledShape cs : shapes )
+			{
+				cs.render( this );
+			}
+
+			processorStack = ps;
+		}
+		else
+		{
+			// the transform can change before the render
+			Matrix4f t = null;
+			if( transform != null && !MatrixUtils.isidentity( transform ) )
+			{
+				t = new Matrix4f();
+				t.load( transform );
+			}
+
+			for( CompiledShape cs : shapes )
+			{
+				// interning can replace the triangle lists array
+				int index = intern( cs.state ).getCompiledIndex();
+				TriangleList tl = triangles[ index ];
+				compiled.add( new PendingShape( cs, tl, tl.count, t ) );
+			}
+		}
 	}
 
 	/**
@@ -371,12 +492,55 @@ public class Renderer
 		colours = bc;
 	}
 
+	/**
+	 * Sets the backend that vertex data is streamed through. Buffers
+	 * held with the previous backend are deleted
+	 * 
+	 * @param backend
+	 *           The new backend, or <code>null</code> to draw from
+	 *           client-side arrays
+	 */
+	public void setBackend( RenderBackend backend )
+	{
+		if( vertexStream != null )
+		{
+			vertexStream.delete();
+			vertexStream = null;
+		}
+
+		if( geometryCache != null )
+		{
+			geometryCache.clear();
+			geometryCache = null;
+		}
+
+		for( int i = 0; i < triangles.length; i++ )
+		{
+			triangles[ i ].deleteIndices( this.backend );
+		}
+
+		this.backend = backend;
+		backendChosen = true;
+	}
+
+	/**
+	 * @return The backend that vertex data is streamed through, or
+	 *         <code>null</code> if we're drawing from client-side
+	 *         arrays. Unless it has been set, this is chosen at the
+	 *         first {@link #render()}
+	 */
+	public RenderBackend getBackend()
+	{
+		return backend;
+	}
+
 	/**
 	 * Render the triangles and clear the data
 	 */
 	public void render()
 	{
-		// enable the buffers for openGL
+		chooseBackend();
+
 		vertices.flip();
 		texCoords.flip();
 		colours.flip();
@@ -384,6 +548,60 @@ public class Renderer
 		vertexCount = vertices.limit() / 3;
 		triangleCount = 0;
 
+		if( backend == null )
+		{
+			renderArrays();
+		}
+		else
+		{
+			renderStreamed();
+		}
+
+		triangleCount /= 3;
+
+		vertices.clear();
+		texCoords.clear();
+		colours.clear();
+		colourBytes.clear();
+
+		for( int i = 0; i < triangles.length; i++ )
+		{
+			triangles[ i ].count = 0;
+		}
+	}
+
+	/**
+	 * Picks the backend, unless it has been set
+	 */
+	private void chooseBackend()
+	{
+		if( !backendChosen )
+		{
+			backend = defaultBackend;
+			if( backend == null && GLBackend.isSupported() )
+			{
+				backend = new GLBackend();
+			}
+			backendChosen = true;
+		}
+	}
+
+	/**
+	 * @return The cache that holds static geometry, or
+	 *         <code>null</code> if none has been drawn through buffer
+	 *         objects
+	 */
+	public GeometryCache getGeometryCache()
+	{
+		return geometryCache;
+	}
+
+	/**
+	 * Draws from client-side arrays
+	 */
+	private void renderArrays()
+	{
+		// enable the buffers for openGL
 		colourBytes.position( 0 );
 		colourBytes.limit( colours.limit() * 4 );
 
@@ -426,21 +644,198 @@ public class Renderer
 			}
 		}
 
-		triangleCount /= 3;
-
-		// disable and clear the buffers
+		// disable the buffers
 		GL11.glDisableClientState( GL11.GL_VERTEX_ARRAY );
 		GL11.glDisableClientState( GL11.GL_TEXTURE_COORD_ARRAY );
 		GL11.glDisableClientState( GL11.GL_COLOR_ARRAY );
+	}
 
-		vertices.clear();
-		texCoords.clear();
-		colours.clear();
-		colourBytes.clear();
+	/**
+	 * Streams the vertex data to the backend, then draws each state's
+	 * triangles from that state's index buffer, stopping to draw
+	 * compiled shapes from the {@link GeometryCache} at the point they
+	 * were added. Index buffers are only uploaded again when a state's
+	 * indices change, which they don't if the same geometry is added
+	 * in the same order each frame
+	 */
+	private void renderStreamed()
+	{
+		int vertexOffset = vertexCount > 0 ? streamVertices() : 0;
+		boolean streamEnabled = false;
 
+		// render
 		for( int i = 0; i < triangles.length; i++ )
 		{
-			triangles[ i ].count = 0;
+			TriangleList tl = triangles[ i ];
+			int drawn = 0;
+
+			for( PendingShape ps : compiled )
+			{
+				if( ps.list == tl )
+				{
+					if( ps.mark > drawn )
+					{
+						streamEnabled = enableStream( streamEnabled, vertexOffset );
+						drawIndices( tl, drawn, ps.mark );
+						drawn = ps.mark;
+					}
+
+					drawCompiled( ps );
+					streamEnabled = false;
+				}
+			}
+
+			if( tl.count > drawn )
+			{
+				streamEnabled = enableStream( streamEnabled, vertexOffset );
+				drawIndices( tl, drawn, tl.count );
+			}
+		}
+
+		if( streamEnabled )
+		{
+			backend.disableVertices();
+		}
+
+		compiled.clear();
+	}
+
+	/**
+	 * Interleaves the vertex data and writes it to the
+	 * {@link #vertexStream}
+	 * 
+	 * @return The byte offset of the vertices in the stream buffer
+	 */
+	private int streamVertices()
+	{
+		if( vertexStream == null )
+		{
+			vertexStream =
+					new StreamBuffer( backend, RenderBackend.Target.VERTICES, 3, vertices
+							.capacity()
+							/ 3 * RenderBackend.VERTEX_STRIDE );
+		}
+
+		int vertexBytes = vertexCount * RenderBackend.VERTEX_STRIDE;
+		if( interleaved == null || interleaved.capacity() < vertexBytes )
+		{
+			interleaved = BufferUtils.createByteBuffer( vertexBytes );
+		}
+
+		// colours are written in native order, just as the colour
+		// buffer holds them, so the bytes end up in rgba order
+		interleaved.clear();
+		for( int i = 0; i < vertexCount; i++ )
+		{
+			interleaved.putFloat( vertices.get( 3 * i ) );
+			interleaved.putFloat( vertices.get( 3 * i + 1 ) );
+			interleaved.putFloat( vertices.get( 3 * i + 2 ) );
+			interleaved.putInt( colours.get( i ) );
+			interleaved.putFloat( texCoords.get( 2 * i ) );
+			interleaved.putFloat( texCoords.get( 2 * i + 1 ) );
+		}
+		interleaved.flip();
+
+		return vertexStream.write( interleaved );
+	}
+
+	/**
+	 * Points the vertex arrays at the streamed vertices, if they're
+	 * not already
+	 * 
+	 * @param enabled
+	 * @param vertexOffset
+	 * @return <code>true</code>
+	 */
+	private boolean enableStream( boolean enabled, int vertexOffset )
+	{
+		if( !enabled )
+		{
+			vertexStream.bind();
+			backend.enableVertices( vertexOffset );
+		}
+		return true;
+	}
+
+	/**
+	 * Draws some of a state's streamed triangles
+	 * 
+	 * @param tl
+	 * @param from
+	 *           The first index
+	 * @param to
+	 *           One past the last index
+	 */
+	private void drawIndices( TriangleList tl, int from, int to )
+	{
+		backend.apply( tl.state );
+
+		triangleCount += to - from;
+
+		bindIndices( tl );
+
+		backend.drawTriangles( to - from, 4 * from );
+	}
+
+	/**
+	 * Draws a compiled shape from the {@link GeometryCache}. This
+	 * leaves the vertex arrays disabled
+	 * 
+	 * @param ps
+	 */
+	private void drawCompiled( PendingShape ps )
+	{
+		if( geometryCache == null )
+		{
+			geometryCache = new GeometryCache( backend, geometryBudget );
+		}
+
+		if( ps.transform != null )
+		{
+			backend.pushTransform( ps.transform );
+		}
+
+		geometryCache.draw( ps.shape );
+
+		if( ps.transform != null )
+		{
+			backend.popTransform();
+		}
+
+		triangleCount += ps.shape.indexCount();
+	}
+
+	/**
+	 * Binds a state's index buffer, uploading the indices if they've
+	 * changed since last time
+	 * 
+	 * @param tl
+	 */
+	private void bindIndices( TriangleList tl )
+	{
+		if( tl.indexBuffer == 0 || tl.generation != backend.contextGeneration() )
+		{ // first time, or the old buffer went with the old context
+			tl.indexBuffer = backend.createBuffer();
+			tl.generation = backend.contextGeneration();
+			tl.storedCount = -1;
+		}
+
+		backend.bindBuffer( RenderBackend.Target.INDICES, tl.indexBuffer );
+
+		if( !tl.isStored() )
+		{
+			if( indexBytes == null || indexBytes.capacity() < tl.count * 4 )
+			{
+				indexBytes = BufferUtils.createByteBuffer( tl.count * 4 );
+			}
+
+			indexBytes.clear();
+			indexBytes.asIntBuffer().put( tl.tris, 0, tl.count );
+			indexBytes.limit( tl.count * 4 );
+
+			backend.store( RenderBackend.Target.INDICES, indexBytes );
+
+			tl.markStored();
 		}
 	}
 
@@ -488,6 +883,41 @@ public class Renderer
 		return transform;
 	}
 
+	/**
+	 * A compiled shape waiting to be drawn
+	 * 
+	 * @author ryanm
+	 */
+	private static class PendingShape
+	{
+		private final CompiledShape shape;
+
+		/**
+		 * The triangles of the shape's state
+		 */
+		private final TriangleList list;
+
+		/**
+		 * The number of indices in {@link #list} when the shape was
+		 * added, which are drawn before it
+		 */
+		private final int mark;
+
+		/**
+		 * The transform when the shape was added, or <code>null</code>
+		 */
+		private final Matrix4f transform;
+
+		private PendingShape( CompiledShape shape, TriangleList list, int mark,
+				Matrix4f transform )
+		{
+			this.shape = shape;
+			this.list = list;
+			this.mark = mark;
+			this.transform = transform;
+		}
+	}
+
 	/**
 	 * Keeps track of added triangle indices
 	 * 
@@ -510,26 +940,96 @@ public class Renderer
 		 */
 		private int[] tris = new int[ 100 ];
 
+		/**
+		 * The name of the buffer that holds {@link #stored}, or 0
+		 */
+		private int indexBuffer = 0;
+
+		/**
+		 * The context generation that {@link #indexBuffer} was created
+		 * in
+		 */
+		private int generation;
+
+		/**
+		 * The indices that were last uploaded to {@link #indexBuffer}
+		 */
+		private int[] stored = new int[ 0 ];
+
+		private int storedCount = -1;
+
 		private TriangleList( State state )
 		{
 			this.state = state;
 		}
 
-		private void add( int[] ti, int indexOffset )
+		/**
+		 * @return <code>true</code> if the index buffer holds the
+		 *         current indices
+		 */
+		private boolean isStored()
+		{
+			if( storedCount != count )
+			{
+				return false;
+			}
+
+			for( int i = 0; i < count; i++ )
+			{
+				if( stored[ i ] != tris[ i ] )
+				{
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Notes that the current indices have been uploaded
+		 */
+		private void markStored()
+		{
+			if( stored.length < count )
+			{
+				stored = new int[ tris.length ];
+			}
+
+			System.arraycopy( tris, 0, stored, 0, count );
+			storedCount = count;
+		}
+
+		/**
+		 * @param backend
+		 *           The backend that the index buffer was created with
+		 */
+		private void deleteIndices( RenderBackend backend )
+		{
+			if( indexBuffer != 0 && backend != null
+					&& generation == backend.contextGeneration() )
+			{
+				backend.deleteBuffer( indexBuffer );
+			}
+
+			indexBuffer = 0;
+			storedCount = -1;
+		}
+
+		private void add( int[] ti, int ic, int indexOffset )
 		{
-			if( count + ti.length >= tris.length )
+			if( count + ic >= tris.length )
 			{
-				int[] nTris = new int[ count + ti.length ];
-				System.arraycopy( tris, 0, nTris, 0, tris.length );
+				int[] nTris = new int[ Math.max( 2 * tris.length, count + ic ) ];
+				System.arraycopy( tris, 0, nTris, 0, count );
 				tris = nTris;
 			}
 
-			for( int i = 0; i < ti.length; i++ )
+			for( int i = 0; i < ic; i++ )
 			{
 				tris[ count + i ] = ti[ i ] + indexOffset;
 			}
 
-			count += ti.length;
+			count += ic;
 		}
 	}
 
@@ -0,0 +1,158 @@
+package com.rugl.renderer;
+
+import java.nio.ByteBuffer;
+
+import com.rugl.renderer.RenderBackend.Target;
+
+/**
+ * A ring of buffer objects that data is streamed through. Writes are
+ * appended to the current buffer until it is full, then we move on
+ * to the next buffer in the ring and orphan its storage. With three
+ * buffers, the one we're writing to was last drawn from a couple of
+ * wraps ago, so we shouldn't have to wait on the GPU
+ *
+ * @author ryanm
+ */
+class StreamBuffer
+{
+	/**
+	 * Writes are aligned to this many bytes
+	 */
+	private static final int ALIGN = 16;
+
+	private final RenderBackend backend;
+
+	private final Target target;
+
+	private final int[] names;
+
+	private final int[] capacities;
+
+	private int current;
+
+	private int cursor = 0;
+
+	private int generation;
+
+	private int minCapacity;
+
+	/**
+	 * @param backend
+	 * @param target
+	 * @param ringSize
+	 *           The number of buffers
+	 * @param minCapacity
+	 *           The smallest buffer size, in bytes
+	 */
+	StreamBuffer( RenderBackend backend, Target target, int ringSize, int minCapacity )
+	{
+		this.backend = backend;
+		this.target = target;
+		this.minCapacity = minCapacity;
+
+		names = new int[ ringSize ];
+		capacities = new int[ ringSize ];
+		current = ringSize - 1;
+		generation = backend.contextGeneration();
+	}
+
+	/**
+	 * Writes data into the ring. The buffer written to is left bound
+	 *
+	 * @param data
+	 *           The data, from position to limit
+	 * @return The byte offset of the data in the bound buffer
+	 */
+	int write( ByteBuffer data )
+	{
+		int bytes = data.remaining();
+
+		if( generation != backend.contextGeneration() )
+		{ // our buffers went with the old context
+			for( int i = 0; i < names.length; i++ )
+			{
+				names[ i ] = 0;
+				capacities[ i ] = 0;
+			}
+			cursor = 0;
+			generation = backend.contextGeneration();
+		}
+
+		if( names[ current ] != 0 && cursor + bytes <= capacities[ current ] )
+		{
+			backend.bindBuffer( target, names[ current ] );
+		}
+		else
+		{
+			current = ( current + 1 ) % names.length;
+			cursor = 0;
+
+			if( names[ current ] == 0 )
+			{
+				names[ current ] = backend.createBuffer();
+			}
+
+			// grow to fit, keeping the rest of the ring in line
+			while( minCapacity < bytes )
+			{
+				minCapacity *= 2;
+			}
+
+			capacities[ current ] = minCapacity;
+
+			backend.bindBuffer( target, names[ current ] );
+			backend.allocate( target, capacities[ current ] );
+		}
+
+		int offset = cursor;
+		backend.upload( target, offset, data );
+
+		cursor += ( bytes + ALIGN - 1 ) / ALIGN * ALIGN;
+
+		return offset;
+	}
+
+	/**
+	 * Binds the buffer that was last written to
+	 */
+	void bind()
+	{
+		backend.bindBuffer( target, names[ current ] );
+	}
+
+	/**
+	 * @return The total size of the allocated buffers, in bytes
+	 */
+	int allocated()
+	{
+		int total = 0;
+		for( int i = 0; i < capacities.length; i++ )
+		{
+			total += capacities[ i ];
+		}
+		return total;
+	}
+
+	/**
+	 * Deletes the buffers
+	 */
+	void delete()
+	{
+		if( generation == backend.contextGeneration() )
+		{
+			for( int i = 0; i < names.length; i++ )
+			{
+				if( names[ i ] != 0 )
+				{
+					backend.deleteBuffer( names[ i ] );
+				}
+			}
+		}
+
+		for( int i = 0; i < names.length; i++ )
+		{
+			names[ i ] = 0;
+			capacities[ i ] = 0;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.rugl.renderer;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+/**
+ * Compares three ways of getting transformed vertices into the
+ * {@link Renderer}'s vertex buffer: the old per-vertex
+ * {@link Vector4f} loop, the bulk {@link VertexTransform}, and a
+ * {@link Renderer.Processor} that transforms the buffer after the
+ * untransformed vertices have been put in it. Vertices are added as
+ * glyph-sized quads and as bigger shapes
+ *
+ * @author ryanm
+ */
+public class TransformBenchmark
+{
+	/**
+	 * @param args
+	 *           The number of timed rounds
+	 */
+	public static void main( String[] args )
+	{
+		int rounds = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 200;
+
+		Matrix4f flat = new Matrix4f();
+		flat.translate( new Vector3f( 12.5f, -3, 0 ) );
+		flat.scale( new Vector3f( 0.75f, 1.5f, 1 ) );
+
+		Matrix4f rotated = new Matrix4f();
+		rotated.translate( new Vector3f( 12.5f, -3, 1 ) );
+		rotated.rotate( 0.3f, new Vector3f( 0, 0, 1 ) );
+		rotated.scale( new Vector3f( 0.75f, 1.5f, 2 ) );
+
+		// glyph quads, and bigger shapes
+		for( int shapeVerts : new int[] { 4, 1000 } )
+		{
+			float[][] shapes = buildShapes( 4000 / shapeVerts, shapeVerts );
+
+			bench( shapes, flat, shapeVerts + "-vertex shapes, 2D translate/scale", rounds );
+			bench( shapes, rotated, shapeVerts + "-vertex shapes, general", rounds );
+		}
+	}
+
+	private static float[][] buildShapes( int count, int verts )
+	{
+		Random rng = new Random( 1 );
+		float[][] shapes = new float[ count ][ verts * 3 ];
+		for( int i = 0; i < shapes.length; i++ )
+		{
+			for( int j = 0; j < shapes[ i ].length; j++ )
+			{
+				shapes[ i ][ j ] = rng.nextFloat() * 100;
+			}
+		}
+		return shapes;
+	}
+
+	private static void bench( float[][] shapes, Matrix4f m, String name, int rounds )
+	{
+		int verts = shapes.length * shapes[ 0 ].length / 3;
+		FloatBuffer fb = BufferUtils.createFloatBuffer( verts * 3 );
+
+		// check that the results are identical
+		FloatBuffer expected = BufferUtils.createFloatBuffer( fb.capacity() );
+		vectorLoop( m, shapes, expected );
+		expected.flip();
+		boolean identical = true;
+		for( int p = 1; p < 3; p++ )
+		{
+			run( p, m, shapes, fb );
+			fb.flip();
+			identical &= fb.equals( expected );
+		}
+
+		long[] best = new long[ 3 ];
+		for( int r = 0; r < rounds; r++ )
+		{
+			for( int p = 0; p < 3; p++ )
+			{
+				long start = System.nanoTime();
+				run( p, m, shapes, fb );
+				long t = System.nanoTime() - start;
+				if( r == 0 || t < best[ p ] )
+				{
+					best[ p ] = t;
+				}
+			}
+		}
+
+		System.out.println( name + ", ns per vertex, best of " + rounds
+				+ ( identical ? "" : " FAILED: results differ" ) );
+		System.out.println( "\tVector4f loop : " + ( float ) best[ 0 ] / verts );
+		System.out.println( "\tbulk          : " + ( float ) best[ 1 ] / verts );
+		System.out.println( "\tprocessor     : " + ( float ) best[ 2 ] / verts );
+	}
+
+	private static void run( int path, Matrix4f m, float[][] shapes, FloatBuffer fb )
+	{
+		switch( path )
+		{
+			case 0:
+				vectorLoop( m, shapes, fb );
+				break;
+			case 1:
+				bulk( m, shapes, fb );
+				break;
+			default:
+				processor( m, shapes, fb );
+		}
+	}
+
+	/**
+	 * What {@link Renderer#addTriangles(float[], float[], int[], int[], com.rugl.gl.State)}
+	 * used to do
+	 */
+	private static void vectorLoop( Matrix4f m, float[][] shapes, FloatBuffer fb )
+	{
+		fb.clear();
+		Vector4f t = new Vector4f( 0, 0, 0, 1 );
+
+		for( float[] verts : shapes )
+		{
+			int vc = verts.length / 3;
+			for( int i = 0; i < vc; i++ )
+			{
+				t.set( verts[ 3 * i ], verts[ 3 * i + 1 ], verts[ 3 * i + 2 ], 1 );
+
+				Matrix4f.transform( m, t, t );
+
+				fb.put( t.x );
+				fb.put( t.y );
+				fb.put( t.z );
+			}
+		}
+	}
+
+	/**
+	 * What it does now
+	 */
+	private static void bulk( Matrix4f m, float[][] shapes, FloatBuffer fb )
+	{
+		fb.clear();
+		float[] transformed = new float[ 0 ];
+
+		for( float[] verts : shapes )
+		{
+			if( transformed.length < verts.length )
+			{
+				transformed = new float[ verts.length ];
+			}
+
+			VertexTransform.transform( m, verts, transformed, verts.length / 3 );
+
+			fb.put( transformed, 0, verts.length );
+		}
+	}
+
+	/**
+	 * Untransformed data into the buffer, then transformed by a
+	 * {@link Renderer.Processor} working on a slice, as the
+	 * {@link Renderer} does
+	 */
+	private static void processor( final Matrix4f m, float[][] shapes, FloatBuffer fb )
+	{
+		fb.clear();
+		Renderer.Processor proc = new Renderer.Processor() {
+			private Vector4f t = new Vector4f();
+
+			@Override
+			public void process( FloatBuffer verts, FloatBuffer texCoords, IntBuffer colours )
+			{
+				for( int i = 0; i < verts.limit(); i += 3 )
+				{
+					t.set( verts.get( i ), verts.get( i + 1 ), verts.get( i + 2 ), 1 );
+					Matrix4f.transform( m, t, t );
+					verts.put( i, t.x );
+					verts.put( i + 1, t.y );
+					verts.put( i + 2, t.z );
+				}
+			}
+		};
+
+		for( float[] verts : shapes )
+		{
+			int pos = fb.position();
+			fb.put( verts );
+
+			int p = fb.position();
+			fb.position( pos );
+			FloatBuffer sv = fb.slice();
+			sv.limit( verts.length );
+			fb.position( p );
+
+			proc.process( sv, null, null );
+		}
+	}
+}
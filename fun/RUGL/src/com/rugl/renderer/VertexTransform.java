@@ -0,0 +1,97 @@
+package com.rugl.renderer;
+
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * Transforms arrays of vertices in bulk. The result for each vertex is
+ * the same as loading it into a {@link org.lwjgl.util.vector.Vector4f}
+ * with w = 1, calling
+ * {@link Matrix4f#transform(Matrix4f, org.lwjgl.util.vector.Vector4f, org.lwjgl.util.vector.Vector4f)}
+ * and keeping x, y and z, but without the per-vertex calls and field
+ * traffic
+ *
+ * @author ryanm
+ */
+class VertexTransform
+{
+	private VertexTransform()
+	{
+	}
+
+	/**
+	 * @param m
+	 *           The transform
+	 * @param src
+	 *           Vertex coordinates, in [x1,y1,z1,x2,y2,z2...] form
+	 * @param dst
+	 *           The destination for the transformed coordinates. May be
+	 *           the same array as src
+	 * @param count
+	 *           The number of vertices
+	 */
+	static void transform( Matrix4f m, float[] src, float[] dst, int count )
+	{
+		if( m.m10 == 0 && m.m20 == 0 && m.m01 == 0 && m.m21 == 0 && m.m02 == 0
+				&& m.m12 == 0 )
+		{
+			if( m.m22 == 1 && m.m32 == 0 )
+			{
+				transform2D( m.m00, m.m11, m.m30, m.m31, src, dst, count );
+			}
+			else
+			{
+				scaleTranslate( m.m00, m.m11, m.m22, m.m30, m.m31, m.m32, src, dst, count );
+			}
+		}
+		else
+		{
+			affine( m, src, dst, count );
+		}
+	}
+
+	/**
+	 * Scale and translation in x and y, z untouched
+	 */
+	private static void transform2D( float sx, float sy, float tx, float ty,
+			float[] src, float[] dst, int count )
+	{
+		int n = 3 * count;
+		for( int i = 0; i < n; i += 3 )
+		{
+			dst[ i ] = sx * src[ i ] + tx;
+			dst[ i + 1 ] = sy * src[ i + 1 ] + ty;
+			dst[ i + 2 ] = src[ i + 2 ];
+		}
+	}
+
+	private static void scaleTranslate( float sx, float sy, float sz, float tx,
+			float ty, float tz, float[] src, float[] dst, int count )
+	{
+		int n = 3 * count;
+		for( int i = 0; i < n; i += 3 )
+		{
+			dst[ i ] = sx * src[ i ] + tx;
+			dst[ i + 1 ] = sy * src[ i + 1 ] + ty;
+			dst[ i + 2 ] = sz * src[ i + 2 ] + tz;
+		}
+	}
+
+	private static void affine( Matrix4f m, float[] src, float[] dst, int count )
+	{
+		// copy to locals so the loop doesn't go back to the fields
+		float m00 = m.m00, m10 = m.m10, m20 = m.m20, m30 = m.m30;
+		float m01 = m.m01, m11 = m.m11, m21 = m.m21, m31 = m.m31;
+		float m02 = m.m02, m12 = m.m12, m22 = m.m22, m32 = m.m32;
+
+		int n = 3 * count;
+		for( int i = 0; i < n; i += 3 )
+		{
+			float x = src[ i ], y = src[ i + 1 ], z = src[ i + 2 ];
+
+			// same order of operations as Matrix4f.transform
+			dst[ i ] = m00 * x + m10 * y + m20 * z + m30;
+			dst[ i + 1 ] = m01 * x + m11 * y + m21 * z + m31;
+			dst[ i + 2 ] = m02 * x + m12 * y + m22 * z + m32;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.rugl.sound;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lwjgl.openal.AL10;
+
+import com.ryanm.soundgen.StreamSink;
+
+/**
+ * Plays chunks through the buffer queue of an OpenAL {@link Source}.
+ * Buffer names are recycled as they finish playing
+ * 
+ * @author ryanm
+ */
+public class ALStreamSink implements StreamSink
+{
+	private final Source source;
+
+	private final List<Integer> spare = new ArrayList<Integer>();
+
+	private final List<Integer> all = new ArrayList<Integer>();
+
+	private int queued = 0;
+
+	/**
+	 * @param source
+	 *           The source to play through. It will be locked until
+	 *           {@link #release()}
+	 */
+	public ALStreamSink( Source source )
+	{
+		this.source = source;
+
+		source.bindSound( null );
+		source.lock( this );
+	}
+
+	@Override
+	public void queue( ByteBuffer pcm, int sampleRate )
+	{
+		int buffer;
+		if( spare.isEmpty() )
+		{
+			buffer = AL10.alGenBuffers();
+			all.add( buffer );
+		}
+		else
+		{
+			buffer = spare.remove( spare.size() - 1 );
+		}
+
+		AL10.alBufferData( buffer, Sound.Format.MONO_16.alFormat, pcm, sampleRate );
+		source.queueBuffer( buffer );
+		queued++;
+	}
+
+	@Override
+	public int reclaim()
+	{
+		int n = source.buffersProcessed();
+
+		for( int i = 0; i < n; i++ )
+		{
+			spare.add( source.unqueueBuffer() );
+		}
+
+		queued -= n;
+		return n;
+	}
+
+	@Override
+	public int queued()
+	{
+		return queued;
+	}
+
+	@Override
+	public void play()
+	{
+		source.play();
+	}
+
+	@Override
+	public boolean isPlaying()
+	{
+		return source.isPlaying();
+	}
+
+	@Override
+	public void release()
+	{
+		source.stop();
+
+		// stopped sources have processed all their buffers
+		reclaim();
+
+		for( int b : all )
+		{
+			AL10.alDeleteBuffers( b );
+		}
+		all.clear();
+		spare.clear();
+
+		source.release( this );
+	}
+}
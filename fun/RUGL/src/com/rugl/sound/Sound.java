@@ -6,12 +6,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
+import org.lwjgl.BufferUtils;
 import org.lwjgl.openal.AL10;
 
 import com.ryanm.soundgen.SoundSpec;
+import com.ryanm.soundgen.StreamSink;
+import com.ryanm.soundgen.StreamingSound;
+import com.ryanm.util.io.FileUtils;
 import com.ryanm.util.math.Statistics;
 
 /**
@@ -30,10 +35,25 @@ public class Sound
 	public final int sampleRate;
 
 	/**
-	 * Sound data
+	 * Sound data. For a {@link Sound} built from a {@link SoundSpec},
+	 * this is filled in the background - see {@link #isRendered()}
 	 */
 	public final ByteBuffer data;
 
+	/**
+	 * Renders the {@link SoundSpec} into {@link #data}, or null once
+	 * that's done
+	 */
+	private StreamingSound rendering = null;
+
+	private DataSink renderSink = null;
+
+	/**
+	 * Plays the chunks as they are rendered, if we're bound before
+	 * rendering is complete
+	 */
+	private ALStreamSink early = null;
+
 	/**
 	 * OpenAL buffer name
 	 */
@@ -52,13 +72,17 @@ public class Sound
 		this.sampleRate = sampleRate;
 		this.data = data;
 
-		assert format.bytesPerSample * sampleRate == data.limit();
+		assert data.limit() % format.bytesPerSample == 0;
 
 		SoundSystem.registerSound( this );
 	}
 
 	/**
-	 * Builds a new {@link Sound}
+	 * Builds a new {@link Sound}. This returns straight away - the
+	 * sound is rendered in the background, a chunk at a time, as
+	 * {@link SoundSystem#advance()} is called. If it is bound to an
+	 * unlocked {@link Source} before then, it plays through that
+	 * source's queue as it renders
 	 * 
 	 * @param soundSpec
 	 * @param sampleRate
@@ -67,7 +91,11 @@ public class Sound
 	{
 		format = Format.MONO_16;
 		this.sampleRate = sampleRate;
-		data = soundSpec.generate( sampleRate );
+
+		int samples = ( int ) Math.ceil( sampleRate * soundSpec.length );
+		data = ByteBuffer.allocateDirect( 2 * samples ).order( ByteOrder.LITTLE_ENDIAN );
+		renderSink = new DataSink();
+		rendering = new StreamingSound( soundSpec, sampleRate, renderSink, 0.1f, 4 );
 
 		SoundSystem.registerSound( this );
 	}
@@ -82,38 +110,143 @@ public class Sound
 	{
 		DataInputStream dis = new DataInputStream( is );
 
-		int alf = dis.readInt();
+		format = format( dis.readInt() );
 		sampleRate = dis.readInt();
-		byte[] bd = new byte[ dis.readInt() ];
 
-		dis.readFully( bd );
+		// OpenAL wants a direct buffer anyway
+		data = BufferUtils.createByteBuffer( dis.readInt() );
+		FileUtils.readFully( is, data );
+		data.flip();
+
+		SoundSystem.registerSound( this );
+	}
+
+	/**
+	 * Reads a {@link Sound} from a buffer, in the format written by
+	 * {@link #write(ByteBuffer)}. The sample data is not copied, so if
+	 * the input is a mapped file the samples are read straight from
+	 * it. The input is left positioned after the sound
+	 * 
+	 * @param input
+	 * @throws IOException
+	 *            If the format is not recognised
+	 */
+	public Sound( ByteBuffer input ) throws IOException
+	{
+		format = format( input.getInt() );
+		sampleRate = input.getInt();
+
+		int length = input.getInt();
+		ByteBuffer view = input.slice();
+		view.limit( length );
+		data = view.slice();
 
-		data = ByteBuffer.wrap( bd );
+		input.position( input.position() + length );
 
-		Format possibleFormat = null;
+		SoundSystem.registerSound( this );
+	}
 
+	private static Format format( int alFormat ) throws IOException
+	{
 		for( Format f : Format.values() )
 		{
-			if( f.alFormat == alf )
+			if( f.alFormat == alFormat )
 			{
-				possibleFormat = f;
-				break;
+				return f;
 			}
 		}
 
-		if( possibleFormat == null )
+		throw new IOException( "Unrecognised AL format : " + alFormat );
+	}
+
+	/**
+	 * Renders some more of this sound, if it's being rendered
+	 * 
+	 * @return <code>true</code> if {@link #data} is complete
+	 * @throws IllegalStateException
+	 *            If rendering failed
+	 */
+	synchronized boolean render()
+	{
+		if( rendering != null && rendering.isFinished() )
+		{
+			rendering = null;
+		}
+		else if( rendering != null )
 		{
-			throw new IOException( "Unrecognised AL format : " + alf );
+			rendering.update();
 		}
 
-		format = possibleFormat;
+		if( early != null )
+		{
+			early.reclaim();
 
-		SoundSystem.registerSound( this );
+			if( early.queued() > 0 && !early.isPlaying() )
+			{
+				// starting, or rendering fell behind
+				early.play();
+			}
+			else if( rendering == null && early.queued() == 0 )
+			{
+				early.release();
+				early = null;
+			}
+		}
+
+		return rendering == null;
+	}
+
+	/**
+	 * Starts playing this sound through a source's queue, if it's
+	 * still being rendered. The source is locked until it has played
+	 * 
+	 * @param source
+	 * @return <code>true</code> if the sound is streaming,
+	 *         <code>false</code> if it has already been rendered and
+	 *         should be bound as normal
+	 */
+	synchronized boolean stream( Source source )
+	{
+		if( render() || early != null )
+		{
+			return false;
+		}
+
+		early = new ALStreamSink( source );
+
+		// catch up with what's been rendered so far
+		ByteBuffer done = data.duplicate();
+		done.limit( renderSink.out.position() );
+		if( done.hasRemaining() )
+		{
+			early.queue( done, sampleRate );
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if {@link #data} is complete
+	 */
+	public boolean isRendered()
+	{
+		return render();
+	}
+
+	/**
+	 * Waits for the rest of this sound to be rendered
+	 */
+	private void finishRendering()
+	{
+		while( !render() )
+		{
+			Thread.yield();
+		}
 	}
 
 	/**
 	 * Loads this sound into OpenAL if needed, and returns the buffer
-	 * name
+	 * name. This waits for the sound to be rendered
 	 * 
 	 * @return the OpenAL buffer ID
 	 */
@@ -121,6 +254,8 @@ public class Sound
 	{
 		if( bufferID == -1 )
 		{
+			finishRendering();
+
 			bufferID = AL10.alGenBuffers();
 
 			AL10.alBufferData( bufferID, format.alFormat, data, sampleRate );
@@ -132,8 +267,20 @@ public class Sound
 	/**
 	 * Unloads this sound from OpenAL
 	 */
-	public void destroy()
+	public synchronized void destroy()
 	{
+		if( rendering != null )
+		{
+			rendering.stop();
+			rendering = null;
+		}
+
+		if( early != null )
+		{
+			early.release();
+			early = null;
+		}
+
 		if( bufferID != -1 )
 		{
 			AL10.alDeleteBuffers( bufferID );
@@ -152,7 +299,7 @@ public class Sound
 	{
 		RandomAccessFile rf = new RandomAccessFile( fileName, "rw" );
 		FileChannel ch = rf.getChannel();
-		int fileLength = 4 * 3 + data.capacity();
+		int fileLength = dataSize();
 		rf.setLength( fileLength );
 		MappedByteBuffer buffer = ch.map( FileChannel.MapMode.READ_WRITE, 0, fileLength );
 
@@ -162,6 +309,36 @@ public class Sound
 		ch.close();
 	}
 
+	/**
+	 * Reads a {@link Sound} from a file
+	 * 
+	 * @param fileName
+	 * @return A {@link Sound}
+	 * @throws IOException
+	 */
+	public static Sound readSound( String fileName ) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile( fileName, "r" );
+		FileChannel ch = raf.getChannel();
+		MappedByteBuffer buffer = ch.map( FileChannel.MapMode.READ_ONLY, 0, raf.length() );
+
+		Sound s = new Sound( buffer );
+
+		ch.close();
+
+		return s;
+	}
+
+	/**
+	 * Calculates the size of buffer needed to store this sound
+	 * 
+	 * @return The necessary number of bytes
+	 */
+	public int dataSize()
+	{
+		return 4 * 3 + data.capacity();
+	}
+
 	/**
 	 * Writes this {@link Sound} to a buffer
 	 * 
@@ -169,12 +346,65 @@ public class Sound
 	 */
 	public void write( ByteBuffer buffer )
 	{
+		finishRendering();
+
 		buffer.putInt( format.alFormat );
 		buffer.putInt( sampleRate );
 		buffer.putInt( data.capacity() );
 		buffer.put( data );
 	}
 
+	/**
+	 * Copies rendered chunks into {@link Sound#data}, and to
+	 * {@link Sound#early} if we're streaming
+	 * 
+	 * @author ryanm
+	 */
+	private class DataSink implements StreamSink
+	{
+		private final ByteBuffer out = data.duplicate();
+
+		@Override
+		public void queue( ByteBuffer pcm, int sampleRate )
+		{
+			if( early != null )
+			{
+				early.queue( pcm.duplicate(), sampleRate );
+			}
+
+			out.put( pcm.duplicate() );
+		}
+
+		@Override
+		public int reclaim()
+		{
+			// chunks are copied straight away
+			return 0;
+		}
+
+		@Override
+		public int queued()
+		{
+			return 0;
+		}
+
+		@Override
+		public void play()
+		{
+		}
+
+		@Override
+		public boolean isPlaying()
+		{
+			return true;
+		}
+
+		@Override
+		public void release()
+		{
+		}
+	}
+
 	/**
 	 * Possible sound formats
 	 * 
@@ -211,6 +441,8 @@ public class Sound
 	@Override
 	public String toString()
 	{
+		finishRendering();
+
 		double[] md = Statistics.calculateMeanDeviation( data.asShortBuffer() );
 		StringBuilder buff = new StringBuilder( "Sound length = " );
 		buff.append( ( double ) data.limit() / format.bytesPerSample / sampleRate );
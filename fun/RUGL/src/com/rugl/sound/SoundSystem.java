@@ -4,6 +4,7 @@ package com.rugl.sound;
 import java.lang.ref.WeakReference;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -15,6 +16,7 @@ import org.lwjgl.openal.ALC10;
 import org.lwjgl.openal.Util;
 
 import com.rugl.console.Console;
+import com.ryanm.soundgen.SoundSpec;
 
 /**
  * Encapsulates OpenAL
@@ -91,7 +93,24 @@ public class SoundSystem
 	 */
 	static void registerSound( Sound s )
 	{
-		sounds.add( new WeakReference<Sound>( s ) );
+		synchronized( sounds )
+		{
+			sounds.add( new WeakReference<Sound>( s ) );
+		}
+	}
+
+	private static void unregisterSound( Sound s )
+	{
+		synchronized( sounds )
+		{
+			for( Iterator<WeakReference<Sound>> iter = sounds.iterator(); iter.hasNext(); )
+			{
+				if( iter.next().get() == s )
+				{
+					iter.remove();
+				}
+			}
+		}
 	}
 
 	/**
@@ -110,12 +129,9 @@ public class SoundSystem
 		}
 
 		// delete sounds
-		for( WeakReference<Sound> ws : sounds )
+		for( Sound s : sounds() )
 		{
-			if( ws.get() != null )
-			{
-				ws.get().destroy();
-			}
+			s.destroy();
 		}
 
 		if( sources != null )
@@ -132,10 +148,28 @@ public class SoundSystem
 
 	/**
 	 * Advances the {@link SoundSystem}, updating the idle status of
-	 * all sources
+	 * all sources and rendering {@link Sound}s that are built from a
+	 * {@link SoundSpec}. Call this every frame. Sounds that fail to
+	 * render are logged, destroyed and forgotten
 	 */
 	public static void advance()
 	{
+		for( Sound s : sounds() )
+		{
+			try
+			{
+				s.render();
+			}
+			catch( IllegalStateException e )
+			{
+				Console.error( "Dropping a sound that failed to render : " + e.getMessage() );
+				e.printStackTrace();
+
+				s.destroy();
+				unregisterSound( s );
+			}
+		}
+
 		for( int i = 0; i < sources.length; i++ )
 		{
 			sources[ i ].tick();
@@ -144,6 +178,32 @@ public class SoundSystem
 		Util.checkALError();
 	}
 
+	/**
+	 * @return The live registered sounds
+	 */
+	private static List<Sound> sounds()
+	{
+		List<Sound> live = new ArrayList<Sound>();
+
+		synchronized( sounds )
+		{
+			for( Iterator<WeakReference<Sound>> iter = sounds.iterator(); iter.hasNext(); )
+			{
+				Sound s = iter.next().get();
+				if( s == null )
+				{
+					iter.remove();
+				}
+				else
+				{
+					live.add( s );
+				}
+			}
+		}
+
+		return live;
+	}
+
 	/**
 	 * Gets the first idle {@link Source}, or the source with the
 	 * minimum {@link Source#priority}
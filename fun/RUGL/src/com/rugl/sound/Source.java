@@ -158,7 +158,10 @@ public class Source
 	}
 
 	/**
-	 * Binds a sound to this source
+	 * Binds a sound to this source. If the sound is still being
+	 * rendered and this source is not locked, it is played through
+	 * the source's queue as it renders, and the source is locked until
+	 * it's done
 	 * 
 	 * @param s
 	 *           the new sound, or null for no sound
@@ -176,6 +179,10 @@ public class Source
 			boundBuffer = 0;
 			AL10.alSourcei( id, AL10.AL_BUFFER, boundBuffer );
 		}
+		else if( !isLocked() && s.stream( this ) )
+		{
+			// no need to wait for the whole buffer
+		}
 		else
 		{
 			if( boundBuffer != s.getBufferName() )
@@ -188,6 +195,48 @@ public class Source
 		return this;
 	}
 
+	/**
+	 * Adds a buffer to the end of this source's queue, for streaming
+	 * 
+	 * @param buffer
+	 *           The OpenAL buffer name
+	 * @return this {@link Source}
+	 */
+	public Source queueBuffer( int buffer )
+	{
+		boundBuffer = 0;
+		AL10.alSourceQueueBuffers( id, buffer );
+
+		return this;
+	}
+
+	/**
+	 * Removes a buffer from the front of this source's queue. Check
+	 * {@link #buffersProcessed()} first
+	 * 
+	 * @return The OpenAL buffer name
+	 */
+	public int unqueueBuffer()
+	{
+		return AL10.alSourceUnqueueBuffers( id );
+	}
+
+	/**
+	 * @return The number of queued buffers that have finished playing
+	 */
+	public int buffersProcessed()
+	{
+		return AL10.alGetSourcei( id, AL10.AL_BUFFERS_PROCESSED );
+	}
+
+	/**
+	 * @return The number of buffers in this source's queue
+	 */
+	public int buffersQueued()
+	{
+		return AL10.alGetSourcei( id, AL10.AL_BUFFERS_QUEUED );
+	}
+
 	/**
 	 * Plays the source
 	 * 
@@ -37,7 +37,13 @@ public class SoundTest
 
 		try
 		{
-			Thread.sleep( 1100 );
+			// rendering and streaming happen as the sound system advances
+			long end = System.currentTimeMillis() + 1100;
+			while( System.currentTimeMillis() < end )
+			{
+				SoundSystem.advance();
+				Thread.sleep( 10 );
+			}
 		}
 		catch( InterruptedException e )
 		{
@@ -37,8 +37,8 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -132,7 +132,7 @@ public final class Font
 	/**
 	 * The font's images
 	 */
-	private Set<GlyphImage> glyphImages = new HashSet<GlyphImage>();
+	private Set<GlyphImage> glyphImages = new LinkedHashSet<GlyphImage>();
 
 	/**
 	 * Maps Unicode characters to glyphs. This approach is OK for ASCII
@@ -0,0 +1,257 @@
+
+package com.rugl.text;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.rugl.geom.TexturedShape;
+import com.rugl.text.TextLayout.Alignment;
+
+/**
+ * Keeps recently-used {@link TextLayout}s, so that text that is drawn
+ * every frame doesn't have to be laid out every frame. Layouts are
+ * looked up by text, font, alignment, line length and colour. The
+ * least-recently used are dropped to keep within a memory budget
+ * 
+ * @author ryanm
+ */
+public class LayoutCache
+{
+	/**
+	 * Shared by the console and anyone else who wants it
+	 */
+	public static final LayoutCache shared = new LayoutCache( 512 * 1024 );
+
+	/**
+	 * Maximum bytes of cached layouts
+	 */
+	private int budget;
+
+	/**
+	 * In order of least-recently used
+	 */
+	private final LinkedHashMap<Key, TextLayout> layouts =
+			new LinkedHashMap<Key, TextLayout>( 16, 0.75f, true );
+
+	private int bytes = 0;
+
+	private int hits = 0;
+
+	private int misses = 0;
+
+	private int evictions = 0;
+
+	/**
+	 * @param budget
+	 *           The maximum number of bytes to keep
+	 */
+	public LayoutCache( int budget )
+	{
+		this.budget = budget;
+	}
+
+	/**
+	 * Gets a layout, building it if we haven't got it already. The
+	 * result is a copy that the caller can transform as they like
+	 * 
+	 * @param text
+	 * @param font
+	 * @param alignment
+	 * @param lineLength
+	 * @param colour
+	 * @return A {@link TextLayout} of the text
+	 */
+	public TextLayout get( CharSequence text, Font font, Alignment alignment,
+			float lineLength, int colour )
+	{
+		Key key = new Key( text.toString(), font, alignment, lineLength, colour );
+
+		TextLayout tl = layouts.get( key );
+
+		if( tl == null )
+		{
+			misses++;
+
+			tl = new TextLayout( text, font, alignment, lineLength, colour );
+			int size = size( tl );
+
+			if( size <= budget )
+			{
+				layouts.put( key, tl );
+				bytes += size;
+				evict();
+			}
+			else
+			{
+				// too big to keep, so no-one else will see this one
+				return tl;
+			}
+		}
+		else
+		{
+			hits++;
+		}
+
+		return new TextLayout( tl );
+	}
+
+	/**
+	 * Drops all layouts
+	 */
+	public void clear()
+	{
+		layouts.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @param budget
+	 *           The maximum number of bytes to keep
+	 */
+	public void setBudget( int budget )
+	{
+		this.budget = budget;
+		evict();
+	}
+
+	/**
+	 * @return The maximum number of bytes to keep
+	 */
+	public int getBudget()
+	{
+		return budget;
+	}
+
+	/**
+	 * @return The approximate number of bytes held
+	 */
+	public int bytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * @return The number of layouts held
+	 */
+	public int size()
+	{
+		return layouts.size();
+	}
+
+	/**
+	 * @return The number of requests that were already laid out
+	 */
+	public int hits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return The number of requests that had to be laid out
+	 */
+	public int misses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return The number of layouts dropped to stay within budget
+	 */
+	public int evictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * @return The fraction of requests that were already laid out
+	 */
+	public float hitRatio()
+	{
+		int requests = hits + misses;
+		return requests == 0 ? 0 : ( float ) hits / requests;
+	}
+
+	@Override
+	public String toString()
+	{
+		return layouts.size() + " layouts, " + bytes + "/" + budget + " bytes, " + hits
+				+ " hits, " + misses + " misses (" + ( int ) ( 100 * hitRatio() )
+				+ "% hit), " + evictions + " evictions";
+	}
+
+	/**
+	 * Drops least-recently used layouts until we're within budget
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<Key, TextLayout>> iter = layouts.entrySet().iterator();
+
+		while( bytes > budget && iter.hasNext() )
+		{
+			bytes -= size( iter.next().getValue() );
+			iter.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * @param tl
+	 * @return The approximate number of bytes in the layout's arrays
+	 *         and text
+	 */
+	private static int size( TextLayout tl )
+	{
+		TexturedShape ts = tl.textShape;
+		int floats = ts.vertices.length + ts.texCoords.length;
+		int ints = ts.triangles.length + ts.colours.length;
+
+		return 4 * ( floats + ints ) + 2 * tl.fullText.length();
+	}
+
+	private static class Key
+	{
+		private final String text;
+
+		private final Font font;
+
+		private final Alignment alignment;
+
+		private final float lineLength;
+
+		private final int colour;
+
+		private Key( String text, Font font, Alignment alignment, float lineLength,
+				int colour )
+		{
+			this.text = text;
+			this.font = font;
+			this.alignment = alignment;
+			this.lineLength = lineLength;
+			this.colour = colour;
+		}
+
+		@Override
+		public boolean equals( Object o )
+		{
+			if( o instanceof Key )
+			{
+				Key k = ( Key ) o;
+				return text.equals( k.text ) && font == k.font && alignment == k.alignment
+						&& Float.compare( lineLength, k.lineLength ) == 0 && colour == k.colour;
+			}
+
+			return false;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int h = text.hashCode();
+			h = 31 * h + System.identityHashCode( font );
+			h = 31 * h + ( alignment == null ? 0 : alignment.hashCode() );
+			h = 31 * h + Float.floatToIntBits( lineLength );
+			return 31 * h + colour;
+		}
+	}
+}
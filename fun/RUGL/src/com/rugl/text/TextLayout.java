@@ -2,6 +2,7 @@
 package com.rugl.text;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -9,6 +10,7 @@ import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
 
 import com.rugl.geom.ColouredShape;
+import com.rugl.geom.Shape;
 import com.rugl.geom.TexturedShape;
 import com.rugl.geom.TexturedShapeBuilder;
 
@@ -218,6 +220,27 @@ public class TextLayout
 		lines = linesList.toArray( new CharSequence[ linesList.size() ] );
 	}
 
+	/**
+	 * Copy constructor. The copy's vertices are its own, so it can be
+	 * transformed without affecting the original. Everything else is
+	 * shared
+	 * 
+	 * @param tl
+	 */
+	public TextLayout( TextLayout tl )
+	{
+		fullText = tl.fullText;
+		lines = tl.lines;
+		alignment = tl.alignment;
+		font = tl.font;
+
+		TexturedShape ts = tl.textShape;
+		Shape s = new Shape( Arrays.copyOf( ts.vertices, ts.vertices.length ), ts.triangles );
+		textShape =
+				new TexturedShape( new ColouredShape( s, ts.colours, ts.state ), ts.texCoords,
+						ts.texture );
+	}
+
 	/**
 	 * Splits a paragraph into lines
 	 * 
@@ -40,6 +40,8 @@ import org.lwjgl.opengl.GL11;
 import org.lwjgl.util.ReadableDimension;
 import org.lwjgl.util.WritableDimension;
 
+import com.ryanm.util.io.FileUtils;
+
 /**
  * Represents a chunk of image data.
  * 
@@ -155,7 +157,10 @@ public class Image implements ReadableDimension
 
 	/**
 	 * Constructs an image from the data in the buffer, which is of the
-	 * format "int:width int:height int:formatOrdinal data"
+	 * format "int:width int:height int:formatOrdinal data". The image
+	 * data is not copied, so if the input is a mapped file the pixels
+	 * are read straight from it. The input is left positioned after
+	 * the image
 	 * 
 	 * @param input
 	 *           contains the image data
@@ -170,9 +175,13 @@ public class Image implements ReadableDimension
 				+ formatOrdinal + " not found";
 		format = Format.values()[ formatOrdinal ];
 
-		data = input.slice();
+		// no copy: the image data is a view of the input
+		int length = width * height * format.bytes;
+		ByteBuffer view = input.slice();
+		view.limit( length );
+		data = view.slice();
 
-		assert width * height * format.bytes == data.capacity();
+		input.position( input.position() + length );
 	}
 
 	/**
@@ -193,14 +202,9 @@ public class Image implements ReadableDimension
 				+ formatOrdinal + " not found";
 		format = Format.values()[ formatOrdinal ];
 
-		byte[] bd = new byte[ width * height * format.bytes ];
-
-		dis.readFully( bd );
-
-		data = BufferUtils.createByteBuffer( bd.length );
-		data.put( bd );
-
-		assert width * height * format.bytes == data.capacity();
+		data = BufferUtils.createByteBuffer( width * height * format.bytes );
+		FileUtils.readFully( is, data );
+		data.flip();
 	}
 
 	/**
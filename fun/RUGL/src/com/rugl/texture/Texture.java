@@ -43,32 +43,35 @@ import com.rugl.texture.TextureFactory.GLTexture;
 public class Texture implements ReadableDimension
 {
 	/**
-	 * The parent texture
+	 * Where the texture is. Moving the texture replaces the whole
+	 * placement, so readers always see a consistent one
 	 */
-	public final GLTexture parent;
+	private volatile Placement placement;
 
 	/**
-	 * The bottom left corner of the texture, in texture coordinates
+	 * The source of the texture data
 	 */
-	private final Vector2f origin;
+	private final Image sourceImage;
+
+	private final ReadableDimension size;
 
 	/**
-	 * The vector from the top bottom corner to the top right, in
-	 * texture coordinates
+	 * Pinned textures are never evicted or moved by
+	 * {@link TextureResidency}
 	 */
-	private final Vector2f extent;
+	public boolean pinned = false;
 
 	/**
-	 * The source of the texture data
+	 * The {@link TextureResidency#frame()} in which this texture was
+	 * last drawn
 	 */
-	private final Image sourceImage;
+	int lastDrawn = 0;
 
 	/**
-	 * The bottom left corner, in pixels
+	 * The last {@link GLTexture} we were in, which has the format we
+	 * need if we are evicted
 	 */
-	private final Point pixelOrigin;
-
-	private final ReadableDimension size;
+	GLTexture home;
 
 	/**
 	 * Constructs a new Texture
@@ -80,14 +83,10 @@ public class Texture implements ReadableDimension
 	 */
 	Texture( GLTexture parent, Vector2f bottomLeft, Vector2f topRight, Image source )
 	{
-		this.parent = parent;
-		origin = bottomLeft;
-		extent = Vector2f.sub( topRight, bottomLeft, null );
 		sourceImage = source;
 		size = sourceImage;
-		pixelOrigin =
-				new Point( ( int ) ( origin.x * parent.getWidth() ),
-						( int ) ( origin.y * parent.getHeight() ) );
+		home = parent;
+		placement = new Placement( parent, bottomLeft, topRight, 0 );
 	}
 
 	/**
@@ -97,15 +96,57 @@ public class Texture implements ReadableDimension
 	 */
 	Texture( GLTexture parent )
 	{
-		this.parent = parent;
-		origin = new Vector2f( 0, 0 );
-		extent = new Vector2f( 1, 1 );
 		sourceImage = null;
 		size = parent;
+		home = parent;
+		placement = new Placement( parent, new Vector2f( 0, 0 ), new Vector2f( 1, 1 ), 0 );
+	}
 
-		pixelOrigin =
-				new Point( ( int ) ( origin.x * parent.getWidth() ),
-						( int ) ( origin.y * parent.getHeight() ) );
+	/**
+	 * Moves this texture to a new place
+	 * 
+	 * @param parent
+	 *           The new parent, or <code>null</code> if the texture is
+	 *           no longer resident
+	 * @param bottomLeft
+	 * @param topRight
+	 */
+	void move( GLTexture parent, Vector2f bottomLeft, Vector2f topRight )
+	{
+		if( parent != null )
+		{
+			home = parent;
+		}
+
+		placement = new Placement( parent, bottomLeft, topRight, placement.version + 1 );
+	}
+
+	/**
+	 * @return The {@link GLTexture} that holds this texture, or
+	 *         <code>null</code> if it has been evicted
+	 */
+	public GLTexture getParent()
+	{
+		return placement.parent;
+	}
+
+	/**
+	 * @return <code>true</code> if this texture is in a
+	 *         {@link GLTexture}
+	 */
+	public boolean isResident()
+	{
+		return placement.parent != null;
+	}
+
+	/**
+	 * @return A number that changes whenever this texture moves, and
+	 *         hence whenever corrected texture coordinates have to be
+	 *         worked out again
+	 */
+	public int version()
+	{
+		return placement.version;
 	}
 
 	/**
@@ -116,11 +157,25 @@ public class Texture implements ReadableDimension
 	 */
 	public State applyTo( State state )
 	{
+		lastDrawn = TextureResidency.frame();
+
+		if( placement.parent == null )
+		{
+			TextureResidency.restore( this );
+		}
+
+		GLTexture parent = placement.parent;
+		if( parent == null )
+		{
+			// no room anywhere
+			return state;
+		}
+
 		parent.regenerateMipmaps();
 
-		if( state.texture.id != getTextureID() )
+		if( state.texture.id != parent.id() )
 		{
-			state = state.with( state.texture.with( getTextureID() ) );
+			state = state.with( state.texture.with( parent.id() ) );
 		}
 
 		return state;
@@ -133,7 +188,8 @@ public class Texture implements ReadableDimension
 	 */
 	public int getTextureID()
 	{
-		return parent.id();
+		GLTexture parent = placement.parent;
+		return parent == null ? 0 : parent.id();
 	}
 
 	/**
@@ -156,8 +212,9 @@ public class Texture implements ReadableDimension
 			dest = new Vector2f();
 		}
 
-		dest.x = origin.x + extent.x * s;
-		dest.y = origin.y + extent.y * t;
+		Placement p = placement;
+		dest.x = p.origin.x + p.extent.x * s;
+		dest.y = p.origin.y + p.extent.y * t;
 
 		return dest;
 	}
@@ -187,10 +244,11 @@ public class Texture implements ReadableDimension
 	 */
 	public void correctTexCoords( float[] texCoords )
 	{
+		Placement p = placement;
 		for( int i = 0; i < texCoords.length; i += 2 )
 		{
-			texCoords[ i ] = origin.x + extent.x * texCoords[ i ];
-			texCoords[ i + 1 ] = origin.y + extent.y * texCoords[ i + 1 ];
+			texCoords[ i ] = p.origin.x + p.extent.x * texCoords[ i ];
+			texCoords[ i + 1 ] = p.origin.y + p.extent.y * texCoords[ i + 1 ];
 		}
 	}
 
@@ -229,7 +287,7 @@ public class Texture implements ReadableDimension
 	 */
 	public int getXPosition()
 	{
-		return pixelOrigin.getX();
+		return placement.pixelOrigin.getX();
 	}
 
 	/**
@@ -238,13 +296,57 @@ public class Texture implements ReadableDimension
 	 */
 	public int getYPosition()
 	{
-		return pixelOrigin.getY();
+		return placement.pixelOrigin.getY();
 	}
 
 	@Override
 	public String toString()
 	{
-		return size.getWidth() + "x" + size.getHeight() + " @ (" + pixelOrigin.getX()
-				+ ", " + pixelOrigin.getY() + ")";
+		Placement p = placement;
+		return size.getWidth() + "x" + size.getHeight()
+				+ ( p.parent == null ? " evicted" : " @ (" + p.pixelOrigin.getX() + ", "
+						+ p.pixelOrigin.getY() + ")" );
+	}
+
+	/**
+	 * Where a texture is
+	 */
+	private static class Placement
+	{
+		/**
+		 * The parent texture
+		 */
+		private final GLTexture parent;
+
+		/**
+		 * The bottom left corner of the texture, in texture coordinates
+		 */
+		private final Vector2f origin;
+
+		/**
+		 * The vector from the top bottom corner to the top right, in
+		 * texture coordinates
+		 */
+		private final Vector2f extent;
+
+		/**
+		 * The bottom left corner, in pixels
+		 */
+		private final Point pixelOrigin;
+
+		private final int version;
+
+		private Placement( GLTexture parent, Vector2f bottomLeft, Vector2f topRight,
+				int version )
+		{
+			this.parent = parent;
+			this.version = version;
+			origin = bottomLeft;
+			extent = Vector2f.sub( topRight, bottomLeft, null );
+			pixelOrigin =
+					parent == null ? new Point() : new Point(
+							( int ) ( origin.x * parent.getWidth() ),
+							( int ) ( origin.y * parent.getHeight() ) );
+		}
 	}
 }
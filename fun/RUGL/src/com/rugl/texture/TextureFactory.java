@@ -27,6 +27,7 @@
 
 package com.rugl.texture;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.util.Collections;
@@ -45,8 +46,11 @@ import org.lwjgl.util.vector.Vector2f;
 import com.rugl.DisplayConfigurable;
 import com.rugl.GameBox;
 import com.rugl.texture.Image.Format;
+import com.rugl.util.AssetArchive;
 import com.rugl.util.GLUtil;
+import com.rugl.util.Packer;
 import com.rugl.util.RectanglePacker;
+import com.rugl.util.SkylinePacker;
 
 /**
  * Builds and manages {@link Texture}s. Textures build through this
@@ -60,13 +64,28 @@ public class TextureFactory
 	/**
 	 * A list of OpenGL textures
 	 */
-	private static List<GLTexture> textures = new LinkedList<GLTexture>();
+	static List<GLTexture> textures = new LinkedList<GLTexture>();
 
 	/**
 	 * The default dimension of the OpenGL textures
 	 */
 	private static int textureDimension = 1024;
 
+	/**
+	 * If <code>true</code>, new {@link GLTexture}s pack images with a
+	 * {@link SkylinePacker}, otherwise with a {@link RectanglePacker}
+	 */
+	public static boolean skylinePacking = true;
+
+	/**
+	 * Skyline packing loses the space under the skyline as images are
+	 * released. When an image doesn't fit in any atlas, atlases with
+	 * at least this fraction of their area free, and that have had
+	 * images released since they were last compacted, are compacted
+	 * before a new atlas is built
+	 */
+	public static float compactionThreshold = 0.25f;
+
 	static
 	{
 		GameBox.dispConf.addListener( new DisplayConfigurable.Listener() {
@@ -155,8 +174,9 @@ public class TextureFactory
 		{
 			for( GLTexture tex : textures )
 			{
-				// match formats
-				if( tex.mipmap == mipmap && tex.format == image.format )
+				// match formats, and skip textures that are too full
+				if( tex.mipmap == mipmap && tex.format == image.format
+						&& tex.canFit( image.getWidth(), image.getHeight() ) )
 				{
 					// try to insert
 					Texture t = tex.addImage( image );
@@ -169,10 +189,27 @@ public class TextureFactory
 				}
 			}
 
+			// recover space lost to churn before resorting to a new atlas
+			for( GLTexture tex : textures )
+			{
+				if( tex.managed && tex.mipmap == mipmap && tex.format == image.format
+						&& tex.isFragmented( image.getWidth() * image.getHeight() )
+						&& tex.compact() )
+				{
+					Texture t = tex.addImage( image );
+
+					if( t != null )
+					{
+						return t;
+					}
+				}
+			}
+
 			// build a new texture
 			try
 			{
 				GLTexture parent = new GLTexture( image.format, null, mipmap, 1 );
+				parent.managed = true;
 				textures.add( parent );
 				return parent.addImage( image );
 			}
@@ -184,6 +221,31 @@ public class TextureFactory
 		}
 	}
 
+	/**
+	 * Loads an image from an {@link AssetArchive} into OpenGL. The
+	 * pixels are uploaded straight from the mapped archive, without
+	 * being copied
+	 * 
+	 * @param archive
+	 * @param name
+	 *           The name of the image in the archive
+	 * @param lonesome
+	 *           <code>true</code> if this texture is to be allocated
+	 *           in a gl texture of minimal size, <code>false</code>
+	 *           for the default size
+	 * @param mipmap
+	 *           <code>true</code> to generate mipmaps, false otherwise
+	 * @return A {@link Texture} object, or null if it was not able to
+	 *         be constructed
+	 * @throws IOException
+	 *            If the archive has no such image
+	 */
+	public static Texture buildTexture( AssetArchive archive, String name,
+			boolean lonesome, boolean mipmap ) throws IOException
+	{
+		return buildTexture( archive.getImage( name ), lonesome, mipmap );
+	}
+
 	/**
 	 * Requests that a new texture be built
 	 * 
@@ -216,6 +278,16 @@ public class TextureFactory
 		}
 	}
 
+	/**
+	 * @param image
+	 * @return The size of an atlas that can hold the image
+	 */
+	static Dimension atlasSize( ReadableDimension image )
+	{
+		return new Dimension( Math.max( textureDimension, image.getWidth() ), Math.max(
+				textureDimension, image.getHeight() ) );
+	}
+
 	/**
 	 * Frees up the space allocated to the supplied texture
 	 * 
@@ -287,11 +359,30 @@ public class TextureFactory
 		 */
 		public final boolean mipmap;
 
+		/**
+		 * The border placed around images
+		 */
+		public final int border;
+
+		/**
+		 * <code>true</code> for the shared atlases built by
+		 * {@link TextureFactory#buildTexture(Image, boolean, boolean)}.
+		 * {@link TextureResidency} may evict from, delete and
+		 * defragment these
+		 */
+		boolean managed = false;
+
 		private boolean mipmapDirty = false;
 
+		/**
+		 * The number of images released since the packer was last
+		 * compacted
+		 */
+		private int releasedSinceCompaction = 0;
+
 		private List<Texture> residentTextures = new LinkedList<Texture>();
 
-		private RectanglePacker<Image> packer;
+		private Packer<Image> packer;
 
 		private Texture pan = null;
 
@@ -314,8 +405,16 @@ public class TextureFactory
 							GLUtil.nextPowerOf2( dim.getHeight() ) ) : new Dimension(
 							textureDimension, textureDimension );
 			this.mipmap = mipmap;
+			this.border = border;
 
-			packer = new RectanglePacker<Image>( size.getWidth(), size.getHeight(), border );
+			if( skylinePacking )
+			{
+				packer = new SkylinePacker<Image>( size.getWidth(), size.getHeight(), border );
+			}
+			else
+			{
+				packer = new RectanglePacker<Image>( size.getWidth(), size.getHeight(), border );
+			}
 
 			recreate();
 		}
@@ -448,16 +547,11 @@ public class TextureFactory
 
 				writeToTexture( rpr, image.getData() );
 
-				Vector2f bottomleft = new Vector2f( rpr.x, rpr.y );
-				Vector2f topRight = new Vector2f( rpr.x + rpr.width, rpr.y + rpr.height );
-
-				bottomleft.x /= size.getWidth();
-				bottomleft.y /= size.getHeight();
-				topRight.x /= size.getWidth();
-				topRight.y /= size.getHeight();
-
-				Texture t = new Texture( this, bottomleft, topRight, image );
+				Texture t =
+						new Texture( this, texCoord( rpr.x, rpr.y ), texCoord( rpr.x
+								+ rpr.width, rpr.y + rpr.height ), image );
 				residentTextures.add( t );
+				TextureResidency.modifications++;
 
 				return t;
 			}
@@ -479,11 +573,13 @@ public class TextureFactory
 		 *         <code>false</code> if was not resident on this
 		 *         {@link GLTexture}
 		 */
-		private boolean release( Texture t )
+		boolean release( Texture t )
 		{
 			if( residentTextures.remove( t ) )
 			{
 				packer.remove( t.getSourceImage() );
+				releasedSinceCompaction++;
+				TextureResidency.modifications++;
 				return true;
 			}
 			else
@@ -492,6 +588,169 @@ public class TextureFactory
 			}
 		}
 
+		/**
+		 * Puts an evicted texture back in this {@link GLTexture}
+		 * 
+		 * @param t
+		 * @return <code>true</code> if it fitted
+		 */
+		boolean readmit( Texture t )
+		{
+			Image image = t.getSourceImage();
+			assert image.format == format;
+			assert !t.isResident();
+
+			RectanglePacker.Rectangle rpr =
+					packer.insert( image.getWidth(), image.getHeight(), image );
+
+			if( rpr != null )
+			{
+				writeToTexture( rpr, image.getData() );
+
+				t.move( this, texCoord( rpr.x, rpr.y ), texCoord( rpr.x + rpr.width, rpr.y
+						+ rpr.height ) );
+				residentTextures.add( t );
+				TextureResidency.modifications++;
+
+				return true;
+			}
+
+			return false;
+		}
+
+		/**
+		 * Takes over a set of textures that have been packed elsewhere,
+		 * and moves them here
+		 * 
+		 * @param packed
+		 *           The packer that placed them
+		 * @param textures
+		 *           The textures
+		 * @param pixels
+		 *           The texture data, with every texture in place
+		 */
+		void adopt( Packer<Image> packed, List<Texture> textures, ByteBuffer pixels )
+		{
+			assert residentTextures.isEmpty();
+
+			packer = packed;
+
+			GL11.glBindTexture( GL11.GL_TEXTURE_2D, id );
+			GL11.glPixelStorei( GL11.GL_UNPACK_ALIGNMENT, format.bytes );
+			GL11.glTexSubImage2D( GL11.GL_TEXTURE_2D, 0, 0, 0, size.getWidth(),
+					size.getHeight(), format.glFormat, GL11.GL_UNSIGNED_BYTE, pixels );
+			GLUtil.checkGLError();
+
+			mipmapDirty = mipmap;
+
+			for( Texture t : textures )
+			{
+				RectanglePacker.Rectangle rpr = packer.findRectangle( t.getSourceImage() );
+
+				t.move( this, texCoord( rpr.x, rpr.y ), texCoord( rpr.x + rpr.width, rpr.y
+						+ rpr.height ) );
+				residentTextures.add( t );
+			}
+
+			TextureResidency.modifications++;
+		}
+
+		/**
+		 * @param area
+		 *           The area of an image that didn't fit, in pixels
+		 * @return <code>true</code> if there is room for the image, and
+		 *         {@link TextureFactory#compactionThreshold} of the
+		 *         texture, that churn has made unusable
+		 */
+		boolean isFragmented( int area )
+		{
+			int free = size.getWidth() * size.getHeight() - usedPixels();
+
+			return releasedSinceCompaction > 0 && free >= area
+					&& free >= compactionThreshold * size.getWidth() * size.getHeight();
+		}
+
+		/**
+		 * Repacks the resident images to recover the space lost to
+		 * churn, and moves their {@link Texture}s to match
+		 * 
+		 * @return <code>true</code> if the images were repacked
+		 */
+		boolean compact()
+		{
+			releasedSinceCompaction = 0;
+
+			if( !packer.compact() )
+			{
+				return false;
+			}
+
+			for( Texture t : residentTextures )
+			{
+				RectanglePacker.Rectangle rpr = packer.findRectangle( t.getSourceImage() );
+
+				writeToTexture( rpr, t.getSourceImage().getData() );
+
+				t.move( this, texCoord( rpr.x, rpr.y ), texCoord( rpr.x + rpr.width, rpr.y
+						+ rpr.height ) );
+			}
+
+			TextureResidency.modifications++;
+
+			return true;
+		}
+
+		/**
+		 * @param width
+		 * @param height
+		 * @return <code>false</code> if an image of that size will
+		 *         definitely not fit
+		 */
+		boolean canFit( int width, int height )
+		{
+			return packer.canFit( width, height );
+		}
+
+		/**
+		 * Deletes the OpenGL texture. Only call this once it's empty
+		 */
+		void delete()
+		{
+			assert residentTextures.isEmpty();
+
+			GL11.glDeleteTextures( id );
+			TextureFactory.textures.remove( this );
+		}
+
+		/**
+		 * @return The approximate video memory used, in bytes
+		 */
+		public int bytes()
+		{
+			int b = size.getWidth() * size.getHeight() * format.bytes;
+
+			// mipmaps add a third
+			return mipmap ? b + b / 3 : b;
+		}
+
+		/**
+		 * @return The number of pixels occupied by resident textures
+		 */
+		public int usedPixels()
+		{
+			int used = 0;
+			for( Texture t : residentTextures )
+			{
+				used += t.getWidth() * t.getHeight();
+			}
+			return used;
+		}
+
+		private Vector2f texCoord( int x, int y )
+		{
+			return new Vector2f( ( float ) x / size.getWidth(), ( float ) y / size.getHeight() );
+		}
+
 		private void writeToTexture( RectanglePacker.Rectangle r, ByteBuffer data )
 		{
 			assert r.width * r.height * format.bytes == data.capacity() : r + " * "
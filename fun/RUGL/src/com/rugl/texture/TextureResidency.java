@@ -0,0 +1,593 @@
+package com.rugl.texture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.util.Dimension;
+import org.lwjgl.util.vector.Vector2f;
+
+import com.rugl.console.Console;
+import com.rugl.texture.Image.Format;
+import com.rugl.texture.TextureFactory.GLTexture;
+import com.rugl.util.Packer;
+import com.rugl.util.RectanglePacker;
+import com.rugl.util.SkylinePacker;
+
+/**
+ * Keeps the shared texture atlases within a video memory budget. When
+ * over budget, whole atlases are evicted, the one whose newest
+ * {@link Texture} was drawn longest ago first, as evicting single
+ * textures frees nothing while their atlas stays in use. An evicted
+ * texture keeps its
+ * source {@link Image}, which is what the atlas was filled from, and
+ * goes back into an atlas the next time it is drawn.
+ * <p>
+ * Evictions and removals leave holes, so the atlases can be
+ * defragmented: the live textures are packed into fresh atlases on a
+ * background thread, and the results are uploaded and swapped in on
+ * the next {@link #advance()}. Only atlases built by
+ * {@link TextureFactory#buildTexture(Image, boolean, boolean)} are
+ * touched, and {@link Texture#pinned} textures are left alone. Pin
+ * the textures of shapes that are baked into a
+ * {@link com.rugl.geom.CompiledShape}, as their texture coordinates
+ * won't follow a move
+ * 
+ * @author ryanm
+ */
+public class TextureResidency
+{
+	/**
+	 * The video memory budget for the shared atlases, in bytes
+	 */
+	public static int budget = 128 * 1024 * 1024;
+
+	/**
+	 * Incremented whenever a texture is added, removed or moved, so a
+	 * defragmentation plan can tell if it is out of date
+	 */
+	static int modifications = 0;
+
+	private static int frame = 1;
+
+	private static int evictions = 0;
+
+	private static int restores = 0;
+
+	private static int deletions = 0;
+
+	private static int defrags = 0;
+
+	private static boolean defragging = false;
+
+	/**
+	 * A finished defragmentation plan, waiting to be applied
+	 */
+	private static volatile Plan plan = null;
+
+	/**
+	 * @return The current frame number
+	 */
+	public static int frame()
+	{
+		return frame;
+	}
+
+	/**
+	 * Call once a frame from the rendering thread. Applies finished
+	 * defragmentation and keeps within budget
+	 */
+	public static void advance()
+	{
+		frame++;
+
+		Plan p = plan;
+		if( p != null )
+		{
+			plan = null;
+			defragging = false;
+			apply( p );
+		}
+
+		enforceBudget();
+	}
+
+	/**
+	 * @return The video memory used by the shared atlases, in bytes
+	 */
+	public static int residentBytes()
+	{
+		int bytes = 0;
+		for( GLTexture glt : TextureFactory.textures )
+		{
+			if( glt.managed )
+			{
+				bytes += glt.bytes();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Evicts atlases, least-recently drawn first, until we're within
+	 * {@link #budget}. Atlases holding a texture drawn in this frame or
+	 * the last, or a texture that can't be evicted, are left alone
+	 */
+	public static void enforceBudget()
+	{
+		int bytes = residentBytes();
+		while( bytes > budget )
+		{
+			GLTexture victim = victim();
+			if( victim == null )
+			{
+				break;
+			}
+
+			if( victim.getResidents().isEmpty() )
+			{
+				victim.delete();
+				deletions++;
+			}
+			else
+			{
+				for( Texture t : new ArrayList<Texture>( victim.getResidents() ) )
+				{
+					evict( t );
+				}
+			}
+
+			int after = residentBytes();
+			if( after >= bytes )
+			{ // nothing freed, so more of the same won't help
+				break;
+			}
+			bytes = after;
+		}
+	}
+
+	/**
+	 * Evicts the least-recently drawn textures. This frees no memory
+	 * unless their atlases empty: {@link #enforceBudget()} evicts whole
+	 * atlases instead
+	 * 
+	 * @param count
+	 *           The maximum number to evict
+	 * @return The number evicted
+	 */
+	public static int evict( int count )
+	{
+		int n = 0;
+		for( Texture t : evictable() )
+		{
+			if( n >= count )
+			{
+				break;
+			}
+
+			evict( t );
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Starts defragmenting the atlases in the background. The results
+	 * are applied on a later {@link #advance()}, if nothing has changed
+	 * in the meantime
+	 * 
+	 * @return <code>false</code> if defragmentation is already under
+	 *         way
+	 */
+	public static boolean defragment()
+	{
+		if( defragging )
+		{
+			return false;
+		}
+
+		// gather the live textures of each kind of atlas
+		final Map<String, List<GLTexture>> groups =
+				new LinkedHashMap<String, List<GLTexture>>();
+		for( GLTexture glt : TextureFactory.textures )
+		{
+			if( glt.managed && !hasPinned( glt ) )
+			{
+				String key =
+						glt.format + " " + glt.mipmap + " " + glt.border + " " + glt.getWidth()
+								+ "x" + glt.getHeight();
+				List<GLTexture> l = groups.get( key );
+				if( l == null )
+				{
+					l = new ArrayList<GLTexture>();
+					groups.put( key, l );
+				}
+				l.add( glt );
+			}
+		}
+
+		final List<List<Texture>> live = new ArrayList<List<Texture>>();
+		for( List<GLTexture> group : groups.values() )
+		{
+			List<Texture> l = new ArrayList<Texture>();
+			for( GLTexture glt : group )
+			{
+				l.addAll( glt.getResidents() );
+			}
+			live.add( l );
+		}
+
+		final int startModifications = modifications;
+		defragging = true;
+
+		Thread t = new Thread( "Texture defragmenter" ) {
+			@Override
+			public void run()
+			{
+				Plan p = new Plan( startModifications );
+
+				int g = 0;
+				for( List<GLTexture> group : groups.values() )
+				{
+					p.plan( group, live.get( g++ ) );
+				}
+
+				plan = p;
+			}
+		};
+		t.setDaemon( true );
+		t.setPriority( Thread.MIN_PRIORITY );
+		t.start();
+
+		return true;
+	}
+
+	/**
+	 * @return A description of the atlases and what we've been up to
+	 */
+	public static String status()
+	{
+		StringBuilder buff = new StringBuilder();
+
+		for( GLTexture glt : TextureFactory.textures )
+		{
+			buff.append( "id " ).append( glt.id() ).append( glt.managed ? " shared " : " own " );
+			buff.append( glt.format ).append( " " ).append( glt.getWidth() ).append( "x" )
+					.append( glt.getHeight() );
+			buff.append( ", " ).append( glt.getResidents().size() ).append( " textures, " );
+			buff.append( 100L * glt.usedPixels() / ( glt.getWidth() * glt.getHeight() ) )
+					.append( "% used\n" );
+		}
+
+		buff.append( residentBytes() / 1024 ).append( "/" ).append( budget / 1024 );
+		buff.append( "KB in shared atlases. " ).append( evictions ).append( " evictions, " );
+		buff.append( restores ).append( " restores, " ).append( deletions );
+		buff.append( " atlases deleted, " ).append( defrags ).append( " defragmentations" );
+		if( defragging )
+		{
+			buff.append( ", defragmenting" );
+		}
+
+		return buff.toString();
+	}
+
+	/**
+	 * Puts an evicted texture back into an atlas
+	 * 
+	 * @param t
+	 */
+	static void restore( Texture t )
+	{
+		Image image = t.getSourceImage();
+		GLTexture home = t.home;
+
+		if( image == null || home == null )
+		{
+			return;
+		}
+
+		for( GLTexture glt : TextureFactory.textures )
+		{
+			if( glt.managed && glt.format == home.format && glt.mipmap == home.mipmap
+					&& glt.canFit( image.getWidth(), image.getHeight() ) && glt.readmit( t ) )
+			{
+				restores++;
+				return;
+			}
+		}
+
+		GLTexture glt =
+				TextureFactory.createTexture( home.format, TextureFactory.atlasSize( image ),
+						home.mipmap, home.border );
+		if( glt != null )
+		{
+			glt.managed = true;
+			if( glt.readmit( t ) )
+			{
+				restores++;
+			}
+		}
+	}
+
+	private static void evict( Texture t )
+	{
+		GLTexture glt = t.getParent();
+
+		if( glt.release( t ) )
+		{
+			t.move( null, new Vector2f(), new Vector2f() );
+			evictions++;
+
+			if( glt.getResidents().isEmpty() )
+			{
+				glt.delete();
+				deletions++;
+			}
+		}
+	}
+
+	/**
+	 * @return The atlas whose newest texture was drawn longest ago, of
+	 *         those that can be evicted whole, or <code>null</code>
+	 */
+	private static GLTexture victim()
+	{
+		GLTexture victim = null;
+		int victimDrawn = Integer.MAX_VALUE;
+
+		for( GLTexture glt : TextureFactory.textures )
+		{
+			if( !glt.managed )
+			{
+				continue;
+			}
+
+			int newest = 0;
+			boolean evictable = true;
+			for( Texture t : glt.getResidents() )
+			{
+				if( t.pinned || t.getSourceImage() == null || t.lastDrawn >= frame - 1 )
+				{
+					evictable = false;
+					break;
+				}
+				newest = Math.max( newest, t.lastDrawn );
+			}
+
+			if( evictable && newest < victimDrawn )
+			{
+				victim = glt;
+				victimDrawn = newest;
+			}
+		}
+
+		return victim;
+	}
+
+	/**
+	 * @return The textures that can be evicted, least-recently drawn
+	 *         first
+	 */
+	private static List<Texture> evictable()
+	{
+		List<Texture> l = new ArrayList<Texture>();
+
+		for( GLTexture glt : TextureFactory.textures )
+		{
+			if( glt.managed )
+			{
+				for( Texture t : glt.getResidents() )
+				{
+					if( !t.pinned && t.getSourceImage() != null && t.lastDrawn < frame - 1 )
+					{
+						l.add( t );
+					}
+				}
+			}
+		}
+
+		Collections.sort( l, new Comparator<Texture>() {
+			@Override
+			public int compare( Texture a, Texture b )
+			{
+				return a.lastDrawn < b.lastDrawn ? -1 : a.lastDrawn > b.lastDrawn ? 1 : 0;
+			}
+		} );
+
+		return l;
+	}
+
+	private static boolean hasPinned( GLTexture glt )
+	{
+		for( Texture t : glt.getResidents() )
+		{
+			if( t.pinned )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void apply( Plan p )
+	{
+		if( p.modifications != modifications )
+		{
+			Console.log( "Textures changed during defragmentation, discarding" );
+			return;
+		}
+
+		int before = p.replaced.size();
+
+		for( Atlas a : p.atlases )
+		{
+			GLTexture glt =
+					TextureFactory.createTexture( a.format, a.size, a.mipmap, a.border );
+
+			if( glt == null )
+			{
+				return;
+			}
+
+			glt.managed = true;
+
+			for( Texture t : a.textures )
+			{
+				t.getParent().release( t );
+			}
+
+			glt.adopt( a.packer, a.textures, a.pixels );
+		}
+
+		for( GLTexture glt : p.replaced )
+		{
+			glt.delete();
+		}
+
+		defrags++;
+		Console.log( "Defragmented " + before + " atlases into " + p.atlases.size() );
+	}
+
+	/**
+	 * New atlases for the live textures, worked out away from the
+	 * rendering thread
+	 */
+	private static class Plan
+	{
+		private final int modifications;
+
+		private final List<Atlas> atlases = new ArrayList<Atlas>();
+
+		private final List<GLTexture> replaced = new ArrayList<GLTexture>();
+
+		private Plan( int modifications )
+		{
+			this.modifications = modifications;
+		}
+
+		/**
+		 * Packs a group of atlases' textures as tightly as possible. If
+		 * that doesn't save an atlas, the group is left as it is
+		 */
+		private void plan( List<GLTexture> group, List<Texture> textures )
+		{
+			GLTexture first = group.get( 0 );
+			Dimension size = new Dimension( first.getWidth(), first.getHeight() );
+
+			List<Atlas> packed = new ArrayList<Atlas>();
+			List<Texture> remaining = textures;
+
+			while( !remaining.isEmpty() )
+			{
+				Atlas a = new Atlas( first, size );
+
+				int[] widths = new int[ remaining.size() ];
+				int[] heights = new int[ remaining.size() ];
+				List<Image> images = new ArrayList<Image>();
+				for( int i = 0; i < widths.length; i++ )
+				{
+					Image image = remaining.get( i ).getSourceImage();
+					widths[ i ] = image.getWidth();
+					heights[ i ] = image.getHeight();
+					images.add( image );
+				}
+
+				List<RectanglePacker.Rectangle> placed =
+						a.packer.insertAll( widths, heights, images );
+
+				List<Texture> left = new ArrayList<Texture>();
+				for( int i = 0; i < placed.size(); i++ )
+				{
+					if( placed.get( i ) == null )
+					{
+						left.add( remaining.get( i ) );
+					}
+					else
+					{
+						a.textures.add( remaining.get( i ) );
+					}
+				}
+
+				if( a.textures.isEmpty() )
+				{ // won't fit in an empty atlas, so give up
+					return;
+				}
+
+				packed.add( a );
+				remaining = left;
+			}
+
+			if( packed.size() < group.size() )
+			{
+				for( Atlas a : packed )
+				{
+					a.compose();
+				}
+
+				atlases.addAll( packed );
+				replaced.addAll( group );
+			}
+		}
+	}
+
+	/**
+	 * A new atlas
+	 */
+	private static class Atlas
+	{
+		private final Format format;
+
+		private final boolean mipmap;
+
+		private final int border;
+
+		private final Dimension size;
+
+		private final Packer<Image> packer;
+
+		private final List<Texture> textures = new ArrayList<Texture>();
+
+		private ByteBuffer pixels;
+
+		private Atlas( GLTexture like, Dimension size )
+		{
+			format = like.format;
+			mipmap = like.mipmap;
+			border = like.border;
+			this.size = size;
+			packer = new SkylinePacker<Image>( size.getWidth(), size.getHeight(), border );
+		}
+
+		/**
+		 * Copies the images into their places
+		 */
+		private void compose()
+		{
+			int w = size.getWidth();
+			pixels = BufferUtils.createByteBuffer( w * size.getHeight() * format.bytes );
+
+			for( Texture t : textures )
+			{
+				Image image = t.getSourceImage();
+				RectanglePacker.Rectangle r = packer.findRectangle( image );
+				ByteBuffer src = image.getData().duplicate();
+				int row = image.getWidth() * format.bytes;
+
+				for( int y = 0; y < image.getHeight(); y++ )
+				{
+					src.limit( ( y + 1 ) * row );
+					src.position( y * row );
+					pixels.position( ( ( r.y + y ) * w + r.x ) * format.bytes );
+					pixels.put( src );
+				}
+			}
+
+			pixels.clear();
+		}
+	}
+}
@@ -0,0 +1,440 @@
+
+package com.rugl.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.rugl.sound.Sound;
+import com.rugl.text.Font;
+import com.rugl.texture.Image;
+
+/**
+ * A single file holding many {@link Image}s, {@link Font}s and
+ * {@link Sound}s, each in the form it would have in its own
+ * .ruglimg/.ruglfont/.ruglsnd file. The file is memory-mapped and
+ * assets are read from slices of the mapping, so pixel and sample data
+ * is never copied onto the heap: it goes from the page cache straight
+ * to OpenGL or OpenAL.
+ * <p>
+ * The format is an index of "int:nameLength name byte:type int:offset
+ * int:length" records after a magic number, version and count, then
+ * the assets, each aligned to {@link #ALIGNMENT} bytes
+ *
+ * @author ryanm
+ */
+public class AssetArchive
+{
+	/**
+	 * "RPAK"
+	 */
+	private static final int MAGIC = 0x5250414B;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Asset data starts on multiples of this
+	 */
+	public static final int ALIGNMENT = 16;
+
+	/**
+	 * The kinds of asset in an archive
+	 *
+	 * @author ryanm
+	 */
+	public static enum Type
+	{
+		/***/
+		IMAGE,
+		/***/
+		FONT,
+		/***/
+		SOUND;
+	}
+
+	private final MappedByteBuffer mapping;
+
+	private final Map<String, Entry> index = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * Maps an archive file
+	 *
+	 * @param file
+	 * @throws IOException
+	 *            If the file can't be mapped or isn't an archive
+	 */
+	public AssetArchive( File file ) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile( file, "r" );
+		try
+		{
+			// the mapping stays valid after the file is closed
+			mapping = raf.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, raf.length() );
+		}
+		finally
+		{
+			raf.close();
+		}
+
+		ByteBuffer b = mapping.duplicate();
+
+		if( b.remaining() < 12 || b.getInt() != MAGIC )
+		{
+			throw new IOException( file + " is not an asset archive" );
+		}
+		int version = b.getInt();
+		if( version != VERSION )
+		{
+			throw new IOException( file + " is archive version " + version + ", expected "
+					+ VERSION );
+		}
+
+		int count = b.getInt();
+		for( int i = 0; i < count; i++ )
+		{
+			byte[] nb = new byte[ b.getInt() ];
+			b.get( nb );
+			String name = new String( nb, "UTF-8" );
+
+			int type = b.get();
+			int offset = b.getInt();
+			int length = b.getInt();
+
+			if( type < 0 || type >= Type.values().length || offset < 0 || length < 0
+					|| offset + length > mapping.capacity() )
+			{
+				throw new IOException( "Bad index entry for \"" + name + "\" in " + file );
+			}
+
+			index.put( name, new Entry( Type.values()[ type ], offset, length ) );
+		}
+	}
+
+	/**
+	 * @return The names of the assets in this archive, in the order
+	 *         they were added
+	 */
+	public Set<String> names()
+	{
+		return Collections.unmodifiableSet( index.keySet() );
+	}
+
+	/**
+	 * @param name
+	 * @return The type of the named asset, or <code>null</code> if
+	 *         there is no such asset
+	 */
+	public Type type( String name )
+	{
+		Entry e = index.get( name );
+		return e == null ? null : e.type;
+	}
+
+	/**
+	 * Gets the raw data of an asset. This is a view of the mapped file,
+	 * not a copy, and is safe to use from any thread
+	 *
+	 * @param name
+	 * @return A read-only buffer, or <code>null</code> if there is no
+	 *         such asset
+	 */
+	public ByteBuffer get( String name )
+	{
+		Entry e = index.get( name );
+		if( e == null )
+		{
+			return null;
+		}
+
+		ByteBuffer b = mapping.duplicate();
+		b.position( e.offset );
+		b.limit( e.offset + e.length );
+		return b.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * @param name
+	 * @return The named {@link Image}, with its pixel data read
+	 *         straight from the mapped file
+	 * @throws IOException
+	 *            If there is no such image
+	 */
+	public Image getImage( String name ) throws IOException
+	{
+		return new Image( get( name, Type.IMAGE ) );
+	}
+
+	/**
+	 * @param name
+	 * @return The named {@link Font}, with its glyph images read
+	 *         straight from the mapped file
+	 * @throws IOException
+	 *            If there is no such font
+	 */
+	public Font getFont( String name ) throws IOException
+	{
+		return new Font( get( name, Type.FONT ) );
+	}
+
+	/**
+	 * @param name
+	 * @return The named {@link Sound}, with its sample data read
+	 *         straight from the mapped file
+	 * @throws IOException
+	 *            If there is no such sound
+	 */
+	public Sound getSound( String name ) throws IOException
+	{
+		return new Sound( get( name, Type.SOUND ) );
+	}
+
+	private ByteBuffer get( String name, Type type ) throws IOException
+	{
+		if( type( name ) != type )
+		{
+			throw new IOException( "No " + type + " called \"" + name + "\"" );
+		}
+
+		return get( name );
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Asset archive of " + index.size() + " assets, " + mapping.capacity()
+				+ " bytes";
+	}
+
+	private static class Entry
+	{
+		private final Type type;
+
+		private final int offset;
+
+		private final int length;
+
+		private Entry( Type type, int offset, int length )
+		{
+			this.type = type;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Collects assets and writes them to an archive
+	 *
+	 * @author ryanm
+	 */
+	public static class Builder
+	{
+		private final Map<String, Object> assets = new LinkedHashMap<String, Object>();
+
+		/**
+		 * @param name
+		 * @param image
+		 * @return this
+		 */
+		public Builder add( String name, Image image )
+		{
+			assets.put( name, image );
+			return this;
+		}
+
+		/**
+		 * @param name
+		 * @param font
+		 * @return this
+		 */
+		public Builder add( String name, Font font )
+		{
+			assets.put( name, font );
+			return this;
+		}
+
+		/**
+		 * @param name
+		 * @param sound
+		 * @return this
+		 */
+		public Builder add( String name, Sound sound )
+		{
+			assets.put( name, sound );
+			return this;
+		}
+
+		/**
+		 * Writes the archive
+		 *
+		 * @param file
+		 * @throws IOException
+		 */
+		public void write( File file ) throws IOException
+		{
+			// index size
+			long offset = 12;
+			for( String name : assets.keySet() )
+			{
+				offset += 4 + name.getBytes( "UTF-8" ).length + 1 + 4 + 4;
+			}
+
+			// asset positions
+			int[] offsets = new int[ assets.size() ];
+			int[] lengths = new int[ assets.size() ];
+			int i = 0;
+			for( Object asset : assets.values() )
+			{
+				offset = align( offset );
+				offsets[ i ] = ( int ) offset;
+				lengths[ i ] = size( asset );
+				offset += lengths[ i ];
+				i++;
+
+				if( offset > Integer.MAX_VALUE )
+				{
+					throw new IOException( "Archive would be too big to map" );
+				}
+			}
+
+			RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+			try
+			{
+				FileChannel ch = raf.getChannel();
+				raf.setLength( offset );
+				MappedByteBuffer buffer = ch.map( FileChannel.MapMode.READ_WRITE, 0, offset );
+
+				buffer.putInt( MAGIC );
+				buffer.putInt( VERSION );
+				buffer.putInt( assets.size() );
+
+				i = 0;
+				for( Map.Entry<String, Object> e : assets.entrySet() )
+				{
+					byte[] nb = e.getKey().getBytes( "UTF-8" );
+					buffer.putInt( nb.length );
+					buffer.put( nb );
+					buffer.put( ( byte ) type( e.getValue() ).ordinal() );
+					buffer.putInt( offsets[ i ] );
+					buffer.putInt( lengths[ i ] );
+					i++;
+				}
+
+				i = 0;
+				for( Object asset : assets.values() )
+				{
+					buffer.position( offsets[ i ] );
+					write( asset, buffer );
+					assert buffer.position() == offsets[ i ] + lengths[ i ];
+					i++;
+				}
+
+				buffer.force();
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+
+		private static long align( long offset )
+		{
+			return ( offset + ALIGNMENT - 1 ) / ALIGNMENT * ALIGNMENT;
+		}
+
+		private static Type type( Object asset )
+		{
+			return asset instanceof Image ? Type.IMAGE : asset instanceof Font ? Type.FONT
+					: Type.SOUND;
+		}
+
+		private static int size( Object asset )
+		{
+			switch( type( asset ) )
+			{
+				case IMAGE:
+					return ( ( Image ) asset ).dataSize();
+				case FONT:
+					return ( ( Font ) asset ).dataSize();
+				default:
+					return ( ( Sound ) asset ).dataSize();
+			}
+		}
+
+		private static void write( Object asset, ByteBuffer buffer )
+		{
+			switch( type( asset ) )
+			{
+				case IMAGE:
+					( ( Image ) asset ).write( buffer );
+					break;
+				case FONT:
+					( ( Font ) asset ).write( buffer );
+					break;
+				default:
+					( ( Sound ) asset ).write( buffer );
+			}
+		}
+	}
+
+	/**
+	 * Packs .ruglimg, .ruglfont and .ruglsnd files into an archive.
+	 * Assets are named for their files, without the extension
+	 *
+	 * @param args
+	 *           The archive file, then the files to pack
+	 */
+	public static void main( String[] args )
+	{
+		if( args.length < 2 )
+		{
+			System.out.println( "Arguments = <archive> <asset files...>" );
+			return;
+		}
+
+		try
+		{
+			Builder b = new Builder();
+
+			for( int i = 1; i < args.length; i++ )
+			{
+				File f = new File( args[ i ] );
+				String name = f.getName();
+				int dot = name.lastIndexOf( '.' );
+				String ext = dot == -1 ? "" : name.substring( dot + 1 );
+				name = dot == -1 ? name : name.substring( 0, dot );
+
+				if( ext.equals( "ruglimg" ) )
+				{
+					b.add( name, Image.loadImage( f.getPath() ) );
+				}
+				else if( ext.equals( "ruglfont" ) )
+				{
+					b.add( name, Font.readFont( f.getPath() ) );
+				}
+				else if( ext.equals( "ruglsnd" ) )
+				{
+					b.add( name, Sound.readSound( f.getPath() ) );
+				}
+				else
+				{
+					System.out.println( "Skipping " + f + ", unknown type" );
+				}
+			}
+
+			b.write( new File( args[ 0 ] ) );
+
+			System.out.println( new AssetArchive( new File( args[ 0 ] ) ) );
+		}
+		catch( IOException e )
+		{
+			e.printStackTrace();
+		}
+	}
+}
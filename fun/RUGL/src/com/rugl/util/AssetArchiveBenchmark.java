@@ -0,0 +1,274 @@
+
+package com.rugl.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.lwjgl.BufferUtils;
+
+import com.rugl.sound.Sound;
+import com.rugl.text.Font;
+import com.rugl.texture.Image;
+import com.rugl.texture.Image.Format;
+
+/**
+ * Compares startup loading of images, a font and a sound from
+ * individual files through streams, as {@link Image#Image(InputStream)}
+ * used to with an intermediate byte array and as it does now straight
+ * into a direct buffer, against mapping an {@link AssetArchive}.
+ * Reports the time to load, the time to load and read every byte as an
+ * upload to OpenGL would, and the peak heap used. The files will be in
+ * the page cache, so this is a warm start
+ *
+ * @author ryanm
+ */
+public class AssetArchiveBenchmark
+{
+	/**
+	 * @param args
+	 *           The number of 1024x1024 RGBA images, and the number of
+	 *           timed rounds
+	 * @throws IOException
+	 */
+	public static void main( String[] args ) throws IOException
+	{
+		int imageCount = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 12;
+		int rounds = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 5;
+
+		File dir = new File( System.getProperty( "java.io.tmpdir" ), "ruglAssetBench" );
+		dir.mkdirs();
+
+		// build the assets
+		Random rng = new Random( 1 );
+		AssetArchive.Builder builder = new AssetArchive.Builder();
+		List<File> imageFiles = new ArrayList<File>();
+		for( int i = 0; i < imageCount; i++ )
+		{
+			ByteBuffer px = BufferUtils.createByteBuffer( 1024 * 1024 * 4 );
+			while( px.hasRemaining() )
+			{
+				px.putInt( rng.nextInt() );
+			}
+			px.flip();
+			Image image = new Image( 1024, 1024, Format.RGBA, px );
+
+			File f = new File( dir, "image" + i + ".ruglimg" );
+			image.write( f.getPath() );
+			imageFiles.add( f );
+			builder.add( "image" + i, Image.loadImage( f.getPath() ) );
+		}
+
+		File fontFile = new File( "RUGL/res/font/console.ruglfont" );
+		if( !fontFile.exists() )
+		{
+			fontFile = null;
+			System.out.println( "No console font found, run from the fun directory" );
+		}
+		else
+		{
+			builder.add( "console", Font.readFont( fontFile.getPath() ) );
+		}
+
+		ByteBuffer samples = BufferUtils.createByteBuffer( 44100 * 2 * 10 );
+		while( samples.hasRemaining() )
+		{
+			samples.put( ( byte ) rng.nextInt() );
+		}
+		samples.flip();
+		File soundFile = new File( dir, "sound.ruglsnd" );
+		new Sound( Sound.Format.MONO_16, 44100, samples ).write( soundFile.getPath() );
+		builder.add( "sound", Sound.readSound( soundFile.getPath() ) );
+
+		File archiveFile = new File( dir, "assets.ruglpak" );
+		builder.write( archiveFile );
+
+		System.out.println( imageCount + " images, a font and a sound, "
+				+ archiveFile.length() / 1024 / 1024 + "MB. Best of " + rounds );
+		System.out.println( "\t\t\tload ms\tread ms\tpeak heap MB\tdirect MB\tmapped MB" );
+
+		for( int path = 0; path < 3; path++ )
+		{
+			long bestLoad = Long.MAX_VALUE, bestRead = Long.MAX_VALUE;
+			long peak = 0, direct = 0, mapped = 0;
+
+			for( int r = 0; r < rounds; r++ )
+			{
+				System.gc();
+				long heapBefore = heapUsed();
+				resetPeaks();
+
+				long start = System.nanoTime();
+				List<ByteBuffer> data =
+						load( path, imageFiles, fontFile, soundFile, archiveFile );
+				long loaded = System.nanoTime();
+				long sum = 0;
+				for( ByteBuffer b : data )
+				{
+					sum += read( b );
+				}
+				long read = System.nanoTime();
+
+				bestLoad = Math.min( bestLoad, loaded - start );
+				bestRead = Math.min( bestRead, read - start );
+				peak = Math.max( peak, peakHeap() - heapBefore );
+
+				direct = mapped = 0;
+				for( ByteBuffer b : data )
+				{
+					if( path == 2 )
+					{
+						mapped += b.capacity();
+					}
+					else if( b.isDirect() )
+					{
+						direct += b.capacity();
+					}
+				}
+
+				if( sum == 42 )
+				{ // keep the JIT honest
+					System.out.print( "" );
+				}
+			}
+
+			String name =
+					path == 0 ? "byte[] streams" : path == 1 ? "direct streams" : "archive\t";
+			System.out.println( "\t" + name + "\t" + bestLoad / 1000000 + "\t" + bestRead
+					/ 1000000 + "\t" + peak / 1024 / 1024 + "\t\t" + direct / 1024 / 1024
+					+ "\t\t" + mapped / 1024 / 1024 );
+		}
+	}
+
+	/**
+	 * @return the pixel and sample buffers of everything loaded
+	 */
+	private static List<ByteBuffer> load( int path, List<File> imageFiles, File fontFile,
+			File soundFile, File archiveFile ) throws IOException
+	{
+		List<ByteBuffer> data = new ArrayList<ByteBuffer>();
+
+		if( path == 2 )
+		{
+			AssetArchive archive = new AssetArchive( archiveFile );
+			for( int i = 0; i < imageFiles.size(); i++ )
+			{
+				data.add( archive.getImage( "image" + i ).getData() );
+			}
+			if( fontFile != null )
+			{
+				archive.getFont( "console" );
+			}
+			data.add( archive.getSound( "sound" ).data );
+		}
+		else
+		{
+			for( File f : imageFiles )
+			{
+				InputStream is = new BufferedInputStream( new FileInputStream( f ) );
+				data.add( path == 0 ? legacyImage( is ) : new Image( is ).getData() );
+				is.close();
+			}
+			if( fontFile != null )
+			{
+				InputStream is = new BufferedInputStream( new FileInputStream( fontFile ) );
+				new Font( is );
+				is.close();
+			}
+
+			InputStream is = new BufferedInputStream( new FileInputStream( soundFile ) );
+			data.add( path == 0 ? legacySound( is ) : new Sound( is ).data );
+			is.close();
+		}
+
+		return data;
+	}
+
+	/**
+	 * What {@link Image#Image(InputStream)} used to do
+	 */
+	private static ByteBuffer legacyImage( InputStream is ) throws IOException
+	{
+		DataInputStream dis = new DataInputStream( is );
+		int width = dis.readInt();
+		int height = dis.readInt();
+		Format format = Format.values()[ dis.readInt() ];
+
+		byte[] bd = new byte[ width * height * format.bytes ];
+		dis.readFully( bd );
+
+		ByteBuffer data = BufferUtils.createByteBuffer( bd.length );
+		data.put( bd );
+		data.flip();
+		return data;
+	}
+
+	/**
+	 * What {@link Sound#Sound(InputStream)} used to do
+	 */
+	private static ByteBuffer legacySound( InputStream is ) throws IOException
+	{
+		DataInputStream dis = new DataInputStream( is );
+		dis.readInt();
+		dis.readInt();
+		byte[] bd = new byte[ dis.readInt() ];
+		dis.readFully( bd );
+		return ByteBuffer.wrap( bd );
+	}
+
+	private static long read( ByteBuffer b )
+	{
+		long sum = 0;
+		b = b.duplicate();
+		b.clear();
+		while( b.remaining() >= 8 )
+		{
+			sum += b.getLong();
+		}
+		return sum;
+	}
+
+	private static long heapUsed()
+	{
+		long used = 0;
+		for( MemoryPoolMXBean mp : ManagementFactory.getMemoryPoolMXBeans() )
+		{
+			if( mp.getType() == MemoryType.HEAP )
+			{
+				used += mp.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+
+	private static void resetPeaks()
+	{
+		for( MemoryPoolMXBean mp : ManagementFactory.getMemoryPoolMXBeans() )
+		{
+			mp.resetPeakUsage();
+		}
+	}
+
+	private static long peakHeap()
+	{
+		long peak = 0;
+		for( MemoryPoolMXBean mp : ManagementFactory.getMemoryPoolMXBeans() )
+		{
+			if( mp.getType() == MemoryType.HEAP )
+			{
+				peak += mp.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
@@ -2,19 +2,52 @@
 package com.rugl.util;
 
 import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A filter to create a distance field from a source image. Snaffled
  * into RUGL wholesale from Slick and given a mild tinkering. Pixels
  * are considered "in" the shape if they are white, everything else is
- * "out"
- * 
+ * "out". Everything outside the image is "out".
+ * <p>
+ * The distances are found with an exact, separable squared Euclidean
+ * distance transform: a column pass finds the vertical distance to
+ * the nearest "in" and "out" pixels, then a row pass takes the lower
+ * envelope of the parabolas rooted at those column distances. Both
+ * passes are linear in the number of pixels and are split across
+ * cores, and the row pass is only run for rows that are sampled in
+ * the output
+ *
  * @author Orangy
  */
 public class DistanceFieldFilter implements Runnable
 {
-	private boolean[][] image;
+	private static final int INF = Integer.MAX_VALUE;
+
+	/**
+	 * The number of columns or rows processed as a single task
+	 */
+	private static final int GRAIN = 16;
+
+	private static ForkJoinPool pool;
+
+	/**
+	 * "in" flags, row-major
+	 */
+	private final boolean[] image;
+
+	private final int width;
+
+	private final int height;
 
 	private final int scaleFactor;
 
@@ -33,8 +66,7 @@ public class DistanceFieldFilter implements Runnable
 	 * @param scanDist
 	 *           The furthest an "in" output pixel can be from an "in"
 	 *           input pixel. Larger numbers will allow larger
-	 *           outline/shadow regions at the expense of precision and
-	 *           longer processing times.
+	 *           outline/shadow regions at the expense of precision.
 	 * @param listener
 	 *           will be appraised of progress
 	 */
@@ -45,52 +77,37 @@ public class DistanceFieldFilter implements Runnable
 		scanSize = scanDist > 0 ? scanDist : Math.max( bi.getWidth(), bi.getHeight() );
 		this.listener = listener;
 
-		image = new boolean[ bi.getWidth() ][ bi.getHeight() ];
+		width = bi.getWidth();
+		height = bi.getHeight();
+		image = new boolean[ width * height ];
 
 		int white = Color.WHITE.getRGB();
-		for( int x = 0; x < image.length; x++ )
+		int[] row = new int[ width ];
+		for( int y = 0; y < height; y++ )
 		{
-			for( int y = 0; y < image[ x ].length; y++ )
+			bi.getRGB( 0, y, width, 1, row, 0, width );
+
+			for( int x = 0; x < width; x++ )
 			{
-				image[ x ][ y ] = bi.getRGB( x, y ) == white;
+				image[ y * width + x ] = row[ x ] == white;
 			}
 		}
-
 	}
 
 	@Override
 	public void run()
 	{
-		int outWidth = image.length / scaleFactor;
-		int outHeight = image[ 0 ].length / scaleFactor;
-
-		float[][] distances = new float[ outWidth ][ outHeight ];
-
-		// find distances
-		for( int x = 0; x < distances.length; x++ )
-		{
-			if( listener != null )
-			{
-				listener.progress( ( float ) x / outWidth );
-			}
-
-			for( int y = 0; y < distances[ x ].length; y++ )
-			{
-				distances[ x ][ y ] =
-						findSignedDistance( x * scaleFactor + scaleFactor / 2, y * scaleFactor
-								+ scaleFactor / 2 );
-			}
-		}
+		float[][] distances = distances();
 
 		// find max and min values
 		float max = 0;
 		float min = 0;
 
-		for( int x = 0; x < distances.length; x++ )
+		for( int y = 0; y < distances.length; y++ )
 		{
-			for( int y = 0; y < distances[ x ].length; y++ )
+			for( int x = 0; x < distances[ y ].length; x++ )
 			{
-				float d = distances[ x ][ y ];
+				float d = distances[ y ][ x ];
 
 				if( d > max )
 				{
@@ -107,11 +124,22 @@ public class DistanceFieldFilter implements Runnable
 		// 0.5
 		final float scale = Math.max( Math.abs( min ), Math.abs( max ) );
 
-		for( int x = 0; x < distances.length; x++ )
+		int outWidth = width / scaleFactor;
+		int outHeight = height / scaleFactor;
+
+		// generate image, straight into the raster. It's ABGR, and
+		// we're white
+		BufferedImage outImage =
+				new BufferedImage( outWidth, outHeight, BufferedImage.TYPE_4BYTE_ABGR );
+		byte[] data =
+				( ( DataBufferByte ) outImage.getRaster().getDataBuffer() ).getData();
+
+		int i = 0;
+		for( int y = 0; y < outHeight; y++ )
 		{
-			for( int y = 0; y < distances[ x ].length; y++ )
+			for( int x = 0; x < outWidth; x++ )
 			{
-				float d = distances[ x ][ y ];
+				float d = distances[ y ][ x ];
 
 				// to -1 : 1
 				d /= scale;
@@ -122,50 +150,424 @@ public class DistanceFieldFilter implements Runnable
 				// to 0 ; 1
 				d += 0.5f;
 
+				if( Float.isNaN( d ) )
+				{
+					d = 0;
+				}
+
 				assert d >= 0;
 				assert d <= 1;
 
-				distances[ x ][ y ] = d;
+				data[ i++ ] = ( byte ) ( int ) ( d * 255 + 0.5f );
+				data[ i++ ] = ( byte ) 0xff;
+				data[ i++ ] = ( byte ) 0xff;
+				data[ i++ ] = ( byte ) 0xff;
 			}
 		}
 
-		// generate image
-		BufferedImage outImage =
-				new BufferedImage( outWidth, outHeight, BufferedImage.TYPE_4BYTE_ABGR );
-		for( int x = 0; x < distances.length; x++ )
+		result = outImage;
+
+		if( listener != null )
 		{
-			for( int y = 0; y < distances[ 0 ].length; y++ )
+			listener.finished( result );
+		}
+	}
+
+	/**
+	 * Computes the signed distance from the centre of each output
+	 * pixel to the nearest input pixel of the opposite state, limited
+	 * to the scan size. "in" pixels are positive
+	 *
+	 * @return distances, indexed as [ y ][ x ]
+	 */
+	private float[][] distances()
+	{
+		final int outWidth = width / scaleFactor;
+		final int outHeight = height / scaleFactor;
+		final int half = scaleFactor / 2;
+
+		// the image is considered to be surrounded by a 1-pixel border
+		// of "out", which is as close as the rest of the outside gets
+		final int paddedWidth = width + 2;
+
+		// vertical distances to the nearest "in" and "out" pixels, for
+		// the rows that we sample
+		final int[][] inCols = new int[ outHeight ][ paddedWidth ];
+		final int[][] outCols = new int[ outHeight ][ paddedWidth ];
+
+		if( listener != null )
+		{
+			listener.progress( 0 );
+		}
+
+		parallel( paddedWidth, new Loop() {
+			@Override
+			public void process( int from, int to )
 			{
-				float d = distances[ x ][ y ];
-				if( d == Float.NaN )
+				int[] in = new int[ height ];
+				int[] out = new int[ height ];
+
+				for( int px = from; px < to; px++ )
 				{
-					d = 0;
+					columnPass( px - 1, in, out );
+
+					for( int oy = 0; oy < outHeight; oy++ )
+					{
+						int y = oy * scaleFactor + half;
+						inCols[ oy ][ px ] = in[ y ];
+						outCols[ oy ][ px ] = out[ y ];
+					}
+				}
+			}
+		} );
+
+		if( listener != null )
+		{
+			listener.progress( 0.5f );
+		}
+
+		final float[][] distances = new float[ outHeight ][ outWidth ];
+		final float maxSq = ( float ) scanSize * scanSize;
+
+		parallel( outHeight, new Loop() {
+			@Override
+			public void process( int from, int to )
+			{
+				int[] v = new int[ paddedWidth ];
+				double[] z = new double[ paddedWidth + 1 ];
+				float[] inRow = new float[ outWidth ];
+				float[] outRow = new float[ outWidth ];
+
+				for( int oy = from; oy < to; oy++ )
+				{
+					rowPass( inCols[ oy ], outWidth, half, v, z, inRow );
+					rowPass( outCols[ oy ], outWidth, half, v, z, outRow );
+
+					int y = oy * scaleFactor + half;
+
+					for( int ox = 0; ox < outWidth; ox++ )
+					{
+						int x = ox * scaleFactor + half;
+						boolean in = image[ y * width + x ];
+
+						float dsq = in ? outRow[ ox ] : inRow[ ox ];
+						float d = ( float ) Math.sqrt( Math.min( dsq, maxSq ) );
+
+						distances[ oy ][ ox ] = in ? d : -d;
+					}
+				}
+			}
+		} );
+
+		return distances;
+	}
+
+	/**
+	 * Finds the vertical distance to the nearest "in" and "out" pixels
+	 * in a column
+	 *
+	 * @param x
+	 *           The column, which may be in the border
+	 * @param in
+	 *           Destination for distances to "in" pixels, or
+	 *           {@link #INF} if there are none in the column
+	 * @param out
+	 *           Destination for distances to "out" pixels
+	 */
+	private void columnPass( int x, int[] in, int[] out )
+	{
+		if( x < 0 || x >= width )
+		{ // border column: all out
+			for( int y = 0; y < height; y++ )
+			{
+				in[ y ] = INF;
+				out[ y ] = 0;
+			}
+			return;
+		}
+
+		// downwards. The border row above is "out"
+		int lastIn = -1;
+		int lastOut = -1;
+		boolean seenIn = false;
+		for( int y = 0; y < height; y++ )
+		{
+			if( image[ y * width + x ] )
+			{
+				lastIn = y;
+				seenIn = true;
+			}
+			else
+			{
+				lastOut = y;
+			}
+
+			in[ y ] = seenIn ? y - lastIn : INF;
+			out[ y ] = y - lastOut;
+		}
+
+		// upwards. The border row below is "out"
+		lastIn = -1;
+		lastOut = height;
+		for( int y = height - 1; y >= 0; y-- )
+		{
+			if( image[ y * width + x ] )
+			{
+				lastIn = y;
+			}
+			else
+			{
+				lastOut = y;
+			}
+
+			if( lastIn >= 0 && lastIn - y < in[ y ] )
+			{
+				in[ y ] = lastIn - y;
+			}
+			if( lastOut - y < out[ y ] )
+			{
+				out[ y ] = lastOut - y;
+			}
+		}
+	}
+
+	/**
+	 * Finds the lower envelope of the parabolas rooted at the column
+	 * distances, and samples it at the output pixel centres
+	 *
+	 * @param cols
+	 *           Vertical distances for each padded column, or
+	 *           {@link #INF}
+	 * @param outWidth
+	 *           The number of output samples
+	 * @param half
+	 *           The offset of the first sample
+	 * @param v
+	 *           Scratch space for the parabola roots
+	 * @param z
+	 *           Scratch space for the parabola boundaries
+	 * @param dest
+	 *           Destination for the squared distances, or
+	 *           {@link Float#MAX_VALUE} if there are no features
+	 */
+	private void rowPass( int[] cols, int outWidth, int half, int[] v, double[] z,
+			float[] dest )
+	{
+		int k = -1;
+
+		for( int q = 0; q < cols.length; q++ )
+		{
+			if( cols[ q ] == INF )
+			{
+				continue;
+			}
+
+			double fq = ( double ) cols[ q ] * cols[ q ] + ( double ) q * q;
+
+			if( k < 0 )
+			{
+				k = 0;
+				v[ 0 ] = q;
+				z[ 0 ] = Double.NEGATIVE_INFINITY;
+				z[ 1 ] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+
+			double s;
+			while( true )
+			{
+				int p = v[ k ];
+				double fp = ( double ) cols[ p ] * cols[ p ] + ( double ) p * p;
+				s = ( fq - fp ) / ( 2 * ( q - p ) );
+
+				if( s <= z[ k ] && k > 0 )
+				{
+					k--;
+				}
+				else
+				{
+					break;
 				}
+			}
 
-				// As alpha
-				outImage.setRGB( x, y, new Color( 1.0f, 1.0f, 1.0f, d ).getRGB() );
+			if( s <= z[ k ] )
+			{ // replaces the only parabola
+				v[ 0 ] = q;
+				z[ 0 ] = Double.NEGATIVE_INFINITY;
+				z[ 1 ] = Double.POSITIVE_INFINITY;
+			}
+			else
+			{
+				k++;
+				v[ k ] = q;
+				z[ k ] = s;
+				z[ k + 1 ] = Double.POSITIVE_INFINITY;
 			}
 		}
 
-		result = outImage;
+		if( k < 0 )
+		{
+			for( int i = 0; i < outWidth; i++ )
+			{
+				dest[ i ] = Float.MAX_VALUE;
+			}
+			return;
+		}
 
-		if( listener != null )
+		int j = 0;
+		for( int i = 0; i < outWidth; i++ )
 		{
-			listener.finished( result );
+			// padded coordinate of the sample
+			int x = i * scaleFactor + half + 1;
+
+			while( z[ j + 1 ] < x )
+			{
+				j++;
+			}
+
+			float dx = x - v[ j ];
+			float dy = cols[ v[ j ] ];
+			dest[ i ] = dx * dx + dy * dy;
+		}
+	}
+
+	/**
+	 * Gets the resulting distance map image
+	 *
+	 * @return The result, or null if processing has not finished yet
+	 */
+	public BufferedImage getResult()
+	{
+		return result;
+	}
+
+	/**
+	 * Interface for monitoring the progress of the processing
+	 *
+	 * @author ryanm
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called to update the listener on processing progression
+		 *
+		 * @param progress
+		 *           0 at the start, 1 at the end
+		 */
+		public void progress( float progress );
+
+		/**
+		 * Called when processing is complete
+		 *
+		 * @param result
+		 *           the output image
+		 */
+		public void finished( BufferedImage result );
+	}
+
+	/**
+	 * A loop body
+	 */
+	private interface Loop
+	{
+		/**
+		 * @param from
+		 *           inclusive
+		 * @param to
+		 *           exclusive
+		 */
+		public void process( int from, int to );
+	}
+
+	/**
+	 * Runs a loop over the shared pool, returning when it is complete
+	 *
+	 * @param count
+	 * @param loop
+	 */
+	private static void parallel( int count, Loop loop )
+	{
+		Strip s = new Strip( loop, 0, count );
+
+		if( count <= GRAIN )
+		{
+			s.compute();
+		}
+		else if( ForkJoinTask.inForkJoinPool() )
+		{ // we're already in a pool, just fork in there
+			s.invoke();
+		}
+		else
+		{
+			getPool().invoke( s );
+		}
+	}
+
+	private static synchronized ForkJoinPool getPool()
+	{
+		if( pool == null )
+		{
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+
+	private static class Strip extends RecursiveAction
+	{
+		private final Loop loop;
+
+		private final int from, to;
+
+		private Strip( Loop loop, int from, int to )
+		{
+			this.loop = loop;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if( to - from <= GRAIN )
+			{
+				loop.process( from, to );
+			}
+			else
+			{
+				int mid = ( from + to ) >>> 1;
+				invokeAll( new Strip( loop, from, mid ), new Strip( loop, mid, to ) );
+			}
 		}
 	}
 
-	private float separationSq( final float x1, final float y1, final float x2,
-			final float y2 )
+	/**
+	 * The original ring-scanning search, kept to check the transform
+	 * against
+	 *
+	 * @return signed distances, indexed as [ y ][ x ]
+	 */
+	private float[][] referenceDistances()
 	{
-		final float dx = x1 - x2;
-		final float dy = y1 - y2;
-		return dx * dx + dy * dy;
+		int outWidth = width / scaleFactor;
+		int outHeight = height / scaleFactor;
+		float[][] distances = new float[ outHeight ][ outWidth ];
+
+		for( int y = 0; y < outHeight; y++ )
+		{
+			for( int x = 0; x < outWidth; x++ )
+			{
+				distances[ y ][ x ] =
+						findSignedDistance( x * scaleFactor + scaleFactor / 2, y * scaleFactor
+								+ scaleFactor / 2 );
+			}
+		}
+
+		return distances;
 	}
 
 	private float findSignedDistance( final int pointX, final int pointY )
 	{
-		boolean baseIn = image[ pointX ][ pointY ];
+		boolean baseIn = image[ pointY * width + pointX ];
 
 		// start with the max value
 		float[] closestDistance = new float[] { scanSize * scanSize };
@@ -188,31 +590,16 @@ public class DistanceFieldFilter implements Runnable
 		return baseIn ? d : -d;
 	}
 
-	/**
-	 * @param pointX
-	 * @param pointY
-	 * @param x
-	 * @param y
-	 * @param closest
-	 * @return true if closest was updated
-	 */
 	private boolean checkPoint( int pointX, int pointY, int x, int y, float[] closest )
 	{
-		boolean baseIn = image[ pointX ][ pointY ];
-		boolean pointIn;
-
-		if( x < 0 || x >= image.length || y < 0 || y >= image[ 0 ].length )
-		{
-			pointIn = false;
-		}
-		else
-		{
-			pointIn = image[ x ][ y ];
-		}
+		boolean baseIn = image[ pointY * width + pointX ];
+		boolean pointIn = x >= 0 && x < width && y >= 0 && y < height && image[ y * width + x ];
 
 		if( baseIn != pointIn )
 		{
-			final float dist = separationSq( pointX, pointY, x, y );
+			final float dx = pointX - x;
+			final float dy = pointY - y;
+			final float dist = dx * dx + dy * dy;
 			if( dist < closest[ 0 ] )
 			{
 				closest[ 0 ] = dist;
@@ -223,40 +610,19 @@ public class DistanceFieldFilter implements Runnable
 		return false;
 	}
 
-	/**
-	 * Scans the outline of the box around x,y
-	 * 
-	 * @param x
-	 * @param y
-	 * @param size
-	 * @param closest
-	 * @return true if closest was updated
-	 */
 	private boolean scan( int x, int y, int size, float[] closest )
 	{
 		boolean updated = false;
 
-		// top edge
 		for( int i = x - size; i < x + size; i++ )
 		{
 			updated |= checkPoint( x, y, i, y + size, closest );
-		}
-
-		// bottom edge
-		for( int i = x - size; i < x + size; i++ )
-		{
 			updated |= checkPoint( x, y, i, y - size, closest );
 		}
 
-		// left
 		for( int i = y - size; i < y + size; i++ )
 		{
 			updated |= checkPoint( x, y, x - size, i, closest );
-		}
-
-		// right
-		for( int i = y - size; i < y + size; i++ )
-		{
 			updated |= checkPoint( x, y, x + size, i, closest );
 		}
 
@@ -264,36 +630,125 @@ public class DistanceFieldFilter implements Runnable
 	}
 
 	/**
-	 * Gets the resulting distance map image
-	 * 
-	 * @return The result, or null if processing has not finished yet
+	 * Checks the distance transform against a brute-force search, and
+	 * times it on glyphs of increasing size
+	 *
+	 * @param args
 	 */
-	public BufferedImage getResult()
+	public static void main( String[] args )
 	{
-		return result;
+		int scale = 20;
+		float scanFactor = 0.1f;
+		int[] sizes = new int[] { 8, 16, 32, 64, 128 };
+		String chars = "Ag@%";
+
+		System.out.println( "Checking against the ring-scanning search" );
+
+		float maxError = 0;
+		int differing = 0, total = 0;
+		for( int i = 0; i < chars.length(); i++ )
+		{
+			DistanceFieldFilter dff = glyph( chars.charAt( i ), 16, scale, scanFactor );
+
+			float[][] fast = dff.distances();
+			float[][] slow = dff.referenceDistances();
+
+			for( int y = 0; y < fast.length; y++ )
+			{
+				for( int x = 0; x < fast[ y ].length; x++ )
+				{
+					float e = Math.abs( fast[ y ][ x ] - slow[ y ][ x ] );
+					maxError = Math.max( maxError, e );
+					differing += e > 0 ? 1 : 0;
+					total++;
+				}
+			}
+		}
+
+		// the ring scan skips one corner of each ring, so it can
+		// occasionally miss the true nearest pixel by a little
+		System.out.println( differing + " of " + total + " samples differ, by at most "
+				+ maxError + " input pixels" );
+		if( maxError > 1 )
+		{
+			System.out.println( "FAILED" );
+		}
+
+		System.out.println( "\nfont size\tinput\toutput\tms/glyph\tring scan ms/glyph" );
+
+		for( int s = 0; s < sizes.length; s++ )
+		{
+			int reps = Math.max( 1, 256 / sizes[ s ] );
+
+			// warm up
+			glyph( 'A', sizes[ s ], scale, scanFactor ).run();
+
+			long time = 0;
+			String dims = null;
+			for( int r = 0; r < reps; r++ )
+			{
+				for( int i = 0; i < chars.length(); i++ )
+				{
+					DistanceFieldFilter dff = glyph( chars.charAt( i ), sizes[ s ], scale, scanFactor );
+
+					long start = System.nanoTime();
+					dff.run();
+					time += System.nanoTime() - start;
+
+					if( dims == null )
+					{
+						dims =
+								dff.width + "x" + dff.height + "\t" + dff.result.getWidth() + "x"
+										+ dff.result.getHeight();
+					}
+				}
+			}
+
+			// the old search is far too slow to run on the big ones
+			String ring = "-";
+			if( sizes[ s ] <= 32 )
+			{
+				DistanceFieldFilter dff = glyph( 'A', sizes[ s ], scale, scanFactor );
+				long start = System.nanoTime();
+				dff.referenceDistances();
+				ring = String.valueOf( ( System.nanoTime() - start ) / 1000000.0f );
+			}
+
+			System.out.println( sizes[ s ] + "\t" + dims + "\t" + time / 1000000.0f
+					/ ( reps * chars.length() ) + "\t" + ring );
+		}
 	}
 
 	/**
-	 * Interface for monitoring the progress of the processing
-	 * 
-	 * @author ryanm
+	 * Builds a filter for a glyph, in the same way as the
+	 * {@link FontFactory}
 	 */
-	public interface Listener
+	private static DistanceFieldFilter glyph( char c, int size, int scale, float scanFactor )
 	{
-		/**
-		 * Called to update the listener on processing progression
-		 * 
-		 * @param progress
-		 *           0 at the start, 1 at the end
-		 */
-		public void progress( float progress );
-
-		/**
-		 * Called when processing is complete
-		 * 
-		 * @param result
-		 *           the output image
-		 */
-		public void finished( BufferedImage result );
+		Font font = new Font( Font.SERIF, Font.PLAIN, size );
+		BufferedImage tmp = new BufferedImage( 1, 1, BufferedImage.TYPE_INT_ARGB );
+		Graphics2D g = tmp.createGraphics();
+
+		Shape shape =
+				font.createGlyphVector( g.getFontRenderContext(), String.valueOf( c ) )
+						.getGlyphOutline( 0 );
+		int padScan =
+				( int ) ( g.getFontMetrics( font ).getHeight() * scanFactor * scale );
+		g.dispose();
+
+		shape = AffineTransform.getScaleInstance( scale, scale ).createTransformedShape( shape );
+		Rectangle bounds = shape.getBounds();
+
+		BufferedImage image =
+				new BufferedImage( bounds.width + 2 * padScan, bounds.height + 2 * padScan,
+						BufferedImage.TYPE_INT_ARGB );
+		g = image.createGraphics();
+		g.translate( padScan, padScan );
+		g.translate( -bounds.x, -bounds.y );
+		g.setColor( Color.WHITE );
+		g.fill( shape );
+		g.dispose();
+
+		return new DistanceFieldFilter( image, scale, padScan, null );
 	}
-}
\ No newline at end of file
+}
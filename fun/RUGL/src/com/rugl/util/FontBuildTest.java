@@ -0,0 +1,63 @@
+package com.rugl.util;
+
+import java.nio.ByteBuffer;
+
+import com.rugl.text.Font;
+
+/**
+ * Builds a font with one thread and then with many, checks that the
+ * results are byte-for-byte identical and reports how long each took
+ *
+ * @author ryanm
+ */
+public class FontBuildTest
+{
+	/**
+	 * @param args
+	 *           The font name, suitable for
+	 *           {@link java.awt.Font#decode(String)}, then "-d" to build
+	 *           a distance field font, then the number of threads to
+	 *           compare against the single-threaded build
+	 */
+	public static void main( String[] args )
+	{
+		String name = args.length > 0 ? args[ 0 ] : "Serif-24";
+		boolean distanceField = args.length > 1 && args[ 1 ].equals( "-d" );
+		int cores =
+				args.length > 2 ? Integer.parseInt( args[ 2 ] ) : Runtime.getRuntime()
+						.availableProcessors();
+
+		System.out.println( "Building " + name + ( distanceField ? " distance field" : "" )
+				+ " font, " + FontFactory.defaultCharSet.length() + " characters" );
+
+		// warm up
+		build( name, distanceField, cores );
+
+		long start = System.nanoTime();
+		ByteBuffer serial = build( name, distanceField, 1 );
+		float serialTime = ( System.nanoTime() - start ) / 1000000000.0f;
+
+		start = System.nanoTime();
+		ByteBuffer parallel = build( name, distanceField, cores );
+		float parallelTime = ( System.nanoTime() - start ) / 1000000000.0f;
+
+		System.out.println( "1 thread  : " + serialTime + "s" );
+		System.out.println( cores + " threads : " + parallelTime + "s" );
+		System.out.println( serial.equals( parallel ) ? "Identical, " + serial.capacity()
+				+ " bytes" : "FAILED: fonts differ" );
+	}
+
+	private static ByteBuffer build( String name, boolean distanceField, int threads )
+	{
+		FontFactory ff = new FontFactory( name, distanceField );
+		ff.threads = threads;
+
+		Font f = ff.buildFont( FontFactory.defaultCharSet );
+
+		ByteBuffer bb = ByteBuffer.allocate( f.dataSize() );
+		f.write( bb );
+		bb.flip();
+
+		return bb;
+	}
+}
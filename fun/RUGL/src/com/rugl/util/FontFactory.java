@@ -63,6 +63,14 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -227,10 +235,19 @@ public class FontFactory implements KerningSource
 	public boolean debug = false;
 
 	/**
-	 * Set this field to be updated with progress
+	 * Set this field to be updated with progress. Callbacks are always
+	 * made from the thread that calls {@link #buildFont(CharSequence)},
+	 * one glyph at a time in character set order, however many threads
+	 * are rendering
 	 */
 	public Listener listener = null;
 
+	/**
+	 * The number of threads that render glyphs in
+	 * {@link #buildFont(CharSequence)}
+	 */
+	public int threads = Runtime.getRuntime().availableProcessors();
+
 	/**
 	 * For the detection of duplicate glyphs
 	 */
@@ -308,12 +325,20 @@ public class FontFactory implements KerningSource
 						distanceField );
 
 		// make sure we have the WTF char
-		buildGlyph( ( char ) 0 );
+		StringBuilder chars = new StringBuilder( characterset.length() + 1 );
+		chars.append( ( char ) 0 );
+		chars.append( characterset );
 
-		// build the rest of the characters
-		for( int i = 0; i < characterset.length(); i++ )
+		if( threads > 1 )
 		{
-			buildGlyph( characterset.charAt( i ) );
+			buildGlyphs( chars );
+		}
+		else
+		{
+			for( int i = 0; i < chars.length(); i++ )
+			{
+				buildGlyph( chars.charAt( i ) );
+			}
 		}
 
 		// tell the font where to get kerning information
@@ -365,24 +390,264 @@ public class FontFactory implements KerningSource
 		GlyphVector glyphVector = srcFont.createGlyphVector( frc, charToMap );
 
 		// check the list
-		for( int i = 0; i < pgiList.size(); i++ )
+		int dup = findDuplicate( glyphVector, pgiList.size() );
+		if( dup != -1 )
+		{
+			ProtoGlyphImage pgi = pgiList.get( dup );
+			pgi.characters.add( new Character( c ) );
+
+			if( listener != null )
+			{
+				listener.glyphComplete( c );
+			}
+
+			return pgi;
+		}
+
+		ProtoGlyphImage glyph =
+				renderGlyph( c, glyphVector, glyphVector.getGlyphOutline( 0 ),
+						new DistanceFieldFilter.Listener() {
+							@Override
+							public void progress( float progress )
+							{
+								if( listener != null )
+								{
+									listener.glyphProgress( c, progress );
+								}
+							}
+
+							@Override
+							public void finished( BufferedImage result )
+							{
+							}
+						} );
+
+		pgiList.add( glyph );
+
+		if( listener != null )
+		{
+			listener.glyphComplete( c );
+		}
+
+		return glyph;
+	}
+
+	/**
+	 * Builds glyphs for a string of characters, rendering them
+	 * concurrently. The {@link #pgiList} ends up exactly as it would
+	 * if {@link #buildGlyph(char)} had been called for each character
+	 * in turn, so the resulting font is identical
+	 * 
+	 * @param chars
+	 */
+	private void buildGlyphs( CharSequence chars )
+	{
+		ExecutorService executor =
+				Executors.newFixedThreadPool( threads, new ThreadFactory() {
+					@Override
+					public Thread newThread( Runnable r )
+					{
+						Thread t = new Thread( r, "glyph renderer" );
+						t.setDaemon( true );
+						return t;
+					}
+				} );
+
+		try
 		{
-			ProtoGlyphImage pgi = pgiList.get( i );
+			// Find the duplicates up front, so the list order doesn't
+			// depend on the rendering order. Each character maps to an
+			// index in the list-to-be.
+			int[] index = new int[ chars.length() ];
+			List<GlyphTask> tasks = new ArrayList<GlyphTask>();
+			List<Shape> outlines = new ArrayList<Shape>();
+			for( ProtoGlyphImage pgi : pgiList )
+			{
+				outlines.add( pgi.gv.getGlyphOutline( 0 ) );
+			}
+
+			for( int i = 0; i < chars.length(); i++ )
+			{
+				GlyphVector gv =
+						srcFont.createGlyphVector( frc, new char[] { chars.charAt( i ) } );
+				Shape outline = gv.getGlyphOutline( 0 );
+
+				index[ i ] = -1;
+				for( int j = 0; j < outlines.size() && index[ i ] == -1; j++ )
+				{
+					if( equal( outline, outlines.get( j ) ) )
+					{
+						index[ i ] = j;
+					}
+				}
+
+				if( index[ i ] == -1 )
+				{
+					index[ i ] = outlines.size();
+					outlines.add( outline );
+
+					// the glyph vector is left to the task from now on
+					GlyphTask task = new GlyphTask( chars.charAt( i ), gv, outline );
+					task.future = executor.submit( task );
+					tasks.add( task );
+				}
+				else
+				{
+					tasks.add( null );
+				}
+			}
 
-			if( equal( glyphVector.getGlyphOutline( 0 ), pgi.gv.getGlyphOutline( 0 ) ) )
+			// collect in order
+			for( int i = 0; i < chars.length(); i++ )
 			{
-				pgi.characters.add( new Character( c ) );
+				char c = chars.charAt( i );
+
+				if( listener != null )
+				{
+					listener.glyphStarted( c );
+				}
+
+				GlyphTask task = tasks.get( i );
+				if( task != null )
+				{
+					assert pgiList.size() == index[ i ];
+					pgiList.add( task.await() );
+				}
+				else
+				{
+					pgiList.get( index[ i ] ).characters.add( Character.valueOf( c ) );
+				}
 
 				if( listener != null )
 				{
 					listener.glyphComplete( c );
 				}
+			}
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( "Interrupted while building glyphs", e );
+		}
+		catch( ExecutionException e )
+		{
+			throw new RuntimeException( "Failed to build glyph", e.getCause() );
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Renders a glyph on an executor thread, keeping track of progress
+	 */
+	private class GlyphTask implements Callable<ProtoGlyphImage>,
+			DistanceFieldFilter.Listener
+	{
+		private final char c;
+
+		private final GlyphVector gv;
+
+		private final Shape outline;
+
+		private volatile float progress = 0;
+
+		private Future<ProtoGlyphImage> future;
+
+		private GlyphTask( char c, GlyphVector gv, Shape outline )
+		{
+			this.c = c;
+			this.gv = gv;
+			this.outline = outline;
+		}
+
+		@Override
+		public ProtoGlyphImage call()
+		{
+			return renderGlyph( c, gv, outline, this );
+		}
 
-				return pgi;
+		@Override
+		public void progress( float p )
+		{
+			progress = p;
+		}
+
+		@Override
+		public void finished( BufferedImage result )
+		{
+		}
+
+		/**
+		 * Waits for the glyph, passing progress to the listener
+		 * 
+		 * @return the glyph
+		 * @throws InterruptedException
+		 * @throws ExecutionException
+		 */
+		private ProtoGlyphImage await() throws InterruptedException, ExecutionException
+		{
+			float reported = 0;
+
+			while( true )
+			{
+				try
+				{
+					return future.get( 50, TimeUnit.MILLISECONDS );
+				}
+				catch( TimeoutException e )
+				{
+					float p = progress;
+					if( listener != null && p > reported )
+					{
+						listener.glyphProgress( c, p );
+						reported = p;
+					}
+				}
 			}
 		}
+	}
 
-		Shape shape = glyphVector.getGlyphOutline( 0 );
+	/**
+	 * @param glyphVector
+	 * @param limit
+	 *           The number of entries of {@link #pgiList} to search
+	 * @return The index of the glyph in {@link #pgiList} with the same
+	 *         outline, or -1
+	 */
+	private int findDuplicate( GlyphVector glyphVector, int limit )
+	{
+		for( int i = 0; i < limit; i++ )
+		{
+			if( equal( glyphVector.getGlyphOutline( 0 ), pgiList.get( i ).gv
+					.getGlyphOutline( 0 ) ) )
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Rasterises a glyph and generates its distance field if need be.
+	 * Safe to call concurrently
+	 * 
+	 * @param c
+	 *           The character
+	 * @param glyphVector
+	 *           The character's glyph
+	 * @param shape
+	 *           The glyph's outline
+	 * @param progress
+	 *           Informed of distance field progress
+	 * @return The new glyph image, which has not been added to the
+	 *         {@link #pgiList}
+	 */
+	private ProtoGlyphImage renderGlyph( char c, GlyphVector glyphVector, Shape shape,
+			DistanceFieldFilter.Listener progress )
+	{
 		Rectangle bounds = shape.getBounds();
 		Dimension imageSize = new Dimension( bounds.width, bounds.height );
 
@@ -447,23 +712,7 @@ public class FontFactory implements KerningSource
 			if( distanceField )
 			{
 				DistanceFieldFilter dff =
-						new DistanceFieldFilter( image, distFieldScale, padScan,
-								new DistanceFieldFilter.Listener() {
-
-									@Override
-									public void progress( float progress )
-									{
-										if( listener != null )
-										{
-											listener.glyphProgress( c, progress );
-										}
-									}
-
-									@Override
-									public void finished( BufferedImage result )
-									{
-									}
-								} );
+						new DistanceFieldFilter( image, distFieldScale, padScan, progress );
 
 				dff.run();
 
@@ -482,16 +731,7 @@ public class FontFactory implements KerningSource
 
 		Image glyphImage = ImageFactory.buildImage( image, Image.Format.LUMINANCE_ALPHA );
 
-		ProtoGlyphImage glyph = new ProtoGlyphImage( glyphVector, glyphImage, origin, c );
-
-		pgiList.add( glyph );
-
-		if( listener != null )
-		{
-			listener.glyphComplete( c );
-		}
-
-		return glyph;
+		return new ProtoGlyphImage( glyphVector, glyphImage, origin, c );
 	}
 
 	private float getFixedWidthAdvance()
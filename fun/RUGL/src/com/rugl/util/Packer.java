@@ -0,0 +1,147 @@
+package com.rugl.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.rugl.util.RectanglePacker.Rectangle;
+
+/**
+ * Packs rectangles into a fixed area
+ * 
+ * @author ryanm
+ * @param <P>
+ *           The type of items to be held
+ */
+public abstract class Packer<P>
+{
+	/**
+	 * Attempts to pack an item of the supplied dimensions
+	 * 
+	 * @param width
+	 *           The width of the item
+	 * @param height
+	 *           The height of the item
+	 * @param o
+	 *           The item to pack
+	 * @return The packed location, or null if it will not fit.
+	 */
+	public abstract Rectangle insert( int width, int height, P o );
+
+	/**
+	 * Finds the {@link Rectangle} where an item is stored
+	 * 
+	 * @param item
+	 *           The item to search for
+	 * @return The {@link Rectangle} where that item resides, or null
+	 *         if not found
+	 */
+	public abstract Rectangle findRectangle( P item );
+
+	/**
+	 * Removes an item, freeing its space
+	 * 
+	 * @param o
+	 *           the item to remove
+	 * @return <code>true</code> if the item was found, false otherwise
+	 */
+	public abstract boolean remove( P o );
+
+	/**
+	 * Clears the packer of all items
+	 */
+	public abstract void clear();
+
+	/**
+	 * @return the width of this packer
+	 */
+	public abstract int getWidth();
+
+	/**
+	 * @return the height of this packer
+	 */
+	public abstract int getHeight();
+
+	/**
+	 * Builds a list of the packer's internal {@link Rectangle}s, for
+	 * debugging purposes
+	 * 
+	 * @param rectangles
+	 *           The list to add to
+	 */
+	public abstract void inspectRectangles( List<Rectangle> rectangles );
+
+	/**
+	 * Repacks the items to recover space lost to fragmentation. Item
+	 * positions may change, so use {@link #findRectangle(Object)} to
+	 * find out where they went
+	 * 
+	 * @return <code>true</code> if the items were repacked. This
+	 *         implementation can't, so it returns <code>false</code>
+	 */
+	public boolean compact()
+	{
+		return false;
+	}
+
+	/**
+	 * A quick test of whether an item might fit. If this returns
+	 * <code>false</code>, {@link #insert(int, int, Object)} is certain
+	 * to fail
+	 * 
+	 * @param width
+	 * @param height
+	 * @return <code>false</code> if the item will definitely not fit
+	 */
+	public boolean canFit( int width, int height )
+	{
+		return width <= getWidth() && height <= getHeight();
+	}
+
+	/**
+	 * Packs a batch of items, largest first, which packs more tightly
+	 * than inserting them as they come
+	 * 
+	 * @param widths
+	 * @param heights
+	 * @param items
+	 * @return The packed locations, in the same order as the items.
+	 *         Items that didn't fit have <code>null</code> locations
+	 */
+	public List<Rectangle> insertAll( final int[] widths, final int[] heights, List<P> items )
+	{
+		assert widths.length == items.size() && heights.length == items.size();
+
+		Integer[] order = new Integer[ items.size() ];
+		for( int i = 0; i < order.length; i++ )
+		{
+			order[ i ] = i;
+		}
+
+		Arrays.sort( order, new Comparator<Integer>() {
+			@Override
+			public int compare( Integer a, Integer b )
+			{
+				long aa = ( long ) widths[ a ] * heights[ a ];
+				long ba = ( long ) widths[ b ] * heights[ b ];
+
+				return aa > ba ? -1 : aa < ba ? 1 : 0;
+			}
+		} );
+
+		List<Rectangle> placed =
+				new ArrayList<Rectangle>( Collections.<Rectangle> nCopies( order.length, null ) );
+
+		for( int i : order )
+		{
+			if( canFit( widths[ i ], heights[ i ] ) )
+			{
+				placed.set( i, insert( widths[ i ], heights[ i ], items.get( i ) ) );
+			}
+		}
+
+		return placed;
+	}
+}
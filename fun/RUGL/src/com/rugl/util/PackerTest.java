@@ -61,7 +61,8 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 /**
- * A gui test class for the {@link RectanglePacker}
+ * A gui test class for the {@link Packer}s. Run with "bench" as the
+ * first argument to compare them without the gui
  * 
  * @author ryanm
  */
@@ -69,9 +70,21 @@ public class PackerTest
 {
 	/**
 	 * @param args
+	 *           width and height of the packer, or "bench" followed by
+	 *           the width, height and number of items
 	 */
 	public static void main( String[] args )
 	{
+		if( args.length > 0 && args[ 0 ].equals( "bench" ) )
+		{
+			int w = args.length > 2 ? Integer.parseInt( args[ 1 ] ) : 1024;
+			int h = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 1024;
+			int n = args.length > 3 ? Integer.parseInt( args[ 3 ] ) : 2000;
+
+			benchmark( w, h, n );
+			return;
+		}
+
 		int w = 640, h = 480;
 
 		if( args.length >= 2 )
@@ -83,9 +96,173 @@ public class PackerTest
 		new PackerTest( w, h );
 	}
 
+	/**
+	 * Packs glyph-sized items with both packers, one at a time and in
+	 * a batch, then removes half of them and packs some more. Reports
+	 * occupancy and insertion rate for each
+	 * 
+	 * @param w
+	 * @param h
+	 * @param n
+	 *           The number of items
+	 */
+	private static void benchmark( int w, int h, int n )
+	{
+		Random rng = new Random( 1 );
+		int[] widths = new int[ n ];
+		int[] heights = new int[ n ];
+		List<Integer> items = new ArrayList<Integer>();
+		for( int i = 0; i < n; i++ )
+		{
+			widths[ i ] = 8 + rng.nextInt( 40 );
+			heights[ i ] = 8 + rng.nextInt( 40 );
+			items.add( i );
+		}
+
+		System.out.println( n + " items into " + w + "x" + h
+				+ ", occupancy and inserts per ms" );
+
+		for( int p = 0; p < 2; p++ )
+		{
+			Packer<Integer> packer =
+					p == 0 ? new RectanglePacker<Integer>( w, h, 1 ) : new SkylinePacker<Integer>(
+							w, h, 1 );
+			String name = p == 0 ? "guillotine" : "skyline   ";
+
+			// warm up
+			for( int r = 0; r < 50; r++ )
+			{
+				packer.clear();
+				fill( packer, widths, heights, items );
+				packer.clear();
+				packer.insertAll( widths, heights, items );
+			}
+
+			packer.clear();
+			released = 0;
+			long start = System.nanoTime();
+			int area = fill( packer, widths, heights, items );
+			long time = System.nanoTime() - start;
+			report( name + " one by one   ", area, w * h, n, time );
+
+			// half go away, and the same number of new ones arrive
+			for( int i = 0; i < n; i += 2 )
+			{
+				if( packer.remove( items.get( i ) ) )
+				{
+					area -= widths[ i ] * heights[ i ];
+					released++;
+				}
+			}
+			List<Integer> more = new ArrayList<Integer>();
+			for( int i = 0; i < n; i += 2 )
+			{
+				more.add( n + i );
+			}
+			start = System.nanoTime();
+			for( int i : more )
+			{
+				RectanglePacker.Rectangle r = insert( packer, widths[ i - n ], heights[ i - n ], i );
+				if( r != null )
+				{
+					area += r.width * r.height;
+				}
+			}
+			time = System.nanoTime() - start;
+			report( name + " after churn  ", area, w * h, more.size(), time );
+
+			if( packer instanceof SkylinePacker )
+			{
+				start = System.nanoTime();
+				packer.compact();
+				for( int i : more )
+				{
+					if( packer.findRectangle( i ) == null )
+					{
+						RectanglePacker.Rectangle r = insert( packer, widths[ i - n ], heights[ i - n ], i );
+						if( r != null )
+						{
+							area += r.width * r.height;
+						}
+					}
+				}
+				time = System.nanoTime() - start;
+				report( name + " compacted    ", area, w * h, n, time );
+			}
+
+			packer.clear();
+			start = System.nanoTime();
+			area = 0;
+			for( RectanglePacker.Rectangle r : packer.insertAll( widths, heights, items ) )
+			{
+				if( r != null )
+				{
+					area += r.width * r.height;
+				}
+			}
+			time = System.nanoTime() - start;
+			report( name + " batch        ", area, w * h, n, time );
+		}
+	}
+
+	private static int fill( Packer<Integer> packer, int[] widths, int[] heights,
+			List<Integer> items )
+	{
+		int area = 0;
+		for( int i = 0; i < widths.length; i++ )
+		{
+			RectanglePacker.Rectangle r =
+					insert( packer, widths[ i ], heights[ i ], items.get( i ) );
+			if( r != null )
+			{
+				area += r.width * r.height;
+			}
+		}
+		return area;
+	}
+
+	/**
+	 * Items removed since the last compaction
+	 */
+	private static int released = 0;
+
+	/**
+	 * Inserts as {@link com.rugl.texture.TextureFactory} does: asking
+	 * first, and compacting if there's a quarter of the packer free
+	 * and items have been removed since it was last compacted
+	 */
+	private static RectanglePacker.Rectangle insert( Packer<Integer> packer, int w, int h,
+			Integer item )
+	{
+		RectanglePacker.Rectangle r = packer.canFit( w, h ) ? packer.insert( w, h, item ) : null;
+
+		if( r == null && released > 0 && packer instanceof SkylinePacker )
+		{
+			int free = ( ( SkylinePacker<Integer> ) packer ).getFreeArea();
+
+			if( free >= w * h && free >= 0.25f * packer.getWidth() * packer.getHeight() )
+			{
+				released = 0;
+
+				if( packer.compact() && packer.canFit( w, h ) )
+				{
+					r = packer.insert( w, h, item );
+				}
+			}
+		}
+
+		return r;
+	}
+
+	private static void report( String name, int area, int total, int inserts, long time )
+	{
+		System.out.println( "\t" + name + " : " + ( int ) ( 100f * area / total ) + "%, "
+				+ ( int ) ( inserts / ( time / 1000000.0 ) ) + " inserts/ms" );
+	}
+
 	private Dimension packerDim;
 
-	private RectanglePacker<Dimension> packer;
+	private Packer<Dimension> packer;
 
 	private int failureCount = 0;
 
@@ -38,7 +38,7 @@ import java.util.List;
  * @param <P>
  *           The type of items to be held
  */
-public class RectanglePacker<P>
+public class RectanglePacker<P> extends Packer<P>
 {
 
 	/**
@@ -92,6 +92,7 @@ public class RectanglePacker<P>
 	 * @param rectangles
 	 *           The list to add the tree's {@link Rectangle}s to
 	 */
+	@Override
 	public void inspectRectangles( List<Rectangle> rectangles )
 	{
 		root.getRectangles( rectangles );
@@ -105,6 +106,7 @@ public class RectanglePacker<P>
 	 * @return The {@link Rectangle} where that item resides, or null
 	 *         if not found
 	 */
+	@Override
 	public Rectangle findRectangle( P item )
 	{
 		return root.findRectange( item );
@@ -113,6 +115,7 @@ public class RectanglePacker<P>
 	/**
 	 * Clears the packer of all items
 	 */
+	@Override
 	public void clear()
 	{
 		root = new Node( root.rect );
@@ -129,6 +132,7 @@ public class RectanglePacker<P>
 	 *           The item to pack
 	 * @return The packed location, or null if it will not fit.
 	 */
+	@Override
 	public Rectangle insert( int width, int height, P o )
 	{
 		Node n = root.insert( width + 2 * border, height + 2 * border, o );
@@ -155,6 +159,7 @@ public class RectanglePacker<P>
 	 *           the item to remove
 	 * @return <code>true</code> if the item was found, false otherwise
 	 */
+	@Override
 	public boolean remove( P o )
 	{
 		return root.remove( o );
@@ -165,6 +170,7 @@ public class RectanglePacker<P>
 	 * 
 	 * @return the width of this packer
 	 */
+	@Override
 	public int getWidth()
 	{
 		return root.rect.width;
@@ -175,6 +181,7 @@ public class RectanglePacker<P>
 	 * 
 	 * @return The height of this packer
 	 */
+	@Override
 	public int getHeight()
 	{
 		return root.rect.height;
@@ -402,7 +409,7 @@ public class RectanglePacker<P>
 		 */
 		public final int height;
 
-		private Rectangle( int x, int y, int width, int height )
+		Rectangle( int x, int y, int width, int height )
 		{
 			this.x = x;
 			this.y = y;
@@ -0,0 +1,396 @@
+package com.rugl.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.rugl.util.RectanglePacker.Rectangle;
+
+/**
+ * Packs rectangles bottom-left against a skyline: the top edge of
+ * everything packed so far. Each item goes where its top edge will be
+ * lowest. Space under the skyline that isn't used is lost until the
+ * items above it are removed or the packer is {@link #compact()}ed.
+ * <p>
+ * Sizes that have failed to fit are remembered, so a failing insert
+ * of something at least as big in both dimensions is rejected in
+ * log(n) time without searching the skyline
+ * 
+ * @author ryanm
+ * @param <P>
+ *           The type of items to be held
+ */
+public class SkylinePacker<P> extends Packer<P>
+{
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * The border to leave around rectangles
+	 */
+	private final int border;
+
+	/**
+	 * Skyline segments in x order, as { x, y, width }. Adjacent
+	 * segments are at different heights
+	 */
+	private final List<int[]> skyline = new ArrayList<int[]>();
+
+	/**
+	 * Where each item is, border included
+	 */
+	private final Map<P, Rectangle> items = new IdentityHashMap<P, Rectangle>();
+
+	/**
+	 * Sizes that are known not to fit, as a staircase: heights
+	 * decrease as widths increase
+	 */
+	private final TreeMap<Integer, Integer> failures = new TreeMap<Integer, Integer>();
+
+	private int lowest = 0;
+
+	private int freeArea;
+
+	/**
+	 * @param width
+	 *           The width of the space available to pack into
+	 * @param height
+	 *           The height of the space available to pack into
+	 * @param border
+	 *           The border to preserve between packed items
+	 */
+	public SkylinePacker( int width, int height, int border )
+	{
+		this.width = width;
+		this.height = height;
+		this.border = border;
+
+		clear();
+	}
+
+	@Override
+	public void clear()
+	{
+		skyline.clear();
+		skyline.add( new int[] { 0, 0, width } );
+		items.clear();
+		failures.clear();
+		lowest = 0;
+		freeArea = width * height;
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return width;
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * @return The area that is not occupied by items or their borders.
+	 *         Not all of it is necessarily usable
+	 */
+	public int getFreeArea()
+	{
+		return freeArea;
+	}
+
+	@Override
+	public boolean canFit( int width, int height )
+	{
+		int w = width + 2 * border;
+		int h = height + 2 * border;
+
+		if( w > this.width || h > this.height - lowest || w * h > freeArea )
+		{
+			return false;
+		}
+
+		Map.Entry<Integer, Integer> f = failures.floorEntry( w );
+		return f == null || f.getValue() > h;
+	}
+
+	@Override
+	public Rectangle insert( int width, int height, P o )
+	{
+		if( !canFit( width, height ) )
+		{
+			return null;
+		}
+
+		int w = width + 2 * border;
+		int h = height + 2 * border;
+
+		int bestIndex = -1;
+		int bestTop = Integer.MAX_VALUE;
+		int bestY = 0;
+
+		for( int i = 0; i < skyline.size(); i++ )
+		{
+			int x = skyline.get( i )[ 0 ];
+			if( x + w > this.width )
+			{
+				break;
+			}
+
+			// the item rests on the highest segment it spans. Stop
+			// looking as soon as it can't beat the best so far
+			int y = 0;
+			int spanned = 0;
+			for( int j = i; spanned < w && y + h < bestTop; j++ )
+			{
+				int[] s = skyline.get( j );
+				y = Math.max( y, s[ 1 ] );
+				spanned += s[ 0 ] + s[ 2 ] - Math.max( x, s[ 0 ] );
+			}
+
+			if( spanned >= w && y + h <= this.height && y + h < bestTop )
+			{
+				bestIndex = i;
+				bestTop = y + h;
+				bestY = y;
+			}
+		}
+
+		if( bestIndex == -1 )
+		{
+			recordFailure( w, h );
+			return null;
+		}
+
+		int x = skyline.get( bestIndex )[ 0 ];
+		raise( x, w, bestTop );
+
+		Rectangle r = new Rectangle( x, bestY, w, h );
+		items.put( o, r );
+		freeArea -= w * h;
+
+		return unpadded( r );
+	}
+
+	@Override
+	public Rectangle findRectangle( P item )
+	{
+		Rectangle r = items.get( item );
+		return r == null ? null : unpadded( r );
+	}
+
+	/**
+	 * Removes an item. The space is only reclaimed if nothing rests on
+	 * top of it - call {@link #compact()} to recover the rest
+	 */
+	@Override
+	public boolean remove( P o )
+	{
+		Rectangle r = items.remove( o );
+
+		if( r == null )
+		{
+			return false;
+		}
+
+		freeArea += r.width * r.height;
+		failures.clear();
+
+		// can we drop the skyline back down?
+		boolean exposed = true;
+		for( int[] s : skyline )
+		{
+			if( s[ 0 ] < r.x + r.width && s[ 0 ] + s[ 2 ] > r.x )
+			{
+				exposed &= s[ 1 ] == r.y + r.height;
+			}
+		}
+
+		if( exposed )
+		{
+			raise( r.x, r.width, r.y );
+		}
+
+		return true;
+	}
+
+	/**
+	 * Repacks every item from scratch, largest first. If they don't
+	 * all fit, nothing changes. Item positions will change, so use
+	 * {@link #findRectangle(Object)} to find out where they went
+	 * 
+	 * @return <code>true</code> if the items were repacked
+	 */
+	@Override
+	public boolean compact()
+	{
+		List<Map.Entry<P, Rectangle>> old =
+				new ArrayList<Map.Entry<P, Rectangle>>( items.entrySet() );
+
+		Collections.sort( old, new Comparator<Map.Entry<P, Rectangle>>() {
+			@Override
+			public int compare( Map.Entry<P, Rectangle> a, Map.Entry<P, Rectangle> b )
+			{
+				int aa = a.getValue().width * a.getValue().height;
+				int ba = b.getValue().width * b.getValue().height;
+
+				return aa > ba ? -1 : aa < ba ? 1 : 0;
+			}
+		} );
+
+		clear();
+
+		for( Map.Entry<P, Rectangle> e : old )
+		{
+			Rectangle r = e.getValue();
+			if( insert( r.width - 2 * border, r.height - 2 * border, e.getKey() ) == null )
+			{
+				// put everything back as it was
+				clear();
+				for( Map.Entry<P, Rectangle> o : old )
+				{
+					Rectangle or = o.getValue();
+					items.put( o.getKey(), or );
+					freeArea -= or.width * or.height;
+				}
+				rebuildSkyline();
+
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public void inspectRectangles( List<Rectangle> rectangles )
+	{
+		for( Rectangle r : items.values() )
+		{
+			rectangles.add( r );
+		}
+
+		for( int[] s : skyline )
+		{
+			rectangles.add( new Rectangle( s[ 0 ], s[ 1 ], s[ 2 ], 0 ) );
+		}
+	}
+
+	private Rectangle unpadded( Rectangle r )
+	{
+		return new Rectangle( r.x + border, r.y + border, r.width - 2 * border, r.height
+				- 2 * border );
+	}
+
+	private void recordFailure( int w, int h )
+	{
+		Map.Entry<Integer, Integer> f = failures.floorEntry( w );
+		if( f != null && f.getValue() <= h )
+		{
+			return;
+		}
+
+		// drop the failures that this one implies
+		Map.Entry<Integer, Integer> g;
+		while( ( g = failures.ceilingEntry( w ) ) != null && g.getValue() >= h )
+		{
+			failures.remove( g.getKey() );
+		}
+
+		failures.put( w, h );
+	}
+
+	/**
+	 * Sets the skyline height over a span
+	 * 
+	 * @param x
+	 * @param w
+	 * @param y
+	 */
+	private void raise( int x, int w, int y )
+	{
+		List<int[]> updated = new ArrayList<int[]>( skyline.size() + 2 );
+
+		for( int[] s : skyline )
+		{
+			int end = s[ 0 ] + s[ 2 ];
+
+			if( end <= x || s[ 0 ] >= x + w )
+			{
+				updated.add( s );
+			}
+			else
+			{
+				if( s[ 0 ] < x )
+				{
+					updated.add( new int[] { s[ 0 ], s[ 1 ], x - s[ 0 ] } );
+				}
+				if( s[ 0 ] <= x )
+				{
+					updated.add( new int[] { x, y, w } );
+				}
+				if( end > x + w )
+				{
+					updated.add( new int[] { x + w, s[ 1 ], end - x - w } );
+				}
+			}
+		}
+
+		setSkyline( updated );
+	}
+
+	/**
+	 * Works out the skyline from scratch, for when the items have been
+	 * put back after a failed compaction
+	 */
+	private void rebuildSkyline()
+	{
+		int[] top = new int[ width ];
+		for( Rectangle r : items.values() )
+		{
+			for( int x = r.x; x < r.x + r.width; x++ )
+			{
+				top[ x ] = Math.max( top[ x ], r.y + r.height );
+			}
+		}
+
+		List<int[]> updated = new ArrayList<int[]>();
+		for( int x = 0; x < width; x++ )
+		{
+			updated.add( new int[] { x, top[ x ], 1 } );
+		}
+
+		setSkyline( updated );
+	}
+
+	/**
+	 * Merges adjacent segments of the same height and finds the lowest
+	 */
+	private void setSkyline( List<int[]> segments )
+	{
+		skyline.clear();
+		lowest = Integer.MAX_VALUE;
+
+		for( int[] s : segments )
+		{
+			int[] last = skyline.isEmpty() ? null : skyline.get( skyline.size() - 1 );
+
+			if( last != null && last[ 1 ] == s[ 1 ] )
+			{
+				last[ 2 ] += s[ 2 ];
+			}
+			else
+			{
+				skyline.add( new int[] { s[ 0 ], s[ 1 ], s[ 2 ] } );
+			}
+
+			lowest = Math.min( lowest, s[ 1 ] );
+		}
+	}
+}
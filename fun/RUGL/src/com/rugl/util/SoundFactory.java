@@ -97,6 +97,21 @@ public class SoundFactory
 		return create( wd );
 	}
 
+	/**
+	 * Loads a {@link Sound} from an {@link AssetArchive}, without
+	 * copying the sample data
+	 * 
+	 * @param archive
+	 * @param name
+	 * @return A {@link Sound}
+	 * @throws IOException
+	 *            If the archive has no such sound
+	 */
+	public static Sound load( AssetArchive archive, String name ) throws IOException
+	{
+		return archive.getSound( name );
+	}
+
 	/**
 	 * Creates a {@link Sound} from a {@link WaveData} object
 	 * 
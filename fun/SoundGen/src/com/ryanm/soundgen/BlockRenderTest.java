@@ -0,0 +1,92 @@
+
+package com.ryanm.soundgen;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import com.ryanm.soundgen.imp.TerrainSound;
+
+/**
+ * Renders sounds sample by sample and in blocks, checks that the
+ * results match, and reports how long each took
+ *
+ * @author ryanm
+ */
+public class BlockRenderTest
+{
+	/**
+	 * @param args
+	 *           The length of the randomised sounds, in seconds
+	 */
+	public static void main( String[] args )
+	{
+		float length = args.length > 0 ? Float.parseFloat( args[ 0 ] ) : 5;
+		int sampleRate = 44100;
+
+		TerrainSound[] sounds = new TerrainSound[ 6 + TerrainSound.WaveType.values().length ];
+		for( int i = 0; i < sounds.length; i++ )
+		{
+			sounds[ i ] = new TerrainSound();
+		}
+		sounds[ 0 ].coin();
+		sounds[ 1 ].laser();
+		sounds[ 2 ].explosion();
+		sounds[ 3 ].powerup();
+		sounds[ 4 ].hit();
+		sounds[ 5 ].jump();
+		for( int i = 6; i < sounds.length; i++ )
+		{
+			sounds[ i ].length = length;
+			sounds[ i ].randomise();
+			sounds[ i ].wave = TerrainSound.WaveType.values()[ i - 6 ];
+		}
+
+		// warm up
+		for( TerrainSound ts : sounds )
+		{
+			render( ts, sampleRate, false );
+			render( ts, sampleRate, true );
+		}
+
+		int worst = 0;
+		long serialTime = 0, blockTime = 0;
+
+		for( TerrainSound ts : sounds )
+		{
+			long start = System.nanoTime();
+			ShortBuffer serial = render( ts, sampleRate, false );
+			long st = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			ShortBuffer block = render( ts, sampleRate, true );
+			long bt = System.nanoTime() - start;
+
+			int diff = 0;
+			for( int i = 0; i < serial.limit(); i++ )
+			{
+				diff = Math.max( diff, Math.abs( serial.get( i ) - block.get( i ) ) );
+			}
+
+			System.out.println( ts.wave + "/" + ts.vibrato + ", " + ts.length + "s : "
+					+ st / 1000000 + "ms sample by sample, " + bt / 1000000
+					+ "ms in blocks, max difference " + diff );
+
+			worst = Math.max( worst, diff );
+			serialTime += st;
+			blockTime += bt;
+		}
+
+		System.out.println( "Total : " + serialTime / 1000000 + "ms sample by sample, "
+				+ blockTime / 1000000 + "ms in blocks on "
+				+ Runtime.getRuntime().availableProcessors() + " cores" );
+		System.out.println( worst <= 1 ? "Within 1 LSB" : "FAILED: differs by " + worst
+				+ " LSB" );
+	}
+
+	private static ShortBuffer render( TerrainSound ts, int sampleRate, boolean blocks )
+	{
+		ts.blockRender = blocks;
+		ByteBuffer bb = ts.generate( sampleRate );
+		return bb.asShortBuffer();
+	}
+}
@@ -0,0 +1,109 @@
+
+package com.ryanm.soundgen;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits sample ranges over a shared pool of threads
+ * 
+ * @author ryanm
+ */
+public class Blocks
+{
+	/**
+	 * The number of supersamples in a block
+	 */
+	public static final int SIZE = 4096;
+
+	private static ForkJoinPool pool;
+
+	private Blocks()
+	{
+	}
+
+	/**
+	 * A loop body
+	 */
+	public interface Loop
+	{
+		/**
+		 * @param from
+		 *           inclusive
+		 * @param to
+		 *           exclusive
+		 */
+		public void process( int from, int to );
+	}
+
+	/**
+	 * Runs a loop over the shared pool, in blocks, returning when it
+	 * is complete
+	 * 
+	 * @param count
+	 *           The size of the range
+	 * @param blockSize
+	 *           The largest range that a single call to
+	 *           {@link Loop#process(int, int)} will be given
+	 * @param loop
+	 */
+	public static void parallel( int count, int blockSize, Loop loop )
+	{
+		Strip s = new Strip( loop, blockSize, 0, count );
+
+		if( count <= blockSize )
+		{
+			s.compute();
+		}
+		else if( ForkJoinTask.inForkJoinPool() )
+		{ // we're already in a pool, just fork in there
+			s.invoke();
+		}
+		else
+		{
+			getPool().invoke( s );
+		}
+	}
+
+	private static synchronized ForkJoinPool getPool()
+	{
+		if( pool == null )
+		{
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+
+	private static class Strip extends RecursiveAction
+	{
+		private final Loop loop;
+
+		private final int blockSize;
+
+		private final int from, to;
+
+		private Strip( Loop loop, int blockSize, int from, int to )
+		{
+			this.loop = loop;
+			this.blockSize = blockSize;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if( to - from <= blockSize )
+			{
+				loop.process( from, to );
+			}
+			else
+			{
+				int mid = ( from + to ) >>> 1;
+				invokeAll( new Strip( loop, blockSize, from, mid ), new Strip( loop,
+						blockSize, mid, to ) );
+			}
+		}
+	}
+}
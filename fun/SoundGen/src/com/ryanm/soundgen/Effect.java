@@ -0,0 +1,36 @@
+
+package com.ryanm.soundgen;
+
+/**
+ * A post-processing effect that works on blocks of floating-point
+ * samples. Effects are strung together in an {@link EffectChain},
+ * which takes care of getting the samples to and from 16-bit
+ * 
+ * @author ryanm
+ */
+public interface Effect
+{
+	/**
+	 * Prepares to process a new sound. Any working space should be
+	 * allocated here, so that {@link #apply(float[], float[], int)}
+	 * doesn't have to
+	 * 
+	 * @param sampleRate
+	 *           The number of samples per second
+	 * @param blockSize
+	 *           The largest block that will be applied
+	 */
+	public void start( int sampleRate, int blockSize );
+
+	/**
+	 * Applies the effect to the next block of samples
+	 * 
+	 * @param samples
+	 *           The samples, on the 16-bit scale. Modified in place
+	 * @param time
+	 *           The time of each sample, in seconds
+	 * @param count
+	 *           The number of samples
+	 */
+	public void apply( float[] samples, float[] time, int count );
+}
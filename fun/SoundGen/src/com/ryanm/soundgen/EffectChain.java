@@ -0,0 +1,163 @@
+
+package com.ryanm.soundgen;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Applies a list of {@link Effect}s in a single pass over the sound.
+ * Samples are converted to floats a block at a time, run through each
+ * effect in turn, and converted back to 16-bit once at the end
+ * 
+ * @author ryanm
+ */
+public class EffectChain implements PostProcess
+{
+	/**
+	 * The number of samples processed at a time
+	 */
+	public static final int BLOCK = 1024;
+
+	/**
+	 * The effects, in the order they are applied
+	 */
+	public final List<Effect> effects = new ArrayList<Effect>();
+
+	/**
+	 * If <code>true</code>, triangular dither is added before
+	 * rounding to 16-bit. If <code>false</code>, samples are truncated
+	 * as the effects used to do
+	 */
+	public boolean dither = true;
+
+	private final float[] samples = new float[ BLOCK ];
+
+	private final float[] time = new float[ BLOCK ];
+
+	private final short[] pcm = new short[ BLOCK ];
+
+	private int sampleRate;
+
+	private int index;
+
+	/**
+	 * Dither noise state
+	 */
+	private int noise;
+
+	/**
+	 * @param effects
+	 *           The effects to apply
+	 */
+	public EffectChain( Effect... effects )
+	{
+		Collections.addAll( this.effects, effects );
+	}
+
+	@Override
+	public void process( ShortBuffer data, int sampleRate )
+	{
+		ShortBuffer all = data.duplicate();
+		all.position( 0 );
+
+		start( sampleRate );
+		processNext( all );
+	}
+
+	@Override
+	public void start( int sampleRate )
+	{
+		this.sampleRate = sampleRate;
+		index = 0;
+		noise = 0x2545f491;
+
+		for( Effect e : effects )
+		{
+			e.start( sampleRate, BLOCK );
+		}
+	}
+
+	@Override
+	public void processNext( ShortBuffer chunk )
+	{
+		ShortBuffer in = chunk.duplicate();
+		ShortBuffer out = chunk.duplicate();
+
+		while( in.hasRemaining() )
+		{
+			int n = Math.min( BLOCK, in.remaining() );
+
+			in.get( pcm, 0, n );
+			for( int i = 0; i < n; i++ )
+			{
+				samples[ i ] = pcm[ i ];
+				time[ i ] = ( float ) ( index + i ) / sampleRate;
+			}
+
+			for( int j = 0; j < effects.size(); j++ )
+			{
+				effects.get( j ).apply( samples, time, n );
+			}
+
+			if( dither )
+			{
+				for( int i = 0; i < n; i++ )
+				{
+					float s = samples[ i ] + triangular();
+
+					// offset so that truncation rounds to nearest, without
+					// the cost of Math.floor()
+					pcm[ i ] =
+							s >= Short.MAX_VALUE ? Short.MAX_VALUE : s <= Short.MIN_VALUE
+									? Short.MIN_VALUE : ( short ) ( ( int ) ( s + 32768.5f ) - 32768 );
+				}
+			}
+			else
+			{
+				for( int i = 0; i < n; i++ )
+				{
+					pcm[ i ] = clamp( ( int ) samples[ i ] );
+				}
+			}
+
+			out.put( pcm, 0, n );
+			index += n;
+		}
+	}
+
+	/**
+	 * @return Triangular noise in the range (-1, 1)
+	 */
+	private float triangular()
+	{
+		return uniform() - uniform();
+	}
+
+	/**
+	 * @return Uniform noise in the range [0, 1), from a xorshift
+	 *         generator
+	 */
+	private float uniform()
+	{
+		noise ^= noise << 13;
+		noise ^= noise >>> 17;
+		noise ^= noise << 5;
+
+		return ( noise >>> 8 ) * ( 1.0f / ( 1 << 24 ) );
+	}
+
+	private static short clamp( int s )
+	{
+		if( s > Short.MAX_VALUE )
+		{
+			return Short.MAX_VALUE;
+		}
+		if( s < Short.MIN_VALUE )
+		{
+			return Short.MIN_VALUE;
+		}
+		return ( short ) s;
+	}
+}
@@ -0,0 +1,102 @@
+package com.ryanm.soundgen;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays chunks through a java sound {@link SourceDataLine}, for when
+ * there's no OpenAL. The line keeps running when it runs dry, so
+ * underruns are not counted
+ * 
+ * @author ryanm
+ */
+public class LineSink implements StreamSink
+{
+	private final SourceDataLine line;
+
+	private final int sampleRate;
+
+	/**
+	 * The frame positions at which the queued chunks end
+	 */
+	private final LinkedList<Long> chunkEnds = new LinkedList<Long>();
+
+	private long written = 0;
+
+	/**
+	 * @param sampleRate
+	 * @param bufferBytes
+	 *           The size of the line's buffer. This should be at least
+	 *           the chunk size times the queue depth, so that queueing
+	 *           doesn't block
+	 * @throws LineUnavailableException
+	 */
+	public LineSink( int sampleRate, int bufferBytes ) throws LineUnavailableException
+	{
+		this.sampleRate = sampleRate;
+
+		AudioFormat format = new AudioFormat( sampleRate, 16, 1, true, false );
+		line = AudioSystem.getSourceDataLine( format );
+		line.open( format, bufferBytes );
+	}
+
+	@Override
+	public void queue( ByteBuffer pcm, int sampleRate )
+	{
+		assert sampleRate == this.sampleRate : "Line is open at " + this.sampleRate;
+
+		byte[] b = new byte[ pcm.remaining() ];
+		pcm.duplicate().get( b );
+		line.write( b, 0, b.length );
+
+		written += b.length / 2;
+		chunkEnds.add( Long.valueOf( written ) );
+	}
+
+	@Override
+	public int reclaim()
+	{
+		long played = line.getLongFramePosition();
+
+		int n = 0;
+		while( !chunkEnds.isEmpty() && chunkEnds.getFirst().longValue() <= played )
+		{
+			chunkEnds.removeFirst();
+			n++;
+		}
+
+		return n;
+	}
+
+	@Override
+	public int queued()
+	{
+		return chunkEnds.size();
+	}
+
+	@Override
+	public void play()
+	{
+		line.start();
+	}
+
+	@Override
+	public boolean isPlaying()
+	{
+		return line.isRunning();
+	}
+
+	@Override
+	public void release()
+	{
+		line.stop();
+		line.flush();
+		line.close();
+		chunkEnds.clear();
+	}
+}
@@ -0,0 +1,174 @@
+package com.ryanm.soundgen;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+import com.ryanm.soundgen.imp.TerrainSound;
+
+/**
+ * A {@link StreamSink} that doesn't need OpenAL. Chunks are kept in
+ * memory and "played" against the system clock, so a
+ * {@link StreamingSound} can be tested headless. Running the class
+ * streams a long sound through one and checks the result against
+ * {@link TerrainSound#generate(int)}
+ * 
+ * @author ryanm
+ */
+public class MemorySink implements StreamSink
+{
+	/**
+	 * Everything that has been queued, in order
+	 */
+	public final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+	/**
+	 * The playback speed, relative to real time
+	 */
+	public final float speed;
+
+	/**
+	 * Sample counts of the queued chunks
+	 */
+	private final LinkedList<Integer> chunks = new LinkedList<Integer>();
+
+	private int sampleRate = 1;
+
+	private boolean playing = false;
+
+	/**
+	 * The samples in chunks that have finished
+	 */
+	private long finished = 0;
+
+	private long playStart;
+
+	private long playStartSample;
+
+	/**
+	 * @param speed
+	 *           The playback speed, relative to real time
+	 */
+	public MemorySink( float speed )
+	{
+		this.speed = speed;
+	}
+
+	@Override
+	public void queue( ByteBuffer pcm, int sampleRate )
+	{
+		this.sampleRate = sampleRate;
+
+		byte[] b = new byte[ pcm.remaining() ];
+		pcm.duplicate().get( b );
+		captured.write( b, 0, b.length );
+
+		chunks.add( b.length / 2 );
+	}
+
+	@Override
+	public int reclaim()
+	{
+		int n = 0;
+
+		if( playing )
+		{
+			long played =
+					playStartSample
+							+ ( long ) ( ( System.nanoTime() - playStart ) * speed * sampleRate / 1000000000.0 );
+
+			while( !chunks.isEmpty() && finished + chunks.getFirst() <= played )
+			{
+				finished += chunks.removeFirst();
+				n++;
+			}
+
+			if( chunks.isEmpty() )
+			{
+				playing = false;
+			}
+		}
+
+		return n;
+	}
+
+	@Override
+	public int queued()
+	{
+		return chunks.size();
+	}
+
+	@Override
+	public void play()
+	{
+		if( !playing && !chunks.isEmpty() )
+		{
+			playing = true;
+			playStart = System.nanoTime();
+			playStartSample = finished;
+		}
+	}
+
+	@Override
+	public boolean isPlaying()
+	{
+		return playing;
+	}
+
+	@Override
+	public void release()
+	{
+		playing = false;
+		chunks.clear();
+	}
+
+	/**
+	 * @param args
+	 *           The length of the sound, in seconds, and the playback
+	 *           speed
+	 * @throws InterruptedException
+	 */
+	public static void main( String[] args ) throws InterruptedException
+	{
+		float length = args.length > 0 ? Float.parseFloat( args[ 0 ] ) : 20;
+		float speed = args.length > 1 ? Float.parseFloat( args[ 1 ] ) : 4;
+		int sampleRate = 44100;
+
+		TerrainSound ts = new TerrainSound();
+		ts.length = length;
+		ts.randomise();
+
+		// warm up
+		ts.generate( sampleRate );
+
+		long start = System.nanoTime();
+		ByteBuffer full = ts.generate( sampleRate );
+		long generateTime = System.nanoTime() - start;
+
+		MemorySink sink = new MemorySink( speed );
+		StreamingSound stream = new StreamingSound( ts, sampleRate, sink, 0.1f, 4 );
+
+		while( !stream.isFinished() )
+		{
+			stream.update();
+			Thread.sleep( 5 );
+		}
+
+		byte[] streamed = sink.captured.toByteArray();
+		int worst = streamed.length == full.limit() ? 0 : Integer.MAX_VALUE;
+		for( int i = 0; worst == 0 && i < streamed.length; i += 2 )
+		{
+			short s = ( short ) ( streamed[ i ] & 0xff | streamed[ i + 1 ] << 8 );
+			worst = Math.max( worst, Math.abs( s - full.getShort( i ) ) );
+		}
+
+		System.out.println( length + "s sound, played at " + speed + "x" );
+		System.out.println( "\tgenerate : " + generateTime / 1000000 + "ms before playback, "
+				+ full.capacity() + " bytes" );
+		System.out.println( "\tstreamed : " + stream.timeToFirstAudio() / 1000000
+				+ "ms before playback, " + stream.poolBytes() + " byte pool, "
+				+ stream.peakBufferedBytes() + " bytes peak buffered, "
+				+ stream.underruns() + " underruns" );
+		System.out.println( worst == 0 ? "Identical" : "FAILED: streamed data differs" );
+	}
+}
@@ -19,4 +19,22 @@ public interface PostProcess
 	 *           The number of samples per second
 	 */
 	public void process( ShortBuffer data, int sampleRate );
+
+	/**
+	 * Prepares to process a sound in chunks
+	 * 
+	 * @param sampleRate
+	 *           The number of samples per second
+	 */
+	public void start( int sampleRate );
+
+	/**
+	 * Processes the next chunk of a sound. Only earlier samples are
+	 * available, so the results may differ from
+	 * {@link #process(ShortBuffer, int)} for effects that look ahead
+	 * 
+	 * @param chunk
+	 *           The sound data, from position to limit
+	 */
+	public void processNext( ShortBuffer chunk );
 }
@@ -21,10 +21,7 @@ import java.awt.event.MouseWheelListener;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import javax.sound.sampled.LineUnavailableException;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -36,6 +33,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.Timer;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -50,7 +48,40 @@ public class SoundGenApp extends JFrame
 {
 	private TerrainSound sound = new TerrainSound();
 
-	private Clip clip;
+	/**
+	 * The length of each chunk of streamed sound, in seconds
+	 */
+	private static final float CHUNK_LENGTH = 0.05f;
+
+	private static final int CHUNK_DEPTH = 4;
+
+	private StreamingSound playing = null;
+
+	/**
+	 * Moves generated chunks to the line while {@link #playing}
+	 */
+	private final Timer pump = new Timer( 10, new ActionListener() {
+		@Override
+		public void actionPerformed( ActionEvent e )
+		{
+			try
+			{
+				if( playing != null && playing.isFinished() )
+				{
+					stopPlaying();
+				}
+				else if( playing != null )
+				{
+					playing.update();
+				}
+			}
+			catch( IllegalStateException ise )
+			{
+				stopPlaying();
+				ise.printStackTrace();
+			}
+		}
+	} );
 
 	private JButton play = new JButton( "Play" );
 
@@ -109,6 +140,8 @@ public class SoundGenApp extends JFrame
 			{
 				sound.superSamples = ( ( Number ) sSamples.getValue() ).intValue();
 			}
+
+			edited();
 		}
 	};
 
@@ -182,16 +215,6 @@ public class SoundGenApp extends JFrame
 
 		setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE );
 
-		try
-		{
-			clip = AudioSystem.getClip();
-		}
-		catch( LineUnavailableException e )
-		{
-			e.printStackTrace();
-			System.exit( -1 );
-		}
-
 		Box bp = new Box( BoxLayout.Y_AXIS );
 		bp.add( play );
 
@@ -212,6 +235,8 @@ public class SoundGenApp extends JFrame
 			{
 				sound.wave =
 						TerrainSound.WaveType.values()[ baseWaveChoice.getSelectedIndex() ];
+
+				edited();
 			}
 		} );
 
@@ -224,6 +249,8 @@ public class SoundGenApp extends JFrame
 
 				frequency.v = sound.getFrequency();
 				frequency.refresh();
+
+				edited();
 			}
 		} );
 
@@ -280,6 +307,8 @@ public class SoundGenApp extends JFrame
 
 						baseWaveChoice.setSelectedIndex( sound.wave.ordinal() );
 						vibWaveChoice.setSelectedIndex( sound.vibrato.ordinal() );
+
+						edited();
 					}
 					catch( IOException e1 )
 					{
@@ -364,28 +393,48 @@ public class SoundGenApp extends JFrame
 		return p;
 	}
 
+	/**
+	 * Plays a copy of the sound, so the generating thread doesn't see
+	 * edits made while it plays
+	 */
 	private void play()
 	{
-		if( clip.isOpen() )
-		{
-			clip.close();
-		}
-
-		ByteBuffer pcm = sound.generate( 44100 );
+		stopPlaying();
 
 		try
 		{
-			clip.open( WavUtil.getAudioStream( 44100, 2, pcm ) );
+			int bufferBytes = 2 * Math.round( CHUNK_LENGTH * 44100 ) * CHUNK_DEPTH;
 
-			clip.start();
+			playing =
+					new StreamingSound( new TerrainSound( sound ), 44100, new LineSink( 44100,
+							bufferBytes ), CHUNK_LENGTH, CHUNK_DEPTH );
+			pump.start();
 		}
 		catch( LineUnavailableException e )
 		{
 			e.printStackTrace();
 		}
-		catch( IOException e )
+	}
+
+	/**
+	 * Restarts playback, if it's playing, so that edits are heard
+	 */
+	private void edited()
+	{
+		if( playing != null )
 		{
-			e.printStackTrace();
+			play();
+		}
+	}
+
+	private void stopPlaying()
+	{
+		pump.stop();
+
+		if( playing != null )
+		{
+			playing.stop();
+			playing = null;
 		}
 	}
 
@@ -705,6 +754,8 @@ public class SoundGenApp extends JFrame
 				{
 					frequency.refresh();
 				}
+
+				edited();
 			}
 
 			@Override
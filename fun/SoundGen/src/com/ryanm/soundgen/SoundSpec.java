@@ -4,6 +4,7 @@ package com.ryanm.soundgen;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 
 /**
  * Specifies the parameters of a sound
@@ -38,6 +39,18 @@ public class SoundSpec implements Cloneable, Serializable
 	 */
 	public int superSamples = 8;
 
+	/**
+	 * Whether to render in blocks, spread over several threads. Set
+	 * this to <code>false</code> to render sample by sample
+	 */
+	public boolean blockRender = true;
+
+	/**
+	 * The number of supersamples whose times are held at once when
+	 * block rendering
+	 */
+	static final int SEGMENT = 64 * Blocks.SIZE;
+
 	/**
 	 * 
 	 */
@@ -54,6 +67,7 @@ public class SoundSpec implements Cloneable, Serializable
 	{
 		length = sound.length;
 		superSamples = sound.superSamples;
+		blockRender = sound.blockRender;
 	}
 
 	/**
@@ -72,17 +86,29 @@ public class SoundSpec implements Cloneable, Serializable
 		ByteBuffer buffer =
 				ByteBuffer.allocateDirect( samples * 2 ).order( ByteOrder.LITTLE_ENDIAN );
 
-		float time = 0;
-		float sampleDelta = 1.0f / sampleRate;
-		float ssDelta = sampleDelta / superSamples;
+		if( blockRender )
+		{
+			SoundStream stream = new SoundStream( this, sampleRate, false );
+			ShortBuffer sb = buffer.asShortBuffer();
+			while( sb.hasRemaining() )
+			{
+				stream.read( sb );
+			}
+		}
+		else
+		{
+			float time = 0;
+			float sampleDelta = 1.0f / sampleRate;
+			float ssDelta = sampleDelta / superSamples;
 
-		assert ssDelta != 0;
+			assert ssDelta != 0;
 
-		while( buffer.hasRemaining() )
-		{
-			buffer.putShort( sample( ssDelta, time ) );
+			while( buffer.hasRemaining() )
+			{
+				buffer.putShort( sample( ssDelta, time ) );
 
-			time += sampleDelta;
+				time += sampleDelta;
+			}
 		}
 
 		buffer.rewind();
@@ -95,6 +121,21 @@ public class SoundSpec implements Cloneable, Serializable
 		return buffer;
 	}
 
+	/**
+	 * Starts generating the sound a chunk at a time. Any
+	 * {@link #postProcess} is applied to each chunk as it is read
+	 * 
+	 * @param sampleRate
+	 * @return A stream of 16-bit pcm data
+	 */
+	public SoundStream stream( int sampleRate )
+	{
+		assert volumeEnvelope != null;
+		assert waveform != null;
+
+		return new SoundStream( this, sampleRate, true );
+	}
+
 	private short sample( float ssDelta, float time )
 	{
 		float vAccum = 0;
@@ -108,6 +149,18 @@ public class SoundSpec implements Cloneable, Serializable
 			wAccum += waveform.getValue( t );
 		}
 
+		return quantise( vAccum, wAccum );
+	}
+
+	/**
+	 * @param vAccum
+	 *           The sum of volume supersamples
+	 * @param wAccum
+	 *           The sum of waveform supersamples
+	 * @return The sample value
+	 */
+	short quantise( float vAccum, float wAccum )
+	{
 		vAccum /= superSamples;
 		wAccum /= superSamples;
 
@@ -0,0 +1,166 @@
+
+package com.ryanm.soundgen;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Generates a {@link SoundSpec}'s sound a chunk at a time, so that
+ * playback can start before the whole sound is rendered and memory
+ * use doesn't depend on the sound's length. Chunks are rendered in
+ * blocks over several threads, and the result is the same as
+ * {@link SoundSpec#generate(int)}
+ * 
+ * @author ryanm
+ */
+public class SoundStream
+{
+	private final SoundSpec spec;
+
+	/**
+	 * The sample rate
+	 */
+	public final int sampleRate;
+
+	private final int samples;
+
+	private final int superSamples;
+
+	private final float sampleDelta;
+
+	private final float ssDelta;
+
+	private final PostProcess postProcess;
+
+	private final short[] pcm;
+
+	private int position = 0;
+
+	private float time = 0;
+
+	/**
+	 * @param spec
+	 * @param sampleRate
+	 * @param postProcess
+	 *           <code>true</code> to apply the spec's
+	 *           {@link SoundSpec#postProcess} to each chunk
+	 */
+	SoundStream( SoundSpec spec, int sampleRate, boolean postProcess )
+	{
+		this.spec = spec;
+		this.sampleRate = sampleRate;
+
+		samples = ( int ) Math.ceil( sampleRate * spec.length );
+		superSamples = spec.superSamples;
+		sampleDelta = 1.0f / sampleRate;
+		ssDelta = sampleDelta / superSamples;
+
+		assert ssDelta != 0;
+
+		this.postProcess = postProcess ? spec.postProcess : null;
+		if( this.postProcess != null )
+		{
+			this.postProcess.start( sampleRate );
+		}
+
+		pcm = new short[ Math.max( 1, Math.min( SoundSpec.SEGMENT / superSamples, samples ) ) ];
+	}
+
+	/**
+	 * @return The total number of samples in the sound
+	 */
+	public int length()
+	{
+		return samples;
+	}
+
+	/**
+	 * @return The number of samples read so far
+	 */
+	public int position()
+	{
+		return position;
+	}
+
+	/**
+	 * @return <code>true</code> if there are samples left to read
+	 */
+	public boolean hasRemaining()
+	{
+		return position < samples;
+	}
+
+	/**
+	 * Renders the next samples. Asking for fewer samples gets them
+	 * sooner
+	 * 
+	 * @param out
+	 *           The destination buffer
+	 * @return The number of samples written. This will be less than
+	 *         <code>out.remaining()</code> if the sound ends, or if
+	 *         there is a lot of space in the buffer
+	 */
+	public int read( ShortBuffer out )
+	{
+		final int n = Math.min( Math.min( out.remaining(), samples - position ), pcm.length );
+		final int ss = superSamples;
+
+		if( n <= 0 )
+		{
+			return 0;
+		}
+
+		// The supersample times are worked out exactly as they are when
+		// rendering sample by sample. It's a fresh array, so variables
+		// can tell it's a new segment
+		final float[] times = new float[ n * ss ];
+		for( int s = 0; s < n; s++ )
+		{
+			for( int i = 0; i < ss; i++ )
+			{
+				times[ s * ss + i ] = time + i * ssDelta;
+			}
+
+			time += sampleDelta;
+		}
+
+		spec.volumeEnvelope.prepare( times, times.length );
+		spec.waveform.prepare( times, times.length );
+
+		Blocks.parallel( n, Math.max( 1, Blocks.SIZE / ss ), new Blocks.Loop() {
+			@Override
+			public void process( int from, int to )
+			{
+				int count = ( to - from ) * ss;
+				float[] vol = new float[ count ];
+				float[] wave = new float[ count ];
+
+				spec.volumeEnvelope.getValues( times, from * ss, vol, 0, count );
+				spec.waveform.getValues( times, from * ss, wave, 0, count );
+
+				for( int s = 0; s < to - from; s++ )
+				{
+					float vAccum = 0;
+					float wAccum = 0;
+
+					for( int i = 0; i < ss; i++ )
+					{
+						vAccum += vol[ s * ss + i ];
+						wAccum += wave[ s * ss + i ];
+					}
+
+					pcm[ from + s ] = spec.quantise( vAccum, wAccum );
+				}
+			}
+		} );
+
+		if( postProcess != null )
+		{
+			postProcess.processNext( ShortBuffer.wrap( pcm, 0, n ) );
+		}
+
+		out.put( pcm, 0, n );
+		position += n;
+
+		return n;
+	}
+}
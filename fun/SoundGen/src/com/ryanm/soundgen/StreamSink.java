@@ -0,0 +1,49 @@
+package com.ryanm.soundgen;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Somewhere to send the chunks of a {@link StreamingSound}
+ * 
+ * @author ryanm
+ */
+public interface StreamSink
+{
+	/**
+	 * Adds a chunk to the end of the playback queue. The data is
+	 * copied, so the buffer can be reused as soon as this returns
+	 * 
+	 * @param pcm
+	 *           16-bit mono pcm data, from position to limit
+	 * @param sampleRate
+	 */
+	public void queue( ByteBuffer pcm, int sampleRate );
+
+	/**
+	 * Frees the chunks that have finished playing
+	 * 
+	 * @return The number of chunks freed
+	 */
+	public int reclaim();
+
+	/**
+	 * @return The number of chunks that are queued and not yet freed
+	 */
+	public int queued();
+
+	/**
+	 * Starts or resumes playback of the queue
+	 */
+	public void play();
+
+	/**
+	 * @return <code>true</code> if playing. Playback stops when the
+	 *         queue runs dry
+	 */
+	public boolean isPlaying();
+
+	/**
+	 * Stops playback and frees all resources
+	 */
+	public void release();
+}
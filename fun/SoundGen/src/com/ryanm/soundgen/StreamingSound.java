@@ -0,0 +1,276 @@
+package com.ryanm.soundgen;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Plays a {@link SoundSpec} while it is being generated. A background
+ * thread renders the sound into a small pool of chunks, and
+ * {@link #update()} moves the finished chunks into a
+ * {@link StreamSink}. Playback can start as soon as the first chunk is
+ * ready, and memory use depends on the chunk size and queue depth
+ * rather than the length of the sound. When the sink falls behind, the
+ * generating thread waits for a chunk to be freed. If generation
+ * fails, the exception is thrown from {@link #update()} and
+ * {@link #isFinished()}
+ * 
+ * @author ryanm
+ */
+public class StreamingSound
+{
+	/**
+	 * The sample rate
+	 */
+	public final int sampleRate;
+
+	private final SoundStream stream;
+
+	private final StreamSink sink;
+
+	/**
+	 * Empty chunks, ready to be filled
+	 */
+	private final BlockingQueue<ByteBuffer> free;
+
+	/**
+	 * Filled chunks, ready to be queued in the sink
+	 */
+	private final BlockingQueue<ByteBuffer> ready;
+
+	private final int depth;
+
+	private final int chunkBytes;
+
+	private final Thread producer;
+
+	private volatile boolean generated = false;
+
+	private volatile boolean stopped = false;
+
+	/**
+	 * Why generation stopped early, or null
+	 */
+	private volatile Throwable failure = null;
+
+	private boolean started = false;
+
+	private final long startTime;
+
+	private long firstAudio = -1;
+
+	private int underruns = 0;
+
+	private int peakBuffered = 0;
+
+	/**
+	 * @param spec
+	 *           The sound to play
+	 * @param sampleRate
+	 * @param sink
+	 *           Where to play it
+	 * @param chunkLength
+	 *           The length of each chunk, in seconds
+	 * @param depth
+	 *           The number of chunks that can be buffered
+	 */
+	public StreamingSound( SoundSpec spec, int sampleRate, StreamSink sink,
+			float chunkLength, int depth )
+	{
+		assert depth >= 2;
+
+		this.sampleRate = sampleRate;
+		this.sink = sink;
+		this.depth = depth;
+
+		startTime = System.nanoTime();
+
+		stream = spec.stream( sampleRate );
+
+		chunkBytes = 2 * Math.max( 1, Math.round( chunkLength * sampleRate ) );
+		free = new ArrayBlockingQueue<ByteBuffer>( depth );
+		ready = new ArrayBlockingQueue<ByteBuffer>( depth );
+		for( int i = 0; i < depth; i++ )
+		{
+			free.add( ByteBuffer.allocateDirect( chunkBytes ).order( ByteOrder.LITTLE_ENDIAN ) );
+		}
+
+		producer = new Thread( "Sound stream" ) {
+			@Override
+			public void run()
+			{
+				produce();
+			}
+		};
+		producer.setDaemon( true );
+		producer.start();
+	}
+
+	private void produce()
+	{
+		try
+		{
+			while( !stopped && stream.hasRemaining() )
+			{
+				ByteBuffer chunk = free.take();
+				chunk.clear();
+
+				ShortBuffer sb = chunk.asShortBuffer();
+				while( sb.hasRemaining() && stream.hasRemaining() )
+				{
+					stream.read( sb );
+				}
+
+				chunk.limit( 2 * sb.position() );
+				ready.put( chunk );
+			}
+		}
+		catch( InterruptedException e )
+		{
+			// stopped
+		}
+		catch( Throwable t )
+		{
+			failure = t;
+		}
+		finally
+		{
+			generated = true;
+		}
+	}
+
+	/**
+	 * Moves generated chunks into the sink and keeps it playing. Call
+	 * this regularly from the thread that owns the sink - every frame
+	 * is plenty
+	 * 
+	 * @throws IllegalStateException
+	 *            If generation failed
+	 */
+	public void update()
+	{
+		if( stopped )
+		{
+			return;
+		}
+
+		checkFailure();
+
+		sink.reclaim();
+
+		ByteBuffer chunk;
+		while( sink.queued() < depth && ( chunk = ready.poll() ) != null )
+		{
+			sink.queue( chunk, sampleRate );
+			free.add( chunk );
+		}
+
+		peakBuffered = Math.max( peakBuffered, ( sink.queued() + ready.size() ) * chunkBytes );
+
+		if( !sink.isPlaying() && sink.queued() > 0 )
+		{
+			if( started )
+			{
+				// ran dry before we could keep up
+				underruns++;
+			}
+			else
+			{
+				started = true;
+				firstAudio = System.nanoTime() - startTime;
+			}
+
+			sink.play();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the whole sound has been generated
+	 *         and played, or if we've been stopped
+	 * @throws IllegalStateException
+	 *            If generation failed
+	 */
+	public boolean isFinished()
+	{
+		if( !stopped )
+		{
+			checkFailure();
+		}
+
+		return stopped || generated && ready.isEmpty() && sink.queued() == 0;
+	}
+
+	private void checkFailure()
+	{
+		if( failure != null )
+		{
+			throw new IllegalStateException( "Sound generation failed after "
+					+ stream.position() + " samples", failure );
+		}
+	}
+
+	/**
+	 * Stops playback and generation, and releases the sink
+	 */
+	public void stop()
+	{
+		if( !stopped )
+		{
+			stopped = true;
+			producer.interrupt();
+			sink.release();
+		}
+	}
+
+	/**
+	 * @return The number of samples generated so far
+	 */
+	public int generatedSamples()
+	{
+		return stream.position();
+	}
+
+	/**
+	 * @return The time from construction to the start of playback, in
+	 *         nanoseconds, or -1 if playback hasn't started
+	 */
+	public long timeToFirstAudio()
+	{
+		return firstAudio;
+	}
+
+	/**
+	 * @return The number of times playback ran out of data and had to
+	 *         be restarted
+	 */
+	public int underruns()
+	{
+		return underruns;
+	}
+
+	/**
+	 * @return The most pcm data, in bytes, that has been buffered in
+	 *         the sink and waiting to go to it
+	 */
+	public int peakBufferedBytes()
+	{
+		return peakBuffered;
+	}
+
+	/**
+	 * @return The memory held for the chunk pool, in bytes
+	 */
+	public int poolBytes()
+	{
+		return depth * chunkBytes;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Streaming " + stream.position() + "/" + stream.length() + " samples, "
+				+ sink.queued() + " chunks queued, " + underruns + " underruns";
+	}
+}
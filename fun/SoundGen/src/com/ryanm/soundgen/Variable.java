@@ -17,4 +17,36 @@ public interface Variable extends Cloneable, Serializable
 	 * @return the value at the specified time
 	 */
 	public float getValue( float time );
+
+	/**
+	 * Called before {@link #getValues(float[], int, float[], int, int)}
+	 * with all of the times that will be asked for. Variables that
+	 * depend on earlier values, such as {@link Waveform}s, do their
+	 * sequential work here
+	 * 
+	 * @param time
+	 *           The times, in ascending order
+	 * @param count
+	 *           The number of times
+	 */
+	public void prepare( float[] time, int count );
+
+	/**
+	 * Gets a block of values. The results must be the same as calling
+	 * {@link #getValue(float)} for each time in turn. Once prepared,
+	 * different blocks may be got concurrently
+	 * 
+	 * @param time
+	 *           The array of times that was
+	 *           {@link #prepare(float[], int)}d
+	 * @param from
+	 *           The index of the first time
+	 * @param values
+	 *           The destination array
+	 * @param offset
+	 *           The index in values to write the first value to
+	 * @param count
+	 *           The number of values
+	 */
+	public void getValues( float[] time, int from, float[] values, int offset, int count );
 }
@@ -23,6 +23,23 @@ public abstract class Waveform implements Variable
 	 */
 	public abstract float valueForPhase( float phase );
 
+	/**
+	 * Calculate the value of the wave at a particular point in a
+	 * particular cycle. Override this rather than reading
+	 * {@link #cycleNumber} if the value depends on the cycle. This may
+	 * be called from several threads at once
+	 * 
+	 * @param phase
+	 *           The point at which to calculate, varies from 0 to 1
+	 * @param cycle
+	 *           The index of the wave
+	 * @return The value of the wave at that point
+	 */
+	public float valueForPhase( float phase, int cycle )
+	{
+		return valueForPhase( phase );
+	}
+
 	private float p = 0;
 
 	private float ptime = 0;
@@ -32,6 +49,25 @@ public abstract class Waveform implements Variable
 	 */
 	protected int cycleNumber = 0;
 
+	/**
+	 * The times that we were last prepared for
+	 */
+	private transient float[] preparedTime;
+
+	private transient int preparedCount;
+
+	private transient float preparedStart;
+
+	/**
+	 * Phase at each prepared time
+	 */
+	private transient float[] phases;
+
+	/**
+	 * Cycle number at each prepared time
+	 */
+	private transient int[] cycles;
+
 	@Override
 	public float getValue( float time )
 	{
@@ -65,6 +101,82 @@ public abstract class Waveform implements Variable
 		assert p >= 0 : p;
 		assert p < 1 : p;
 
-		return valueForPhase( p );
+		return valueForPhase( p, cycleNumber );
+	}
+
+	@Override
+	public void prepare( final float[] time, int count )
+	{
+		if( time == preparedTime && count == preparedCount
+				&& ( count == 0 || time[ 0 ] == preparedStart ) )
+		{ // we appear more than once in the tree
+			return;
+		}
+
+		frequency.prepare( time, count );
+
+		if( phases == null || phases.length < count )
+		{
+			phases = new float[ count ];
+			cycles = new int[ count ];
+		}
+
+		// frequencies can be found concurrently...
+		final float[] f = phases;
+		Blocks.parallel( count, Blocks.SIZE, new Blocks.Loop() {
+			@Override
+			public void process( int from, int to )
+			{
+				frequency.getValues( time, from, f, from, to - from );
+			}
+		} );
+
+		// ...but phase has to be integrated in order, exactly as
+		// getValue() does it
+		for( int i = 0; i < count; i++ )
+		{
+			if( time[ i ] < ptime )
+			{
+				ptime = 0;
+				p = 0;
+				cycleNumber = 0;
+			}
+
+			float pinc = f[ i ];
+
+			if( pinc < 0 )
+			{
+				pinc = -pinc;
+			}
+
+			float td = time[ i ] - ptime;
+
+			assert td >= 0;
+
+			ptime = time[ i ];
+
+			p += pinc * td;
+
+			cycleNumber += ( int ) p;
+			p -= ( int ) p;
+
+			phases[ i ] = p;
+			cycles[ i ] = cycleNumber;
+		}
+
+		preparedTime = time;
+		preparedCount = count;
+		preparedStart = count == 0 ? 0 : time[ 0 ];
+	}
+
+	@Override
+	public void getValues( float[] time, int from, float[] values, int offset, int count )
+	{
+		assert time == preparedTime : "Not prepared";
+
+		for( int i = 0; i < count; i++ )
+		{
+			values[ offset + i ] = valueForPhase( phases[ from + i ], cycles[ from + i ] );
+		}
 	}
 }
@@ -36,4 +36,25 @@ public class Addition implements Variable
 	{
 		return e.getValue( time ) + f.getValue( time );
 	}
+
+	@Override
+	public void prepare( float[] time, int count )
+	{
+		e.prepare( time, count );
+		f.prepare( time, count );
+	}
+
+	@Override
+	public void getValues( float[] time, int from, float[] values, int offset, int count )
+	{
+		e.getValues( time, from, values, offset, count );
+
+		float[] fv = new float[ count ];
+		f.getValues( time, from, fv, 0, count );
+
+		for( int i = 0; i < count; i++ )
+		{
+			values[ offset + i ] = values[ offset + i ] + fv[ i ];
+		}
+	}
 }
@@ -4,15 +4,26 @@ package com.ryanm.soundgen.imp;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
 
+import com.ryanm.soundgen.Effect;
+import com.ryanm.soundgen.EffectChain;
 import com.ryanm.soundgen.PostProcess;
 import com.ryanm.soundgen.Variable;
 
 /**
- * A generalised comb filter, for flanging
+ * A generalised comb filter, for flanging. Used as a
+ * {@link PostProcess} on its own, the output is truncated to 16-bit as
+ * it always has been. Put it in an {@link EffectChain} to combine it
+ * with other effects.
+ * <p>
+ * When processing in chunks, only the recent past is kept, so delays
+ * that are negative or longer than {@link #maxDelay} have no effect.
+ * A whole buffer is processed in chunks if the delay is a
+ * {@link Terrain} or {@link Constant} that is never negative, with
+ * room kept for its longest delay, and all at once otherwise
  * 
  * @author ryanm
  */
-public class CombFilter implements PostProcess
+public class CombFilter implements PostProcess, Effect
 {
 	/**
 	 * The multiplier applied to the delayed sample
@@ -24,8 +35,78 @@ public class CombFilter implements PostProcess
 	 */
 	public Variable delay;
 
+	/**
+	 * The longest delay, in seconds, that can be applied when
+	 * processing in chunks. If {@link #delay} is a {@link Terrain} or
+	 * {@link Constant}, its maximum is used if that is longer
+	 */
+	public float maxDelay = 0.02f;
+
+	/**
+	 * Used when we're a {@link PostProcess} on our own
+	 */
+	private EffectChain chain;
+
+	private int sampleRate;
+
+	/**
+	 * The most recent dry samples. The length is a power of two
+	 */
+	private float[] line;
+
+	/**
+	 * The number of samples written to {@link #line}
+	 */
+	private int written;
+
+	private float[] delays;
+
+	private float[] alphas;
+
 	@Override
 	public void process( ShortBuffer data, int sampleRate )
+	{
+		float[] range = delayRange();
+
+		if( range == null || range[ 0 ] < 0 )
+		{
+			// the delay could reach further back than we keep, or ahead
+			processWhole( data, sampleRate );
+		}
+		else
+		{
+			chain().process( data, sampleRate );
+		}
+	}
+
+	/**
+	 * @return The least and greatest delay, in seconds, or null if
+	 *         they can't be known without sampling the whole sound
+	 */
+	private float[] delayRange()
+	{
+		if( delay instanceof Terrain )
+		{
+			Terrain t = ( Terrain ) delay;
+			return new float[] { t.min(), t.max() };
+		}
+		else if( delay instanceof Constant )
+		{
+			float v = ( ( Constant ) delay ).value;
+			return new float[] { v, v };
+		}
+
+		return null;
+	}
+
+	/**
+	 * Filters with the whole of the input to hand, so any delay can be
+	 * applied
+	 * 
+	 * @param data
+	 * @param sampleRate
+	 */
+	private void processWhole( ShortBuffer data, int sampleRate )
 	{
 		ShortBuffer copy =
 				ByteBuffer.allocateDirect( data.capacity() * 2 ).order( data.order() )
@@ -67,4 +148,74 @@ public class CombFilter implements PostProcess
 			data.put( i, ( short ) s );
 		}
 	}
+
+	@Override
+	public void start( int sampleRate )
+	{
+		chain().start( sampleRate );
+	}
+
+	@Override
+	public void processNext( ShortBuffer chunk )
+	{
+		chain().processNext( chunk );
+	}
+
+	private EffectChain chain()
+	{
+		if( chain == null )
+		{
+			chain = new EffectChain( this );
+			chain.dither = false;
+		}
+
+		return chain;
+	}
+
+	@Override
+	public void start( int sampleRate, int blockSize )
+	{
+		float max = maxDelay;
+		float[] range = delayRange();
+		if( range != null )
+		{
+			max = Math.max( max, range[ 1 ] );
+		}
+
+		int longest = Math.max( 1, Math.round( max * sampleRate ) );
+
+		this.sampleRate = sampleRate;
+		line = new float[ Integer.highestOneBit( longest ) * 2 ];
+		written = 0;
+
+		if( delays == null || delays.length < blockSize )
+		{
+			delays = new float[ blockSize ];
+			alphas = new float[ blockSize ];
+		}
+	}
+
+	@Override
+	public void apply( float[] samples, float[] time, int count )
+	{
+		delay.prepare( time, count );
+		delay.getValues( time, 0, delays, 0, count );
+		alpha.prepare( time, count );
+		alpha.getValues( time, 0, alphas, 0, count );
+
+		int mask = line.length - 1;
+
+		for( int i = 0; i < count; i++, written++ )
+		{
+			float dry = samples[ i ];
+			line[ written & mask ] = dry;
+
+			int ds = Math.round( delays[ i ] * sampleRate );
+
+			if( ds >= 0 && ds <= written && ds <= mask )
+			{
+				samples[ i ] = dry + alphas[ i ] * line[ written - ds & mask ];
+			}
+		}
+	}
 }
@@ -1,6 +1,8 @@
 
 package com.ryanm.soundgen.imp;
 
+import java.util.Arrays;
+
 import com.ryanm.soundgen.Variable;
 
 /**
@@ -29,4 +31,15 @@ public class Constant implements Variable
 		return value;
 	}
 
+	@Override
+	public void prepare( float[] time, int count )
+	{
+		// nothing to do
+	}
+
+	@Override
+	public void getValues( float[] time, int from, float[] values, int offset, int count )
+	{
+		Arrays.fill( values, offset, offset + count, value );
+	}
 }
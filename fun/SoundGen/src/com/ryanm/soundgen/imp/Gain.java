@@ -0,0 +1,50 @@
+
+package com.ryanm.soundgen.imp;
+
+import com.ryanm.soundgen.Effect;
+import com.ryanm.soundgen.Variable;
+
+/**
+ * Scales the sound
+ * 
+ * @author ryanm
+ */
+public class Gain implements Effect
+{
+	/**
+	 * The multiplier
+	 */
+	public Variable gain;
+
+	private float[] gains;
+
+	/**
+	 * @param gain
+	 *           The multiplier
+	 */
+	public Gain( Variable gain )
+	{
+		this.gain = gain;
+	}
+
+	@Override
+	public void start( int sampleRate, int blockSize )
+	{
+		if( gains == null || gains.length < blockSize )
+		{
+			gains = new float[ blockSize ];
+		}
+	}
+
+	@Override
+	public void apply( float[] samples, float[] time, int count )
+	{
+		gain.prepare( time, count );
+		gain.getValues( time, 0, gains, 0, count );
+
+		for( int i = 0; i < count; i++ )
+		{
+			samples[ i ] *= gains[ i ];
+		}
+	}
+}
@@ -21,4 +21,18 @@ public class Linear implements Variable
 		return time * coeff;
 	}
 
+	@Override
+	public void prepare( float[] time, int count )
+	{
+		// nothing to do
+	}
+
+	@Override
+	public void getValues( float[] time, int from, float[] values, int offset, int count )
+	{
+		for( int i = 0; i < count; i++ )
+		{
+			values[ offset + i ] = time[ from + i ] * coeff;
+		}
+	}
 }
@@ -0,0 +1,78 @@
+
+package com.ryanm.soundgen.imp;
+
+import com.ryanm.soundgen.Effect;
+import com.ryanm.soundgen.Variable;
+
+/**
+ * A one-pole low-pass filter
+ * 
+ * @author ryanm
+ */
+public class LowPass implements Effect
+{
+	/**
+	 * The cutoff frequency, in Hz
+	 */
+	public Variable cutoff;
+
+	private int sampleRate;
+
+	private float[] cutoffs;
+
+	/**
+	 * The last output sample
+	 */
+	private float y;
+
+	/**
+	 * The cutoff that {@link #k} was calculated for
+	 */
+	private float kCutoff;
+
+	/**
+	 * The smoothing coefficient
+	 */
+	private float k;
+
+	/**
+	 * @param cutoff
+	 *           The cutoff frequency, in Hz
+	 */
+	public LowPass( Variable cutoff )
+	{
+		this.cutoff = cutoff;
+	}
+
+	@Override
+	public void start( int sampleRate, int blockSize )
+	{
+		this.sampleRate = sampleRate;
+		y = 0;
+		kCutoff = Float.NaN;
+
+		if( cutoffs == null || cutoffs.length < blockSize )
+		{
+			cutoffs = new float[ blockSize ];
+		}
+	}
+
+	@Override
+	public void apply( float[] samples, float[] time, int count )
+	{
+		cutoff.prepare( time, count );
+		cutoff.getValues( time, 0, cutoffs, 0, count );
+
+		for( int i = 0; i < count; i++ )
+		{
+			if( cutoffs[ i ] != kCutoff )
+			{ // envelopes are often flat, so this is rarely done
+				kCutoff = cutoffs[ i ];
+				k = 1 - ( float ) Math.exp( -2 * Math.PI * Math.max( 0, kCutoff ) / sampleRate );
+			}
+
+			y += k * ( samples[ i ] - y );
+			samples[ i ] = y;
+		}
+	}
+}
@@ -15,35 +15,41 @@ public class NoiseWave extends Waveform
 	 */
 	public int rngOffset = 133780085;
 
-	private Random rng = new Random();
-
 	private int valuesPerCycle = 10;
 
-	private int oldCycle = -1;
-
-	private float[] noise = new float[ 32 ];
+	/**
+	 * The number of noise values that each cycle picks from
+	 */
+	private static final int NOISE_VALUES = 32;
 
 	@Override
 	public float valueForPhase( float phase )
 	{
-		if( oldCycle != cycleNumber )
-		{
-			rng.setSeed( ( cycleNumber + 1 ) * rngOffset );
-			for( int i = 0; i < noise.length; i++ )
-			{
-				noise[ i ] = 2 * rng.nextFloat() - 1;
-			}
-		}
+		return valueForPhase( phase, cycleNumber );
+	}
 
+	@Override
+	public float valueForPhase( float phase, int cycle )
+	{
 		int p = ( int ) ( phase * valuesPerCycle ) + 1;
 
-		long seed = rngOffset * ( cycleNumber + 1 ) * p;
+		long seed = rngOffset * ( cycle + 1 ) * p;
 
 		assert p != 0;
 		assert seed != 0;
 
-		rng.setSeed( seed );
+		Random rng = new Random( seed );
+		int index = rng.nextInt( NOISE_VALUES );
+
+		// the cycle's noise values come from a sequence seeded by the
+		// cycle number, we only need to generate as far as the one
+		// we've picked
+		rng.setSeed( ( cycle + 1 ) * rngOffset );
+		for( int i = 0; i < index; i++ )
+		{
+			rng.nextFloat();
+		}
 
-		return noise[ rng.nextInt( noise.length ) ];
+		return 2 * rng.nextFloat() - 1;
 	}
 }
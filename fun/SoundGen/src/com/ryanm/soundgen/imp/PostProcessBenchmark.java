@@ -0,0 +1,215 @@
+
+package com.ryanm.soundgen.imp;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import com.ryanm.soundgen.EffectChain;
+import com.ryanm.soundgen.PostProcess;
+import com.ryanm.soundgen.Variable;
+
+/**
+ * Times post-processing of minute-long sounds: the
+ * {@link CombFilter} as it used to be, as it is now, and in
+ * {@link EffectChain}s with and without other effects. Differences
+ * from the old {@link CombFilter} are reported, and delays that can't
+ * be processed in chunks are checked against it
+ * 
+ * @author ryanm
+ */
+public class PostProcessBenchmark
+{
+	/**
+	 * @param args
+	 *           The length of the sound, in seconds, and the number of
+	 *           timed rounds
+	 */
+	public static void main( String[] args )
+	{
+		float length = args.length > 0 ? Float.parseFloat( args[ 0 ] ) : 60;
+		int rounds = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 5;
+		int sampleRate = 44100;
+
+		TerrainSound ts = new TerrainSound();
+		ts.length = length;
+		ts.randomise();
+
+		int samples = ( int ) Math.ceil( sampleRate * length );
+		ShortBuffer input = ShortBuffer.allocate( samples );
+		for( int i = 0; i < samples; i++ )
+		{
+			float t = ( float ) i / sampleRate;
+			input.put( i, ( short ) ( 12000 * Math.sin( 2 * Math.PI * 440 * t * ( 1 + t / 30 ) ) ) );
+		}
+
+		CombFilter comb = new CombFilter();
+		comb.delay = ts.flangeDelay;
+		comb.alpha = ts.flangeAlpha;
+
+		EffectChain combChain = new EffectChain( comb );
+
+		CombFilter chained = new CombFilter();
+		chained.delay = ts.flangeDelay;
+		chained.alpha = ts.flangeAlpha;
+		EffectChain fullChain =
+				new EffectChain( chained, new LowPass( new Terrain( 0, 8000, length, 2000 ) ),
+						new Gain( new Constant( 0.8f ) ) );
+
+		PostProcess[] paths = new PostProcess[] { null, comb, combChain, fullChain };
+		String[] names =
+				new String[] { "old CombFilter       ", "CombFilter           ",
+						"chain: comb          ", "chain: comb, lp, gain" };
+
+		ShortBuffer expected = buffer( samples );
+		ShortBuffer data = buffer( samples );
+
+		copy( input, expected );
+		legacy( comb, expected, sampleRate );
+
+		long[] best = new long[ paths.length ];
+		int[] diff = new int[ paths.length ];
+
+		for( int r = 0; r <= rounds; r++ )
+		{
+			for( int p = 0; p < paths.length; p++ )
+			{
+				copy( input, data );
+
+				long start = System.nanoTime();
+				if( paths[ p ] == null )
+				{
+					legacy( comb, data, sampleRate );
+				}
+				else
+				{
+					paths[ p ].process( data, sampleRate );
+				}
+				long time = System.nanoTime() - start;
+
+				// the first round is warm-up
+				if( r == 1 || r > 1 && time < best[ p ] )
+				{
+					best[ p ] = time;
+				}
+
+				for( int i = 0; i < samples; i++ )
+				{
+					diff[ p ] = Math.max( diff[ p ], Math.abs( data.get( i ) - expected.get( i ) ) );
+				}
+			}
+		}
+
+		System.out.println( length + "s at " + sampleRate + "Hz, best of " + rounds );
+		for( int p = 0; p < paths.length; p++ )
+		{
+			// the full chain is a different effect, so no comparison
+			System.out.println( "\t" + names[ p ] + " : " + best[ p ] / 1000000 + "ms"
+					+ ( p < 3 ? ", max difference from old " + diff[ p ] : "" ) );
+		}
+
+		// delays that reach ahead, or further back than the chunked
+		// filter keeps
+		Variable[] delays =
+				new Variable[] { new Constant( -0.005f ), new Constant( 0.1f ),
+						new Terrain( 0, -0.01f, length, 0.05f ), new Variable() {
+							@Override
+							public float getValue( float time )
+							{
+								return 0.05f * ( float ) Math.sin( 3 * time );
+							}
+
+							@Override
+							public void prepare( float[] time, int count )
+							{
+							}
+
+							@Override
+							public void getValues( float[] time, int from, float[] values,
+									int offset, int count )
+							{
+								for( int i = 0; i < count; i++ )
+								{
+									values[ offset + i ] = getValue( time[ from + i ] );
+								}
+							}
+						} };
+
+		int worst = 0;
+		for( Variable d : delays )
+		{
+			comb.delay = d;
+
+			copy( input, expected );
+			legacy( comb, expected, sampleRate );
+
+			copy( input, data );
+			comb.process( data, sampleRate );
+
+			for( int i = 0; i < samples; i++ )
+			{
+				worst = Math.max( worst, Math.abs( data.get( i ) - expected.get( i ) ) );
+			}
+		}
+
+		System.out.println( "Out-of-range delays : "
+				+ ( worst == 0 ? "Identical" : "FAILED: differs by " + worst + " LSB" ) );
+	}
+
+	private static ShortBuffer buffer( int samples )
+	{
+		return ByteBuffer.allocateDirect( samples * 2 ).asShortBuffer();
+	}
+
+	private static void copy( ShortBuffer src, ShortBuffer dst )
+	{
+		dst.clear();
+		dst.put( src.duplicate() );
+		dst.rewind();
+	}
+
+	/**
+	 * What {@link CombFilter#process(ShortBuffer, int)} used to do
+	 */
+	private static void legacy( CombFilter cf, ShortBuffer data, int sampleRate )
+	{
+		ShortBuffer copy =
+				ByteBuffer.allocateDirect( data.capacity() * 2 ).order( data.order() )
+						.asShortBuffer();
+		copy.put( data );
+		data.rewind();
+		copy.rewind();
+
+		for( int i = 0; i < data.limit(); i++ )
+		{
+			float time = ( float ) i / sampleRate;
+
+			int ds = Math.round( cf.delay.getValue( time ) * sampleRate );
+
+			int dsi = i - ds;
+			short sample;
+			if( dsi < 0 || dsi > data.limit() - 1 )
+			{
+				sample = 0;
+			}
+			else
+			{
+				sample = copy.get( dsi );
+			}
+
+			float a = cf.alpha.getValue( time );
+
+			int s = ( int ) ( copy.get( i ) + a * sample );
+
+			if( s > Short.MAX_VALUE )
+			{
+				s = Short.MAX_VALUE;
+			}
+			if( s < Short.MIN_VALUE )
+			{
+				s = Short.MIN_VALUE;
+			}
+
+			data.put( i, ( short ) s );
+		}
+	}
+}
@@ -26,11 +26,25 @@ public class Terrain implements Variable
 	public ArrayList<float[]> points = new ArrayList<float[]>();
 
 	/**
-	 * Set it true if you've been monkeying with the points
+	 * Set it true if you've been monkeying with the points. The
+	 * envelope is compiled from them again when next used
 	 */
 	public boolean orderDirty = true;
 
-	private static float[] temp = new float[ 2 ];
+	/**
+	 * Point times, in order
+	 */
+	private transient float[] times;
+
+	/**
+	 * Point values, matching {@link #times}
+	 */
+	private transient float[] values;
+
+	/**
+	 * Where the last {@link #getValue(float)} found itself
+	 */
+	private transient int cursor = -1;
 
 	private static Comparator<float[]> c = new Comparator<float[]>() {
 
@@ -79,58 +93,190 @@ public class Terrain implements Variable
 	@Override
 	public float getValue( float time )
 	{
-		enforceOrder();
+		compile();
+
+		cursor = locate( time, cursor );
 
-		if( points.size() == 0 )
+		return interpolate( cursor, time );
+	}
+
+	@Override
+	public void prepare( float[] time, int count )
+	{
+		compile();
+	}
+
+	@Override
+	public void getValues( float[] time, int from, float[] values, int offset, int count )
+	{
+		// a local cursor, so blocks can be filled concurrently
+		int k = times.length;
+
+		for( int i = 0; i < count; i++ )
 		{
-			return 0;
+			float t = time[ from + i ];
+			k = locate( t, k );
+			values[ offset + i ] = interpolate( k, t );
 		}
-		else
+	}
+
+	/**
+	 * Fills an array with evenly-spaced values
+	 * 
+	 * @param out
+	 *           The destination array
+	 * @param t0
+	 *           The time of the first value
+	 * @param dt
+	 *           The time between values
+	 */
+	public void fill( float[] out, float t0, float dt )
+	{
+		compile();
+
+		int k = times.length;
+
+		for( int i = 0; i < out.length; i++ )
 		{
-			temp[ 0 ] = time;
-			int index = Collections.binarySearch( points, temp, c );
-			if( index >= 0 )
+			float t = t0 + i * dt;
+			k = locate( t, k );
+			out[ i ] = interpolate( k, t );
+		}
+	}
+
+	/**
+	 * @return The largest value in this terrain, or 0 if it has no
+	 *         points
+	 */
+	public float max()
+	{
+		compile();
+
+		float max = values.length == 0 ? 0 : -Float.MAX_VALUE;
+		for( int i = 0; i < values.length; i++ )
+		{
+			max = Math.max( max, values[ i ] );
+		}
+		return max;
+	}
+
+	/**
+	 * @return The smallest value in this terrain, or 0 if it has no
+	 *         points
+	 */
+	public float min()
+	{
+		compile();
+
+		float min = values.length == 0 ? 0 : Float.MAX_VALUE;
+		for( int i = 0; i < values.length; i++ )
+		{
+			min = Math.min( min, values[ i ] );
+		}
+		return min;
+	}
+
+	/**
+	 * Rebuilds the compiled arrays from the points, if they've changed
+	 */
+	private void compile()
+	{
+		if( orderDirty || times == null )
+		{
+			Collections.sort( points, c );
+
+			float[] t = new float[ points.size() ];
+			float[] v = new float[ points.size() ];
+
+			for( int i = 0; i < t.length; i++ )
 			{
-				return points.get( index )[ 1 ];
+				float[] p = points.get( i );
+				t[ i ] = p[ 0 ];
+				v[ i ] = p[ 1 ];
 			}
-			else
+
+			times = t;
+			values = v;
+			cursor = -1;
+			orderDirty = false;
+		}
+	}
+
+	/**
+	 * Finds the last point at or before a time. When times are
+	 * increasing, the previous result is a good place to start from
+	 * and this is constant time
+	 * 
+	 * @param time
+	 * @param k
+	 *           The result for an earlier time, or
+	 *           <code>times.length</code> to search from scratch
+	 * @return The index of the last point at or before the time, or -1
+	 *         if there is none
+	 */
+	private int locate( float time, int k )
+	{
+		if( k >= times.length || k >= 0 && time < times[ k ] )
+		{ // the cursor's no help, binary search
+			int low = 0;
+			int high = times.length - 1;
+
+			while( low <= high )
 			{
-				index++;
-				index = -index;
+				int mid = low + high >>> 1;
 
-				if( index == 0 )
+				if( times[ mid ] <= time )
 				{
-					return points.get( 0 )[ 1 ];
+					low = mid + 1;
 				}
-				else if( index >= points.size() )
+				else
 				{
-					return points.get( points.size() - 1 )[ 1 ];
+					high = mid - 1;
 				}
-				else
-				{ // general case
-					float[] low = points.get( index - 1 );
-					float[] high = points.get( index );
-					float lt = low[ 0 ];
-					float ht = high[ 0 ];
-					float lv = low[ 1 ];
-					float hv = high[ 1 ];
-
-					float dt = ht - lt;
-					float dv = hv - lv;
+			}
 
-					float result = lv + dv * ( time - lt ) / dt;
+			return high;
+		}
 
-					return result;
-				}
-			}
+		while( k + 1 < times.length && times[ k + 1 ] <= time )
+		{
+			k++;
 		}
+
+		return k;
 	}
 
-	private void enforceOrder()
+	/**
+	 * @param k
+	 *           The index of the last point at or before the time
+	 * @param time
+	 * @return The value at that time
+	 */
+	private float interpolate( int k, float time )
 	{
-		if( orderDirty )
+		if( times.length == 0 )
 		{
-			Collections.sort( points, c );
+			return 0;
+		}
+		else if( k < 0 )
+		{
+			return values[ 0 ];
+		}
+		else if( k >= times.length - 1 )
+		{
+			return values[ times.length - 1 ];
+		}
+		else
+		{ // general case
+			float lt = times[ k ];
+			float ht = times[ k + 1 ];
+			float lv = values[ k ];
+			float hv = values[ k + 1 ];
+
+			float dt = ht - lt;
+			float dv = hv - lv;
+
+			return lv + dv * ( time - lt ) / dt;
 		}
 	}
 
@@ -153,6 +299,7 @@ public class Terrain implements Variable
 	public void clear()
 	{
 		points.clear();
+		orderDirty = true;
 	}
 
 	/**
@@ -215,6 +362,7 @@ public class Terrain implements Variable
 			if( points.get( i )[ 0 ] == x && points.get( i )[ 1 ] == y )
 			{
 				points.remove( i );
+				orderDirty = true;
 				return true;
 			}
 		}
@@ -251,6 +399,8 @@ public class Terrain implements Variable
 			p[ 0 ] += mx;
 			p[ 1 ] += my;
 		}
+
+		orderDirty = true;
 	}
 
 	/**
@@ -285,6 +435,8 @@ public class Terrain implements Variable
 				p[ 1 ] = maxY;
 			}
 		}
+
+		orderDirty = true;
 	}
 
 	/**
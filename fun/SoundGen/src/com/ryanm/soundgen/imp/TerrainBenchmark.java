@@ -0,0 +1,158 @@
+
+package com.ryanm.soundgen.imp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Times {@link Terrain} evaluation over the envelopes of a
+ * {@link TerrainSound}, sampled as {@link com.ryanm.soundgen.SoundSpec}
+ * does at 44.1kHz with 8 supersamples. Compares the list-based
+ * evaluation that {@link Terrain} used to do with sample-by-sample
+ * {@link Terrain#getValue(float)} and bulk
+ * {@link Terrain#fill(float[], float, float)}
+ *
+ * @author ryanm
+ */
+public class TerrainBenchmark
+{
+	/**
+	 * @param args
+	 *           The number of timed rounds
+	 */
+	public static void main( String[] args )
+	{
+		int rounds = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 10;
+
+		TerrainSound sound = new TerrainSound();
+		sound.length = 2;
+		sound.randomise();
+
+		Terrain[] envelopes =
+				new Terrain[] { sound.volume, sound.baseFrequency, sound.vibratoFrequency,
+						sound.vibratoAmplitude, sound.flangeDelay, sound.flangeAlpha };
+
+		int count = ( int ) Math.ceil( 44100 * sound.length ) * 8;
+		float dt = 1.0f / ( 44100 * 8 );
+
+		float[] out = new float[ count ];
+		float[] expected = new float[ count ];
+
+		// check the results agree
+		boolean identical = true;
+		for( Terrain t : envelopes )
+		{
+			legacy( t, expected, dt );
+			t.fill( out, 0, dt );
+
+			for( int i = 0; i < count; i++ )
+			{
+				identical &= out[ i ] == expected[ i ] && t.getValue( i * dt ) == expected[ i ];
+			}
+		}
+
+		long[] best = new long[ 3 ];
+		for( int r = 0; r < rounds; r++ )
+		{
+			for( int p = 0; p < 3; p++ )
+			{
+				long start = System.nanoTime();
+
+				for( Terrain t : envelopes )
+				{
+					if( p == 0 )
+					{
+						legacy( t, out, dt );
+					}
+					else if( p == 1 )
+					{
+						for( int i = 0; i < count; i++ )
+						{
+							out[ i ] = t.getValue( i * dt );
+						}
+					}
+					else
+					{
+						t.fill( out, 0, dt );
+					}
+				}
+
+				long time = System.nanoTime() - start;
+				if( r == 0 || time < best[ p ] )
+				{
+					best[ p ] = time;
+				}
+			}
+		}
+
+		float values = count * envelopes.length;
+		System.out.println( envelopes.length + " envelopes, " + count
+				+ " supersamples each, ns per value, best of " + rounds
+				+ ( identical ? "" : " FAILED: results differ" ) );
+		System.out.println( "\tsorted list : " + best[ 0 ] / values );
+		System.out.println( "\tgetValue    : " + best[ 1 ] / values );
+		System.out.println( "\tfill        : " + best[ 2 ] / values );
+	}
+
+	/**
+	 * What {@link Terrain#getValue(float)} used to do: sort the points
+	 * and search them for every value
+	 */
+	private static void legacy( Terrain t, float[] out, float dt )
+	{
+		ArrayList<float[]> points = new ArrayList<float[]>( t.points );
+		float[] key = new float[ 2 ];
+
+		for( int i = 0; i < out.length; i++ )
+		{
+			float time = i * dt;
+
+			Collections.sort( points, c );
+
+			key[ 0 ] = time;
+			int index = Collections.binarySearch( points, key, c );
+			if( index >= 0 )
+			{
+				out[ i ] = points.get( index )[ 1 ];
+			}
+			else
+			{
+				index = -( index + 1 );
+
+				if( index == 0 )
+				{
+					out[ i ] = points.get( 0 )[ 1 ];
+				}
+				else if( index >= points.size() )
+				{
+					out[ i ] = points.get( points.size() - 1 )[ 1 ];
+				}
+				else
+				{
+					float[] low = points.get( index - 1 );
+					float[] high = points.get( index );
+
+					float dv = high[ 1 ] - low[ 1 ];
+					out[ i ] = low[ 1 ] + dv * ( time - low[ 0 ] ) / ( high[ 0 ] - low[ 0 ] );
+				}
+			}
+		}
+	}
+
+	private static Comparator<float[]> c = new Comparator<float[]>() {
+		@Override
+		public int compare( float[] o1, float[] o2 )
+		{
+			if( o1[ 0 ] < o2[ 0 ] )
+			{
+				return -1;
+			}
+			else if( o1[ 0 ] > o2[ 0 ] )
+			{
+				return 1;
+			}
+			return 0;
+		}
+	};
+}
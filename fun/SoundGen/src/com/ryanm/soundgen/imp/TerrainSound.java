@@ -11,6 +11,7 @@ import java.nio.channels.FileChannel;
 import java.util.Random;
 
 import com.ryanm.soundgen.SoundSpec;
+import com.ryanm.soundgen.SoundStream;
 import com.ryanm.soundgen.Variable;
 import com.ryanm.soundgen.Waveform;
 
@@ -137,7 +138,7 @@ public class TerrainSound extends SoundSpec
 		vibratoFrequency = new Terrain( sound.vibratoFrequency );
 		vibratoAmplitude = new Terrain( sound.vibratoAmplitude );
 		flangeDelay = new Terrain( sound.flangeDelay );
-		flangeAlpha = new Terrain( sound.flangeDelay );
+		flangeAlpha = new Terrain( sound.flangeAlpha );
 	}
 
 	/**
@@ -159,6 +160,14 @@ public class TerrainSound extends SoundSpec
 		return super.generate( sampleRate );
 	}
 
+	@Override
+	public SoundStream stream( int sampleRate )
+	{
+		setEnvelopes();
+
+		return super.stream( sampleRate );
+	}
+
 	private void setEnvelopes()
 	{
 		volumeEnvelope = volume;
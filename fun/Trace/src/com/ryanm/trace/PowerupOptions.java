@@ -98,7 +98,7 @@ public class PowerupOptions
 		{
 			sum += chances[ i ];
 		}
-		float choice = TraceGame.rng.nextFloat() * sum;
+		float choice = arena.rng.nextFloat() * sum;
 		int i = 0;
 		while( choice > chances[ i ] )
 		{
@@ -28,6 +28,7 @@ import com.ryanm.config.imp.Variable;
 import com.ryanm.config.serial.ConfigurationSerialiser;
 import com.ryanm.config.serial.ParseException;
 import com.ryanm.trace.game.Arena;
+import com.ryanm.trace.game.ai.BotManager;
 
 /**
  * @author ryanm
@@ -238,6 +239,9 @@ public class TraceGame implements Game
 	@Override
 	public void loadResources()
 	{
+		// players may use evolved bots
+		BotManager.load( new File( GameBox.filebase, BotManager.dirName ) );
+
 		playerPool.clear();
 		Player.load( PLAYER_POOL_FILE, playerPool );
 
@@ -2,20 +2,21 @@
 package com.ryanm.trace.game;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Random;
 
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
 
 import com.rugl.geom.ColouredShape;
+import com.rugl.geom.CompiledShape;
 import com.rugl.geom.Shape;
 import com.rugl.geom.ShapeUtil;
 import com.rugl.geom.TexturedShape;
 import com.rugl.renderer.StackedRenderer;
 import com.rugl.sound.SoundSystem;
 import com.rugl.sound.Source;
+import com.rugl.text.LayoutCache;
 import com.rugl.text.TextLayout;
 import com.rugl.text.TextLayout.Alignment;
 import com.rugl.util.Colour;
@@ -25,12 +26,13 @@ import com.ryanm.trace.Phase;
 import com.ryanm.trace.Player;
 import com.ryanm.trace.TraceGame;
 import com.ryanm.trace.game.entities.FadeNote;
+import com.ryanm.trace.game.entities.Particles;
 import com.ryanm.trace.game.entities.Powerup;
 import com.ryanm.trace.lobby.Lobby;
 import com.ryanm.trace.lobby.Scoreboard;
 import com.ryanm.util.Bag;
 import com.ryanm.util.BucketGrid;
-import com.ryanm.util.Segment;
+import com.ryanm.util.HitBuffer;
 
 /**
  * @author ryanm
@@ -52,6 +54,11 @@ public class Arena implements Phase
 	/***/
 	public Bag<Entity> entities = new Bag<Entity>();
 
+	/**
+	 * All the sparks in the arena
+	 */
+	public final Particles particles;
+
 	private boolean done = false;
 
 	private float spawnTime;
@@ -60,26 +67,64 @@ public class Arena implements Phase
 
 	private float endTime = 1;
 
-	private BucketGrid<TraceSegment> collider;
-
-	private List<TraceSegment> gapList;
+	private final SegmentIndex index;
 
 	private Source[] pausedSounds = null;
 
+	/**
+	 * <code>true</code> if there is no input, sound or rendering. The
+	 * arena is just advanced until it is finished
+	 */
+	public final boolean headless;
+
+	/**
+	 * Source of randomness for things that happen in this arena
+	 */
+	public final Random rng;
+
 	/**
 	 * @param lobby
 	 * @param players
 	 */
 	public Arena( Lobby lobby, Trace... players )
+	{
+		this( lobby, false, TraceGame.rng, players );
+	}
+
+	/**
+	 * Builds a headless arena, for simulations. There is no input,
+	 * sound or rendering, and play starts immediately
+	 * 
+	 * @param rng
+	 *           source of randomness for the arena
+	 * @param players
+	 */
+	public Arena( Random rng, Trace... players )
+	{
+		this( null, true, rng, players );
+
+		spawnTime = TraceGame.game.powerups.spawnRate.toValue( rng.nextFloat() );
+	}
+
+	private Arena( Lobby lobby, boolean headless, Random rng, Trace... players )
 	{
 		this.lobby = lobby;
+		this.headless = headless;
+		this.rng = rng;
+
+		// sparks are cosmetic, they mustn't use up gameplay randomness
+		particles = new Particles( headless ? 1 : 256 );
 
 		traces = players;
 
+		index = new SegmentIndex( TraceGame.client.bucketSize, 800, 600 );
+
 		for( int i = 0; i < traces.length; i++ )
 		{
 			traces[ i ].arena = this;
 
+			index.attach( traces[ i ].path, traces[ i ].player );
+
 			traces[ i ].player.bot.reset();
 		}
 	}
@@ -92,23 +137,15 @@ public class Arena implements Phase
 	 */
 	public BucketGrid<TraceSegment> getCollider()
 	{
-		if( collider == null )
-		{
-			float bs = TraceGame.client.bucketSize;
-
-			collider =
-					new BucketGrid<TraceSegment>( bs, ( int ) Math.ceil( 800.0f / bs ),
-							( int ) Math.ceil( 600.0f / bs ) );
-
-			gapList = new ArrayList<TraceSegment>();
-
-			for( int i = 0; i < traces.length; i++ )
-			{
-				traces[ i ].populate( collider, gapList );
-			}
-		}
+		return index.getGrid();
+	}
 
-		return collider;
+	/**
+	 * @return The index of trace segments in the arena
+	 */
+	public SegmentIndex getIndex()
+	{
+		return index;
 	}
 
 	/**
@@ -118,8 +155,7 @@ public class Arena implements Phase
 	 */
 	public List<TraceSegment> getGapList()
 	{
-		getCollider();
-		return gapList;
+		return index.getGapList();
 	}
 
 	@Override
@@ -140,47 +176,17 @@ public class Arena implements Phase
 		Buttons.setText( "Resume", "Quit", null, null, null, null );
 		TraceGame.drawLastArena = false;
 
-		spawnTime = TraceGame.game.powerups.spawnRate.toValue( TraceGame.rng.nextFloat() );
+		spawnTime = TraceGame.game.powerups.spawnRate.toValue( rng.nextFloat() );
 	}
 
 	@Override
 	public void advance( float delta )
 	{
-		if( Buttons.esc() )
+		if( !headless )
 		{
-			paused = !paused;
-
-			if( paused )
-			{
-				pausedSounds = SoundSystem.getPlayingSources();
-
-				for( Source s : pausedSounds )
-				{
-					s.pause();
-				}
-			}
-			else
-			{
-				for( Source s : pausedSounds )
-				{
-					s.play();
-				}
-				pausedSounds = null;
-			}
-		}
-
-		if( Buttons.enter() && paused )
-		{
-			done = true;
-
-			for( Trace t : traces )
-			{
-				t.releaseSources();
-			}
+			handleInput();
 		}
 
-		Buttons.visible = paused;
-
 		if( !paused )
 		{
 			time += delta;
@@ -189,8 +195,7 @@ public class Arena implements Phase
 			if( spawnTime < 0 )
 			{
 				// spawn a powerup
-				spawnTime =
-						TraceGame.game.powerups.spawnRate.toValue( TraceGame.rng.nextFloat() );
+				spawnTime = TraceGame.game.powerups.spawnRate.toValue( rng.nextFloat() );
 				Powerup p = TraceGame.game.powerups.choosePowerup( this );
 
 				addEntity( p );
@@ -230,7 +235,7 @@ public class Arena implements Phase
 					}
 				}
 
-				if( TraceGame.game.endgame.seizure )
+				if( TraceGame.game.endgame.seizure && !headless )
 				{
 					// background
 					Background.frequency += delta * 0.03f;
@@ -247,16 +252,59 @@ public class Arena implements Phase
 				done = true;
 			}
 
-			Background.frequency = 0.2f;
-			Background.amplitude = 1;
+			if( !headless )
+			{
+				Background.frequency = 0.2f;
+				Background.amplitude = 1;
+			}
+		}
+	}
+
+	private void handleInput()
+	{
+		if( Buttons.esc() )
+		{
+			paused = !paused;
+
+			if( paused )
+			{
+				pausedSounds = SoundSystem.getPlayingSources();
+
+				for( Source s : pausedSounds )
+				{
+					s.pause();
+				}
+			}
+			else
+			{
+				for( Source s : pausedSounds )
+				{
+					s.play();
+				}
+				pausedSounds = null;
+			}
+		}
+
+		if( Buttons.enter() && paused )
+		{
+			done = true;
+
+			for( Trace t : traces )
+			{
+				t.releaseSources();
+			}
 		}
 
-		collider = null;
-		gapList = null;
+		Buttons.visible = paused;
 	}
 
 	private void advanceEntities( float delta )
 	{
+		if( !headless )
+		{
+			particles.advance( delta );
+		}
+
 		for( int i = 0; i < entities.size(); )
 		{
 			Entity e = entities.get( i );
@@ -293,7 +341,7 @@ public class Arena implements Phase
 		{
 			recipient.score += score;
 
-			for( int i = 0; i < traces.length; i++ )
+			for( int i = 0; i < traces.length && !headless; i++ )
 			{
 				if( traces[ i ].player == recipient )
 				{
@@ -306,7 +354,7 @@ public class Arena implements Phase
 
 	private static TexturedShape pausedSign;
 
-	private static ColouredShape border;
+	private static CompiledShape[] border;
 
 	@Override
 	public void draw( StackedRenderer r )
@@ -314,16 +362,19 @@ public class Arena implements Phase
 		if( border == null )
 		{
 			Shape s = ShapeUtil.outerQuad( 0, 0, 800, 600, 1, 0 );
-			border = new ColouredShape( s, Colour.white, null );
+			border = CompiledShape.compile( new ColouredShape( s, Colour.white, null ) );
 		}
 
-		border.render( r );
+		// never changes, so it can stay in a buffer object
+		r.addCompiled( border );
 
 		for( int i = 0; i < entities.size(); i++ )
 		{
 			entities.get( i ).draw( r );
 		}
 
+		particles.draw( r );
+
 		drawTraces( r );
 
 		renderEndgameScore( r );
@@ -368,23 +419,50 @@ public class Arena implements Phase
 	 * @param ay
 	 * @param bx
 	 * @param by
-	 * @return An array of intersecting segments
+	 * @param results
+	 *           The buffer in which to place the intersecting segments,
+	 *           in ascending order of distance from the start of the
+	 *           test segment
+	 * @return The number of intersecting segments
 	 */
-	public Collision[] collision( float ax, float ay, float bx, float by )
+	public int collision( float ax, float ay, float bx, float by,
+			HitBuffer<TraceSegment> results )
 	{
-		Set<TraceSegment> segs = new HashSet<TraceSegment>();
-		Segment testSeg = new Segment( ax, ay, bx, by );
-		getCollider().test( testSeg, segs );
-
-		TraceSegment[] c = segs.toArray( new TraceSegment[ segs.size() ] );
-		Collision[] collisions = new Collision[ c.length ];
+		getCollider().test( ax, ay, bx, by, results );
+		results.sort();
+		return results.size();
+	}
 
-		for( int i = 0; i < c.length; i++ )
-		{
-			collisions[ i ] = new Collision( c[ i ], testSeg );
-		}
+	/**
+	 * Determines if anything intersects the supplied segment
+	 * 
+	 * @param ax
+	 * @param ay
+	 * @param bx
+	 * @param by
+	 * @return <code>true</code> if any trace segment intersects
+	 */
+	public boolean anyCollision( float ax, float ay, float bx, float by )
+	{
+		return getCollider().anyHit( ax, ay, bx, by ) != null;
+	}
 
-		return collisions;
+	/**
+	 * Finds the segment that intersects the supplied segment closest to
+	 * its start
+	 * 
+	 * @param ax
+	 * @param ay
+	 * @param bx
+	 * @param by
+	 * @param result
+	 *           The buffer in which to place the nearest intersection
+	 * @return The closest intersecting segment, or <code>null</code>
+	 */
+	public TraceSegment nearestCollision( float ax, float ay, float bx, float by,
+			HitBuffer<TraceSegment> result )
+	{
+		return getCollider().nearestHit( ax, ay, bx, by, result );
 	}
 
 	private void renderEndgameScore( StackedRenderer sr )
@@ -442,8 +520,10 @@ public class Arena implements Phase
 					text = leader.player.score - alive.player.score + 1 + "\nto win!";
 				}
 
+				// the same text is drawn every frame, so don't lay it out
+				// every frame
 				TextLayout tl =
-						new TextLayout( text, TraceGame.font, Alignment.CENTER, 800,
+						LayoutCache.shared.get( text, TraceGame.font, Alignment.CENTER, 800,
 								alive.player.colour );
 				TexturedShape ts = tl.textShape;
 				ts.scale( 0.5f, 0.5f, 1 );
@@ -3,6 +3,7 @@ package com.ryanm.trace.game;
 
 import java.text.DecimalFormat;
 import java.util.List;
+import java.util.Random;
 
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Vector2f;
@@ -90,20 +91,44 @@ public class ArenaStart implements Phase
 		nameTargets = new Vector2f[ players.length ];
 		angles = new float[ players.length ];
 
+		Trace[] traces = buildTraces( players, TraceGame.rng );
+
+		for( int i = 0; i < players.length; i++ )
+		{
+			assert names[ i ].string.equals( players[ i ].name );
+
+			angles[ i ] = traces[ i ].angleRads;
+			nameStarts[ i ] = names[ i ].getBounds().getCenter();
+			nameTargets[ i ] = new Vector2f( traces[ i ].position );
+		}
+
+		TraceGame.lastArena = new Arena( lobby, traces );
+		next = TraceGame.lastArena;
+	}
+
+	/**
+	 * Resets the players and places their traces evenly around the
+	 * arena, in random order
+	 * 
+	 * @param players
+	 * @param rng
+	 * @return The traces, in the same order as the players
+	 */
+	public static Trace[] buildTraces( Player[] players, Random rng )
+	{
 		Trace[] traces = new Trace[ players.length ];
 
-		float sa = TraceGame.rng.nextFloat() * 2 * Trig.PI;
+		float sa = rng.nextFloat() * 2 * Trig.PI;
 
 		int[] positions = new int[ players.length ];
 		for( int i = 0; i < positions.length; i++ )
 		{
 			positions[ i ] = i;
 		}
-		Util.shuffle( positions, TraceGame.rng );
+		Util.shuffle( positions, rng );
 
 		for( int i = 0; i < players.length; i++ )
 		{
-			assert names[ i ].string.equals( players[ i ].name );
 			players[ i ].score = 0;
 			players[ i ].dead = false;
 
@@ -125,15 +150,10 @@ public class ArenaStart implements Phase
 				angle -= 2 * Trig.PI;
 			}
 
-			angles[ i ] = angle;
-
-			traces[ i ] = new Trace( players[ i ], x, y, angle );
-			nameStarts[ i ] = names[ i ].getBounds().getCenter();
-			nameTargets[ i ] = new Vector2f( x, y );
+			traces[ i ] = new Trace( players[ i ], x, y, angle, rng );
 		}
 
-		TraceGame.lastArena = new Arena( lobby, traces );
-		next = TraceGame.lastArena;
+		return traces;
 	}
 
 	@Override
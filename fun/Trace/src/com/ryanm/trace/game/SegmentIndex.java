@@ -0,0 +1,391 @@
+package com.ryanm.trace.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.ryanm.trace.Player;
+import com.ryanm.util.BucketGrid;
+import com.ryanm.util.math.Trig;
+
+/**
+ * A persistent spatial index of the trace segments in an arena.
+ * Rather than being rebuilt every frame, it is kept up to date by the
+ * {@link SegmentPath}s that are attached to it as they add, move and
+ * remove segments.
+ * 
+ * @author ryanm
+ */
+public class SegmentIndex
+{
+	private final float bucketSize;
+
+	private final BucketGrid<TraceSegment> grid;
+
+	private final List<SegmentPath> paths = new ArrayList<SegmentPath>();
+
+	private final List<TraceSegment> gapList = new ArrayList<TraceSegment>();
+
+	private boolean gapsDirty = true;
+
+	/**
+	 * @param bucketSize
+	 *           The size of the grid buckets
+	 * @param width
+	 *           The width of the indexed area
+	 * @param height
+	 *           The height of the indexed area
+	 */
+	public SegmentIndex( float bucketSize, float width, float height )
+	{
+		this.bucketSize = bucketSize;
+
+		grid =
+				new BucketGrid<TraceSegment>( bucketSize, ( int ) Math.ceil( width / bucketSize ),
+						( int ) Math.ceil( height / bucketSize ) );
+	}
+
+	/**
+	 * Adds a path's segments to the index. The path will keep the index
+	 * up to date from now on
+	 * 
+	 * @param path
+	 * @param owner
+	 *           The owner of the path's segments
+	 */
+	public void attach( SegmentPath path, Player owner )
+	{
+		paths.add( path );
+		path.attach( this, owner );
+	}
+
+	/**
+	 * @return The grid containing all indexed segments. Don't add
+	 *         segments to this yourself
+	 */
+	public BucketGrid<TraceSegment> getGrid()
+	{
+		return grid;
+	}
+
+	/**
+	 * Provides a list of all the gaps in the attached paths. This is
+	 * rebuilt lazily when the paths change
+	 * 
+	 * @return the gap list
+	 */
+	public List<TraceSegment> getGapList()
+	{
+		if( gapsDirty )
+		{
+			gapList.clear();
+
+			for( int i = 0; i < paths.size(); i++ )
+			{
+				paths.get( i ).populate( null, gapList, paths.get( i ).getOwner() );
+			}
+
+			gapsDirty = false;
+		}
+
+		return gapList;
+	}
+
+	void insert( TraceSegment seg )
+	{
+		grid.add( seg );
+		gapsDirty = true;
+	}
+
+	void move( TraceSegment seg, float ax, float ay, float bx, float by )
+	{
+		grid.remove( seg );
+		seg.set( ax, ay, bx, by );
+		grid.add( seg );
+	}
+
+	void remove( TraceSegment seg )
+	{
+		grid.remove( seg );
+		gapsDirty = true;
+	}
+
+	void invalidateGaps()
+	{
+		gapsDirty = true;
+	}
+
+	/**
+	 * Checks the index against one built from scratch from the
+	 * attached paths
+	 * 
+	 * @return A description of the first discrepancy found, or
+	 *         <code>null</code> if the index is consistent
+	 */
+	public String check()
+	{
+		BucketGrid<TraceSegment> rebuilt =
+				new BucketGrid<TraceSegment>( bucketSize, grid.xBuckets(), grid.yBuckets() );
+		List<TraceSegment> rebuiltGaps = new ArrayList<TraceSegment>();
+
+		for( int i = 0; i < paths.size(); i++ )
+		{
+			paths.get( i ).populate( rebuilt, rebuiltGaps, paths.get( i ).getOwner() );
+		}
+
+		List<TraceSegment> expected = new ArrayList<TraceSegment>();
+		List<TraceSegment> actual = new ArrayList<TraceSegment>();
+
+		for( int x = 0; x < grid.xBuckets(); x++ )
+		{
+			for( int y = 0; y < grid.yBuckets(); y++ )
+			{
+				expected.clear();
+				actual.clear();
+				rebuilt.bucket( x, y, expected );
+				grid.bucket( x, y, actual );
+
+				String problem = compare( expected, actual );
+				if( problem != null )
+				{
+					return "bucket [ " + x + ", " + y + " ] " + problem;
+				}
+			}
+		}
+
+		actual.clear();
+		actual.addAll( getGapList() );
+		String problem = compare( rebuiltGaps, actual );
+		if( problem != null )
+		{
+			return "gaps " + problem;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Compares two segment lists, disregarding order
+	 * 
+	 * @param expected
+	 * @param actual
+	 *           This will be modified
+	 * @return A description of the difference, or <code>null</code> if
+	 *         they match
+	 */
+	private static String compare( List<TraceSegment> expected, List<TraceSegment> actual )
+	{
+		if( expected.size() != actual.size() )
+		{
+			return "expected " + expected.size() + " segments, found " + actual.size();
+		}
+
+		for( int i = 0; i < expected.size(); i++ )
+		{
+			TraceSegment e = expected.get( i );
+			boolean found = false;
+
+			for( int j = 0; j < actual.size() && !found; j++ )
+			{
+				TraceSegment a = actual.get( j );
+				if( e.isEqual( a ) && e.owner == a.owner && e.type == a.type )
+				{
+					actual.remove( j );
+					found = true;
+				}
+			}
+
+			if( !found )
+			{
+				return "missing " + e;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Compares the per-frame cost of maintaining the index against
+	 * rebuilding the grid from scratch, as trace length grows
+	 * 
+	 * @param args
+	 */
+	public static void main( String[] args )
+	{
+		int traceCount = 8;
+		float bucketSize = 10;
+		int framesPerStep = 600;
+		float[] lengths = new float[] { 200, 500, 1000, 2000, 4000, 8000 };
+
+		Random rng = new Random( 2352623 );
+
+		SegmentIndex index = new SegmentIndex( bucketSize, 800, 600 );
+
+		Walker[] walkers = new Walker[ traceCount ];
+		for( int i = 0; i < traceCount; i++ )
+		{
+			walkers[ i ] = new Walker( rng );
+			index.attach( walkers[ i ].path, new Player( "p" + i ) );
+		}
+
+		System.out.println( "length\tsegments\trebuild ms/frame\tincremental ms/frame" );
+
+		int failures = 0;
+
+		for( int step = 0; step < lengths.length; step++ )
+		{
+			// let the traces grow to the new length
+			float traceLength = 0;
+			while( traceLength < 0.95f * lengths[ step ] )
+			{
+				traceLength = 0;
+				for( int i = 0; i < traceCount; i++ )
+				{
+					walkers[ i ].advance( lengths[ step ] );
+					traceLength += walkers[ i ].path.length / traceCount;
+				}
+			}
+
+			long incremental = 0;
+			long rebuild = 0;
+
+			for( int frame = 0; frame < framesPerStep; frame++ )
+			{
+				long start = System.nanoTime();
+
+				for( int i = 0; i < traceCount; i++ )
+				{
+					walkers[ i ].advance( lengths[ step ] );
+				}
+
+				// the bots want the gap list every frame
+				index.getGapList();
+
+				incremental += System.nanoTime() - start;
+
+				// what we used to do every frame
+				start = System.nanoTime();
+				BucketGrid<TraceSegment> grid =
+						new BucketGrid<TraceSegment>( bucketSize, index.grid.xBuckets(),
+								index.grid.yBuckets() );
+				List<TraceSegment> gaps = new ArrayList<TraceSegment>();
+				for( int i = 0; i < traceCount; i++ )
+				{
+					walkers[ i ].path.populate( grid, gaps, walkers[ i ].path.getOwner() );
+				}
+				rebuild += System.nanoTime() - start;
+
+				if( frame % 100 == 0 )
+				{
+					String problem = index.check();
+					if( problem != null )
+					{
+						failures++;
+						System.out.println( "Inconsistent index : " + problem );
+					}
+				}
+			}
+
+			int segments = 0;
+			for( int i = 0; i < traceCount; i++ )
+			{
+				segments += walkers[ i ].path.segCount() - 1;
+			}
+
+			System.out.println( Math.round( lengths[ step ] ) + "\t" + segments + "\t"
+					+ rebuild / 1000000.0f / framesPerStep + "\t" + incremental / 1000000.0f
+					/ framesPerStep );
+		}
+
+		System.out.println( failures == 0 ? "Index consistent" : failures
+				+ " consistency failures" );
+	}
+
+	/**
+	 * Wanders a {@link SegmentPath} around the arena in the same way
+	 * that a {@link Trace} does
+	 */
+	private static class Walker
+	{
+		private static final float speed = 100;
+
+		private static final float delta = 1.0f / 60;
+
+		private static final float pathLength = 50;
+
+		private static final float gapLength = 15;
+
+		private final Random rng;
+
+		private final SegmentPath path = new SegmentPath();
+
+		private float x, y, angle;
+
+		private float l = pathLength;
+
+		private boolean onPath = true;
+
+		private Walker( Random rng )
+		{
+			this.rng = rng;
+
+			x = 100 + rng.nextFloat() * 600;
+			y = 100 + rng.nextFloat() * 400;
+			angle = rng.nextFloat() * Trig.PI * 2;
+
+			path.startSeg( x, y, Trace.PATH );
+			path.startSeg( x + Trig.cos( angle ), y + Trig.sin( angle ), Trace.PATH );
+		}
+
+		private void advance( float length )
+		{
+			boolean turn = rng.nextFloat() < 0.3f;
+			if( turn )
+			{
+				angle += ( rng.nextBoolean() ? 1 : -1 ) * Trig.toRadians( 100 * delta );
+			}
+
+			float d = speed * delta;
+			x += d * Trig.cos( angle );
+			y += d * Trig.sin( angle );
+
+			boolean bounce = false;
+			if( x < 0 || x > 800 || y < 0 || y > 600 )
+			{
+				x = Math.max( 0, Math.min( 800, x ) );
+				y = Math.max( 0, Math.min( 600, y ) );
+				angle += Trig.PI / 2 + rng.nextFloat() * Trig.PI;
+				bounce = true;
+			}
+
+			boolean segSwitch = false;
+			l -= d;
+			if( l <= 0 )
+			{
+				onPath = !onPath;
+				l = onPath ? pathLength : gapLength;
+				segSwitch = true;
+			}
+
+			byte type = onPath ? Trace.PATH : Trace.GAP;
+			if( bounce || turn || segSwitch )
+			{
+				path.startSeg( x, y, type );
+
+				if( bounce || segSwitch )
+				{
+					path.startSeg( x, y, type );
+				}
+			}
+			else
+			{
+				path.extend( x, y );
+			}
+
+			if( path.length > length )
+			{
+				path.removeFromStart( Math.min( path.length - length, 3 * d ) );
+			}
+		}
+	}
+}
@@ -2,7 +2,10 @@
 package com.ryanm.trace.game;
 
 import java.util.Arrays;
+import java.util.List;
 
+import com.ryanm.trace.Player;
+import com.ryanm.util.BucketGrid;
 import com.ryanm.util.geom.Pointf;
 
 /**
@@ -36,6 +39,23 @@ public class SegmentPath
 	 */
 	public float length = 0;
 
+	/**
+	 * The index that we keep up to date, or <code>null</code> if we
+	 * haven't been attached to one
+	 */
+	private SegmentIndex index = null;
+
+	/**
+	 * The owner of our segments
+	 */
+	private Player owner = null;
+
+	/**
+	 * The index entry for each segment. Only maintained while we're
+	 * attached to an index
+	 */
+	private TraceSegment[] segs = null;
+
 	/**
 	 * @return the number of segments
 	 */
@@ -58,6 +78,11 @@ public class SegmentPath
 			xCoords = Arrays.copyOf( xCoords, 2 * xCoords.length );
 			yCoords = Arrays.copyOf( yCoords, 2 * yCoords.length );
 			segType = Arrays.copyOf( segType, 2 * segType.length );
+
+			if( segs != null )
+			{
+				segs = Arrays.copyOf( segs, 2 * segs.length );
+			}
 		}
 
 		xCoords[ segCount ] = x;
@@ -67,11 +92,37 @@ public class SegmentPath
 		if( segCount > 0 )
 		{
 			length += length( segCount - 1 );
+
+			if( index != null )
+			{
+				segs[ segCount - 1 ] = buildSegment( segCount - 1 );
+				index.insert( segs[ segCount - 1 ] );
+			}
 		}
 
 		segCount++;
 	}
 
+	/**
+	 * Moves the end point of the path, and so extends the last segment
+	 * 
+	 * @param x
+	 * @param y
+	 */
+	public void extend( float x, float y )
+	{
+		int last = segCount - 1;
+
+		length += Pointf.distance( xCoords[ last ], yCoords[ last ], x, y );
+		xCoords[ last ] = x;
+		yCoords[ last ] = y;
+
+		if( index != null && last > 0 )
+		{
+			index.move( segs[ last - 1 ], xCoords[ last - 1 ], yCoords[ last - 1 ], x, y );
+		}
+	}
+
 	/**
 	 * Removes some segments from the start of the path
 	 * 
@@ -85,6 +136,15 @@ public class SegmentPath
 
 		if( toRemove >= length )
 		{
+			if( index != null )
+			{
+				for( int i = 0; i < segCount - 1; i++ )
+				{
+					index.remove( segs[ i ] );
+					segs[ i ] = null;
+				}
+			}
+
 			segCount = 1;
 			length = 0;
 
@@ -121,6 +181,18 @@ public class SegmentPath
 			System.arraycopy( xCoords, snip, xCoords, 0, xCoords.length - snip );
 			System.arraycopy( yCoords, snip, yCoords, 0, yCoords.length - snip );
 			System.arraycopy( segType, snip, segType, 0, segType.length - snip );
+
+			if( index != null )
+			{
+				for( int i = 0; i < snip; i++ )
+				{
+					index.remove( segs[ i ] );
+				}
+
+				System.arraycopy( segs, snip, segs, 0, segs.length - snip );
+				Arrays.fill( segs, segs.length - snip, segs.length, null );
+			}
+
 			segCount -= snip;
 
 			// adjust first point
@@ -135,6 +207,12 @@ public class SegmentPath
 
 			removed[ removed.length - 2 ] = xCoords[ 0 ];
 			removed[ removed.length - 1 ] = yCoords[ 0 ];
+
+			if( index != null )
+			{
+				index.move( segs[ 0 ], xCoords[ 0 ], yCoords[ 0 ], xCoords[ 1 ], yCoords[ 1 ] );
+				index.invalidateGaps();
+			}
 		}
 		else
 		{
@@ -144,6 +222,85 @@ public class SegmentPath
 		return removed;
 	}
 
+	/**
+	 * Adds our segments to an index, which will be kept up to date as
+	 * the path changes
+	 * 
+	 * @param index
+	 * @param owner
+	 *           The owner of the segments
+	 */
+	void attach( SegmentIndex index, Player owner )
+	{
+		assert this.index == null : "Already attached";
+
+		this.index = index;
+		this.owner = owner;
+
+		segs = new TraceSegment[ xCoords.length ];
+		for( int i = 0; i < segCount - 1; i++ )
+		{
+			segs[ i ] = buildSegment( i );
+			index.insert( segs[ i ] );
+		}
+	}
+
+	/**
+	 * Builds the segments and gaps of this path from scratch
+	 * 
+	 * @param grid
+	 *           The grid to add segments to, or <code>null</code> if
+	 *           you're only interested in the gaps
+	 * @param gaps
+	 *           The list to add gaps to
+	 * @param owner
+	 *           The owner of the segments
+	 */
+	void populate( BucketGrid<TraceSegment> grid, List<TraceSegment> gaps, Player owner )
+	{
+		boolean onGap = segType[ 0 ] == Trace.GAP;
+		float x = xCoords[ 0 ];
+		float y = yCoords[ 0 ];
+
+		for( int i = 0; i < segCount - 1; i++ )
+		{
+			if( grid != null )
+			{
+				grid.add( new TraceSegment( xCoords[ i ], yCoords[ i ], xCoords[ i + 1 ],
+						yCoords[ i + 1 ], owner, segType[ i ] ) );
+			}
+
+			if( onGap && segType[ i ] == Trace.PATH )
+			{ // come to the end of a gap
+				TraceSegment gap =
+						new TraceSegment( x, y, xCoords[ i ], yCoords[ i ], owner, Trace.GAP );
+				gaps.add( gap );
+				onGap = false;
+			}
+			else if( !onGap && segType[ i ] == Trace.GAP )
+			{
+				x = xCoords[ i ];
+				y = yCoords[ i ];
+				onGap = true;
+			}
+		}
+	}
+
+	/**
+	 * @return The owner of the segments, or <code>null</code> if we
+	 *         haven't been attached to an index
+	 */
+	Player getOwner()
+	{
+		return owner;
+	}
+
+	private TraceSegment buildSegment( int seg )
+	{
+		return new TraceSegment( xCoords[ seg ], yCoords[ seg ], xCoords[ seg + 1 ],
+				yCoords[ seg + 1 ], owner, segType[ seg ] );
+	}
+
 	private float length( int seg )
 	{
 		return Pointf
@@ -1,7 +1,7 @@
 
 package com.ryanm.trace.game;
 
-import java.util.List;
+import java.util.Random;
 
 import org.lwjgl.util.vector.Vector2f;
 
@@ -24,11 +24,8 @@ import com.ryanm.trace.Player;
 import com.ryanm.trace.Sounds;
 import com.ryanm.trace.TraceGame;
 import com.ryanm.trace.game.ai.Bot.Action;
-import com.ryanm.trace.game.entities.SeekSparks;
-import com.ryanm.trace.game.entities.Sparks;
 import com.ryanm.trace.game.entities.Virus;
-import com.ryanm.util.BucketGrid;
-import com.ryanm.util.geom.Pointf;
+import com.ryanm.util.HitBuffer;
 import com.ryanm.util.geom.VectorUtils;
 import com.ryanm.util.math.Range;
 import com.ryanm.util.math.Trig;
@@ -121,7 +118,12 @@ public class Trace
 	 */
 	public float cloakTime = 0;
 
-	private float cloakRot = TraceGame.rng.nextFloat() * Trig.PI * 2;
+	private float cloakRot;
+
+	/**
+	 * Reused for collision queries
+	 */
+	private final HitBuffer<TraceSegment> hits = new HitBuffer<TraceSegment>();
 
 	/**
 	 * @param player
@@ -134,6 +136,23 @@ public class Trace
 	 *           start angle in radians
 	 */
 	public Trace( Player player, float x, float y, float angle )
+	{
+		this( player, x, y, angle, TraceGame.rng );
+	}
+
+	/**
+	 * @param player
+	 *           the player
+	 * @param x
+	 *           start position x
+	 * @param y
+	 *           start position y
+	 * @param angle
+	 *           start angle in radians
+	 * @param rng
+	 *           source of randomness
+	 */
+	public Trace( Player player, float x, float y, float angle, Random rng )
 	{
 		this.player = player;
 
@@ -150,7 +169,8 @@ public class Trace
 		gapLength = TraceGame.game.trace.gapLength;
 		length = TraceGame.game.trace.traceLength;
 
-		l = ( 0.5f + TraceGame.rng.nextFloat() * 0.5f ) * pathLength;
+		l = ( 0.5f + rng.nextFloat() * 0.5f ) * pathLength;
+		cloakRot = rng.nextFloat() * Trig.PI * 2;
 
 		shield = new ColouredShape( shieldShape, player.colour, null );
 	}
@@ -164,7 +184,11 @@ public class Trace
 			slipSource.stop();
 			slipSource = null;
 		}
-		Sounds.death();
+
+		if( !arena.headless )
+		{
+			Sounds.death();
+		}
 
 		if( cause == null )
 		{ // hit arena
@@ -234,8 +258,8 @@ public class Trace
 			VectorUtils.rotate90( dir );
 			dir.scale( TraceGame.game.trace.slipDistance );
 
-			if( arena.collision( position.x + dirx - dir.x, position.y + diry - dir.y,
-					position.x + dirx + dir.x, position.y + diry + dir.y ).length > 0 )
+			if( arena.anyCollision( position.x + dirx - dir.x, position.y + diry - dir.y,
+					position.x + dirx + dir.x, position.y + diry + dir.y ) )
 			{
 				slipSpeed +=
 						TraceGame.game.trace.slipBoost * delta / TraceGame.game.trace.slipAccel;
@@ -248,7 +272,7 @@ public class Trace
 			}
 			slipSpeed = Range.limit( slipSpeed, 1, TraceGame.game.trace.slipBoost );
 
-			if( slipSpeed > 1 )
+			if( slipSpeed > 1 && !arena.headless )
 			{
 				if( slipSource == null )
 				{
@@ -279,7 +303,7 @@ public class Trace
 			boolean bounce = arenaCollision();
 			bounce |= traceCollision( old, position );
 
-			if( bounce )
+			if( bounce && !arena.headless )
 			{
 				Sounds.bounce();
 			}
@@ -307,11 +331,7 @@ public class Trace
 			else
 			{
 				// just extend the current segment
-				path.length +=
-						Pointf.distance( path.xCoords[ path.segCount() - 1 ],
-								path.yCoords[ path.segCount() - 1 ], position.x, position.y );
-				path.xCoords[ path.segCount() - 1 ] = position.x;
-				path.yCoords[ path.segCount() - 1 ] = position.y;
+				path.extend( position.x, position.y );
 			}
 
 			if( length > -1 && path.length > length )
@@ -343,52 +363,44 @@ public class Trace
 	private boolean traceCollision( final Vector2f oldPos, Vector2f newpos )
 	{
 		// look for collisions
-		Collision[] collision = arena.collision( oldPos.x, oldPos.y, newpos.x, newpos.y );
-
-		arena.getCollider().add(
-				new TraceSegment( oldPos.x, oldPos.y, newpos.x, newpos.y, player,
-						onPath ? PATH : GAP ) );
+		// our own movement will be added to the arena's index when the
+		// path is updated
+		int hitCount = arena.collision( oldPos.x, oldPos.y, newpos.x, newpos.y, hits );
 
-		if( collision.length > 0 )
+		if( hitCount > 0 )
 		{
-			Collision.sort( oldPos, collision );
-
-			for( int i = 0; i < collision.length; i++ )
+			for( int i = 0; i < hitCount; i++ )
 			{
-				if( collision[ i ].seg.type == GAP )
+				TraceSegment hit = hits.segment( i );
+
+				if( hit.type == GAP )
 				{
-					Sounds.score();
-					boolean own = collision[ i ].seg.owner == player;
+					boolean own = hit.owner == player;
 					arena.score( player, own ? TraceGame.game.score.gap.own
 							: TraceGame.game.score.gap.other );
 
 					if( !own )
 					{
-						arena.score( collision[ i ].seg.owner,
-								TraceGame.game.score.gap.scoredOn );
+						arena.score( hit.owner, TraceGame.game.score.gap.scoredOn );
 					}
 
-					float bv = speed * 0.5f;
-					SeekSparks scoreBurst =
-							new SeekSparks( 30, 2, 5, 1, collision[ i ].seg.owner.colour );
-					scoreBurst.position( collision[ i ].collisionPoint().getX(), collision[ i ]
-							.collisionPoint().getY(), 0 );
-					scoreBurst.velocity( bv * Trig.cos( angleRads ),
-							bv * Trig.sin( angleRads ), 200, 2 );
-					scoreBurst.target( position, 5 );
+					if( !arena.headless )
+					{
+						Sounds.score();
 
-					arena.addEntity( scoreBurst );
+						float bv = speed * 0.5f;
+						arena.particles.sparks( 30, 2, 5, 1, hit.owner.colour )
+								.position( hits.x( i ), hits.y( i ), 0 )
+								.velocity( bv * Trig.cos( angleRads ), bv * Trig.sin( angleRads ),
+										200, 2 ).target( position, 5 );
+					}
 				}
 				else
 				{ // hit a seg
-					Vector2f seg =
-							new Vector2f( collision[ i ].seg.bx - collision[ i ].seg.ax,
-									collision[ i ].seg.by - collision[ i ].seg.ay );
+					Vector2f seg = new Vector2f( hit.bx - hit.ax, hit.by - hit.ay );
 					seg.normalise();
 
-					Vector2f trace =
-							new Vector2f( collision[ i ].testSeg.bx - collision[ i ].testSeg.ax,
-									collision[ i ].testSeg.by - collision[ i ].testSeg.ay );
+					Vector2f trace = new Vector2f( hits.bx - hits.ax, hits.by - hits.ay );
 					trace.normalise();
 
 					Vector2f parallel = new Vector2f( seg );
@@ -401,7 +413,7 @@ public class Trace
 
 					if( perp.length() < allowance )
 					{
-						position.set( collision[ i ].collisionPoint() );
+						position.set( hits.x( i ), hits.y( i ) );
 						perp.scale( -1 );
 
 						// move away from the seg a bit
@@ -420,15 +432,17 @@ public class Trace
 						{
 							shields--;
 
-							Sparks shieldBurst = new Sparks( 15, 5, 5, 1, player.colour );
-							shieldBurst.position( position.x, position.y, 0 );
-							shieldBurst.velocity( 0.3f * speed * Trig.cos( angleRads ), 0.3f
-									* speed * Trig.sin( angleRads ), 50, 1 );
-							arena.addEntity( shieldBurst );
+							if( !arena.headless )
+							{
+								arena.particles.sparks( 15, 5, 5, 1, player.colour ).position(
+										position.x, position.y, 0 ).velocity(
+										0.3f * speed * Trig.cos( angleRads ),
+										0.3f * speed * Trig.sin( angleRads ), 50, 1 );
 
-							Sounds.shieldStrike();
+								Sounds.shieldStrike();
+							}
 
-							if( collision[ i ].seg.owner == player )
+							if( hit.owner == player )
 							{
 								// selfstrike
 								arena.score( player, TraceGame.game.score.strike.self );
@@ -437,14 +451,13 @@ public class Trace
 							{
 								// strike
 								arena.score( player, TraceGame.game.score.strike.other );
-								arena.score( collision[ i ].seg.owner,
-										TraceGame.game.score.strike.struck );
+								arena.score( hit.owner, TraceGame.game.score.strike.struck );
 							}
 						}
 						else
 						{
-							position.set( collision[ i ].collisionPoint() );
-							die( collision[ i ].seg.owner );
+							position.set( hits.x( i ), hits.y( i ) );
+							die( hit.owner );
 						}
 
 						return false;
@@ -685,35 +698,4 @@ public class Trace
 			Virus.drawCloak( position.x, position.y, cloakRot, 10, a, r );
 		}
 	}
-
-	void populate( BucketGrid<TraceSegment> segs, List<TraceSegment> gaps )
-	{
-		boolean onGap = path.segType[ 0 ] == GAP;
-		float x = path.xCoords[ 0 ];
-		float y = path.yCoords[ 0 ];
-
-		for( int i = 0; i < path.segCount() - 1; i++ )
-		{
-			TraceSegment ts =
-					new TraceSegment( path.xCoords[ i ], path.yCoords[ i ],
-							path.xCoords[ i + 1 ], path.yCoords[ i + 1 ], player,
-							path.segType[ i ] );
-			segs.add( ts );
-
-			if( onGap && path.segType[ i ] == PATH )
-			{ // come to the end of a gap
-				TraceSegment gap =
-						new TraceSegment( x, y, path.xCoords[ i ], path.yCoords[ i ], player,
-								GAP );
-				gaps.add( gap );
-				onGap = false;
-			}
-			else if( !onGap && path.segType[ i ] == GAP )
-			{
-				x = path.xCoords[ i ];
-				y = path.yCoords[ i ];
-				onGap = true;
-			}
-		}
-	}
 }
@@ -1,9 +1,13 @@
 
 package com.ryanm.trace.game.ai;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import com.rugl.console.Console;
 
@@ -15,16 +19,32 @@ public class BotManager
 	private static final Map<String, Class<? extends Bot>> bots =
 			new HashMap<String, Class<? extends Bot>>();
 
+	private static final Map<String, EvolvedBot> evolved = new HashMap<String, EvolvedBot>();
+
 	private static final Map<String, String> descriptions = new HashMap<String, String>();
 
+	/**
+	 * The name of the directory, under the game's file base, that
+	 * {@link EvolvedBot}s are loaded from
+	 */
+	public static final String dirName = "bots";
+
 	static
 	{
-		register( MeatBag.class.getName() );
-		register( WanderBot.class.getName() );
-		register( GreedyBot.class.getName() );
-		register( HunterBot.class.getName() );
-		register( TimidBot.class.getName() );
-		register( GapHoundBot.class.getName() );
+		// no logging for the built-in bots, so that they are available
+		// without touching the console
+		add( new MeatBag() );
+		add( new WanderBot() );
+		add( new GreedyBot() );
+		add( new HunterBot() );
+		add( new TimidBot() );
+		add( new GapHoundBot() );
+	}
+
+	private static void add( Bot instance )
+	{
+		bots.put( instance.getName(), instance.getClass() );
+		descriptions.put( instance.getName(), instance.getDescription() );
 	}
 
 	/**
@@ -43,8 +63,7 @@ public class BotManager
 			{
 				Bot instance = ( Bot ) c.newInstance();
 
-				bots.put( instance.getName(), c );
-				descriptions.put( instance.getName(), instance.getDescription() );
+				add( instance );
 				Console.log( "loaded bot " + instance.getName() );
 			}
 			else
@@ -66,12 +85,58 @@ public class BotManager
 		}
 	}
 
+	/**
+	 * Adds an evolved bot
+	 * 
+	 * @param bot
+	 *           The prototype, copies of which are returned from
+	 *           {@link #forName(String)}
+	 */
+	public static void register( EvolvedBot bot )
+	{
+		evolved.put( bot.getName(), bot );
+		descriptions.put( bot.getName(), bot.getDescription() );
+	}
+
+	/**
+	 * Loads the {@link EvolvedBot}s saved in a directory
+	 * 
+	 * @param dir
+	 */
+	public static void load( File dir )
+	{
+		File[] files = dir.listFiles();
+		if( files == null )
+		{
+			return;
+		}
+
+		for( File f : files )
+		{
+			if( f.getName().endsWith( EvolvedBot.EXTENSION ) )
+			{
+				try
+				{
+					EvolvedBot bot = EvolvedBot.load( f );
+					register( bot );
+					Console.log( "loaded bot " + bot.getName() );
+				}
+				catch( IOException e )
+				{
+					Console.log( e.getMessage() + " when trying to load bot " + f.getName() );
+				}
+			}
+		}
+	}
+
 	/**
 	 * @return {@link Bot} names
 	 */
 	public static String[] getNames()
 	{
-		String[] names = bots.keySet().toArray( new String[ bots.keySet().size() ] );
+		Set<String> all = new HashSet<String>( bots.keySet() );
+		all.addAll( evolved.keySet() );
+		String[] names = all.toArray( new String[ all.size() ] );
 		Arrays.sort( names );
 
 		// put meatbag at the start
@@ -92,6 +157,25 @@ public class BotManager
 	 * @return a named {@link Bot} instance
 	 */
 	public static Bot forName( String name )
+	{
+		EvolvedBot eb = evolved.get( name );
+		if( eb != null )
+		{
+			return eb.copy();
+		}
+
+		return builtIn( name );
+	}
+
+	/**
+	 * Ignores {@link EvolvedBot}s, so that one can't be based on
+	 * itself
+	 * 
+	 * @param name
+	 * @return a named instance of a {@link Bot} class, or
+	 *         <code>null</code>
+	 */
+	static Bot builtIn( String name )
 	{
 		try
 		{
@@ -0,0 +1,230 @@
+package com.ryanm.trace.game.ai;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import com.ryanm.trace.game.Arena;
+import com.ryanm.trace.game.Trace;
+
+/**
+ * A {@link GeneBot} with a trained genome, under a new name. These
+ * are saved as simple property files, and can be loaded into the
+ * {@link BotManager}
+ *
+ * @author ryanm
+ */
+public class EvolvedBot implements Bot
+{
+	/**
+	 * The file extension for saved bots
+	 */
+	public static final String EXTENSION = ".bot";
+
+	private final String name;
+
+	private final String description;
+
+	private final String base;
+
+	private final float[] genome;
+
+	private final GeneBot bot;
+
+	/**
+	 * @param name
+	 *           The name of the new bot
+	 * @param description
+	 *           The description of the new bot
+	 * @param base
+	 *           The name of the {@link GeneBot} class that the genome
+	 *           is for. Other evolved bots can't be used
+	 * @param genome
+	 *           The genome
+	 * @throws IllegalArgumentException
+	 *            If the base is not a {@link GeneBot}, or the genome
+	 *            is the wrong length for it
+	 */
+	public EvolvedBot( String name, String description, String base, float[] genome )
+	{
+		this.name = name;
+		this.description = description;
+		this.base = base;
+		this.genome = genome.clone();
+
+		Bot b = BotManager.builtIn( base );
+		if( !( b instanceof GeneBot ) )
+		{
+			throw new IllegalArgumentException( "\"" + base + "\" is not a gene bot" );
+		}
+
+		bot = ( GeneBot ) b;
+
+		int length = bot.getGenome().length;
+		if( genome.length != length )
+		{
+			throw new IllegalArgumentException( "\"" + base + "\" has " + length
+					+ " genes, not " + genome.length );
+		}
+
+		bot.setGenome( genome );
+	}
+
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return description;
+	}
+
+	/**
+	 * @return The name of the {@link GeneBot} that this is based on
+	 */
+	public String getBase()
+	{
+		return base;
+	}
+
+	/**
+	 * @return A copy of the genome
+	 */
+	public float[] getGenome()
+	{
+		return genome.clone();
+	}
+
+	@Override
+	public void reset()
+	{
+		bot.reset();
+	}
+
+	@Override
+	public Action process( Trace t, Arena game )
+	{
+		return bot.process( t, game );
+	}
+
+	/**
+	 * @return A fresh instance of this bot
+	 */
+	public EvolvedBot copy()
+	{
+		return new EvolvedBot( name, description, base, genome );
+	}
+
+	/**
+	 * @param f
+	 *           The file to write to
+	 * @throws IOException
+	 */
+	public void save( File f ) throws IOException
+	{
+		Properties p = new Properties();
+		p.setProperty( "name", name );
+		p.setProperty( "description", description );
+		p.setProperty( "base", base );
+		p.setProperty( "genome", format( genome ) );
+
+		OutputStream os = new FileOutputStream( f );
+		try
+		{
+			p.store( os, "evolved trace bot" );
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	/**
+	 * @param f
+	 *           The file to read from
+	 * @return The loaded bot
+	 * @throws IOException
+	 *            If the file cannot be read or is malformed
+	 */
+	public static EvolvedBot load( File f ) throws IOException
+	{
+		Properties p = new Properties();
+
+		InputStream is = new FileInputStream( f );
+		try
+		{
+			p.load( is );
+		}
+		finally
+		{
+			is.close();
+		}
+
+		String name = p.getProperty( "name" );
+		String base = p.getProperty( "base" );
+		String genome = p.getProperty( "genome" );
+
+		if( name == null || base == null || genome == null )
+		{
+			throw new IOException( "Missing bot properties in " + f );
+		}
+
+		try
+		{
+			return new EvolvedBot( name, p.getProperty( "description", "" ), base,
+					parse( genome ) );
+		}
+		catch( IllegalArgumentException e )
+		{
+			throw new IOException( e.getMessage() + " in " + f );
+		}
+	}
+
+	/**
+	 * @param genome
+	 * @return A comma-separated list of genes
+	 */
+	public static String format( float[] genome )
+	{
+		StringBuilder sb = new StringBuilder();
+		for( int i = 0; i < genome.length; i++ )
+		{
+			if( i > 0 )
+			{
+				sb.append( ", " );
+			}
+			sb.append( genome[ i ] );
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param s
+	 *           A comma-separated list of genes, as from
+	 *           {@link #format(float[])}
+	 * @return The genome
+	 * @throws NumberFormatException
+	 */
+	public static float[] parse( String s )
+	{
+		if( s.trim().length() == 0 )
+		{
+			return new float[ 0 ];
+		}
+
+		String[] sa = s.split( "," );
+		float[] genome = new float[ sa.length ];
+		for( int i = 0; i < sa.length; i++ )
+		{
+			genome[ i ] = Float.parseFloat( sa[ i ].trim() );
+		}
+		return genome;
+	}
+}
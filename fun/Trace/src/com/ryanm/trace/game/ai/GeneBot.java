@@ -67,4 +67,48 @@ public abstract class GeneBot implements Bot
 
 		return dominant.getAction();
 	}
+
+	/**
+	 * @return The genomes of all behaviours, concatenated
+	 */
+	public float[] getGenome()
+	{
+		int length = 0;
+		float[][] genes = new float[ behaviours.length ][];
+		for( int i = 0; i < behaviours.length; i++ )
+		{
+			genes[ i ] = behaviours[ i ].getGenome();
+			length += genes[ i ].length;
+		}
+
+		float[] genome = new float[ length ];
+		int offset = 0;
+		for( int i = 0; i < genes.length; i++ )
+		{
+			System.arraycopy( genes[ i ], 0, genome, offset, genes[ i ].length );
+			offset += genes[ i ].length;
+		}
+
+		return genome;
+	}
+
+	/**
+	 * @param genome
+	 *           The genomes of all behaviours, concatenated as from
+	 *           {@link #getGenome()}
+	 */
+	public void setGenome( float[] genome )
+	{
+		int offset = 0;
+		for( int i = 0; i < behaviours.length; i++ )
+		{
+			float[] gene = new float[ behaviours[ i ].getGenome().length ];
+			System.arraycopy( genome, offset, gene, 0, gene.length );
+			behaviours[ i ].setGenome( gene );
+			offset += gene.length;
+		}
+
+		assert offset == genome.length : "Expected " + offset + " genes, got "
+				+ genome.length;
+	}
 }
@@ -4,10 +4,10 @@ package com.ryanm.trace.game.ai.behaviours;
 import org.lwjgl.util.vector.Vector2f;
 
 import com.ryanm.trace.game.Arena;
-import com.ryanm.trace.game.Collision;
 import com.ryanm.trace.game.Trace;
+import com.ryanm.trace.game.TraceSegment;
 import com.ryanm.trace.game.ai.Bot.Action;
-import com.ryanm.util.geom.VectorUtils;
+import com.ryanm.util.HitBuffer;
 import com.ryanm.util.math.Trig;
 
 /**
@@ -27,7 +27,9 @@ public class AvoidTrace extends Behaviour
 	 */
 	public float testAngle = Trig.toRadians( 20 );
 
-	private static final Vector2f v = new Vector2f();
+	private final Vector2f v = new Vector2f();
+
+	private final HitBuffer<TraceSegment> hit = new HitBuffer<TraceSegment>();
 
 	@Override
 	public void process( Trace t, Arena a )
@@ -37,27 +39,20 @@ public class AvoidTrace extends Behaviour
 		// left
 		v.set( Trig.cos( t.angleRads + testAngle ), Trig.sin( t.angleRads + testAngle ) );
 		v.scale( testSegLength );
-		Collision[] leftC =
-				a.collision( t.position.x, t.position.y, t.position.x + v.x, t.position.y + v.y );
-		Collision.sort( t.position, leftC );
-		Collision left = leftC.length == 0 || leftC[ 0 ].seg.type == Trace.GAP ? null : leftC[ 0 ];
+		TraceSegment left =
+				a.nearestCollision( t.position.x, t.position.y, t.position.x + v.x,
+						t.position.y + v.y, hit );
+		float ld = left == null || left.type == Trace.GAP ? Float.MAX_VALUE : hit.distance( 0 );
 
 		// right
 		v.set( Trig.cos( t.angleRads - testAngle ), Trig.sin( t.angleRads - testAngle ) );
 		v.scale( testSegLength );
-		Collision[] rightC =
-				a.collision( t.position.x, t.position.y, t.position.x + v.x, t.position.y + v.y );
-		Collision.sort( t.position, rightC );
-		Collision right = rightC.length == 0 || rightC[ 0 ].seg.type == Trace.GAP ? null : rightC[ 0 ];
+		TraceSegment right =
+				a.nearestCollision( t.position.x, t.position.y, t.position.x + v.x,
+						t.position.y + v.y, hit );
+		float rd = right == null || right.type == Trace.GAP ? Float.MAX_VALUE : hit.distance( 0 );
 
 		// see which is closer
-		float rd =
-				right == null ? Float.MAX_VALUE : VectorUtils.distance( t.position,
-						right.collisionPoint() );
-		float ld =
-				left == null ? Float.MAX_VALUE : VectorUtils.distance( t.position,
-						left.collisionPoint() );
-
 		if( rd < ld )
 		{
 			action = Action.LEFT;
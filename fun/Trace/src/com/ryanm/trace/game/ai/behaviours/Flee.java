@@ -62,6 +62,6 @@ public class Flee extends Behaviour
 	@Override
 	public void setGenome( float[] gene )
 	{
-		fleeWeight = gene[ 0 ];
+		fleeWeight = Math.max( 0, Math.min( 1, gene[ 0 ] ) );
 	}
 }
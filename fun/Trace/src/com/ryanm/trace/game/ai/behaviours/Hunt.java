@@ -1,8 +1,6 @@
 
 package com.ryanm.trace.game.ai.behaviours;
 
-import java.util.Random;
-
 import org.lwjgl.util.vector.Vector2f;
 
 import com.ryanm.trace.game.Arena;
@@ -15,8 +13,6 @@ import com.ryanm.util.math.Trig;
  */
 public class Hunt extends Behaviour
 {
-	private Random rng = new Random();
-
 	/***/
 	public float huntWeight = 0.2f;
 
@@ -46,7 +42,7 @@ public class Hunt extends Behaviour
 
 		if( preySwitchTime < a.time )
 		{
-			preySwitchTime = a.time + preySwitch.toValue( rng.nextFloat() );
+			preySwitchTime = a.time + preySwitch.toValue( a.rng.nextFloat() );
 
 			int aliveCount = 0;
 			for( int i = 0; i < a.traces.length; i++ )
@@ -60,7 +56,7 @@ public class Hunt extends Behaviour
 			prey = null;
 			if( aliveCount > 0 )
 			{
-				aliveCount = rng.nextInt( aliveCount );
+				aliveCount = a.rng.nextInt( aliveCount );
 
 				for( int i = 0; i < a.traces.length; i++ )
 				{
@@ -111,7 +107,7 @@ public class Hunt extends Behaviour
 	@Override
 	public void setGenome( float[] gene )
 	{
-		huntWeight = gene[ 0 ];
+		huntWeight = Math.max( 0, Math.min( 1, gene[ 0 ] ) );
 		preySwitch.set( gene[ 1 ], gene[ 2 ] );
 	}
 }
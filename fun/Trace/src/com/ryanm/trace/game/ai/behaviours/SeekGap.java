@@ -60,7 +60,7 @@ public class SeekGap extends Behaviour
 						// if( Vector2f.angle( travelDir, toGapMid ) < 1.5f
 						// * Trig.PI )
 						{ // it's not right behind us
-							if( a.collision( t.position.x, t.position.y, gapMid.x, gapMid.y ).length == 0 )
+							if( !a.anyCollision( t.position.x, t.position.y, gapMid.x, gapMid.y ) )
 							{ // there's nothing in the way
 								float d = VectorUtils.distance( t.position, gapMid );
 								if( d < minD )
@@ -94,7 +94,7 @@ public class SeekGap extends Behaviour
 	@Override
 	public void setGenome( float[] gene )
 	{
-		seekWeight = gene[ 0 ];
+		seekWeight = Math.max( 0, Math.min( 1, gene[ 0 ] ) );
 	}
 
 }
@@ -19,19 +19,17 @@ import com.ryanm.util.math.Trig;
  */
 public class Waypoint extends Behaviour
 {
-	private Random rng = new Random();
-
 	private final Vector2f target = new Vector2f();
 
+	private boolean targetChosen = false;
+
 	private float distance = Float.MAX_VALUE;
 
 	@Override
 	public void reset()
 	{
 		super.reset();
-		float margin = 50;
-		target.set( margin + ( 800 - 2 * margin ) * rng.nextFloat(), margin + ( 600 - 2 * margin )
-				* rng.nextFloat() );
+		targetChosen = false;
 		distance = Float.MAX_VALUE;
 
 		weight = 0.1f;
@@ -40,11 +38,17 @@ public class Waypoint extends Behaviour
 	@Override
 	public void process( Trace t, Arena a )
 	{
+		if( !targetChosen )
+		{
+			chooseTarget( a.rng );
+		}
+
 		float d = VectorUtils.distanceSquared( target, t.position );
 
 		if( d >= distance )
 		{
 			reset();
+			chooseTarget( a.rng );
 		}
 		else
 		{
@@ -54,6 +58,14 @@ public class Waypoint extends Behaviour
 		action = seek( t, target );
 	}
 
+	private void chooseTarget( Random rng )
+	{
+		float margin = 50;
+		target.set( margin + ( 800 - 2 * margin ) * rng.nextFloat(), margin + ( 600 - 2 * margin )
+				* rng.nextFloat() );
+		targetChosen = true;
+	}
+
 	/**
 	 * Steers to some target point
 	 * 
@@ -0,0 +1,555 @@
+
+package com.ryanm.trace.game.entities;
+
+import java.util.Random;
+
+import org.lwjgl.util.vector.Vector2f;
+
+import com.rugl.gl.State;
+import com.rugl.renderer.StackedRenderer;
+import com.rugl.util.Colour;
+import com.ryanm.trace.game.Entity;
+import com.ryanm.util.ArrayUtil;
+import com.ryanm.util.math.Trig;
+
+/**
+ * A pool of sparks, held in parallel arrays rather than as objects.
+ * The pool is split into blocks of {@link #BLOCK} sparks: positions and
+ * velocities are kept per spark, everything else per block. A burst of
+ * sparks takes blocks from the pool, and the blocks of dead bursts are
+ * reused by later ones. All sparks are advanced in one pass, and
+ * submitted to the renderer in runs of {@link #RUN} blocks, so are
+ * drawn as one batch of triangles for each {@link State}. This never
+ * finishes, so stays in the arena
+ *
+ * @author ryanm
+ */
+public class Particles implements Entity
+{
+	/**
+	 * The number of sparks in a block
+	 */
+	public static final int BLOCK = 32;
+
+	/**
+	 * The number of blocks submitted to the renderer at a time. Small
+	 * enough that the geometry is still in cache when the renderer
+	 * copies it
+	 */
+	public static final int RUN = 64;
+
+	private final Random rng;
+
+	/**
+	 * Capacity, in blocks
+	 */
+	private int blocks;
+
+	/**
+	 * Blocks at or above this have not been used since the pool was
+	 * last empty
+	 */
+	private int high = 0;
+
+	private int live = 0;
+
+	private int[] free;
+
+	private int freeCount = 0;
+
+	// per spark
+
+	private float[] x, y, vx, vy;
+
+	// per block
+
+	/**
+	 * The number of live sparks in each block, 0 if it is free
+	 */
+	private int[] count;
+
+	private float[] age, life, drag;
+
+	private float[] halfWidth, length;
+
+	/**
+	 * Acceleration towards {@link #target}, per advance
+	 */
+	private float[] seek;
+
+	private Vector2f[] target;
+
+	private int[] colour;
+
+	/**
+	 * Index into {@link #states}
+	 */
+	private int[] state;
+
+	private State[] states = new State[ 1 ];
+
+	private int stateCount = 0;
+
+	private float[] verts;
+
+	private int[] colours;
+
+	private int[] tris;
+
+	private final Burst burst = new Burst();
+
+	/**
+	 * Builds a pool with its own source of randomness, so that sparks
+	 * don't disturb anything else
+	 *
+	 * @param capacity
+	 *           The initial number of sparks. The pool grows as needed
+	 */
+	public Particles( int capacity )
+	{
+		this( new Random(), capacity );
+	}
+
+	/**
+	 * @param rng
+	 *           source of randomness for burst positions and velocities
+	 * @param capacity
+	 *           The initial number of sparks. The pool grows as needed
+	 */
+	public Particles( Random rng, int capacity )
+	{
+		this.rng = rng;
+		blocks = Math.max( 1, ( capacity + BLOCK - 1 ) / BLOCK );
+
+		x = new float[ blocks * BLOCK ];
+		y = new float[ blocks * BLOCK ];
+		vx = new float[ blocks * BLOCK ];
+		vy = new float[ blocks * BLOCK ];
+
+		free = new int[ blocks ];
+		count = new int[ blocks ];
+		age = new float[ blocks ];
+		life = new float[ blocks ];
+		drag = new float[ blocks ];
+		halfWidth = new float[ blocks ];
+		length = new float[ blocks ];
+		seek = new float[ blocks ];
+		target = new Vector2f[ blocks ];
+		colour = new int[ blocks ];
+		state = new int[ blocks ];
+
+		verts = new float[ 9 * BLOCK * RUN ];
+		colours = new int[ 3 * BLOCK * RUN ];
+		tris = new int[ 3 * BLOCK * RUN ];
+		for( int i = 0; i < tris.length; i++ )
+		{
+			tris[ i ] = i;
+		}
+	}
+
+	/**
+	 * Adds a burst of sparks, drawn with the typical state
+	 *
+	 * @param sparks
+	 *           The number of sparks
+	 * @param width
+	 *           spark width
+	 * @param length
+	 *           spark length
+	 * @param maxLife
+	 *           spark life
+	 * @param colour
+	 *           base colour
+	 * @return The burst, to position and set going. This is only valid
+	 *         until the next call
+	 */
+	public Burst sparks( int sparks, float width, float length, float maxLife, int colour )
+	{
+		return sparks( sparks, width, length, maxLife, colour, null );
+	}
+
+	/**
+	 * Adds a burst of sparks
+	 *
+	 * @param sparks
+	 *           The number of sparks
+	 * @param width
+	 *           spark width
+	 * @param length
+	 *           spark length
+	 * @param maxLife
+	 *           spark life
+	 * @param colour
+	 *           base colour
+	 * @param s
+	 *           The rendering state, or <code>null</code> for the
+	 *           typical state
+	 * @return The burst, to position and set going. This is only valid
+	 *         until the next call
+	 */
+	public Burst sparks( int sparks, float width, float length, float maxLife, int colour,
+			State s )
+	{
+		int si = stateIndex( s );
+
+		int needed = ( sparks + BLOCK - 1 ) / BLOCK;
+		if( burst.blocks.length < needed )
+		{
+			burst.blocks = new int[ needed ];
+		}
+		burst.count = needed;
+
+		for( int i = 0; i < needed; i++ )
+		{
+			int b = allocate();
+			burst.blocks[ i ] = b;
+
+			count[ b ] = Math.min( BLOCK, sparks - i * BLOCK );
+			age[ b ] = 0;
+			life[ b ] = maxLife;
+			drag[ b ] = 0;
+			halfWidth[ b ] = width / 2;
+			this.length[ b ] = length;
+			seek[ b ] = 0;
+			target[ b ] = null;
+			this.colour[ b ] = colour;
+			state[ b ] = si;
+
+			for( int p = b * BLOCK; p < b * BLOCK + count[ b ]; p++ )
+			{
+				x[ p ] = 0;
+				y[ p ] = 0;
+				vx[ p ] = 0;
+				vy[ p ] = 0;
+			}
+		}
+
+		live += sparks;
+
+		return burst;
+	}
+
+	/**
+	 * @return The number of live sparks
+	 */
+	public int live()
+	{
+		return live;
+	}
+
+	/**
+	 * @return The number of sparks that can be live before the pool
+	 *         has to grow
+	 */
+	public int capacity()
+	{
+		return blocks * BLOCK;
+	}
+
+	/**
+	 * Kills all sparks
+	 */
+	public void clear()
+	{
+		for( int b = 0; b < high; b++ )
+		{
+			count[ b ] = 0;
+			target[ b ] = null;
+		}
+		high = 0;
+		freeCount = 0;
+		live = 0;
+	}
+
+	@Override
+	public boolean advance( float delta )
+	{
+		for( int b = 0; b < high; b++ )
+		{
+			int n = count[ b ];
+			if( n == 0 )
+			{
+				continue;
+			}
+
+			int start = b * BLOCK;
+			int end = start + n;
+
+			// accelerate towards target
+			if( seek[ b ] != 0 )
+			{
+				float tx = target[ b ].x;
+				float ty = target[ b ].y;
+				float acc = seek[ b ];
+
+				for( int i = start; i < end; i++ )
+				{
+					float dx = tx - x[ i ];
+					float dy = ty - y[ i ];
+
+					if( dx != 0 || dy != 0 )
+					{
+						float s = acc / ( float ) Math.sqrt( dx * dx + dy * dy );
+						vx[ i ] += dx * s;
+						vy[ i ] += dy * s;
+					}
+				}
+			}
+
+			float d = 1 - delta * drag[ b ];
+			for( int i = start; i < end; i++ )
+			{
+				x[ i ] += vx[ i ] * delta;
+				y[ i ] += vy[ i ] * delta;
+
+				vx[ i ] *= d;
+				vy[ i ] *= d;
+			}
+
+			age[ b ] += delta;
+
+			if( age[ b ] >= life[ b ] )
+			{
+				count[ b ] = 0;
+				target[ b ] = null;
+				free[ freeCount++ ] = b;
+				live -= n;
+			}
+		}
+
+		if( live == 0 )
+		{ // start filling from the bottom again
+			high = 0;
+			freeCount = 0;
+		}
+
+		return false;
+	}
+
+	@Override
+	public void draw( StackedRenderer r )
+	{
+		for( int s = 0; s < stateCount && live > 0; s++ )
+		{
+			int vi = 0, ci = 0, run = 0;
+
+			for( int b = 0; b < high; b++ )
+			{
+				if( count[ b ] == 0 || state[ b ] != s )
+				{
+					continue;
+				}
+
+				if( run == RUN )
+				{
+					r.addTriangles( verts, null, colours, ci, tris, ci, states[ s ] );
+					vi = 0;
+					ci = 0;
+					run = 0;
+				}
+				run++;
+
+				int start = b * BLOCK;
+				int end = start + count[ b ];
+				float hw = halfWidth[ b ];
+				float len = length[ b ];
+				int c =
+						Colour.withAlphai( colour[ b ],
+								( int ) ( 255 * ( 1.0f - age[ b ] / life[ b ] ) ) );
+
+				for( int i = start; i < end; i++ )
+				{
+					float px = x[ i ];
+					float py = y[ i ];
+
+					// direction of travel
+					float nx = 0, ny = 0;
+					float speed = ( float ) Math.sqrt( vx[ i ] * vx[ i ] + vy[ i ] * vy[ i ] );
+					if( speed != 0 )
+					{
+						float l = 1 / speed;
+						nx = vx[ i ] * l;
+						ny = vy[ i ] * l;
+					}
+
+					// across the direction of travel
+					float hx = -ny * hw;
+					float hy = nx * hw;
+
+					verts[ vi++ ] = px - hx;
+					verts[ vi++ ] = py - hy;
+					verts[ vi++ ] = 0;
+
+					verts[ vi++ ] = px + hx;
+					verts[ vi++ ] = py + hy;
+					verts[ vi++ ] = 0;
+
+					verts[ vi++ ] = px - nx * len;
+					verts[ vi++ ] = py - ny * len;
+					verts[ vi++ ] = 0;
+
+					colours[ ci++ ] = c;
+					colours[ ci++ ] = c;
+					colours[ ci++ ] = c;
+				}
+			}
+
+			if( ci > 0 )
+			{
+				r.addTriangles( verts, null, colours, ci, tris, ci, states[ s ] );
+			}
+		}
+	}
+
+	private int allocate()
+	{
+		if( freeCount > 0 )
+		{
+			return free[ --freeCount ];
+		}
+
+		if( high == blocks )
+		{
+			grow();
+		}
+
+		return high++;
+	}
+
+	private void grow()
+	{
+		blocks *= 2;
+
+		x = ArrayUtil.grow( x );
+		y = ArrayUtil.grow( y );
+		vx = ArrayUtil.grow( vx );
+		vy = ArrayUtil.grow( vy );
+
+		free = ArrayUtil.grow( free );
+		count = ArrayUtil.grow( count );
+		age = ArrayUtil.grow( age );
+		life = ArrayUtil.grow( life );
+		drag = ArrayUtil.grow( drag );
+		halfWidth = ArrayUtil.grow( halfWidth );
+		length = ArrayUtil.grow( length );
+		seek = ArrayUtil.grow( seek );
+		colour = ArrayUtil.grow( colour );
+		state = ArrayUtil.grow( state );
+
+		Vector2f[] nt = new Vector2f[ blocks ];
+		System.arraycopy( target, 0, nt, 0, target.length );
+		target = nt;
+	}
+
+	private int stateIndex( State s )
+	{
+		for( int i = 0; i < stateCount; i++ )
+		{
+			if( states[ i ] == s )
+			{
+				return i;
+			}
+		}
+
+		if( stateCount == states.length )
+		{
+			State[] ns = new State[ states.length * 2 ];
+			System.arraycopy( states, 0, ns, 0, stateCount );
+			states = ns;
+		}
+
+		states[ stateCount ] = s;
+		return stateCount++;
+	}
+
+	/**
+	 * The sparks of the latest burst
+	 *
+	 * @author ryanm
+	 */
+	public class Burst
+	{
+		private int[] blocks = new int[ 2 ];
+
+		private int count = 0;
+
+		private Burst()
+		{
+		}
+
+		/**
+		 * @param px
+		 *           x center of deployment
+		 * @param py
+		 *           y center of deployment
+		 * @param radius
+		 *           radius of deployment
+		 * @return this
+		 */
+		public Burst position( float px, float py, float radius )
+		{
+			for( int i = 0; i < count; i++ )
+			{
+				int b = blocks[ i ];
+				for( int p = b * BLOCK; p < b * BLOCK + Particles.this.count[ b ]; p++ )
+				{
+					float a = rng.nextFloat() * 2 * Trig.PI;
+					float r = radius * rng.nextFloat();
+
+					x[ p ] = px + r * Trig.cos( a );
+					y[ p ] = py + r * Trig.sin( a );
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * @param bx
+		 *           x velocity of burst
+		 * @param by
+		 *           y velocity of burst
+		 * @param burstSpeed
+		 *           burst speed
+		 * @param d
+		 *           drag factor
+		 * @return this
+		 */
+		public Burst velocity( float bx, float by, float burstSpeed, float d )
+		{
+			for( int i = 0; i < count; i++ )
+			{
+				int b = blocks[ i ];
+				drag[ b ] = d;
+				for( int p = b * BLOCK; p < b * BLOCK + Particles.this.count[ b ]; p++ )
+				{
+					float a = rng.nextFloat() * 2 * Trig.PI;
+					float r = burstSpeed * rng.nextFloat();
+
+					vx[ p ] = bx + r * Trig.cos( a );
+					vy[ p ] = by + r * Trig.sin( a );
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Makes the sparks accelerate towards a point, such as a trace
+		 * head
+		 *
+		 * @param t
+		 *           target point, which can move
+		 * @param acc
+		 *           acceleration
+		 * @return this
+		 */
+		public Burst target( Vector2f t, float acc )
+		{
+			for( int i = 0; i < count; i++ )
+			{
+				target[ blocks[ i ] ] = t;
+				seek[ blocks[ i ] ] = acc;
+			}
+			return this;
+		}
+	}
+}
@@ -0,0 +1,450 @@
+
+package com.ryanm.trace.game.entities;
+
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.lwjgl.util.vector.Vector2f;
+
+import com.rugl.geom.ColouredShape;
+import com.rugl.geom.Shape;
+import com.rugl.renderer.RecordingBackend;
+import com.rugl.renderer.Renderer;
+import com.rugl.renderer.StackedRenderer;
+import com.rugl.util.Colour;
+import com.ryanm.trace.game.Entity;
+import com.ryanm.util.ArrayUtil;
+import com.ryanm.util.Bag;
+import com.ryanm.util.geom.VectorUtils;
+import com.ryanm.util.math.Trig;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures advancing, drawing and rendering 100k live sparks as
+ * {@link Particles} against the same sparks as separate burst
+ * entities in a {@link Bag}, each with its own arrays and shape, as
+ * Sparks and SeekSparks used to be. Half the bursts seek a moving
+ * target. Rendering is through a {@link RecordingBackend}, so no
+ * display is needed. Also checks that both produce the same geometry
+ *
+ * @author ryanm
+ */
+public class ParticlesBenchmark
+{
+	private static final int BURST = 30;
+
+	/**
+	 * @param args
+	 *           The number of sparks, and the number of timed frames
+	 */
+	public static void main( String[] args )
+	{
+		int sparks = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 100000;
+		int frames = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 50;
+		float delta = 1 / 60f;
+
+		Vector2f target = new Vector2f( 400, 300 );
+
+		// the same bursts for both
+		Bag<Entity> legacy = new Bag<Entity>();
+		Random rng = new Random( 1 );
+		for( int i = 0; i < sparks / BURST; i++ )
+		{
+			LegacySparks s =
+					i % 2 == 0 ? new LegacySparks( rng, BURST, 2, 5, 1000, Colour.white )
+							: new LegacySeekSparks( rng, BURST, 2, 5, 1000, Colour.white ).target(
+									target, 5 );
+			s.position( 400, 300, 100 ).velocity( 0, 0, 200, 1 );
+			legacy.put( s );
+		}
+
+		Particles pooled = new Particles( new Random( 1 ), 1 );
+		for( int i = 0; i < sparks / BURST; i++ )
+		{
+			Particles.Burst b = pooled.sparks( BURST, 2, 5, 1000, Colour.white );
+			b.position( 400, 300, 100 ).velocity( 0, 0, 200, 1 );
+			if( i % 2 != 0 )
+			{
+				b.target( target, 5 );
+			}
+		}
+
+		System.out.println( pooled.live() + " live sparks in " + legacy.size()
+				+ " bursts, ms per frame, best of " + frames );
+
+		StackedRenderer lr = renderer(), pr = renderer();
+
+		check( legacy, pooled, lr, pr, target );
+
+		long[] lt = new long[ 3 ], pt = new long[ 3 ];
+		Arrays.fill( lt, Long.MAX_VALUE );
+		Arrays.fill( pt, Long.MAX_VALUE );
+
+		for( int f = 0; f < 50 + frames; f++ )
+		{
+			// the target moves about, as a trace head does
+			target.set( 400 + 100 * Trig.cos( f * 0.1f ), 300 + 100 * Trig.sin( f * 0.1f ) );
+
+			frame( legacy, null, lr, delta, f < 50 ? null : lt );
+			frame( null, pooled, pr, delta, f < 50 ? null : pt );
+		}
+
+		System.out.println( "\t\tadvance\tdraw\trender" );
+		System.out.println( "\tentities\t" + ms( lt[ 0 ] ) + "\t" + ms( lt[ 1 ] ) + "\t"
+				+ ms( lt[ 2 ] ) );
+		System.out.println( "\tparticles\t" + ms( pt[ 0 ] ) + "\t" + ms( pt[ 1 ] ) + "\t"
+				+ ms( pt[ 2 ] ) );
+
+		spawn( target );
+	}
+
+	/**
+	 * Times adding 100 bursts, as a round of pickups and deaths might,
+	 * and the memory that allocates
+	 */
+	private static void spawn( Vector2f target )
+	{
+		ThreadMXBean threads = ( ThreadMXBean ) ManagementFactory.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+
+		Random rng = new Random( 2 );
+		Particles pooled = new Particles( rng, 100 * BURST );
+		Bag<Entity> legacy = new Bag<Entity>();
+
+		long lt = Long.MAX_VALUE, pt = Long.MAX_VALUE, lb = 0, pb = 0;
+		for( int r = 0; r < 200; r++ )
+		{
+			legacy.clear();
+			long bytes = threads.getThreadAllocatedBytes( id );
+			long start = System.nanoTime();
+			for( int i = 0; i < 100; i++ )
+			{
+				legacy.put( new LegacySeekSparks( rng, BURST, 2, 5, 1, Colour.white ).target(
+						target, 5 ).position( 400, 300, 0 ).velocity( 0, 0, 200, 2 ) );
+			}
+			lt = Math.min( lt, System.nanoTime() - start );
+			lb = threads.getThreadAllocatedBytes( id ) - bytes;
+
+			pooled.clear();
+			bytes = threads.getThreadAllocatedBytes( id );
+			start = System.nanoTime();
+			for( int i = 0; i < 100; i++ )
+			{
+				pooled.sparks( BURST, 2, 5, 1, Colour.white ).position( 400, 300, 0 ).velocity(
+						0, 0, 200, 2 ).target( target, 5 );
+			}
+			pt = Math.min( pt, System.nanoTime() - start );
+			pb = threads.getThreadAllocatedBytes( id ) - bytes;
+		}
+
+		System.out.println( "Spawning 100 bursts" );
+		System.out.println( "\tentities\t" + ms( lt ) + "ms\t" + lb / 1024 + "KB allocated" );
+		System.out.println( "\tparticles\t" + ms( pt ) + "ms\t" + pb / 1024 + "KB allocated" );
+	}
+
+	private static void frame( Bag<Entity> legacy, Particles pooled, Renderer r,
+			float delta, long[] best )
+	{
+		long start = System.nanoTime();
+		if( legacy != null )
+		{
+			for( int i = 0; i < legacy.size(); i++ )
+			{
+				legacy.get( i ).advance( delta );
+			}
+		}
+		else
+		{
+			pooled.advance( delta );
+		}
+		long advanced = System.nanoTime();
+
+		if( legacy != null )
+		{
+			for( int i = 0; i < legacy.size(); i++ )
+			{
+				legacy.get( i ).draw( ( StackedRenderer ) r );
+			}
+		}
+		else
+		{
+			pooled.draw( ( StackedRenderer ) r );
+		}
+		long drawn = System.nanoTime();
+
+		r.render();
+		( ( RecordingBackend ) r.getBackend() ).calls.clear();
+		long rendered = System.nanoTime();
+
+		if( best != null )
+		{
+			best[ 0 ] = Math.min( best[ 0 ], advanced - start );
+			best[ 1 ] = Math.min( best[ 1 ], drawn - advanced );
+			best[ 2 ] = Math.min( best[ 2 ], rendered - drawn );
+		}
+	}
+
+	/**
+	 * Advances both a few frames and compares the vertices and colours
+	 * they submit
+	 */
+	private static void check( Bag<Entity> legacy, Particles pooled, StackedRenderer lr,
+			StackedRenderer pr, Vector2f target )
+	{
+		float worst = 0;
+		boolean coloursMatch = true;
+
+		for( int f = 0; f < 10; f++ )
+		{
+			target.set( 400 + 10 * f, 300 );
+
+			Capture lc = new Capture(), pc = new Capture();
+			lr.push( lc );
+			pr.push( pc );
+			frame( legacy, null, lr, 1 / 60f, null );
+			frame( null, pooled, pr, 1 / 60f, null );
+			lr.popProcessor();
+			pr.popProcessor();
+
+			if( lc.vc != pc.vc || lc.cc != pc.cc )
+			{
+				System.out.println( "Geometry check FAILED, " + lc.vc / 3 + " vertices against "
+						+ pc.vc / 3 );
+				return;
+			}
+
+			for( int i = 0; i < lc.vc; i++ )
+			{
+				worst = Math.max( worst, Math.abs( lc.verts[ i ] - pc.verts[ i ] ) );
+			}
+			for( int i = 0; i < lc.cc; i++ )
+			{
+				coloursMatch &= lc.colours[ i ] == pc.colours[ i ];
+			}
+		}
+
+		System.out.println( "Geometry matches to within " + worst
+				+ ( worst < 1e-2f && coloursMatch ? "" : " FAILED" ) );
+	}
+
+	private static StackedRenderer renderer()
+	{
+		StackedRenderer r = new StackedRenderer();
+		r.setBackend( new RecordingBackend() );
+		return r;
+	}
+
+	private static float ms( long ns )
+	{
+		return ns / 1000 / 1000f;
+	}
+
+	/**
+	 * Collects the submitted vertices and colours
+	 */
+	private static class Capture implements Renderer.Processor
+	{
+		private float[] verts = new float[ 1024 ];
+
+		private int[] colours = new int[ 1024 ];
+
+		private int vc = 0, cc = 0;
+
+		@Override
+		public void process( FloatBuffer v, FloatBuffer texCoords, IntBuffer c )
+		{
+			while( vc + v.remaining() > verts.length )
+			{
+				verts = ArrayUtil.grow( verts );
+			}
+			while( cc + c.remaining() > colours.length )
+			{
+				colours = ArrayUtil.grow( colours );
+			}
+
+			int n = v.remaining();
+			v.get( verts, vc, n );
+			vc += n;
+
+			n = c.remaining();
+			c.get( colours, cc, n );
+			cc += n;
+		}
+	}
+
+	/**
+	 * What Sparks used to be
+	 */
+	private static class LegacySparks implements Entity
+	{
+		private final Random rng;
+
+		protected final float[] positions;
+
+		protected final float[] velocities;
+
+		private final float maxLife;
+
+		private float time = 0;
+
+		private final float width;
+
+		private final float length;
+
+		private float drag = 0;
+
+		private final ColouredShape shape;
+
+		private LegacySparks( Random rng, int sparks, float width, float length,
+				float maxLife, int colour )
+		{
+			this.rng = rng;
+			positions = new float[ sparks * 2 ];
+			velocities = new float[ sparks * 2 ];
+
+			this.maxLife = maxLife;
+			this.width = width;
+			this.length = length;
+
+			shape =
+					new ColouredShape( new Shape( new float[ 3 * 3 * sparks ],
+							new int[ 3 * sparks ] ), colour, null );
+			int ti = 0;
+			for( int i = 0; i < sparks; i++ )
+			{
+				shape.triangles[ ti++ ] = 3 * i;
+				shape.triangles[ ti++ ] = 3 * i + 1;
+				shape.triangles[ ti++ ] = 3 * i + 2;
+			}
+		}
+
+		LegacySparks position( float x, float y, float radius )
+		{
+			for( int i = 0; i < positions.length; i += 2 )
+			{
+				float a = rng.nextFloat() * 2 * Trig.PI;
+				float r = radius * rng.nextFloat();
+
+				positions[ i ] = x + r * Trig.cos( a );
+				positions[ i + 1 ] = y + r * Trig.sin( a );
+			}
+			return this;
+		}
+
+		LegacySparks velocity( float x, float y, float burstSpeed, float d )
+		{
+			drag = d;
+			for( int i = 0; i < positions.length; i += 2 )
+			{
+				float a = rng.nextFloat() * 2 * Trig.PI;
+				float r = burstSpeed * rng.nextFloat();
+				velocities[ i ] = x + r * Trig.cos( a );
+				velocities[ i + 1 ] = y + r * Trig.sin( a );
+			}
+			return this;
+		}
+
+		@Override
+		public boolean advance( float delta )
+		{
+			time += delta;
+
+			for( int i = 0; i < positions.length; i += 2 )
+			{
+				positions[ i ] += velocities[ i ] * delta;
+				positions[ i + 1 ] += velocities[ i + 1 ] * delta;
+
+				velocities[ i ] *= 1 - delta * drag;
+				velocities[ i + 1 ] *= 1 - delta * drag;
+			}
+
+			return time >= maxLife;
+		}
+
+		@Override
+		public void draw( StackedRenderer r )
+		{
+			int sparks = positions.length / 2;
+
+			Vector2f v = new Vector2f();
+
+			int vi = 0;
+			for( int i = 0; i < sparks; i++ )
+			{
+				final float x = positions[ 2 * i ];
+				final float y = positions[ 2 * i + 1 ];
+
+				v.set( velocities[ 2 * i ], velocities[ 2 * i + 1 ] );
+				v.normalise();
+
+				final float tx = x - v.x * length;
+				final float ty = y - v.y * length;
+
+				v.scale( width / 2 );
+				VectorUtils.rotate90( v );
+				shape.vertices[ vi++ ] = x - v.x;
+				shape.vertices[ vi++ ] = y - v.y;
+				shape.vertices[ vi++ ] = 0;
+
+				shape.vertices[ vi++ ] = x + v.x;
+				shape.vertices[ vi++ ] = y + v.y;
+				shape.vertices[ vi++ ] = 0;
+
+				shape.vertices[ vi++ ] = tx;
+				shape.vertices[ vi++ ] = ty;
+				shape.vertices[ vi++ ] = 0;
+			}
+
+			Colour.withAlphai( shape.colours, ( int ) ( 255 * ( 1.0f - time / maxLife ) ) );
+
+			shape.render( r );
+		}
+	}
+
+	/**
+	 * What SeekSparks used to be
+	 */
+	private static class LegacySeekSparks extends LegacySparks
+	{
+		private Vector2f target;
+
+		private float acceleration;
+
+		private LegacySeekSparks( Random rng, int sparks, float width, float length,
+				float maxLife, int colour )
+		{
+			super( rng, sparks, width, length, maxLife, colour );
+		}
+
+		LegacySeekSparks target( Vector2f t, float acc )
+		{
+			target = t;
+			acceleration = acc;
+			return this;
+		}
+
+		@Override
+		public boolean advance( float delta )
+		{
+			Vector2f v = new Vector2f();
+			for( int i = 0; i < velocities.length; i += 2 )
+			{
+				v.set( target.x - positions[ i ], target.y - positions[ i + 1 ] );
+
+				if( v.x != 0 || v.y != 0 )
+				{
+					v.normalise();
+					v.scale( acceleration );
+
+					velocities[ i ] += v.x;
+					velocities[ i + 1 ] += v.y;
+				}
+			}
+
+			return super.advance( delta );
+		}
+	}
+}
@@ -70,12 +70,12 @@ public abstract class Powerup implements Entity
 		radius = 0;
 
 		position =
-				new Vector2f( radius + TraceGame.rng.nextFloat() * ( 800 - 2 * radius ),
-						radius + TraceGame.rng.nextFloat() * ( 600 - 2 * radius ) );
-		float a = 2 * Trig.PI * TraceGame.rng.nextFloat();
+				new Vector2f( radius + arena.rng.nextFloat() * ( 800 - 2 * radius ),
+						radius + arena.rng.nextFloat() * ( 600 - 2 * radius ) );
+		float a = 2 * Trig.PI * arena.rng.nextFloat();
 		motion = new Vector2f( Trig.cos( a ), Trig.sin( a ) );
 		motion.scale( TraceGame.game.powerups.speed );
-		rotation = ( 2 * TraceGame.rng.nextFloat() - 1 ) * Trig.toRadians( 40 );
+		rotation = ( 2 * arena.rng.nextFloat() - 1 ) * Trig.toRadians( 40 );
 	}
 
 	/**
@@ -122,15 +122,12 @@ public abstract class Powerup implements Entity
 			done = true;
 			hit( c );
 
-			if( done )
+			if( done && !arena.headless )
 			{
 				Sounds.powerup();
-				SeekSparks ss = new SeekSparks( 40, 3, 5, 2, shape.colours[ 0 ] );
-				ss.position( c.position.x, c.position.y, radius );
-				ss.velocity( motion.x, motion.y, 200, 1 );
-				ss.target( c.position, 5 );
-
-				arena.addEntity( ss );
+				arena.particles.sparks( 40, 3, 5, 2, shape.colours[ 0 ] ).position(
+						c.position.x, c.position.y, radius ).velocity( motion.x, motion.y,
+						200, 1 ).target( c.position, 5 );
 			}
 		}
 	}
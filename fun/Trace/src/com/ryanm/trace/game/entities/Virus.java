@@ -71,9 +71,12 @@ public class Virus extends Powerup
 		if( c != null )
 		{
 			done = true;
-			c.cloakTime +=
-					TraceGame.game.powerups.virusCloak.toValue( TraceGame.rng.nextFloat() );
-			Sounds.cloak();
+			c.cloakTime += TraceGame.game.powerups.virusCloak.toValue( arena.rng.nextFloat() );
+
+			if( !arena.headless )
+			{
+				Sounds.cloak();
+			}
 
 			// unleash
 			arena.addEntity( new ActiveVirus( arena, this ) );
@@ -0,0 +1,80 @@
+package com.ryanm.trace.sim;
+
+/**
+ * Aggregate results for one kind of bot over many matches
+ * 
+ * @author ryanm
+ */
+public class BotStats
+{
+	/***/
+	public final String name;
+
+	/**
+	 * Number of matches played
+	 */
+	public int matches = 0;
+
+	/**
+	 * Number of matches in which this bot had the highest score,
+	 * outright
+	 */
+	public int wins = 0;
+
+	/**
+	 * Number of matches in which this bot was the last one alive
+	 */
+	public int survivals = 0;
+
+	/**
+	 * Sum of scores
+	 */
+	public long totalScore = 0;
+
+	/**
+	 * @param name
+	 *           The bot name
+	 */
+	public BotStats( String name )
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Adds another set of results to this one
+	 * 
+	 * @param s
+	 */
+	public void add( BotStats s )
+	{
+		assert name.equals( s.name );
+
+		matches += s.matches;
+		wins += s.wins;
+		survivals += s.survivals;
+		totalScore += s.totalScore;
+	}
+
+	/**
+	 * @return The fraction of matches won
+	 */
+	public float winRate()
+	{
+		return matches == 0 ? 0 : ( float ) wins / matches;
+	}
+
+	/**
+	 * @return The mean score per match
+	 */
+	public float meanScore()
+	{
+		return matches == 0 ? 0 : ( float ) totalScore / matches;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name + "\t" + matches + "\t" + wins + "\t" + winRate() + "\t" + survivals
+				+ "\t" + meanScore();
+	}
+}
@@ -0,0 +1,561 @@
+package com.ryanm.trace.sim;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.Random;
+
+import com.ryanm.trace.game.ai.Bot;
+import com.ryanm.trace.game.ai.BotManager;
+import com.ryanm.trace.game.ai.EvolvedBot;
+import com.ryanm.trace.game.ai.GeneBot;
+import com.ryanm.trace.sim.MatchSimulator.Lineup;
+import com.ryanm.trace.sim.MatchSimulator.Summary;
+
+/**
+ * Evolves the genome of a {@link GeneBot} with a simple genetic
+ * algorithm: tournament selection, uniform crossover and gaussian
+ * mutation. Fitness is the mean score over a number of headless
+ * matches against a fixed set of opponents. Every match of a
+ * generation is handed to the {@link MatchSimulator} in one go, so
+ * evaluation keeps all cores busy until the generation is done
+ *
+ * @author ryanm
+ */
+public class GeneticTrainer
+{
+	/**
+	 * The name of the {@link GeneBot} whose genome is being evolved
+	 */
+	public final String base;
+
+	/**
+	 * The names of the bots that each candidate plays against
+	 */
+	public String[] opponents = new String[] { "gaphound", "glutton", "hunter", "itinerant" };
+
+	/**
+	 * The number of matches played by each candidate per generation
+	 */
+	public int matchesPerGenome = 16;
+
+	/**
+	 * The number of candidates in each tournament
+	 */
+	public int tournamentSize = 3;
+
+	/**
+	 * The number of best candidates that pass unchanged into the next
+	 * generation
+	 */
+	public int elites = 2;
+
+	/**
+	 * The probability that a child is bred from two parents rather
+	 * than copied from one
+	 */
+	public float crossoverRate = 0.7f;
+
+	/**
+	 * The probability that each gene is mutated
+	 */
+	public float mutationRate = 0.2f;
+
+	/**
+	 * The standard deviation of mutations, relative to the gene value
+	 */
+	public float mutationScale = 0.25f;
+
+	private final MatchSimulator sim;
+
+	private final long seed;
+
+	private float[][] population;
+
+	private float[] fitness;
+
+	private int generation = 0;
+
+	private float[] lastBest;
+
+	private float[] lastFitness;
+
+	/**
+	 * @param sim
+	 *           The simulator that plays the matches
+	 * @param base
+	 *           The name of the {@link GeneBot} to evolve
+	 * @param populationSize
+	 * @param seed
+	 *           Seeds breeding and matches
+	 */
+	public GeneticTrainer( MatchSimulator sim, String base, int populationSize, long seed )
+	{
+		this.sim = sim;
+		this.base = base;
+		this.seed = seed;
+
+		Bot b = BotManager.forName( base );
+		if( !( b instanceof GeneBot ) )
+		{
+			throw new IllegalArgumentException( "\"" + base + "\" is not a gene bot" );
+		}
+
+		float[] genome = ( ( GeneBot ) b ).getGenome();
+		Random rng = new Random( seed );
+
+		// the hand-tuned genome and mutations of it
+		population = new float[ populationSize ][];
+		population[ 0 ] = genome;
+		for( int i = 1; i < populationSize; i++ )
+		{
+			population[ i ] = genome.clone();
+			mutate( population[ i ], 1, rng );
+		}
+	}
+
+	/**
+	 * @return The number of generations that have been evaluated
+	 */
+	public int getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Evaluates the current population and breeds the next
+	 *
+	 * @return The match results of the evaluation
+	 */
+	public Summary step()
+	{
+		Summary s = evaluate();
+
+		Random rng = new Random( seed * 31 + generation );
+
+		Integer[] order = rank();
+		float[][] next = new float[ population.length ][];
+
+		for( int i = 0; i < elites && i < next.length; i++ )
+		{
+			next[ i ] = population[ order[ i ] ].clone();
+		}
+
+		for( int i = Math.min( elites, next.length ); i < next.length; i++ )
+		{
+			float[] a = population[ select( rng ) ];
+
+			if( rng.nextFloat() < crossoverRate )
+			{
+				next[ i ] = crossover( a, population[ select( rng ) ], rng );
+			}
+			else
+			{
+				next[ i ] = a.clone();
+			}
+
+			mutate( next[ i ], mutationRate, rng );
+		}
+
+		lastBest = population[ order[ 0 ] ];
+		lastFitness = fitness.clone();
+
+		population = next;
+		generation++;
+
+		return s;
+	}
+
+	/**
+	 * @return The fittest genome of the last evaluated generation, or
+	 *         <code>null</code> if no generation has been evaluated
+	 */
+	public float[] getBest()
+	{
+		return lastBest == null ? null : lastBest.clone();
+	}
+
+	/**
+	 * @return The fitnesses of the last evaluated generation, or
+	 *         <code>null</code> if no generation has been evaluated
+	 */
+	public float[] getFitness()
+	{
+		return lastFitness == null ? null : lastFitness.clone();
+	}
+
+	/**
+	 * Plays every candidate's matches and sets their fitness
+	 */
+	private Summary evaluate()
+	{
+		final float[][] pop = population;
+
+		Lineup lineup = new Lineup() {
+			@Override
+			public Bot[] bots( int match )
+			{
+				int g = match / matchesPerGenome;
+
+				Bot[] bots = new Bot[ opponents.length + 1 ];
+				bots[ 0 ] = new EvolvedBot( candidateName( g ), "", base, pop[ g ] );
+				for( int i = 0; i < opponents.length; i++ )
+				{
+					bots[ i + 1 ] = BotManager.forName( opponents[ i ] );
+				}
+				return bots;
+			}
+		};
+
+		Summary s =
+				sim.run( lineup, pop.length * matchesPerGenome, MatchSimulator.matchSeed( seed,
+						generation ) );
+
+		fitness = new float[ pop.length ];
+		for( int i = 0; i < pop.length; i++ )
+		{
+			fitness[ i ] = s.stats.get( candidateName( i ) ).meanScore();
+		}
+
+		return s;
+	}
+
+	private static String candidateName( int index )
+	{
+		return "#" + index;
+	}
+
+	/**
+	 * @return population indices, fittest first
+	 */
+	private Integer[] rank()
+	{
+		Integer[] order = new Integer[ population.length ];
+		for( int i = 0; i < order.length; i++ )
+		{
+			order[ i ] = Integer.valueOf( i );
+		}
+
+		Arrays.sort( order, new Comparator<Integer>() {
+			@Override
+			public int compare( Integer a, Integer b )
+			{
+				return Float.compare( fitness[ b.intValue() ], fitness[ a.intValue() ] );
+			}
+		} );
+
+		return order;
+	}
+
+	/**
+	 * Tournament selection
+	 *
+	 * @return the index of the fittest of a random sample
+	 */
+	private int select( Random rng )
+	{
+		int best = rng.nextInt( population.length );
+		for( int i = 1; i < tournamentSize; i++ )
+		{
+			int c = rng.nextInt( population.length );
+			if( fitness[ c ] > fitness[ best ] )
+			{
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Uniform crossover
+	 */
+	private static float[] crossover( float[] a, float[] b, Random rng )
+	{
+		float[] child = new float[ a.length ];
+		for( int i = 0; i < child.length; i++ )
+		{
+			child[ i ] = rng.nextBoolean() ? a[ i ] : b[ i ];
+		}
+		return child;
+	}
+
+	/**
+	 * Gaussian mutation, scaled to the gene. All the current behaviour
+	 * genes are non-negative, so we keep them that way
+	 */
+	private void mutate( float[] genome, float rate, Random rng )
+	{
+		for( int i = 0; i < genome.length; i++ )
+		{
+			if( rng.nextFloat() < rate )
+			{
+				float sd = mutationScale * ( Math.abs( genome[ i ] ) + 0.05f );
+				genome[ i ] = Math.max( 0, genome[ i ] + sd * ( float ) rng.nextGaussian() );
+			}
+		}
+	}
+
+	/**
+	 * Writes the population to a file, from which training can be
+	 * resumed with {@link #restore(File)}
+	 *
+	 * @param f
+	 * @throws IOException
+	 */
+	public void checkpoint( File f ) throws IOException
+	{
+		Properties p = new Properties();
+		p.setProperty( "base", base );
+		p.setProperty( "generation", String.valueOf( generation ) );
+		p.setProperty( "size", String.valueOf( population.length ) );
+		for( int i = 0; i < population.length; i++ )
+		{
+			p.setProperty( "genome." + i, EvolvedBot.format( population[ i ] ) );
+		}
+		if( lastBest != null )
+		{
+			p.setProperty( "best", EvolvedBot.format( lastBest ) );
+		}
+
+		// write then rename, so a crash doesn't leave a broken checkpoint
+		File tmp = new File( f.getPath() + ".tmp" );
+		OutputStream os = new FileOutputStream( tmp );
+		try
+		{
+			p.store( os, "trace genetic trainer checkpoint" );
+		}
+		finally
+		{
+			os.close();
+		}
+
+		f.delete();
+		if( !tmp.renameTo( f ) )
+		{
+			throw new IOException( "Could not rename " + tmp + " to " + f );
+		}
+	}
+
+	/**
+	 * Restores the population from a checkpoint
+	 *
+	 * @param f
+	 * @throws IOException
+	 */
+	public void restore( File f ) throws IOException
+	{
+		Properties p = new Properties();
+		InputStream is = new FileInputStream( f );
+		try
+		{
+			p.load( is );
+		}
+		finally
+		{
+			is.close();
+		}
+
+		if( !base.equals( p.getProperty( "base" ) ) )
+		{
+			throw new IOException( f + " is for \"" + p.getProperty( "base" )
+					+ "\", not \"" + base + "\"" );
+		}
+
+		try
+		{
+			int size = Integer.parseInt( require( p, "size", f ) );
+			float[][] pop = new float[ size ][];
+			for( int i = 0; i < size; i++ )
+			{
+				pop[ i ] = EvolvedBot.parse( require( p, "genome." + i, f ) );
+
+				if( pop[ i ].length != population[ 0 ].length )
+				{
+					throw new IOException( "Genome " + i + " in " + f + " has " + pop[ i ].length
+							+ " genes, expected " + population[ 0 ].length );
+				}
+			}
+
+			int gen = Integer.parseInt( require( p, "generation", f ) );
+			String best = p.getProperty( "best" );
+			float[] bestGenome = best == null ? null : EvolvedBot.parse( best );
+
+			// nothing changes unless the whole checkpoint is good
+			population = pop;
+			generation = gen;
+			lastBest = bestGenome;
+			lastFitness = null;
+		}
+		catch( NumberFormatException e )
+		{
+			throw new IOException( "Malformed checkpoint " + f + " : " + e.getMessage() );
+		}
+	}
+
+	/**
+	 * @param p
+	 * @param key
+	 * @param f
+	 *           The checkpoint file, for the error message
+	 * @return The property value
+	 * @throws IOException
+	 *            If the property is missing
+	 */
+	private static String require( Properties p, String key, File f ) throws IOException
+	{
+		String value = p.getProperty( key );
+		if( value == null )
+		{
+			throw new IOException( "Incomplete checkpoint " + f + " : no " + key );
+		}
+		return value;
+	}
+
+	/**
+	 * Trains a bot. Arguments are flag/value pairs:
+	 * <dl>
+	 * <dt>-base</dt>
+	 * <dd>The gene bot to evolve, "gaphound" by default</dd>
+	 * <dt>-name</dt>
+	 * <dd>The name of the exported bot, "evolved" by default</dd>
+	 * <dt>-generations</dt>
+	 * <dd>The number of generations to run, 20 by default</dd>
+	 * <dt>-population</dt>
+	 * <dd>The population size, 32 by default</dd>
+	 * <dt>-matches</dt>
+	 * <dd>The matches per candidate per generation, 16 by default</dd>
+	 * <dt>-threads</dt>
+	 * <dd>The number of threads, all cores by default</dd>
+	 * <dt>-seed</dt>
+	 * <dd>The random seed</dd>
+	 * <dt>-dir</dt>
+	 * <dd>Where to write checkpoints and the exported bot, "training"
+	 * by default</dd>
+	 * <dt>-resume</dt>
+	 * <dd>A checkpoint file to resume from</dd>
+	 * </dl>
+	 * The exported bot file can be copied into the game's "bots"
+	 * directory
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main( String[] args ) throws IOException
+	{
+		String base = "gaphound";
+		String name = "evolved";
+		int generations = 20;
+		int populationSize = 32;
+		int matches = 16;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = 1234;
+		File dir = new File( "training" );
+		File resume = null;
+
+		for( int i = 0; i + 1 < args.length; i += 2 )
+		{
+			String flag = args[ i ];
+			String value = args[ i + 1 ];
+
+			if( flag.equals( "-base" ) )
+			{
+				base = value;
+			}
+			else if( flag.equals( "-name" ) )
+			{
+				name = value;
+			}
+			else if( flag.equals( "-generations" ) )
+			{
+				generations = Integer.parseInt( value );
+			}
+			else if( flag.equals( "-population" ) )
+			{
+				populationSize = Integer.parseInt( value );
+			}
+			else if( flag.equals( "-matches" ) )
+			{
+				matches = Integer.parseInt( value );
+			}
+			else if( flag.equals( "-threads" ) )
+			{
+				threads = Integer.parseInt( value );
+			}
+			else if( flag.equals( "-seed" ) )
+			{
+				seed = Long.parseLong( value );
+			}
+			else if( flag.equals( "-dir" ) )
+			{
+				dir = new File( value );
+			}
+			else if( flag.equals( "-resume" ) )
+			{
+				resume = new File( value );
+			}
+			else
+			{
+				System.err.println( "Unknown flag " + flag );
+				return;
+			}
+		}
+
+		dir.mkdirs();
+
+		GeneticTrainer trainer =
+				new GeneticTrainer( new MatchSimulator( threads ), base, populationSize, seed );
+		trainer.matchesPerGenome = matches;
+
+		if( resume != null )
+		{
+			trainer.restore( resume );
+			System.out.println( "Resumed at generation " + trainer.getGeneration() );
+		}
+
+		System.out.println( "Evolving " + base + " : population " + populationSize + ", "
+				+ matches + " matches each, against " + Arrays.toString( trainer.opponents )
+				+ " on " + threads + " threads" );
+		System.out.println( "generation\tbest\tmean\tseconds\tmatches/s\tgenerations/hour" );
+
+		long start = System.nanoTime();
+		int startGeneration = trainer.getGeneration();
+
+		while( trainer.getGeneration() < startGeneration + generations )
+		{
+			Summary s = trainer.step();
+
+			float[] fit = trainer.getFitness();
+			float best = 0, mean = 0;
+			for( int i = 0; i < fit.length; i++ )
+			{
+				best = Math.max( best, fit[ i ] );
+				mean += fit[ i ] / fit.length;
+			}
+
+			float hours = ( System.nanoTime() - start ) / 1000000000.0f / 3600;
+			System.out.println( ( trainer.getGeneration() - 1 ) + "\t" + best + "\t" + mean + "\t"
+					+ s.seconds + "\t" + s.matchesPerSecond() + "\t"
+					+ ( trainer.getGeneration() - startGeneration ) / hours );
+
+			trainer.checkpoint( new File( dir, String.format( "generation-%04d.txt",
+					trainer.getGeneration() ) ) );
+		}
+
+		if( trainer.getBest() != null )
+		{
+			EvolvedBot bot =
+					new EvolvedBot( name, "evolved from " + base, base, trainer.getBest() );
+			File f = new File( dir, name + EvolvedBot.EXTENSION );
+			bot.save( f );
+
+			System.out.println( "Best genome " + EvolvedBot.format( trainer.getBest() ) );
+			System.out.println( "Exported to " + f );
+		}
+	}
+}
@@ -0,0 +1,457 @@
+package com.ryanm.trace.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.ryanm.trace.Player;
+import com.ryanm.trace.TraceGame;
+import com.ryanm.trace.game.Arena;
+import com.ryanm.trace.game.ArenaStart;
+import com.ryanm.trace.game.ai.Bot;
+import com.ryanm.trace.game.ai.BotManager;
+import com.ryanm.trace.game.ai.MeatBag;
+
+/**
+ * Plays Trace matches between bots as fast as possible, with no
+ * rendering, sound or input. Independent matches are spread over a
+ * thread pool in batches, and each arena gets its own seeded random number
+ * generator so that runs are repeatable
+ *
+ * @author ryanm
+ */
+public class MatchSimulator
+{
+	/**
+	 * Length of a logic step, in seconds
+	 */
+	public float timestep = 1.0f / TraceGame.client.logicRate;
+
+	/**
+	 * Matches that are still going after this many seconds of game
+	 * time are stopped
+	 */
+	public float timeLimit = 300;
+
+	/**
+	 * The number of matches that a single task will play
+	 */
+	public int batchSize = 4;
+
+	private final ExecutorService pool;
+
+	/**
+	 * Provides the bots for each match
+	 *
+	 * @author ryanm
+	 */
+	public interface Lineup
+	{
+		/**
+		 * Called from worker threads, so don't share {@link Bot}
+		 * instances between matches
+		 *
+		 * @param match
+		 *           The match index
+		 * @return The bots that will play in the match
+		 */
+		public Bot[] bots( int match );
+	}
+
+	/**
+	 * @param threads
+	 *           The number of threads to run matches on
+	 */
+	public MatchSimulator( int threads )
+	{
+		pool = Executors.newFixedThreadPool( threads, new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable r )
+			{
+				Thread t = new Thread( r, "match simulator" );
+				t.setDaemon( true );
+				return t;
+			}
+		} );
+	}
+
+	/**
+	 * Plays a single match on the calling thread
+	 *
+	 * @param bots
+	 *           The bots to play
+	 * @param seed
+	 *           Seeds the arena's random number generator
+	 * @return The result
+	 */
+	public Result play( Bot[] bots, long seed )
+	{
+		Player[] players = new Player[ bots.length ];
+		for( int i = 0; i < players.length; i++ )
+		{
+			players[ i ] = new Player( bots[ i ].getName() );
+			players[ i ].bot = bots[ i ];
+		}
+
+		Random rng = new Random( seed );
+		Arena arena = new Arena( rng, ArenaStart.buildTraces( players, rng ) );
+
+		int survivor = -1;
+
+		while( !arena.isFinished() && arena.time < timeLimit )
+		{
+			arena.advance( timestep );
+
+			int alive = -1;
+			for( int i = 0; i < players.length; i++ )
+			{
+				if( !players[ i ].dead )
+				{
+					alive = alive == -1 ? i : -2;
+				}
+			}
+
+			if( alive >= 0 )
+			{
+				survivor = alive;
+			}
+		}
+
+		Result r = new Result( bots.length );
+		r.time = arena.time;
+		r.timedOut = !arena.isFinished();
+		r.survivor = survivor;
+
+		int best = Integer.MIN_VALUE;
+		for( int i = 0; i < players.length; i++ )
+		{
+			r.bots[ i ] = bots[ i ].getName();
+			r.scores[ i ] = players[ i ].score;
+
+			if( players[ i ].score > best )
+			{
+				best = players[ i ].score;
+				r.winner = i;
+			}
+			else if( players[ i ].score == best )
+			{ // no outright winner, unless someone beats this
+				r.winner = -1;
+			}
+		}
+
+		return r;
+	}
+
+	/**
+	 * Plays lots of matches in parallel
+	 *
+	 * @param lineup
+	 *           Provides the bots for each match
+	 * @param matches
+	 *           The number of matches to play
+	 * @param seed
+	 *           The seed from which each match's seed is derived
+	 * @return The aggregate results
+	 */
+	public Summary run( Lineup lineup, int matches, long seed )
+	{
+		long start = System.nanoTime();
+
+		List<Future<Summary>> batches = new ArrayList<Future<Summary>>();
+		for( int from = 0; from < matches; from += batchSize )
+		{
+			batches.add( pool.submit( new Batch( lineup, seed, from, Math.min( matches, from
+					+ batchSize ) ) ) );
+		}
+
+		// combined in order, so the totals don't depend on scheduling
+		Summary s = new Summary();
+		try
+		{
+			for( Future<Summary> f : batches )
+			{
+				s.add( f.get() );
+			}
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( "Interrupted while playing matches", e );
+		}
+		catch( ExecutionException e )
+		{
+			throw new RuntimeException( "Failed to play match", e.getCause() );
+		}
+		finally
+		{
+			for( Future<Summary> f : batches )
+			{
+				f.cancel( true );
+			}
+		}
+
+		s.seconds = ( System.nanoTime() - start ) / 1000000000.0f;
+
+		return s;
+	}
+
+	/**
+	 * Plays lots of matches in parallel, between bots from the
+	 * {@link BotManager}
+	 *
+	 * @param names
+	 *           The names of the bots to play in each match
+	 * @param matches
+	 *           The number of matches to play
+	 * @param seed
+	 *           The seed from which each match's seed is derived
+	 * @return The aggregate results
+	 */
+	public Summary run( final String[] names, int matches, long seed )
+	{
+		return run( new Lineup() {
+			@Override
+			public Bot[] bots( int match )
+			{
+				Bot[] bots = new Bot[ names.length ];
+				for( int i = 0; i < bots.length; i++ )
+				{
+					bots[ i ] = BotManager.forName( names[ i ] );
+				}
+				return bots;
+			}
+		}, matches, seed );
+	}
+
+	/**
+	 * @param seed
+	 *           The run seed
+	 * @param match
+	 *           The match index
+	 * @return The seed for the indexed match
+	 */
+	public static long matchSeed( long seed, int match )
+	{
+		return seed + match * 0x9E3779B97F4A7C15L;
+	}
+
+	private class Batch implements Callable<Summary>
+	{
+		private final Lineup lineup;
+
+		private final long seed;
+
+		private final int from, to;
+
+		private Batch( Lineup lineup, long seed, int from, int to )
+		{
+			this.lineup = lineup;
+			this.seed = seed;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Summary call()
+		{
+			Summary s = new Summary();
+
+			for( int i = from; i < to; i++ )
+			{
+				s.add( play( lineup.bots( i ), matchSeed( seed, i ) ) );
+			}
+
+			return s;
+		}
+	}
+
+	/**
+	 * The result of a single match
+	 *
+	 * @author ryanm
+	 */
+	public static class Result
+	{
+		/**
+		 * Bot names
+		 */
+		public final String[] bots;
+
+		/**
+		 * Final scores, in the same order as the bot names
+		 */
+		public final int[] scores;
+
+		/**
+		 * Index of the outright highest scorer, or -1 for a tie
+		 */
+		public int winner = -1;
+
+		/**
+		 * Index of the last bot left alive, or -1 if they all died at
+		 * once
+		 */
+		public int survivor = -1;
+
+		/**
+		 * Duration of the match, in seconds of game time
+		 */
+		public float time;
+
+		/**
+		 * <code>true</code> if the match hit the time limit
+		 */
+		public boolean timedOut = false;
+
+		private Result( int count )
+		{
+			bots = new String[ count ];
+			scores = new int[ count ];
+		}
+	}
+
+	/**
+	 * Aggregate results of many matches
+	 *
+	 * @author ryanm
+	 */
+	public static class Summary
+	{
+		/**
+		 * Per-bot statistics, keyed on bot name
+		 */
+		public final Map<String, BotStats> stats = new TreeMap<String, BotStats>();
+
+		/**
+		 * The number of matches played
+		 */
+		public int matches = 0;
+
+		/**
+		 * The number of matches that hit the time limit
+		 */
+		public int timeouts = 0;
+
+		/**
+		 * Total game time simulated, in seconds
+		 */
+		public double gameTime = 0;
+
+		/**
+		 * Wall-clock time taken, in seconds
+		 */
+		public float seconds = 0;
+
+		private void add( Result r )
+		{
+			matches++;
+			timeouts += r.timedOut ? 1 : 0;
+			gameTime += r.time;
+
+			for( int i = 0; i < r.bots.length; i++ )
+			{
+				BotStats s = get( r.bots[ i ] );
+				s.matches++;
+				s.totalScore += r.scores[ i ];
+				s.wins += r.winner == i ? 1 : 0;
+				s.survivals += r.survivor == i ? 1 : 0;
+			}
+		}
+
+		private void add( Summary s )
+		{
+			matches += s.matches;
+			timeouts += s.timeouts;
+			gameTime += s.gameTime;
+
+			for( BotStats bs : s.stats.values() )
+			{
+				get( bs.name ).add( bs );
+			}
+		}
+
+		private BotStats get( String name )
+		{
+			BotStats s = stats.get( name );
+			if( s == null )
+			{
+				s = new BotStats( name );
+				stats.put( name, s );
+			}
+			return s;
+		}
+
+		/**
+		 * @return The number of matches played per wall-clock second
+		 */
+		public float matchesPerSecond()
+		{
+			return matches / seconds;
+		}
+
+		@Override
+		public String toString()
+		{
+			StringBuilder sb = new StringBuilder();
+			sb.append( matches ).append( " matches in " ).append( seconds ).append( "s = " );
+			sb.append( matchesPerSecond() ).append( " matches/s, " );
+			sb.append( ( float ) ( gameTime / seconds ) ).append( " * realtime, " );
+			sb.append( timeouts ).append( " timeouts\n" );
+			sb.append( "bot\tmatches\twins\twin rate\tsurvivals\tmean score" );
+
+			for( BotStats bs : stats.values() )
+			{
+				sb.append( "\n" ).append( bs );
+			}
+
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Runs a batch of bot matches and prints the statistics. Arguments
+	 * are the number of matches, then the names of the bots to play in
+	 * each one. Every bot except the {@link MeatBag} plays if no names
+	 * are given
+	 *
+	 * @param args
+	 */
+	public static void main( String[] args )
+	{
+		int matches = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 1000;
+
+		List<String> names = new ArrayList<String>();
+		for( int i = 1; i < args.length; i++ )
+		{
+			names.add( args[ i ] );
+		}
+
+		if( names.isEmpty() )
+		{
+			for( String n : BotManager.getNames() )
+			{
+				if( !n.equals( MeatBag.NAME ) )
+				{
+					names.add( n );
+				}
+			}
+		}
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		System.out.println( "Playing " + matches + " matches between " + names + " on "
+				+ threads + " threads" );
+
+		MatchSimulator sim = new MatchSimulator( threads );
+		Summary s = sim.run( names.toArray( new String[ names.size() ] ), matches, 1234 );
+
+		System.out.println( s );
+	}
+}
@@ -0,0 +1,541 @@
+/*
+ * ====================================================================
+ * ======== The Apache Software License, Version 1.1
+ * ==================
+ * ==========================================================
+ * Copyright (C) 2002 The Apache Software Foundation. All rights
+ * reserved. Redistribution and use in source and binary forms, with
+ * or without modifica- tion, are permitted provided that the
+ * following conditions are met: 1. Redistributions of source code
+ * must retain the above copyright notice, this list of conditions and
+ * the following disclaimer. 2. Redistributions in binary form must
+ * reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other
+ * materials provided with the distribution. 3. The end-user
+ * documentation included with the redistribution, if any, must
+ * include the following acknowledgment: "This product includes
+ * software developed by SuperBonBon Industries
+ * (http://www.sbbi.net/)." Alternately, this acknowledgment may
+ * appear in the software itself, if and wherever such third-party
+ * acknowledgments normally appear. 4. The names "UPNPLib" and
+ * "SuperBonBon Industries" must not be used to endorse or promote
+ * products derived from this software without prior written
+ * permission. For written permission, please contact info@sbbi.net.
+ * 5. Products derived from this software may not be called
+ * "SuperBonBon Industries", nor may "SBBI" appear in their name,
+ * without prior written permission of SuperBonBon Industries. THIS
+ * SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR ITS
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLU- DING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE. This software consists of voluntary contributions made
+ * by many individuals on behalf of SuperBonBon Industries. For more
+ * information on SuperBonBon Industries, please see
+ * <http://www.sbbi.net/>.
+ */
+
+package net.sbbi.upnp;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sbbi.upnp.devices.RootDevice;
+
+/**
+ * A search for UPNP devices that runs in the background. Device
+ * descriptions are fetched as the responses arrive, several at once,
+ * so one slow device does not hold up the rest. The search is done
+ * when the timeout has passed and every device that answered in time
+ * has been built, when {@link #satisfiedBy(RootDevice)} says so, or
+ * when it is cancelled. Take the devices all at once with
+ * {@link #get()}, or one at a time as they are found with
+ * {@link #next()}
+ * 
+ * @author ryanm
+ */
+public class DeviceSearch implements Future<RootDevice[]>
+{
+	/**
+	 * The number of device descriptions that will be fetched at once,
+	 * across all searches. Set with the
+	 * net.sbbi.upnp.Discovery.fetchers system property
+	 */
+	public static final int FETCHERS = Math.max( 1, Integer.getInteger(
+			"net.sbbi.upnp.Discovery.fetchers", 4 ).intValue() );
+
+	/**
+	 * Fetches descriptions and ends searches
+	 */
+	private static final ScheduledThreadPoolExecutor pool;
+	static
+	{
+		pool = new ScheduledThreadPoolExecutor( FETCHERS, new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable r )
+			{
+				Thread t = new Thread( r, "UPNP device search" );
+				t.setDaemon( true );
+				return t;
+			}
+		} );
+		pool.setKeepAliveTime( 5, TimeUnit.SECONDS );
+		pool.allowCoreThreadTimeOut( true );
+	}
+
+	/**
+	 * The time allowed for devices to respond, in milliseconds
+	 */
+	public final int timeOut;
+
+	/**
+	 * The UDP socket packets time to live
+	 */
+	public final int ttl;
+
+	/**
+	 * The discovery message mx http header field value
+	 */
+	public final int mx;
+
+	/**
+	 * The device URI to search for
+	 */
+	public final String searchTarget;
+
+	/**
+	 * The network interface to search on, or <code>null</code> for
+	 * all of them
+	 */
+	public final NetworkInterface ni;
+
+	private final DiscoveryResultsHandler handler = new DiscoveryResultsHandler() {
+		@Override
+		public void discoveredDevice( String usn, String udn, String nt, String maxAge,
+				URL location, String firmware )
+		{
+			respond( usn, udn, maxAge, location, firmware );
+		}
+	};
+
+	/**
+	 * USNs of the devices that have responded
+	 */
+	private final Set<String> responded = new HashSet<String>();
+
+	private final List<Future<?>> fetches = new ArrayList<Future<?>>();
+
+	private Future<?> deadline;
+
+	private final List<RootDevice> found = new ArrayList<RootDevice>();
+
+	/**
+	 * Index in {@link #found} of the device that {@link #next()} will
+	 * return
+	 */
+	private int nextIndex = 0;
+
+	/**
+	 * Descriptions still being fetched
+	 */
+	private int outstanding = 0;
+
+	private boolean started = false, registered = false, listening = false;
+
+	private boolean done = false, cancelled = false;
+
+	/**
+	 * Held while calling {@link #satisfiedBy(RootDevice)}, which is not
+	 * called again once it has returned <code>true</code>
+	 */
+	private final Object predicateLock = new Object();
+
+	private boolean satisfied = false;
+
+	/**
+	 * @param timeOut
+	 *           the time allowed for devices to respond, in milliseconds
+	 * @param ttl
+	 *           the UDP socket packets time to live
+	 * @param mx
+	 *           discovery message mx http header field value
+	 * @param searchTarget
+	 *           the device URI to search
+	 * @param ni
+	 *           the networkInterface where to search devices, null to
+	 *           lookup all interfaces
+	 */
+	public DeviceSearch( int timeOut, int ttl, int mx, String searchTarget,
+			NetworkInterface ni )
+	{
+		if( searchTarget == null || searchTarget.trim().length() == 0 )
+		{
+			throw new IllegalArgumentException( "Illegal searchTarget" );
+		}
+
+		this.timeOut = timeOut;
+		this.ttl = ttl;
+		this.mx = mx;
+		this.searchTarget = searchTarget;
+		this.ni = ni;
+	}
+
+	/**
+	 * Sends the search message and starts listening for responses
+	 * 
+	 * @return this
+	 * @throws IOException
+	 *            if the search message could not be sent
+	 */
+	public DeviceSearch start() throws IOException
+	{
+		synchronized( this )
+		{
+			if( started )
+			{
+				throw new IllegalStateException( "Search already started" );
+			}
+			started = true;
+			listening = true;
+		}
+
+		DiscoveryListener.getInstance().registerResultsHandler( handler, searchTarget );
+		synchronized( this )
+		{
+			registered = true;
+		}
+		try
+		{
+			sendSearch();
+		}
+		catch( IOException e )
+		{
+			cancel( false );
+			throw e;
+		}
+
+		Future<?> d = pool.schedule( new Runnable() {
+			@Override
+			public void run()
+			{
+				stopListening();
+			}
+		}, timeOut, TimeUnit.MILLISECONDS );
+
+		synchronized( this )
+		{
+			deadline = d;
+		}
+		if( isDone() )
+		{
+			// finished before the deadline was set
+			d.cancel( false );
+			unregister();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Sends the search message from every IPv4 address of the
+	 * interface, or of all interfaces. Override to send it somewhere
+	 * else
+	 * 
+	 * @throws IOException
+	 */
+	protected void sendSearch() throws IOException
+	{
+		Enumeration<NetworkInterface> interfaces =
+				ni == null ? NetworkInterface.getNetworkInterfaces() : null;
+		NetworkInterface intf = ni;
+		while( intf != null || interfaces != null && interfaces.hasMoreElements() )
+		{
+			if( interfaces != null )
+			{
+				intf = interfaces.nextElement();
+			}
+
+			for( Enumeration<InetAddress> adrs = intf.getInetAddresses(); adrs
+					.hasMoreElements(); )
+			{
+				InetAddress adr = adrs.nextElement();
+				if( adr instanceof Inet4Address && !adr.isLoopbackAddress() )
+				{
+					Discovery.sendSearchMessage( adr, ttl, mx, searchTarget );
+				}
+			}
+
+			intf = null;
+		}
+	}
+
+	/**
+	 * Decides if the search can finish early. This is called for each
+	 * device as it is found, on a worker thread, but never for two
+	 * devices at once, and not after it has returned <code>true</code>.
+	 * It may take its time: responses to the search are still handled
+	 * while it runs
+	 * 
+	 * @param device
+	 *           the latest device to be found
+	 * @return <code>true</code> to finish the search now
+	 */
+	protected boolean satisfiedBy( RootDevice device )
+	{
+		return false;
+	}
+
+	/**
+	 * Waits for the next device to be found
+	 * 
+	 * @return A device that has not yet been returned by this method,
+	 *         or <code>null</code> if the search is done and they have
+	 *         all been returned
+	 * @throws InterruptedException
+	 */
+	public synchronized RootDevice next() throws InterruptedException
+	{
+		while( nextIndex == found.size() && !done )
+		{
+			wait();
+		}
+
+		return nextIndex < found.size() ? found.get( nextIndex++ ) : null;
+	}
+
+	/**
+	 * @return The devices found so far
+	 */
+	public synchronized RootDevice[] devices()
+	{
+		return found.toArray( new RootDevice[ found.size() ] );
+	}
+
+	@Override
+	public synchronized RootDevice[] get() throws InterruptedException
+	{
+		while( !done )
+		{
+			wait();
+		}
+
+		return result();
+	}
+
+	@Override
+	public synchronized RootDevice[] get( long timeout, TimeUnit unit )
+			throws InterruptedException, TimeoutException
+	{
+		long end = System.nanoTime() + unit.toNanos( timeout );
+		long remaining;
+		while( !done && ( remaining = end - System.nanoTime() ) > 0 )
+		{
+			TimeUnit.NANOSECONDS.timedWait( this, remaining );
+		}
+
+		if( !done )
+		{
+			throw new TimeoutException();
+		}
+
+		return result();
+	}
+
+	private RootDevice[] result()
+	{
+		if( cancelled )
+		{
+			throw new CancellationException();
+		}
+		return devices();
+	}
+
+	/**
+	 * Stops the search. Devices that have already been found are
+	 * still available from {@link #devices()} and {@link #next()}
+	 */
+	@Override
+	public boolean cancel( boolean mayInterruptIfRunning )
+	{
+		synchronized( this )
+		{
+			if( done )
+			{
+				return false;
+			}
+			cancelled = true;
+		}
+
+		finish( mayInterruptIfRunning );
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone()
+	{
+		return done;
+	}
+
+	/**
+	 * Called on the listener thread, so just queues the fetch
+	 */
+	private void respond( final String usn, final String udn, final String maxAge,
+			final URL location, final String firmware )
+	{
+		synchronized( this )
+		{
+			if( !listening || !responded.add( usn ) )
+			{
+				return;
+			}
+
+			outstanding++;
+			fetches.add( pool.submit( new Runnable() {
+				@Override
+				public void run()
+				{
+					RootDevice device = null;
+					try
+					{
+						device = RootDevice.build( location, maxAge, firmware, usn, udn );
+					}
+					catch( Exception ex )
+					{
+						ex.printStackTrace();
+					}
+					fetched( device );
+				}
+			} ) );
+		}
+	}
+
+	private void fetched( RootDevice device )
+	{
+		synchronized( this )
+		{
+			if( done )
+			{
+				return;
+			}
+
+			if( device != null )
+			{
+				found.add( device );
+				notifyAll();
+			}
+		}
+
+		// The predicate might take a while, so it mustn't hold up the
+		// listener thread waiting to hand us a response
+		boolean satisfied = false;
+		if( device != null )
+		{
+			synchronized( predicateLock )
+			{
+				if( !this.satisfied && !isDone() )
+				{
+					satisfied = this.satisfied = satisfiedBy( device );
+				}
+			}
+		}
+
+		boolean finished;
+		synchronized( this )
+		{
+			outstanding--;
+			finished = !done && ( satisfied || !listening && outstanding == 0 );
+		}
+
+		if( finished )
+		{
+			finish( false );
+		}
+	}
+
+	private void stopListening()
+	{
+		boolean finished;
+		synchronized( this )
+		{
+			listening = false;
+			finished = outstanding == 0;
+		}
+
+		unregister();
+
+		if( finished )
+		{
+			finish( false );
+		}
+	}
+
+	private void finish( boolean interrupt )
+	{
+		List<Future<?>> pending;
+		synchronized( this )
+		{
+			listening = false;
+			done = true;
+			notifyAll();
+
+			pending = new ArrayList<Future<?>>( fetches );
+			fetches.clear();
+			if( deadline != null )
+			{
+				pending.add( deadline );
+			}
+		}
+
+		unregister();
+
+		for( Future<?> f : pending )
+		{
+			f.cancel( interrupt );
+		}
+	}
+
+	/**
+	 * Stops listening for responses. Not done while holding this
+	 * object's lock, as responses are handled while holding the
+	 * listener's
+	 */
+	private void unregister()
+	{
+		synchronized( this )
+		{
+			if( !registered )
+			{
+				return;
+			}
+			registered = false;
+		}
+
+		DiscoveryListener.getInstance().unRegisterResultsHandler( handler, searchTarget );
+	}
+}
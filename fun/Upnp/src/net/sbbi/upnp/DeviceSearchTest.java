@@ -0,0 +1,386 @@
+/*
+ * ====================================================================
+ * ======== The Apache Software License, Version 1.1
+ * ==================
+ * ==========================================================
+ * Copyright (C) 2002 The Apache Software Foundation. All rights
+ * reserved. Redistribution and use in source and binary forms, with
+ * or without modifica- tion, are permitted provided that the
+ * following conditions are met: 1. Redistributions of source code
+ * must retain the above copyright notice, this list of conditions and
+ * the following disclaimer. 2. Redistributions in binary form must
+ * reproduce the above copyright notice, this list of conditions and
+ * the following disclaimer in the documentation and/or other
+ * materials provided with the distribution. 3. The end-user
+ * documentation included with the redistribution, if any, must
+ * include the following acknowledgment: "This product includes
+ * software developed by SuperBonBon Industries
+ * (http://www.sbbi.net/)." Alternately, this acknowledgment may
+ * appear in the software itself, if and wherever such third-party
+ * acknowledgments normally appear. 4. The names "UPNPLib" and
+ * "SuperBonBon Industries" must not be used to endorse or promote
+ * products derived from this software without prior written
+ * permission. For written permission, please contact info@sbbi.net.
+ * 5. Products derived from this software may not be called
+ * "SuperBonBon Industries", nor may "SBBI" appear in their name,
+ * without prior written permission of SuperBonBon Industries. THIS
+ * SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR ITS
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLU- DING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE. This software consists of voluntary contributions made
+ * by many individuals on behalf of SuperBonBon Industries. For more
+ * information on SuperBonBon Industries, please see
+ * <http://www.sbbi.net/>.
+ */
+
+package net.sbbi.upnp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import net.sbbi.upnp.devices.RootDevice;
+
+/**
+ * Runs searches against a fake SSDP responder and a fake web server on
+ * the loopback interface, with devices that take a controlled time to
+ * describe themselves. Checks that slow devices don't hold up fast
+ * ones, that searches finish early when satisfied, and that responses
+ * that arrive in time are not lost
+ * 
+ * @author ryanm
+ */
+public class DeviceSearchTest
+{
+	private static final String IGD = "urn:schemas-upnp-org:device:InternetGatewayDevice:1";
+
+	private static final String MEDIA = "urn:schemas-upnp-org:device:MediaServer:1";
+
+	private static final InetAddress loopback;
+	static
+	{
+		try
+		{
+			loopback = InetAddress.getByName( "127.0.0.1" );
+		}
+		catch( IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	/**
+	 * Device type and description delay in ms, by name
+	 */
+	private static final Map<String, Object[]> devices =
+			new ConcurrentHashMap<String, Object[]>();
+
+	private static int httpPort;
+
+	private static InetSocketAddress responder;
+
+	/**
+	 * The devices that answer a search, in order
+	 */
+	private static volatile String[] answering;
+
+	/**
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main( String[] args ) throws Exception
+	{
+		startWebServer();
+		startResponder();
+
+		// four slow devices, all answering within the timeout
+		for( int i = 0; i < 4; i++ )
+		{
+			device( "slow" + i, MEDIA, 300 );
+		}
+		answering = new String[] { "slow0", "slow1", "slow2", "slow3", "slow0" };
+
+		// warm up every fetching thread
+		check( search( 1000, MEDIA ).start().get().length == 4, "warm up" );
+
+		long start = System.nanoTime();
+		RootDevice[] found = search( 200, MEDIA ).start().get();
+		long all = ms( start );
+		check( found.length == 4, found.length + " of 4 slow devices" );
+		check( all < 4 * 300, "descriptions fetched in parallel, " + all + "ms" );
+		System.out.println( "4 devices taking 300ms each, 200ms timeout: " + all
+				+ "ms (one at a time: at least " + 4 * 300 + "ms)" );
+
+		// the first IGD ends the search, however slow the others are
+		device( "fastIGD", IGD, 50 );
+		device( "slowIGD", IGD, 2000 );
+		answering = new String[] { "slowIGD", "fastIGD" };
+		start = System.nanoTime();
+		DeviceSearch first = new LoopbackSearch( 3000, IGD ) {
+			@Override
+			protected boolean satisfiedBy( RootDevice device )
+			{
+				return device.deviceType.equals( IGD );
+			}
+		}.start();
+		found = first.get();
+		long early = ms( start );
+		check( found.length == 1 && found[ 0 ].friendlyName.equals( "fastIGD" ), "first IGD" );
+		check( early < 1000, "finished early, " + early + "ms" );
+		System.out.println( "first of 2 IGDs, 3000ms timeout: " + early + "ms" );
+
+		// a slow predicate doesn't hold up responses, even to other
+		// searches
+		device( "quick", MEDIA, 20 );
+		device( "quick2", MEDIA, 20 );
+		answering = new String[] { "quick" };
+		final CountDownLatch deciding = new CountDownLatch( 1 );
+		DeviceSearch ponderous = new LoopbackSearch( 2000, MEDIA ) {
+			@Override
+			protected boolean satisfiedBy( RootDevice device )
+			{
+				deciding.countDown();
+				try
+				{
+					Thread.sleep( 1000 );
+				}
+				catch( InterruptedException e )
+				{
+					// whatever
+				}
+				return true;
+			}
+		}.start();
+		deciding.await();
+		answering = new String[] { "quick", "quick2" };
+		start = System.nanoTime();
+		DeviceSearch other = search( 500, MEDIA ).start();
+		check( other.next() != null && other.next() != null, "other search answered" );
+		long otherTime = ms( start );
+		check( otherTime < 500, "other search not held up, " + otherTime + "ms" );
+		check( ponderous.get().length > 0, "slow predicate still finishes" );
+		System.out.println( "another search during a 1000ms predicate: " + otherTime + "ms" );
+
+		// devices come out of next() as they're found
+		device( "dawdler", MEDIA, 400 );
+		answering = new String[] { "dawdler", "quick" };
+		start = System.nanoTime();
+		DeviceSearch stream = search( 200, MEDIA ).start();
+		check( stream.next().friendlyName.equals( "quick" ), "quick first" );
+		long quick = ms( start );
+		check( !stream.isDone() && quick < 300, "quick before the timeout, " + quick + "ms" );
+		check( stream.next().friendlyName.equals( "dawdler" ), "dawdler second" );
+		check( stream.next() == null && stream.isDone(), "then done" );
+
+		// nothing found
+		answering = new String[ 0 ];
+		start = System.nanoTime();
+		found = search( 150, MEDIA ).start().get();
+		check( found.length == 0 && ms( start ) >= 150, "empty after the timeout" );
+
+		// cancelled
+		answering = new String[] { "dawdler" };
+		DeviceSearch cancelled = search( 1000, MEDIA ).start();
+		check( cancelled.cancel( false ) && cancelled.isCancelled(), "cancel" );
+		try
+		{
+			cancelled.get();
+			check( false, "cancelled get" );
+		}
+		catch( CancellationException e )
+		{
+			// good
+		}
+		check( cancelled.next() == null, "cancelled next" );
+
+		System.out.println( "ok" );
+	}
+
+	private static DeviceSearch search( int timeout, String target )
+	{
+		return new LoopbackSearch( timeout, target );
+	}
+
+	private static void device( String name, String type, int delay )
+	{
+		devices.put( name, new Object[] { type, Integer.valueOf( delay ) } );
+	}
+
+	private static long ms( long start )
+	{
+		return ( System.nanoTime() - start ) / 1000000;
+	}
+
+	private static void check( boolean condition, String message )
+	{
+		if( !condition )
+		{
+			throw new AssertionError( message );
+		}
+	}
+
+	/**
+	 * Answers each search message with a response for each of the
+	 * {@link #answering} devices
+	 */
+	private static void startResponder() throws IOException
+	{
+		final DatagramSocket socket = new DatagramSocket( 0, loopback );
+		responder = new InetSocketAddress( loopback, socket.getLocalPort() );
+
+		Thread t = new Thread( "SSDP responder" ) {
+			@Override
+			public void run()
+			{
+				byte[] buffer = new byte[ 2048 ];
+				try
+				{
+					for( ;; )
+					{
+						DatagramPacket in = new DatagramPacket( buffer, buffer.length );
+						socket.receive( in );
+						String search = new String( in.getData(), 0, in.getLength() );
+						String st = new HttpResponse( search ).getHTTPHeaderField( "st" );
+
+						// let the search socket close, so the answers go to the
+						// listener
+						Thread.sleep( 10 );
+
+						for( String name : answering )
+						{
+							String response =
+									"HTTP/1.1 200 OK\r\n" + "CACHE-CONTROL: max-age=1800\r\n"
+											+ "LOCATION: http://127.0.0.1:" + httpPort + "/" + name
+											+ ".xml\r\n" + "SERVER: fake/1.0 UPnP/1.0\r\n" + "ST: " + st
+											+ "\r\n" + "USN: uuid:" + name + "::" + st + "\r\n\r\n";
+							byte[] b = response.getBytes();
+							socket.send( new DatagramPacket( b, b.length, in.getSocketAddress() ) );
+						}
+					}
+				}
+				catch( Exception e )
+				{
+					e.printStackTrace();
+				}
+			}
+		};
+		t.setDaemon( true );
+		t.start();
+	}
+
+	/**
+	 * Serves a description of each device, after its delay
+	 */
+	private static void startWebServer() throws IOException
+	{
+		final ServerSocket server = new ServerSocket( 0, 50, loopback );
+		httpPort = server.getLocalPort();
+
+		Thread t = new Thread( "web server" ) {
+			@Override
+			public void run()
+			{
+				try
+				{
+					for( ;; )
+					{
+						final Socket s = server.accept();
+						Thread c = new Thread( "web connection" ) {
+							@Override
+							public void run()
+							{
+								try
+								{
+									serve( s );
+								}
+								catch( Exception e )
+								{
+									e.printStackTrace();
+								}
+							}
+						};
+						c.setDaemon( true );
+						c.start();
+					}
+				}
+				catch( IOException e )
+				{
+					e.printStackTrace();
+				}
+			}
+		};
+		t.setDaemon( true );
+		t.start();
+	}
+
+	private static void serve( Socket s ) throws Exception
+	{
+		InputStream in = s.getInputStream();
+		StringBuilder request = new StringBuilder();
+		int c;
+		while( request.indexOf( "\r\n\r\n" ) == -1 && ( c = in.read() ) != -1 )
+		{
+			request.append( ( char ) c );
+		}
+
+		String path = request.substring( request.indexOf( " " ) + 1 );
+		String name = path.substring( 1, path.indexOf( ".xml" ) );
+		Object[] device = devices.get( name );
+
+		Thread.sleep( ( ( Integer ) device[ 1 ] ).intValue() );
+
+		String xml =
+				"<?xml version=\"1.0\"?>\n" + "<root xmlns=\"urn:schemas-upnp-org:device-1-0\">\n"
+						+ "<specVersion><major>1</major><minor>0</minor></specVersion>\n"
+						+ "<device>\n" + "<deviceType>" + device[ 0 ] + "</deviceType>\n"
+						+ "<friendlyName>" + name + "</friendlyName>\n"
+						+ "<manufacturer>fake</manufacturer>\n" + "<modelName>fake</modelName>\n"
+						+ "<UDN>uuid:" + name + "</UDN>\n" + "<serviceList/>\n" + "<deviceList/>\n"
+						+ "</device>\n" + "</root>\n";
+		byte[] body = xml.getBytes();
+
+		OutputStream out = s.getOutputStream();
+		out.write( ( "HTTP/1.0 200 OK\r\nContent-Type: text/xml\r\nContent-Length: "
+				+ body.length + "\r\nConnection: close\r\n\r\n" ).getBytes() );
+		out.write( body );
+		out.close();
+		s.close();
+	}
+
+	/**
+	 * Sends its search message to the fake responder
+	 * 
+	 * @author ryanm
+	 */
+	private static class LoopbackSearch extends DeviceSearch
+	{
+		private LoopbackSearch( int timeout, String target )
+		{
+			super( timeout, Discovery.DEFAULT_TTL, Discovery.DEFAULT_MX, target, null );
+		}
+
+		@Override
+		protected void sendSearch() throws IOException
+		{
+			Discovery.sendSearchMessage( loopback, responder, ttl, mx, searchTarget );
+		}
+	}
+}
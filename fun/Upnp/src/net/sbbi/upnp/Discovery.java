@@ -45,15 +45,9 @@ package net.sbbi.upnp;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
-import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
-import java.net.URL;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 
 import net.sbbi.upnp.devices.RootDevice;
 
@@ -66,7 +60,9 @@ import net.sbbi.upnp.devices.RootDevice;
  * description and broadcast message response IP to avoid a security
  * flaw with the protocol. If you are not happy with such behaviour
  * you can set the net.sbbi.upnp.ddos.matchip system property to false
- * to avoid this check.
+ * to avoid this check. The discover methods block for the whole
+ * timeout; use a {@link DeviceSearch} to have devices as they are
+ * found, or to stop searching once the right one turns up.
  * 
  * @author <a href="mailto:superbonbon@sbbi.net">SuperBonBon</a>
  * @version 1.0
@@ -223,93 +219,20 @@ public class Discovery
 	private static RootDevice[] discoverDevices( int timeOut, int ttl, int mx,
 			String searchTarget, NetworkInterface ni ) throws IOException
 	{
-		if( searchTarget == null || searchTarget.trim().length() == 0 )
-		{
-			throw new IllegalArgumentException( "Illegal searchTarget" );
-		}
-
-		final Map<String, RootDevice> devices = new HashMap<String, RootDevice>();
-
-		DiscoveryResultsHandler handler = new DiscoveryResultsHandler() {
-
-			@Override
-			public void discoveredDevice( String usn, String udn, String nt, String maxAge,
-					URL location, String firmware )
-			{
-				synchronized( devices )
-				{
-					if( !devices.containsKey( usn ) )
-					{
-						try
-						{
-							RootDevice device =
-									RootDevice.build( location, maxAge, firmware, usn, udn );
-							devices.put( usn, device );
-						}
-						catch( Exception ex )
-						{
-							// log.error(
-							// "Error occured during upnp root device object creation from location "
-							// + location, ex );
-							ex.printStackTrace();
-						}
-					}
-				}
-			}
-		};
-
-		DiscoveryListener.getInstance().registerResultsHandler( handler, searchTarget );
-		if( ni == null )
-		{
-			for( Enumeration e = NetworkInterface.getNetworkInterfaces(); e
-					.hasMoreElements(); )
-			{
-				NetworkInterface intf = ( NetworkInterface ) e.nextElement();
-				for( Enumeration adrs = intf.getInetAddresses(); adrs.hasMoreElements(); )
-				{
-					InetAddress adr = ( InetAddress ) adrs.nextElement();
-					if( adr instanceof Inet4Address && !adr.isLoopbackAddress() )
-					{
-						sendSearchMessage( adr, ttl, mx, searchTarget );
-					}
-				}
-			}
-		}
-		else
-		{
-			for( Enumeration adrs = ni.getInetAddresses(); adrs.hasMoreElements(); )
-			{
-				InetAddress adr = ( InetAddress ) adrs.nextElement();
-				if( adr instanceof Inet4Address && !adr.isLoopbackAddress() )
-				{
-					sendSearchMessage( adr, ttl, mx, searchTarget );
-				}
-			}
-		}
+		DeviceSearch search = new DeviceSearch( timeOut, ttl, mx, searchTarget, ni ).start();
 
 		try
 		{
-			Thread.sleep( timeOut );
+			search.get();
 		}
 		catch( InterruptedException ex )
 		{
-			// don't care
-		}
-
-		DiscoveryListener.getInstance().unRegisterResultsHandler( handler, searchTarget );
-
-		if( devices.size() == 0 )
-		{
-			return null;
-		}
-		int j = 0;
-		RootDevice[] rootDevices = new RootDevice[ devices.size() ];
-		for( Iterator i = devices.values().iterator(); i.hasNext(); )
-		{
-			rootDevices[ j++ ] = ( RootDevice ) i.next();
+			search.cancel( false );
+			Thread.currentThread().interrupt();
 		}
-		return rootDevices;
 
+		RootDevice[] rootDevices = search.devices();
+		return rootDevices.length == 0 ? null : rootDevices;
 	}
 
 	/**
@@ -329,6 +252,29 @@ public class Discovery
 	public static void sendSearchMessage( InetAddress src, int ttl, int mx,
 			String searchTarget ) throws IOException
 	{
+		sendSearchMessage( src, new InetSocketAddress( InetAddress.getByName( SSDP_IP ),
+				SSDP_PORT ), ttl, mx, searchTarget );
+	}
+
+	/**
+	 * Sends an SSDP search message to a given address
+	 * 
+	 * @param src
+	 *           the sender ip
+	 * @param dest
+	 *           where to send the message
+	 * @param ttl
+	 *           the time to live
+	 * @param mx
+	 *           the mx field
+	 * @param searchTarget
+	 *           the search target
+	 * @throws IOException
+	 *            if some IO errors occurs during search
+	 */
+	public static void sendSearchMessage( InetAddress src, InetSocketAddress dest, int ttl,
+			int mx, String searchTarget ) throws IOException
+	{
 
 		int bindPort = DEFAULT_SSDP_SEARCH_PORT;
 		String port = System.getProperty( "net.sbbi.upnp.Discovery.bindPort" );
@@ -336,10 +282,6 @@ public class Discovery
 		{
 			bindPort = Integer.parseInt( port );
 		}
-		InetSocketAddress adr =
-				new InetSocketAddress( InetAddress.getByName( Discovery.SSDP_IP ),
-						Discovery.SSDP_PORT );
-
 		java.net.MulticastSocket skt = new java.net.MulticastSocket( null );
 		skt.bind( new InetSocketAddress( src, bindPort ) );
 		skt.setTimeToLive( ttl );
@@ -352,7 +294,7 @@ public class Discovery
 
 		String toSend = packet.toString();
 		byte[] pk = toSend.getBytes();
-		skt.send( new DatagramPacket( pk, pk.length, adr ) );
+		skt.send( new DatagramPacket( pk, pk.length, dest ) );
 		skt.disconnect();
 		skt.close();
 	}
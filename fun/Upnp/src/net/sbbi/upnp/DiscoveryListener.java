@@ -85,11 +85,15 @@ public class DiscoveryListener implements Runnable
 
 	private final static DiscoveryListener singleton = new DiscoveryListener();
 
-	private boolean inService = false;
+	private volatile boolean inService = false;
 
 	private boolean daemon = true;
 
-	private java.net.MulticastSocket skt;
+	/**
+	 * The socket of the current listener thread. A thread that finds
+	 * it has been replaced closes its own and stops
+	 */
+	private volatile java.net.MulticastSocket skt;
 
 	private DatagramPacket input;
 
@@ -235,12 +239,14 @@ public class DiscoveryListener implements Runnable
 		{
 			throw new RuntimeException( "No right to call this method" );
 		}
+		java.net.MulticastSocket socket = skt;
+		DatagramPacket packet = input;
 		inService = true;
-		while( inService )
+		while( inService && socket == skt )
 		{
 			try
 			{
-				listenBroadCast();
+				listenBroadCast( socket, packet );
 			}
 			catch( SocketTimeoutException ex )
 			{
@@ -259,8 +265,8 @@ public class DiscoveryListener implements Runnable
 
 		try
 		{
-			skt.leaveGroup( InetAddress.getByName( Discovery.SSDP_IP ) );
-			skt.close();
+			socket.leaveGroup( InetAddress.getByName( Discovery.SSDP_IP ) );
+			socket.close();
 		}
 		catch( Exception ex )
 		{
@@ -268,7 +274,8 @@ public class DiscoveryListener implements Runnable
 		}
 	}
 
-	private void listenBroadCast() throws IOException
+	private void listenBroadCast( java.net.MulticastSocket skt, DatagramPacket input )
+			throws IOException
 	{
 
 		skt.receive( input );
@@ -47,44 +47,62 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.net.URLConnection;
 
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFunctionResolver;
+import javax.xml.xpath.XPathVariableResolver;
 
 import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /**
- * Handy stuff for dealing with XML
+ * Handy stuff for dealing with XML. Device descriptions are fetched
+ * and parsed on several threads at once, and neither
+ * {@link DocumentBuilder} nor {@link XPath} is safe for that, so each
+ * thread gets its own
  * 
  * @author ryanm
  */
 public class XMLUtil
 {
-	/** {@link XPath} instance */
-	public static final XPath xpath = XPathFactory.newInstance().newXPath();
+	/** {@link XPath} instance, usable from any thread */
+	public static final XPath xpath = new LocalXPath();
+
+	/**
+	 * Connect and read timeout for fetching XML, in milliseconds
+	 */
+	public static final int TIMEOUT = 5000;
 
 	private static final char buggyChar = ( char ) 0;
 
-	private static final DocumentBuilder builder;
-	static
-	{
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		factory.setNamespaceAware( false );
-		DocumentBuilder b = null;
-		try
-		{
-			b = factory.newDocumentBuilder();
-		}
-		catch( ParserConfigurationException e )
-		{
-			e.printStackTrace();
-		}
-		builder = b;
-	}
+	private static final ThreadLocal<DocumentBuilder> builder =
+			new ThreadLocal<DocumentBuilder>() {
+				@Override
+				protected DocumentBuilder initialValue()
+				{
+					DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+					factory.setNamespaceAware( false );
+					try
+					{
+						return factory.newDocumentBuilder();
+					}
+					catch( ParserConfigurationException e )
+					{
+						e.printStackTrace();
+					}
+					return null;
+				}
+			};
 
 	/**
 	 * @param url
@@ -92,9 +110,13 @@ public class XMLUtil
 	 */
 	public static String getXMLString( URL url )
 	{
+		InputStream in = null;
 		try
 		{
-			InputStream in = url.openStream();
+			URLConnection connection = url.openConnection();
+			connection.setConnectTimeout( TIMEOUT );
+			connection.setReadTimeout( TIMEOUT );
+			in = connection.getInputStream();
 
 			StringBuilder xml = new StringBuilder();
 			byte[] buffer = new byte[ 512 ];
@@ -117,6 +139,20 @@ public class XMLUtil
 		{
 			e.printStackTrace();
 		}
+		finally
+		{
+			if( in != null )
+			{
+				try
+				{
+					in.close();
+				}
+				catch( IOException e )
+				{
+					// don't care
+				}
+			}
+		}
 
 		return null;
 	}
@@ -125,16 +161,21 @@ public class XMLUtil
 	 * Fetches the xml, fixes any wonky characters in it
 	 * 
 	 * @param url
-	 * @return The xml {@link Document}
+	 * @return The xml {@link Document}, or <code>null</code> if it
+	 *         could not be fetched or parsed
 	 */
 	public static Document getXML( URL url )
 	{
 		try
 		{
 			String doc = getXMLString( url );
+			if( doc == null )
+			{
+				return null;
+			}
 			ByteArrayInputStream in2 = new ByteArrayInputStream( doc.getBytes() );
 
-			return builder.parse( in2 );
+			return builder.get().parse( in2 );
 		}
 		catch( SAXException e )
 		{
@@ -147,4 +188,97 @@ public class XMLUtil
 
 		return null;
 	}
+
+	/**
+	 * Passes everything on to an {@link XPath} belonging to the
+	 * calling thread
+	 * 
+	 * @author ryanm
+	 */
+	private static class LocalXPath implements XPath
+	{
+		private final ThreadLocal<XPath> local = new ThreadLocal<XPath>() {
+			@Override
+			protected XPath initialValue()
+			{
+				return XPathFactory.newInstance().newXPath();
+			}
+		};
+
+		@Override
+		public void reset()
+		{
+			local.get().reset();
+		}
+
+		@Override
+		public void setXPathVariableResolver( XPathVariableResolver resolver )
+		{
+			local.get().setXPathVariableResolver( resolver );
+		}
+
+		@Override
+		public XPathVariableResolver getXPathVariableResolver()
+		{
+			return local.get().getXPathVariableResolver();
+		}
+
+		@Override
+		public void setXPathFunctionResolver( XPathFunctionResolver resolver )
+		{
+			local.get().setXPathFunctionResolver( resolver );
+		}
+
+		@Override
+		public XPathFunctionResolver getXPathFunctionResolver()
+		{
+			return local.get().getXPathFunctionResolver();
+		}
+
+		@Override
+		public void setNamespaceContext( NamespaceContext nsContext )
+		{
+			local.get().setNamespaceContext( nsContext );
+		}
+
+		@Override
+		public NamespaceContext getNamespaceContext()
+		{
+			return local.get().getNamespaceContext();
+		}
+
+		@Override
+		public XPathExpression compile( String expression ) throws XPathExpressionException
+		{
+			return local.get().compile( expression );
+		}
+
+		@Override
+		public Object evaluate( String expression, Object item, QName returnType )
+				throws XPathExpressionException
+		{
+			return local.get().evaluate( expression, item, returnType );
+		}
+
+		@Override
+		public String evaluate( String expression, Object item )
+				throws XPathExpressionException
+		{
+			return local.get().evaluate( expression, item );
+		}
+
+		@Override
+		public Object evaluate( String expression, InputSource source, QName returnType )
+				throws XPathExpressionException
+		{
+			return local.get().evaluate( expression, source, returnType );
+		}
+
+		@Override
+		public String evaluate( String expression, InputSource source )
+				throws XPathExpressionException
+		{
+			return local.get().evaluate( expression, source );
+		}
+	}
 }
@@ -57,6 +57,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
+import net.sbbi.upnp.DeviceSearch;
 import net.sbbi.upnp.Discovery;
 import net.sbbi.upnp.devices.Device;
 import net.sbbi.upnp.devices.RootDevice;
@@ -126,7 +127,12 @@ public class InternetGatewayDevice
 			assert local != null;
 
 			System.out.println( "looking for device" );
-			InternetGatewayDevice dev = getDevices( 1000 )[ 0 ];
+			InternetGatewayDevice dev = getFirstDevice( 1000 );
+			if( dev == null )
+			{
+				System.out.println( "No device found" );
+				System.exit( 0 );
+			}
 
 			// System.out.println( "Found:\n" + dev.igd + "\n" );
 
@@ -450,6 +456,56 @@ public class InternetGatewayDevice
 		return lookupDeviceDevices( timeout, ttl, mx, true, true, ni );
 	}
 
+	/**
+	 * Finds an IGD (IP or PPP) device on the network, without waiting
+	 * to hear from any others. If a device implements both IP and PPP,
+	 * the active service will be used for nat mappings.
+	 * 
+	 * @param timeout
+	 *           the longest time in ms to listen for devices response,
+	 *           -1 for default value
+	 * @return the first device found to support nat mappings, or null
+	 *         if nothing found.
+	 * @throws IOException
+	 *            if some IO Exception occurs during discovery
+	 */
+	public static InternetGatewayDevice getFirstDevice( int timeout ) throws IOException
+	{
+		final InternetGatewayDevice[] first = new InternetGatewayDevice[ 1 ];
+
+		DeviceSearch search =
+				new DeviceSearch( timeout == -1 ? Discovery.DEFAULT_TIMEOUT : timeout,
+						Discovery.DEFAULT_TTL, Discovery.DEFAULT_MX,
+						"urn:schemas-upnp-org:device:InternetGatewayDevice:1", null ) {
+					@Override
+					protected boolean satisfiedBy( RootDevice device )
+					{
+						try
+						{
+							first[ 0 ] = new InternetGatewayDevice( device, true, true );
+							return true;
+						}
+						catch( UnsupportedOperationException ex )
+						{
+							// the device is either not IP or PPP
+							return false;
+						}
+					}
+				}.start();
+
+		try
+		{
+			search.get();
+		}
+		catch( InterruptedException ex )
+		{
+			search.cancel( false );
+			Thread.currentThread().interrupt();
+		}
+
+		return first[ 0 ];
+	}
+
 	private static InternetGatewayDevice[] lookupDeviceDevices( int timeout, int ttl, int mx,
 			boolean WANIPConnection, boolean WANPPPConnection, NetworkInterface ni )
 			throws IOException
@@ -44,4 +44,17 @@ public class ArrayUtil
 		System.arraycopy( in, 0, na, 0, in.length );
 		return na;
 	}
-}
+
+	/**
+	 * Doubles the size of an array
+	 * 
+	 * @param in
+	 * @return The new array
+	 */
+	public static float[] grow( float[] in )
+	{
+		float[] na = new float[ in.length * 2 ];
+		System.arraycopy( in, 0, na, 0, in.length );
+		return na;
+	}
+}
\ No newline at end of file
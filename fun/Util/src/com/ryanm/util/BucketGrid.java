@@ -1,6 +1,7 @@
 
 package com.ryanm.util;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Random;
@@ -26,6 +27,14 @@ public class BucketGrid<T extends Segment>
 
 	private final GridIterate gridIterate;
 
+	private final float bucketSize;
+
+	/**
+	 * Stamped onto segments as they are visited by a query, so we can
+	 * skip the ones we've already tested
+	 */
+	private int generation = 0;
+
 	private static class Node
 	{
 		private Segment seg;
@@ -40,6 +49,7 @@ public class BucketGrid<T extends Segment>
 	 */
 	public BucketGrid( float bucketSize, int xBuckets, int yBuckets )
 	{
+		this.bucketSize = bucketSize;
 		gridIterate =
 				new GridIterate( bucketSize, 0, 0, xBuckets * bucketSize, yBuckets * bucketSize );
 		heads = new Node[ xBuckets ][ yBuckets ];
@@ -129,6 +139,202 @@ public class BucketGrid<T extends Segment>
 		}
 	}
 
+	/**
+	 * Tests a segment against the occupants of the grid, without
+	 * allocating anything
+	 * 
+	 * @param ax
+	 * @param ay
+	 * @param bx
+	 * @param by
+	 * @param results
+	 *           The buffer in which to place the intersecting segments.
+	 *           It is reset before use
+	 * @return The number of intersecting segments
+	 */
+	public int test( float ax, float ay, float bx, float by, HitBuffer<T> results )
+	{
+		results.reset( ax, ay, bx, by );
+		query( ax, ay, bx, by, results, false );
+		return results.size();
+	}
+
+	/**
+	 * Finds any segment that intersects the test segment, stopping as
+	 * soon as one is found
+	 * 
+	 * @param ax
+	 * @param ay
+	 * @param bx
+	 * @param by
+	 * @return An intersecting segment, or <code>null</code> if there
+	 *         are none
+	 */
+	public T anyHit( float ax, float ay, float bx, float by )
+	{
+		return query( ax, ay, bx, by, null, false );
+	}
+
+	/**
+	 * Finds the segment with the intersection closest to the start of
+	 * the test segment. Buckets are visited in order along the test
+	 * segment, so the search stops as soon as a bucket yields a hit
+	 * that cannot be bettered
+	 * 
+	 * @param ax
+	 * @param ay
+	 * @param bx
+	 * @param by
+	 * @param result
+	 *           The buffer in which to place the nearest hit. It is
+	 *           reset before use
+	 * @return The nearest intersecting segment, or <code>null</code> if
+	 *         there are none
+	 */
+	public T nearestHit( float ax, float ay, float bx, float by, HitBuffer<T> result )
+	{
+		result.reset( ax, ay, bx, by );
+		return query( ax, ay, bx, by, result, true );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private T query( float ax, float ay, float bx, float by, HitBuffer<T> results,
+			boolean nearest )
+	{
+		generation++;
+
+		T best = null;
+		float bestParam = Float.MAX_VALUE;
+
+		gridIterate.setSeg( ax, ay, bx, by );
+
+		while( !gridIterate.isDone() )
+		{
+			gridIterate.next();
+
+			int x = gridIterate.lastGridCoords.getX();
+			int y = gridIterate.lastGridCoords.getY();
+
+			if( inBounds( x, y ) )
+			{
+				for( Node n = heads[ x ][ y ]; n != null; n = n.next )
+				{
+					Segment s = n.seg;
+
+					if( s.mark != generation )
+					{
+						s.mark = generation;
+
+						if( s.intersects( ax, ay, bx, by ) )
+						{
+							if( results == null )
+							{ // any hit will do
+								return ( T ) s;
+							}
+							else if( nearest )
+							{
+								float p = s.intersection( ax, ay, bx, by );
+								if( p < bestParam )
+								{
+									best = ( T ) s;
+									bestParam = p;
+								}
+							}
+							else
+							{
+								results.add( ( T ) s, s.intersection( ax, ay, bx, by ) );
+							}
+						}
+					}
+				}
+			}
+
+			if( best != null && bestParam <= exitParam( x, y, ax, ay, bx, by ) )
+			{ // later buckets can't hold anything nearer
+				break;
+			}
+		}
+
+		if( best != null )
+		{
+			results.add( best, bestParam );
+		}
+
+		return best;
+	}
+
+	/**
+	 * Finds where a segment leaves a bucket
+	 * 
+	 * @return The exit point, as a fraction of the distance along the
+	 *         segment
+	 */
+	private float exitParam( int x, int y, float ax, float ay, float bx, float by )
+	{
+		float dx = bx - ax;
+		float dy = by - ay;
+
+		float tx = Float.MAX_VALUE;
+		if( dx > 0 )
+		{
+			tx = ( ( x + 1 ) * bucketSize - ax ) / dx;
+		}
+		else if( dx < 0 )
+		{
+			tx = ( x * bucketSize - ax ) / dx;
+		}
+
+		float ty = Float.MAX_VALUE;
+		if( dy > 0 )
+		{
+			ty = ( ( y + 1 ) * bucketSize - ay ) / dy;
+		}
+		else if( dy < 0 )
+		{
+			ty = ( y * bucketSize - ay ) / dy;
+		}
+
+		return Math.min( tx, ty );
+	}
+
+	/**
+	 * @return The number of buckets along the x axis
+	 */
+	public int xBuckets()
+	{
+		return heads.length;
+	}
+
+	/**
+	 * @return The number of buckets along the y axis
+	 */
+	public int yBuckets()
+	{
+		return heads[ 0 ].length;
+	}
+
+	/**
+	 * Retrieves the occupants of a single bucket, in insertion order.
+	 * Handy for checking the consistency of grids that are maintained
+	 * incrementally
+	 * 
+	 * @param x
+	 * @param y
+	 * @param results
+	 *           The collection in which to place the bucket's contents
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void bucket( int x, int y, Collection<? super T> results )
+	{
+		Node t = heads[ x ][ y ];
+
+		while( t != null )
+		{
+			results.add( ( T ) t.seg );
+			t = t.next;
+		}
+	}
+
 	boolean inBounds( int x, int y )
 	{
 		return x >= 0 && x < heads.length && y >= 0 && y < heads[ 0 ].length;
@@ -317,6 +523,51 @@ public class BucketGrid<T extends Segment>
 		System.out.println( "found " + intersections + " intersections" );
 		System.out.println( "passed " + passed + " out of " + queries.length );
 
+		System.out.println( "checking buffered query correctness..." );
+		HitBuffer<Segment> hits = new HitBuffer<Segment>();
+		passed = 0;
+		for( int i = 0; i < queries.length; i++ )
+		{
+			Segment q = queries[ i ];
+			brute.clear();
+
+			float nearest = Float.MAX_VALUE;
+			for( int j = 0; j < segs.length; j++ )
+			{
+				if( q.intersects( segs[ j ] ) )
+				{
+					brute.add( segs[ j ] );
+					nearest = Math.min( nearest, segs[ j ].intersection( q.ax, q.ay, q.bx, q.by ) );
+				}
+			}
+
+			bg.test( q.ax, q.ay, q.bx, q.by, hits );
+			boolean same = brute.size() == hits.size();
+			for( int j = 0; j < hits.size(); j++ )
+			{
+				same &= brute.contains( hits.segment( j ) );
+			}
+
+			Segment any = bg.anyHit( q.ax, q.ay, q.bx, q.by );
+			same &= brute.isEmpty() ? any == null : brute.contains( any );
+
+			Segment near = bg.nearestHit( q.ax, q.ay, q.bx, q.by, hits );
+			same &=
+					brute.isEmpty() ? near == null : near != null
+							&& hits.param( 0 ) == nearest;
+
+			if( !same )
+			{
+				System.out.println( "buffered query mismatch for " + q );
+			}
+			else
+			{
+				passed++;
+			}
+		}
+
+		System.out.println( "passed " + passed + " out of " + queries.length );
+
 		System.out.println( "measuring performance..." );
 		for( int iter = 0; iter < 10; iter++ )
 		{
@@ -360,6 +611,21 @@ public class BucketGrid<T extends Segment>
 
 			System.out.println( "bucket grid " + gridcount + " queries" );
 
+			i = 0;
+			int buffercount = 0;
+			time = System.currentTimeMillis();
+
+			while( System.currentTimeMillis() - time < 5000 )
+			{
+				bg.test( queries[ i ].ax, queries[ i ].ay, queries[ i ].bx, queries[ i ].by, hits );
+
+				buffercount++;
+				i++;
+				i %= queries.length;
+			}
+
+			System.out.println( "buffered bucket grid " + buffercount + " queries" );
+
 			System.out.println( ( float ) gridcount / brutecount + " * speedup" );
 		}
 	}
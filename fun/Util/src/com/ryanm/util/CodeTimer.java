@@ -1,12 +1,22 @@
 
 package com.ryanm.util;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * A convenience class to do code profiling.
+ * A convenience class to do code profiling. As well as the mean, the
+ * durations of periods and intervals are kept in {@link Histogram}s so
+ * that percentiles and maxima can be reported, and spikes aren't
+ * hidden. Named scopes can be nested within intervals with
+ * {@link #push(String)} and {@link #pop()}. Results can be exported
+ * with {@link #writeCSV(Writer)} and {@link #writeJSON(Writer)}
  * 
  * @author Keith Woodward
  */
@@ -45,6 +55,42 @@ public class CodeTimer
 	 */
 	private long[] intervalDurationSums = new long[ intervalNames.length ];
 
+	/**
+	 * Interval durations since the last print
+	 */
+	private Histogram[] intervalHistograms = new Histogram[ intervalNames.length ];
+
+	/**
+	 * Period durations since the last print
+	 */
+	private Histogram periodHistogram = new Histogram();
+
+	/**
+	 * Durations of everything before the last print, by name
+	 */
+	private Map<String, Histogram> totals = new LinkedHashMap<String, Histogram>();
+
+	/**
+	 * The root of the tree of nested scopes. Its children are the
+	 * outermost scopes
+	 */
+	private final Scope rootScope = new Scope( null, null );
+
+	/**
+	 * The innermost open scope
+	 */
+	private Scope currentScope = rootScope;
+
+	/**
+	 * Names, start times and durations of the most recent periods,
+	 * intervals and scopes, or <code>null</code> if we're not tracing
+	 */
+	private String[] traceNames;
+
+	private long[] traceStarts, traceDurations;
+
+	private int traceCount = 0;
+
 	/**
 	 * The index of the current interval
 	 */
@@ -133,6 +179,7 @@ public class CodeTimer
 			{
 				long duration = clickTime - lastClickTime;
 				intervalDurationSums[ intervalIndex ] += duration;
+				recordInterval( lastClickTime, duration );
 
 				intervalIndex++;
 
@@ -140,6 +187,8 @@ public class CodeTimer
 				{
 					intervalNames = ArrayUtil.grow( intervalNames );
 					intervalDurationSums = ArrayUtil.grow( intervalDurationSums );
+					intervalHistograms =
+							Arrays.copyOf( intervalHistograms, intervalNames.length );
 				}
 
 				intervalNames[ intervalIndex ] = name;
@@ -174,11 +223,14 @@ public class CodeTimer
 
 			long intervalDuration = clickTime - lastClickTime;
 			intervalDurationSums[ intervalIndex ] += intervalDuration;
+			recordInterval( lastClickTime, intervalDuration );
 
 			intervalIndex = 0;
 
 			long periodDuration = clickTime - periodStartTime;
 			periodDurationSum += periodDuration;
+			periodHistogram.record( periodDuration );
+			trace( name, periodStartTime, periodDuration );
 			periodCount++;
 
 			periodStarted = false;
@@ -186,7 +238,10 @@ public class CodeTimer
 			if( print )
 			{
 				System.out.println( name + " period "
-						+ period.format( periodDurationSum, periodCount ) );
+						+ period.format( periodDurationSum, periodCount ) + "\tp50="
+						+ period.format( periodHistogram.valueAt( 0.5 ), 1 ) + "\tp99="
+						+ period.format( periodHistogram.valueAt( 0.99 ), 1 ) + "\tmax="
+						+ period.format( periodHistogram.max(), 1 ) );
 				long perDur = periodDurationSum / periodCount;
 
 				for( int i = 0; i < intervalNames.length && intervalNames[ i ] != null; i++ )
@@ -194,9 +249,14 @@ public class CodeTimer
 					float intDur = intervalDurationSums[ i ] / periodCount;
 					float p = intDur / perDur;
 					System.out.println( "\t" + intervalNames[ i ] + "\t" + percent.format( p )
-							+ "\t" + interval.format( intervalDurationSums[ i ], periodCount ) );
+							+ "\t" + interval.format( intervalDurationSums[ i ], periodCount )
+							+ "\t" + percentiles( intervalHistograms[ i ] ) );
 				}
 
+				printScopes( rootScope );
+
+				rollOver();
+
 				for( int i = 0; i < intervalDurationSums.length; i++ )
 				{
 					intervalDurationSums[ i ] = 0;
@@ -210,6 +270,262 @@ public class CodeTimer
 		}
 	}
 
+	/**
+	 * Opens a named scope within the current interval or scope. Scopes
+	 * can be nested, and each must be closed with {@link #pop()}
+	 * 
+	 * @param name
+	 */
+	public void push( String name )
+	{
+		if( enabled )
+		{
+			currentScope = currentScope.child( name );
+			currentScope.start = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Closes the innermost scope opened by {@link #push(String)}
+	 */
+	public void pop()
+	{
+		if( enabled && currentScope != rootScope )
+		{
+			long duration = System.nanoTime() - currentScope.start;
+			currentScope.window.record( duration );
+			trace( currentScope.name, currentScope.start, duration );
+
+			currentScope = currentScope.parent;
+		}
+	}
+
+	/**
+	 * Starts keeping a trace of the most recent periods, intervals and
+	 * scopes, to be written by {@link #writeJSON(Writer)}
+	 * 
+	 * @param events
+	 *           The number of events to keep, or 0 to stop tracing
+	 */
+	public void trace( int events )
+	{
+		if( events > 0 )
+		{
+			traceNames = new String[ events ];
+			traceStarts = new long[ events ];
+			traceDurations = new long[ events ];
+		}
+		else
+		{
+			traceNames = null;
+			traceStarts = traceDurations = null;
+		}
+		traceCount = 0;
+	}
+
+	private void recordInterval( long start, long duration )
+	{
+		Histogram h = intervalHistograms[ intervalIndex ];
+		if( h == null )
+		{
+			h = intervalHistograms[ intervalIndex ] = new Histogram();
+		}
+		h.record( duration );
+
+		trace( intervalNames[ intervalIndex ], start, duration );
+	}
+
+	private void trace( String name, long start, long duration )
+	{
+		if( traceNames != null )
+		{
+			int i = traceCount++ % traceNames.length;
+			traceNames[ i ] = name;
+			traceStarts[ i ] = start;
+			traceDurations[ i ] = duration;
+		}
+	}
+
+	private String percentiles( Histogram h )
+	{
+		return "p50=" + interval.format( h.valueAt( 0.5 ), 1 ) + "\tp99="
+				+ interval.format( h.valueAt( 0.99 ), 1 ) + "\tmax="
+				+ interval.format( h.max(), 1 );
+	}
+
+	private void printScopes( Scope parent )
+	{
+		for( Scope s : parent.children )
+		{
+			if( s.window.count() > 0 )
+			{
+				StringBuilder sb = new StringBuilder();
+				for( int i = 0; i < s.depth; i++ )
+				{
+					sb.append( "  " );
+				}
+				System.out.println( "\t" + sb + s.name + "\t" + s.window.count() + "x\t"
+						+ interval.format( s.window.sum(), s.window.count() ) + "\t"
+						+ percentiles( s.window ) );
+			}
+
+			printScopes( s );
+		}
+	}
+
+	/**
+	 * Adds the histograms since the last print to the totals, and
+	 * resets them
+	 */
+	private void rollOver()
+	{
+		total( name ).add( periodHistogram );
+		periodHistogram.reset();
+
+		for( int i = 0; i < intervalNames.length && intervalNames[ i ] != null; i++ )
+		{
+			if( intervalHistograms[ i ] != null )
+			{
+				total( intervalNames[ i ] ).add( intervalHistograms[ i ] );
+				intervalHistograms[ i ].reset();
+			}
+		}
+
+		rollOver( rootScope );
+	}
+
+	private static void rollOver( Scope parent )
+	{
+		for( Scope s : parent.children )
+		{
+			s.total.add( s.window );
+			s.window.reset();
+
+			rollOver( s );
+		}
+	}
+
+	private Histogram total( String n )
+	{
+		Histogram h = totals.get( n );
+		if( h == null )
+		{
+			h = new Histogram();
+			totals.put( n, h );
+		}
+		return h;
+	}
+
+	/**
+	 * Collects the whole-run histograms, by name. Scopes are named by
+	 * their path, e.g. "draw/game/terrain"
+	 * 
+	 * @return name to histogram
+	 */
+	public Map<String, Histogram> getHistograms()
+	{
+		rollOver();
+
+		Map<String, Histogram> m = new LinkedHashMap<String, Histogram>( totals );
+		addScopes( rootScope, "", m );
+		return m;
+	}
+
+	private static void addScopes( Scope parent, String prefix, Map<String, Histogram> m )
+	{
+		for( Scope s : parent.children )
+		{
+			m.put( prefix + s.name, s.total );
+			addScopes( s, prefix + s.name + "/", m );
+		}
+	}
+
+	/**
+	 * Writes whole-run statistics, one line per period, interval or
+	 * scope, in nanoseconds
+	 * 
+	 * @param w
+	 * @throws IOException
+	 */
+	public void writeCSV( Writer w ) throws IOException
+	{
+		w.write( "name,count,mean,p50,p90,p99,p999,max\n" );
+
+		for( Map.Entry<String, Histogram> e : getHistograms().entrySet() )
+		{
+			Histogram h = e.getValue();
+			w.write( "\"" + e.getKey().trim() + "\"," + h.count() + ","
+					+ ( long ) h.mean() + "," + h.valueAt( 0.5 ) + "," + h.valueAt( 0.9 )
+					+ "," + h.valueAt( 0.99 ) + "," + h.valueAt( 0.999 ) + "," + h.max()
+					+ "\n" );
+		}
+	}
+
+	/**
+	 * Writes the trace started with {@link #trace(int)} in the trace
+	 * event format that chrome://tracing and Perfetto can load, along
+	 * with whole-run statistics
+	 * 
+	 * @param w
+	 * @throws IOException
+	 */
+	public void writeJSON( Writer w ) throws IOException
+	{
+		w.write( "{\"traceEvents\":[" );
+
+		if( traceNames != null && traceCount > 0 )
+		{
+			int n = Math.min( traceCount, traceNames.length );
+			int first = traceCount - n;
+			long origin = Long.MAX_VALUE;
+			for( int i = 0; i < n; i++ )
+			{
+				origin = Math.min( origin, traceStarts[ i ] );
+			}
+
+			for( int j = 0; j < n; j++ )
+			{
+				int i = ( first + j ) % traceNames.length;
+
+				w.write( j == 0 ? "\n" : ",\n" );
+				w.write( "{\"name\":\"" + escape( traceNames[ i ] )
+						+ "\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":"
+						+ ( traceStarts[ i ] - origin ) / 1000.0 + ",\"dur\":"
+						+ traceDurations[ i ] / 1000.0 + "}" );
+			}
+		}
+
+		w.write( "\n],\"displayTimeUnit\":\"ms\",\"histograms\":{" );
+
+		boolean first = true;
+		for( Map.Entry<String, Histogram> e : getHistograms().entrySet() )
+		{
+			Histogram h = e.getValue();
+			w.write( first ? "\n" : ",\n" );
+			w.write( "\"" + escape( e.getKey().trim() ) + "\":{\"count\":" + h.count()
+					+ ",\"mean\":" + ( long ) h.mean() + ",\"p50\":" + h.valueAt( 0.5 )
+					+ ",\"p90\":" + h.valueAt( 0.9 ) + ",\"p99\":" + h.valueAt( 0.99 )
+					+ ",\"p999\":" + h.valueAt( 0.999 ) + ",\"max\":" + h.max() + "}" );
+			first = false;
+		}
+
+		w.write( "\n}}\n" );
+	}
+
+	private static String escape( String s )
+	{
+		return s.replace( "\\", "\\\\" ).replace( "\"", "\\\"" );
+	}
+
+	/**
+	 * @return How long a call to {@link #tick(String)} takes, as found
+	 *         by {@link #recalibrate(int)}
+	 */
+	public static long getSelfTime()
+	{
+		return SELF_TIME;
+	}
+
 	/**
 	 * Calibrates the timer for the machine
 	 * 
@@ -295,6 +611,53 @@ public class CodeTimer
 		}
 	}
 
+	/**
+	 * A named, nestable timing scope
+	 */
+	private static class Scope
+	{
+		private final String name;
+
+		private final Scope parent;
+
+		private final int depth;
+
+		private final ArrayList<Scope> children = new ArrayList<Scope>();
+
+		private final Histogram window = new Histogram();
+
+		private final Histogram total = new Histogram();
+
+		private long start;
+
+		private Scope( String name, Scope parent )
+		{
+			this.name = name;
+			this.parent = parent;
+			depth = parent == null ? -1 : parent.depth + 1;
+		}
+
+		/**
+		 * @param n
+		 * @return The child scope with that name, created if need be
+		 */
+		private Scope child( String n )
+		{
+			for( int i = 0; i < children.size(); i++ )
+			{
+				Scope s = children.get( i );
+				if( s.name == n || s.name.equals( n ) )
+				{
+					return s;
+				}
+			}
+
+			Scope s = new Scope( n, this );
+			children.add( s );
+			return s;
+		}
+	}
+
 	/**
 	 * Time unit that is printed
 	 * 
@@ -0,0 +1,211 @@
+package com.ryanm.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures what recording durations into {@link Histogram}s, nested
+ * scopes and tracing add to the cost of {@link CodeTimer#tick(String)},
+ * against a timer that only keeps sums as {@link CodeTimer} used to,
+ * and against the self-time that {@link CodeTimer#recalibrate(int)}
+ * finds. Also checks the reported percentiles against the exact values
+ *
+ * @author ryanm
+ */
+public class CodeTimerBenchmark
+{
+	private static final String[] names = { "updt", "inpt", "adva", "draw", "sync" };
+
+	/**
+	 * @param args
+	 *           The number of timed rounds
+	 */
+	public static void main( String[] args )
+	{
+		int rounds = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 20;
+		int frames = 20000;
+
+		checkPercentiles();
+
+		CodeTimer plain = new CodeTimer( "plain", null, null );
+		CodeTimer scoped = new CodeTimer( "scoped", null, null );
+		CodeTimer traced = new CodeTimer( "traced", null, null );
+		traced.trace( 10000 );
+		SumTimer legacy = new SumTimer();
+
+		// warm up
+		for( int r = 0; r < 50; r++ )
+		{
+			legacy( legacy, frames );
+			frames( plain, frames, false );
+			frames( scoped, frames, true );
+			frames( traced, frames, true );
+		}
+
+		long[] best = new long[ 4 ];
+		Arrays.fill( best, Long.MAX_VALUE );
+		for( int r = 0; r < rounds; r++ )
+		{
+			long start = System.nanoTime();
+			legacy( legacy, frames );
+			best[ 0 ] = Math.min( best[ 0 ], System.nanoTime() - start );
+
+			start = System.nanoTime();
+			frames( plain, frames, false );
+			best[ 1 ] = Math.min( best[ 1 ], System.nanoTime() - start );
+
+			start = System.nanoTime();
+			frames( scoped, frames, true );
+			best[ 2 ] = Math.min( best[ 2 ], System.nanoTime() - start );
+
+			start = System.nanoTime();
+			frames( traced, frames, true );
+			best[ 3 ] = Math.min( best[ 3 ], System.nanoTime() - start );
+		}
+
+		CodeTimer.recalibrate( 10000 );
+
+		// five ticks and a lastTick per frame
+		float calls = frames * ( names.length + 1 );
+		System.out.println( "ns per tick, best of " + rounds + " rounds of " + frames
+				+ " frames" );
+		System.out.println( "\tsums only         : " + best[ 0 ] / calls );
+		System.out.println( "\thistograms        : " + best[ 1 ] / calls );
+		System.out.println( "\tand push/pop pair : " + ( best[ 2 ] - best[ 1 ] )
+				/ ( float ) frames + " per pair" );
+		System.out.println( "\tand tracing       : " + ( best[ 3 ] - best[ 2 ] ) / calls
+				+ " more per event" );
+		System.out.println( "\trecalibrate()     : " + CodeTimer.getSelfTime()
+				+ " self-time, including System.nanoTime()" );
+
+		try
+		{
+			StringWriter csv = new StringWriter();
+			traced.writeCSV( csv );
+			System.out.print( csv );
+
+			StringWriter json = new StringWriter();
+			traced.writeJSON( json );
+			System.out.println( "JSON trace : " + json.getBuffer().length() + " characters" );
+		}
+		catch( IOException e )
+		{
+			e.printStackTrace();
+		}
+	}
+
+	private static void frames( CodeTimer ct, int frames, boolean scopes )
+	{
+		for( int f = 0; f < frames; f++ )
+		{
+			for( int i = 0; i < names.length; i++ )
+			{
+				ct.tick( names[ i ] );
+			}
+
+			if( scopes )
+			{
+				ct.push( "game" );
+				ct.pop();
+			}
+
+			ct.lastTick( false );
+		}
+	}
+
+	private static void legacy( SumTimer st, int frames )
+	{
+		for( int f = 0; f < frames; f++ )
+		{
+			for( int i = 0; i < names.length; i++ )
+			{
+				st.tick( names[ i ] );
+			}
+			st.lastTick();
+		}
+	}
+
+	/**
+	 * Records a million values from a long-tailed distribution and
+	 * checks that percentiles are within a bucket of the true values
+	 */
+	private static void checkPercentiles()
+	{
+		Random rng = new Random( 1 );
+		long[] values = new long[ 1000000 ];
+		Histogram h = new Histogram();
+		for( int i = 0; i < values.length; i++ )
+		{
+			values[ i ] = ( long ) ( 1000000 * Math.exp( rng.nextGaussian() ) );
+			h.record( values[ i ] );
+		}
+		Arrays.sort( values );
+
+		double worst = 0;
+		for( double q : new double[] { 0.5, 0.9, 0.99, 0.999, 1 } )
+		{
+			long exact = values[ ( int ) Math.ceil( q * values.length ) - 1 ];
+			worst = Math.max( worst, Math.abs( h.valueAt( q ) - exact ) / ( double ) exact );
+		}
+
+		System.out.println( "Percentiles within " + ( float ) ( 100 * worst ) + "%"
+				+ ( worst <= 1.0 / Histogram.SUB_BUCKETS ? "" : " FAILED" ) );
+	}
+
+	/**
+	 * What {@link CodeTimer} used to record
+	 */
+	private static class SumTimer
+	{
+		private String[] intervalNames = new String[ 5 ];
+
+		private long[] intervalDurationSums = new long[ intervalNames.length ];
+
+		private int intervalIndex;
+
+		private long lastClickTime, periodStartTime, periodDurationSum;
+
+		private boolean periodStarted = false;
+
+		private int periodCount;
+
+		private void tick( String name )
+		{
+			long clickTime = System.nanoTime();
+
+			if( !periodStarted )
+			{
+				periodStarted = true;
+				periodStartTime = clickTime;
+				intervalNames[ 0 ] = name;
+			}
+			else
+			{
+				intervalDurationSums[ intervalIndex ] += clickTime - lastClickTime;
+				intervalIndex++;
+
+				if( intervalIndex >= intervalNames.length )
+				{
+					intervalNames = ArrayUtil.grow( intervalNames );
+					intervalDurationSums = ArrayUtil.grow( intervalDurationSums );
+				}
+
+				intervalNames[ intervalIndex ] = name;
+			}
+
+			lastClickTime = clickTime;
+		}
+
+		private void lastTick()
+		{
+			long clickTime = System.nanoTime();
+			intervalDurationSums[ intervalIndex ] += clickTime - lastClickTime;
+			intervalIndex = 0;
+			periodDurationSum += clickTime - periodStartTime;
+			periodCount++;
+			periodStarted = false;
+		}
+	}
+}
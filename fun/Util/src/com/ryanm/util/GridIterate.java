@@ -116,6 +116,8 @@ public class GridIterate
 	 */
 	public Point lastGridCoords = null;
 
+	private final Point gridCoords = new Point();
+
 	private Move lastGridExit = null;
 
 	private boolean done = false;
@@ -195,7 +197,8 @@ public class GridIterate
 	{
 		if( lastGridCoords == null )
 		{
-			lastGridCoords = new Point( ( int ) start.x, ( int ) start.y );
+			gridCoords.setLocation( ( int ) start.x, ( int ) start.y );
+			lastGridCoords = gridCoords;
 		}
 		else
 		{
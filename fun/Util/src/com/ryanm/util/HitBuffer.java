@@ -0,0 +1,157 @@
+package com.ryanm.util;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer for the results of {@link BucketGrid} queries.
+ * Holds the intersecting segments along with how far along the query
+ * segment each intersection lies, so no garbage is produced once the
+ * buffer has grown to size.
+ * 
+ * @author ryanm
+ * @param <T>
+ *           The segment type
+ */
+public class HitBuffer<T extends Segment>
+{
+	private Object[] segs = new Object[ 8 ];
+
+	private float[] params = new float[ 8 ];
+
+	private int size = 0;
+
+	/***/
+	public float ax;
+
+	/***/
+	public float ay;
+
+	/***/
+	public float bx;
+
+	/***/
+	public float by;
+
+	/**
+	 * Empties the buffer and sets the query segment
+	 * 
+	 * @param ax
+	 * @param ay
+	 * @param bx
+	 * @param by
+	 */
+	public void reset( float ax, float ay, float bx, float by )
+	{
+		Arrays.fill( segs, 0, size, null );
+		size = 0;
+
+		this.ax = ax;
+		this.ay = ay;
+		this.bx = bx;
+		this.by = by;
+	}
+
+	/**
+	 * @return The number of hits
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @param i
+	 * @return The segment of the indexed hit
+	 */
+	@SuppressWarnings( "unchecked" )
+	public T segment( int i )
+	{
+		return ( T ) segs[ i ];
+	}
+
+	/**
+	 * @param i
+	 * @return The intersection point of the indexed hit, as a fraction
+	 *         of the distance along the query segment
+	 */
+	public float param( int i )
+	{
+		return params[ i ];
+	}
+
+	/**
+	 * @param i
+	 * @return The x-coordinate of the indexed intersection point
+	 */
+	public float x( int i )
+	{
+		return ax + params[ i ] * ( bx - ax );
+	}
+
+	/**
+	 * @param i
+	 * @return The y-coordinate of the indexed intersection point
+	 */
+	public float y( int i )
+	{
+		return ay + params[ i ] * ( by - ay );
+	}
+
+	/**
+	 * @param i
+	 * @return The distance from the start of the query segment to the
+	 *         indexed intersection point
+	 */
+	public float distance( int i )
+	{
+		float dx = bx - ax;
+		float dy = by - ay;
+		return params[ i ] * ( float ) Math.sqrt( dx * dx + dy * dy );
+	}
+
+	/**
+	 * Sorts the hits into ascending order of distance from the start of
+	 * the query segment
+	 */
+	public void sort()
+	{
+		// insertion sort - hit counts are tiny and we don't want garbage
+		for( int i = 1; i < size; i++ )
+		{
+			Object s = segs[ i ];
+			float p = params[ i ];
+			int j = i - 1;
+
+			while( j >= 0 && params[ j ] > p )
+			{
+				segs[ j + 1 ] = segs[ j ];
+				params[ j + 1 ] = params[ j ];
+				j--;
+			}
+
+			segs[ j + 1 ] = s;
+			params[ j + 1 ] = p;
+		}
+	}
+
+	/**
+	 * Adds a hit
+	 * 
+	 * @param seg
+	 * @param param
+	 *           The intersection point, as a fraction of the distance
+	 *           along the query segment
+	 */
+	void add( T seg, float param )
+	{
+		if( size == segs.length )
+		{
+			segs = Arrays.copyOf( segs, 2 * segs.length );
+			params = Arrays.copyOf( params, 2 * params.length );
+		}
+
+		segs[ size ] = seg;
+		params[ size ] = param;
+		size++;
+	}
+}
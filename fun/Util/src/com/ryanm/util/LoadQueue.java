@@ -0,0 +1,713 @@
+package com.ryanm.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An asynchronous resource-loading service. {@link Loader}s are run on
+ * a pool of worker threads, those that are needed now ahead of those
+ * that are only being prefetched. A loader can depend on others, and
+ * won't start until they have completed. Loaders can be cancelled.
+ * Results that have a cache key are kept in a bounded cache, least
+ * recently used first out, so loading the same thing again is free.
+ * <p>
+ * {@link Loader#complete()} is called on whichever thread calls
+ * {@link #checkCompletion()}, which should be the main thread, unless
+ * the loader is {@link Loader#selfCompleting}
+ *
+ * @author ryanm
+ */
+public class LoadQueue
+{
+	/**
+	 * Loading lanes, most urgent first
+	 *
+	 * @author ryanm
+	 */
+	public static enum Priority
+	{
+		/**
+		 * Needed for this frame
+		 */
+		NOW,
+		/**
+		 * Will be needed soon
+		 */
+		PREFETCH;
+	}
+
+	private static enum State
+	{
+		NEW, WAITING, QUEUED, LOADING, LOADED, COMPLETING, COMPLETE, CANCELLED;
+	}
+
+	private static final Comparator<Loader<?>> order = new Comparator<Loader<?>>() {
+		@Override
+		public int compare( Loader<?> a, Loader<?> b )
+		{
+			if( a.lane != b.lane )
+			{
+				return a.lane.ordinal() - b.lane.ordinal();
+			}
+			return a.sequence < b.sequence ? -1 : a.sequence > b.sequence ? 1 : 0;
+		}
+	};
+
+	private final PriorityBlockingQueue<Loader<?>> queue =
+			new PriorityBlockingQueue<Loader<?>>( 16, order );
+
+	private final ConcurrentLinkedQueue<Loader<?>> complete =
+			new ConcurrentLinkedQueue<Loader<?>>();
+
+	private final AtomicInteger queueSize = new AtomicInteger( 0 );
+
+	private long sequence = 0;
+
+	private final Thread[] workers;
+
+	private volatile boolean running = true;
+
+	/**
+	 * Cache key to resource, in access order
+	 */
+	private final LinkedHashMap<Object, Cached> cache = new LinkedHashMap<Object, Cached>(
+			16, 0.75f, true );
+
+	/**
+	 * The maximum total {@link Loader#cacheWeight()} of cached
+	 * resources
+	 */
+	public final long cacheCapacity;
+
+	private long cacheWeight = 0;
+
+	private int hits = 0, misses = 0, evictions = 0;
+
+	/**
+	 * @param name
+	 *           Used to name the worker threads
+	 * @param workers
+	 *           The number of worker threads
+	 * @param cacheCapacity
+	 *           The maximum total {@link Loader#cacheWeight()} of cached
+	 *           resources
+	 */
+	public LoadQueue( String name, int workers, long cacheCapacity )
+	{
+		this.cacheCapacity = cacheCapacity;
+		this.workers = new Thread[ Math.max( 1, workers ) ];
+
+		for( int i = 0; i < this.workers.length; i++ )
+		{
+			this.workers[ i ] = new Thread( name + " " + i ) {
+				@Override
+				public void run()
+				{
+					work();
+				}
+			};
+			this.workers[ i ].setDaemon( true );
+			this.workers[ i ].start();
+		}
+	}
+
+	/**
+	 * Asynchronously load a resource, in the loader's
+	 * {@link Loader#priority} lane. Any of its dependencies that haven't
+	 * been loaded yet are loaded too
+	 *
+	 * @param l
+	 */
+	public void load( Loader<?> l )
+	{
+		load( l, l.priority );
+	}
+
+	/**
+	 * Asynchronously load a resource. Loading something that is already
+	 * waiting to load in a less urgent lane moves it, and its
+	 * dependencies, into this lane
+	 *
+	 * @param l
+	 * @param priority
+	 *           The lane to load it in
+	 */
+	public void load( Loader<?> l, Priority priority )
+	{
+		boolean failed = false;
+
+		synchronized( this )
+		{
+			if( l.state != State.NEW )
+			{
+				promote( l, priority );
+				return;
+			}
+
+			l.owner = this;
+			l.lane = priority;
+			l.state = State.WAITING;
+			queueSize.incrementAndGet();
+
+			for( Loader<?> d : l.dependencies )
+			{
+				if( d.state == State.NEW )
+				{
+					load( d, priority );
+				}
+				else
+				{
+					promote( d, priority );
+				}
+
+				if( d.state == State.CANCELLED )
+				{
+					cancel( l );
+					return;
+				}
+				else if( d.state != State.COMPLETE )
+				{
+					d.dependents.add( l );
+					l.pending++;
+				}
+				else if( d.exception != null && !failed )
+				{
+					fail( l, d );
+					failed = true;
+				}
+			}
+
+			if( !failed && l.pending == 0 )
+			{
+				enqueue( l );
+			}
+		}
+
+		if( failed )
+		{
+			finish( l );
+		}
+	}
+
+	/**
+	 * Synchronously load a resource on this thread, ignoring its
+	 * dependencies
+	 *
+	 * @param l
+	 */
+	public void loadNow( Loader<?> l )
+	{
+		synchronized( this )
+		{
+			l.owner = this;
+			l.state = State.LOADING;
+			queueSize.incrementAndGet();
+		}
+
+		run( l );
+		complete( l );
+	}
+
+	/**
+	 * Call this in the main thread, it'll cause completed loaders to
+	 * call {@link Loader#complete()}, and start loaders that were
+	 * waiting for them
+	 */
+	public void checkCompletion()
+	{
+		Loader<?> l;
+		while( ( l = complete.poll() ) != null )
+		{
+			complete( l );
+		}
+	}
+
+	/**
+	 * Gets the size of the loader queue
+	 *
+	 * @return the number of loaders that have not yet completed or
+	 *         been cancelled
+	 */
+	public int queueSize()
+	{
+		return queueSize.get();
+	}
+
+	/**
+	 * @param key
+	 * @return The cached resource, or <code>null</code>
+	 */
+	public Object getCached( Object key )
+	{
+		synchronized( cache )
+		{
+			Cached c = cache.get( key );
+			return c == null ? null : c.resource;
+		}
+	}
+
+	/**
+	 * Empties the cache
+	 */
+	public void clearCache()
+	{
+		synchronized( cache )
+		{
+			cache.clear();
+			cacheWeight = 0;
+		}
+	}
+
+	/**
+	 * Stops the worker threads. Loaders that are still waiting will
+	 * never complete
+	 */
+	public void shutdown()
+	{
+		running = false;
+		for( Thread t : workers )
+		{
+			t.interrupt();
+		}
+	}
+
+	/**
+	 * Called on the completing thread just before a loader's
+	 * {@link Loader#complete()}. Override to log
+	 *
+	 * @param l
+	 */
+	protected void completing( Loader<?> l )
+	{
+	}
+
+	@Override
+	public String toString()
+	{
+		synchronized( cache )
+		{
+			return queueSize.get() + " loading on " + workers.length + " threads, cache "
+					+ cache.size() + " entries " + cacheWeight + "/" + cacheCapacity + ", "
+					+ hits + " hits " + misses + " misses " + evictions + " evictions";
+		}
+	}
+
+	private void enqueue( Loader<?> l )
+	{
+		l.state = State.QUEUED;
+		l.sequence = sequence++;
+		queue.add( l );
+	}
+
+	/**
+	 * Moves a waiting loader into a more urgent lane
+	 */
+	private void promote( Loader<?> l, Priority priority )
+	{
+		if( l.lane == null || priority.ordinal() >= l.lane.ordinal() )
+		{
+			return;
+		}
+
+		if( l.state == State.QUEUED )
+		{
+			// the queue is ordered by lane, so take it out to change it
+			if( queue.remove( l ) )
+			{
+				l.lane = priority;
+				queue.add( l );
+			}
+		}
+		else if( l.state == State.WAITING )
+		{
+			l.lane = priority;
+			for( Loader<?> d : l.dependencies )
+			{
+				promote( d, priority );
+			}
+		}
+	}
+
+	private void work()
+	{
+		while( running )
+		{
+			Loader<?> l;
+			try
+			{
+				l = queue.take();
+			}
+			catch( InterruptedException e )
+			{
+				continue;
+			}
+
+			synchronized( this )
+			{
+				if( l.state != State.QUEUED )
+				{ // cancelled
+					continue;
+				}
+				l.state = State.LOADING;
+			}
+
+			run( l );
+
+			synchronized( this )
+			{
+				if( l.state == State.CANCELLED )
+				{
+					continue;
+				}
+				l.state = State.LOADED;
+			}
+
+			finish( l );
+		}
+	}
+
+	/**
+	 * Loads from the cache, or calls load() and postLoad()
+	 */
+	private void run( Loader<?> l )
+	{
+		Object key = l.cacheKey();
+
+		if( key != null && l.fromCache( key ) )
+		{
+			return;
+		}
+
+		try
+		{
+			l.load();
+
+			if( !l.cancelled )
+			{
+				l.postLoad();
+			}
+		}
+		catch( Throwable t )
+		{
+			l.exception = t;
+		}
+
+		if( key != null && l.exception == null && l.resource != null && !l.cancelled )
+		{
+			long weight = l.cacheWeight();
+			assert weight >= 0 : l + " has a cache key but no cache weight";
+			cache( key, l.resource, weight );
+		}
+	}
+
+	/**
+	 * Completes a loader now if it's self-completing, or leaves it for
+	 * {@link #checkCompletion()}
+	 */
+	private void finish( Loader<?> l )
+	{
+		if( l.selfCompleting )
+		{
+			complete( l );
+		}
+		else
+		{
+			complete.add( l );
+		}
+	}
+
+	private void complete( Loader<?> l )
+	{
+		synchronized( this )
+		{
+			if( l.state == State.CANCELLED )
+			{
+				return;
+			}
+			// too late to cancel
+			l.state = State.COMPLETING;
+		}
+
+		completing( l );
+		l.complete();
+
+		List<Loader<?>> failed = new ArrayList<Loader<?>>( 0 );
+
+		synchronized( this )
+		{
+			l.state = State.COMPLETE;
+			queueSize.decrementAndGet();
+
+			for( Loader<?> d : l.dependents )
+			{
+				if( d.state == State.WAITING )
+				{
+					if( l.exception != null )
+					{
+						fail( d, l );
+						failed.add( d );
+					}
+					else if( --d.pending == 0 )
+					{
+						enqueue( d );
+					}
+				}
+			}
+			l.dependents.clear();
+		}
+
+		for( Loader<?> d : failed )
+		{
+			finish( d );
+		}
+	}
+
+	/**
+	 * Marks a loader as failing because of a dependency
+	 */
+	private static void fail( Loader<?> l, Loader<?> dependency )
+	{
+		l.exception =
+				new IllegalStateException( "Dependency " + dependency + " failed",
+						dependency.exception );
+		l.state = State.LOADED;
+	}
+
+	/**
+	 * @return <code>true</code> if the loader won't complete
+	 */
+	private synchronized boolean cancel( Loader<?> l )
+	{
+		switch( l.state )
+		{
+			case COMPLETING:
+			case COMPLETE:
+				return false;
+			case CANCELLED:
+				return true;
+			case NEW:
+				l.state = State.CANCELLED;
+				l.cancelled = true;
+				return true;
+			case QUEUED:
+				queue.remove( l );
+				// fall through
+			default:
+				l.state = State.CANCELLED;
+				l.cancelled = true;
+				queueSize.decrementAndGet();
+		}
+
+		for( Iterator<Loader<?>> iter = l.dependents.iterator(); iter.hasNext(); )
+		{
+			cancel( iter.next() );
+		}
+		l.dependents.clear();
+
+		return true;
+	}
+
+	private void cache( Object key, Object resource, long weight )
+	{
+		if( weight < 0 || weight > cacheCapacity )
+		{
+			return;
+		}
+
+		synchronized( cache )
+		{
+			Cached old = cache.put( key, new Cached( resource, weight ) );
+			cacheWeight += weight - ( old == null ? 0 : old.weight );
+
+			// least recently used first
+			Iterator<Map.Entry<Object, Cached>> iter = cache.entrySet().iterator();
+			while( cacheWeight > cacheCapacity && iter.hasNext() )
+			{
+				Map.Entry<Object, Cached> e = iter.next();
+				if( !e.getKey().equals( key ) )
+				{
+					cacheWeight -= e.getValue().weight;
+					iter.remove();
+					evictions++;
+				}
+			}
+		}
+	}
+
+	private static class Cached
+	{
+		private final Object resource;
+
+		private final long weight;
+
+		private Cached( Object resource, long weight )
+		{
+			this.resource = resource;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Override this class to load resources
+	 *
+	 * @author ryanm
+	 * @param <T>
+	 */
+	public static abstract class Loader<T>
+	{
+		/**
+		 * The loaded resource
+		 */
+		protected T resource;
+
+		/**
+		 * If an exception is encountered during loading, save it here
+		 * and you can deal with it later. Exceptions thrown from
+		 * {@link #load()} and {@link #postLoad()} are caught and saved
+		 * here for you. If a dependency fails, the exception is set and
+		 * this loader goes straight to {@link #complete()}
+		 */
+		protected Throwable exception;
+
+		/**
+		 * Indicates if the loader should {@link #complete()} as soon as
+		 * possible, or if it should be deferred to whenever
+		 * {@link LoadQueue#checkCompletion()} is called.
+		 */
+		public boolean selfCompleting = false;
+
+		/**
+		 * The lane used by {@link LoadQueue#load(Loader)}
+		 */
+		public Priority priority = Priority.NOW;
+
+		private final List<Loader<?>> dependencies = new ArrayList<Loader<?>>( 0 );
+
+		private final List<Loader<?>> dependents = new ArrayList<Loader<?>>( 0 );
+
+		private int pending = 0;
+
+		private State state = State.NEW;
+
+		private Priority lane;
+
+		private long sequence;
+
+		private LoadQueue owner;
+
+		private volatile boolean cancelled = false;
+
+		/**
+		 * Makes this loader wait for others to complete before it starts.
+		 * Call before loading it
+		 *
+		 * @param loaders
+		 * @return this
+		 */
+		public Loader<T> after( Loader<?>... loaders )
+		{
+			for( Loader<?> l : loaders )
+			{
+				dependencies.add( l );
+			}
+			return this;
+		}
+
+		/**
+		 * Stops this loader, and everything that depends on it, from
+		 * completing. If it is already loading, that carries on but the
+		 * result is dropped
+		 *
+		 * @return <code>true</code> if {@link #complete()} won't be
+		 *         called, <code>false</code> if it's too late
+		 */
+		public boolean cancel()
+		{
+			if( owner == null )
+			{
+				cancelled = true;
+				state = State.CANCELLED;
+				return true;
+			}
+			return owner.cancel( this );
+		}
+
+		/**
+		 * Long-running {@link #load()}s can check this and give up
+		 *
+		 * @return <code>true</code> if this loader has been cancelled
+		 */
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+
+		/**
+		 * Override to have the result of this loader cached. Loaders
+		 * with equal keys must produce interchangeable resources
+		 *
+		 * @return A key for the resource, or <code>null</code> not to
+		 *         cache it
+		 */
+		protected Object cacheKey()
+		{
+			return null;
+		}
+
+		/**
+		 * Override along with {@link #cacheKey()}. Resources that don't
+		 * say what they cost are not cached
+		 *
+		 * @return The cost of caching the resource, in the same units as
+		 *         {@link LoadQueue#cacheCapacity}, e.g.: its size in
+		 *         bytes. Negative if unknown
+		 */
+		protected long cacheWeight()
+		{
+			return -1;
+		}
+
+		@SuppressWarnings( "unchecked" )
+		private boolean fromCache( Object key )
+		{
+			synchronized( owner.cache )
+			{
+				Cached c = owner.cache.get( key );
+				if( c != null )
+				{
+					owner.hits++;
+					resource = ( T ) c.resource;
+					return true;
+				}
+				owner.misses++;
+				return false;
+			}
+		}
+
+		/**
+		 * Overload this to do the loading IO and set {@link #resource}.
+		 * This is called on a loading thread
+		 */
+		public abstract void load();
+
+		/**
+		 * This method is called on a loading thread after
+		 * {@link #load()}. Use it to do any processing
+		 */
+		public void postLoad()
+		{
+		}
+
+		/**
+		 * This is called on the main thread when loading is complete
+		 */
+		public abstract void complete();
+	}
+}
@@ -0,0 +1,356 @@
+package com.ryanm.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.ryanm.util.LoadQueue.Loader;
+import com.ryanm.util.LoadQueue.Priority;
+
+/**
+ * Exercises {@link LoadQueue} without any graphics: lanes, dependency
+ * chains, cancellation, failure, the cache, and that
+ * {@link Loader#complete()} happens on the thread that calls
+ * {@link LoadQueue#checkCompletion()}. Finishes with the throughput of
+ * a pool against a single loading thread, as the Android
+ * ResourceLoader used to have
+ *
+ * @author ryanm
+ */
+public class LoadQueueTest
+{
+	private static final List<String> events = Collections
+			.synchronizedList( new ArrayList<String>() );
+
+	private static Thread main;
+
+	private static boolean failed = false;
+
+	/**
+	 * @param args
+	 */
+	public static void main( String[] args )
+	{
+		main = Thread.currentThread();
+
+		lanes();
+		chain();
+		cancellation();
+		failure();
+		cache();
+		throughput();
+
+		System.out.println( failed ? "FAILED" : "passed" );
+	}
+
+	/**
+	 * With one worker held up, needed loads overtake prefetches
+	 */
+	private static void lanes()
+	{
+		LoadQueue lq = new LoadQueue( "lanes", 1, 0 );
+		CountDownLatch gate = new CountDownLatch( 1 );
+		lq.load( new Blocker( gate ) );
+
+		for( int i = 0; i < 3; i++ )
+		{
+			TestLoader l = new TestLoader( "p" + i, 0 );
+			l.priority = Priority.PREFETCH;
+			lq.load( l );
+		}
+		TestLoader late = new TestLoader( "late", 0 );
+		lq.load( late, Priority.PREFETCH );
+		for( int i = 0; i < 3; i++ )
+		{
+			lq.load( new TestLoader( "n" + i, 0 ) );
+		}
+		// needed after all
+		lq.load( late, Priority.NOW );
+
+		gate.countDown();
+		drain( lq );
+
+		// promoted loads keep their place in the queue
+		check( "lanes", "load late,load n0,load n1,load n2,load p0,load p1,load p2", true );
+		lq.shutdown();
+	}
+
+	/**
+	 * font -> texture -> text: each only starts when the one before has
+	 * completed on the main thread
+	 */
+	private static void chain()
+	{
+		LoadQueue lq = new LoadQueue( "chain", 4, 0 );
+
+		TestLoader font = new TestLoader( "font", 20 );
+		TestLoader texture = new TestLoader( "texture", 5 );
+		texture.after( font );
+		TestLoader text = new TestLoader( "text", 0 );
+		text.after( texture );
+
+		// only the end of the chain is submitted
+		lq.load( text );
+		drain( lq );
+
+		check( "chain", "load font,complete font,load texture,complete texture,"
+				+ "load text,complete text" );
+		lq.shutdown();
+	}
+
+	private static void cancellation()
+	{
+		LoadQueue lq = new LoadQueue( "cancel", 1, 0 );
+		CountDownLatch gate = new CountDownLatch( 1 );
+		lq.load( new Blocker( gate ) );
+
+		TestLoader a = new TestLoader( "a", 0 );
+		TestLoader b = new TestLoader( "b", 0 );
+		TestLoader c = new TestLoader( "c", 0 );
+		c.after( b );
+		TestLoader d = new TestLoader( "d", 0 );
+		lq.load( a );
+		lq.load( c );
+		lq.load( d );
+
+		// cancelling b takes c with it
+		boolean cancelled = b.cancel() && a.cancel() && c.isCancelled();
+
+		gate.countDown();
+		drain( lq );
+
+		check( "cancellation", "load d,complete d" );
+		if( !cancelled || lq.queueSize() != 0 || d.cancel() )
+		{
+			fail( "cancellation", "cancelled = " + cancelled + ", " + lq );
+		}
+		lq.shutdown();
+	}
+
+	/**
+	 * A failed dependency is reported to the dependents, which don't
+	 * load
+	 */
+	private static void failure()
+	{
+		LoadQueue lq = new LoadQueue( "failure", 2, 0 );
+
+		TestLoader bad = new TestLoader( "bad", 0 ) {
+			@Override
+			public void load()
+			{
+				super.load();
+				throw new RuntimeException( "no such file" );
+			}
+		};
+		TestLoader dependent = new TestLoader( "dependent", 0 );
+		dependent.after( bad );
+		lq.load( dependent );
+		drain( lq );
+
+		check( "failure", "load bad,complete bad,complete dependent" );
+		if( dependent.exception == null
+				|| !"no such file".equals( dependent.exception.getCause().getMessage() ) )
+		{
+			fail( "failure", "dependent exception " + dependent.exception );
+		}
+		lq.shutdown();
+	}
+
+	/**
+	 * Capacity for three one-character strings: loading four evicts the
+	 * least recently used
+	 */
+	private static void cache()
+	{
+		LoadQueue lq = new LoadQueue( "cache", 2, 6 );
+
+		for( String key : new String[] { "a", "b", "c", "a", "d", "b" } )
+		{
+			TestLoader l = new TestLoader( key, 0 );
+			l.key = key;
+			lq.load( l );
+			drain( lq );
+		}
+
+		check( "cache", "load a,complete a,load b,complete b,load c,complete c,"
+				+ "complete a,load d,complete d,load b,complete b" );
+		if( lq.getCached( "c" ) != null || lq.getCached( "a" ) == null )
+		{
+			fail( "cache", lq.toString() );
+		}
+
+		lq.loadNow( new TestLoader( "e", 0 ) );
+		check( "loadNow", "load e,complete e" );
+
+		lq.shutdown();
+	}
+
+	/**
+	 * 64 loads of 10ms of blocking IO, as a loading screen might have
+	 */
+	private static void throughput()
+	{
+		int workers = Math.max( 4, Runtime.getRuntime().availableProcessors() );
+		for( int w : new int[] { 1, workers } )
+		{
+			LoadQueue lq = new LoadQueue( "throughput", w, 0 );
+			long start = System.nanoTime();
+			for( int i = 0; i < 64; i++ )
+			{
+				lq.load( new TestLoader( "t" + i, 10 ) );
+			}
+			drain( lq );
+			events.clear();
+			System.out.println( "64 loads on " + w + " threads : "
+					+ ( System.nanoTime() - start ) / 1000000 + "ms" );
+			lq.shutdown();
+		}
+	}
+
+	/**
+	 * Pumps completion as the game loop would
+	 */
+	private static void drain( LoadQueue lq )
+	{
+		while( lq.queueSize() > 0 )
+		{
+			lq.checkCompletion();
+			try
+			{
+				Thread.sleep( 1 );
+			}
+			catch( InterruptedException e )
+			{
+			}
+		}
+	}
+
+	private static void check( String test, String expected )
+	{
+		check( test, expected, false );
+	}
+
+	private static void check( String test, String expected, boolean loadsOnly )
+	{
+		if( loadsOnly )
+		{
+			synchronized( events )
+			{
+				for( Iterator<String> iter = events.iterator(); iter.hasNext(); )
+				{
+					if( !iter.next().startsWith( "load" ) )
+					{
+						iter.remove();
+					}
+				}
+			}
+		}
+
+		String actual = events.toString().replace( ", ", "," );
+		actual = actual.substring( 1, actual.length() - 1 );
+		events.clear();
+
+		if( !actual.equals( expected ) )
+		{
+			fail( test, "expected " + expected + "\n\t\tgot      " + actual );
+		}
+	}
+
+	private static void fail( String test, String message )
+	{
+		failed = true;
+		System.out.println( test + " FAILED\n\t\t" + message );
+	}
+
+	private static class TestLoader extends Loader<String>
+	{
+		private final String name;
+
+		private final long delay;
+
+		private String key = null;
+
+		private TestLoader( String name, long delay )
+		{
+			this.name = name;
+			this.delay = delay;
+		}
+
+		@Override
+		public void load()
+		{
+			events.add( "load " + name );
+			try
+			{
+				Thread.sleep( delay );
+			}
+			catch( InterruptedException e )
+			{
+			}
+			resource = name;
+		}
+
+		@Override
+		public void complete()
+		{
+			if( Thread.currentThread() != main )
+			{
+				fail( name, "completed on " + Thread.currentThread().getName() );
+			}
+			events.add( "complete " + name );
+		}
+
+		@Override
+		protected Object cacheKey()
+		{
+			return key;
+		}
+
+		@Override
+		protected long cacheWeight()
+		{
+			return 2L * resource.length();
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+
+	/**
+	 * Holds up a worker until the gate opens, without leaving any
+	 * events
+	 */
+	private static class Blocker extends Loader<Object>
+	{
+		private final CountDownLatch gate;
+
+		private Blocker( CountDownLatch gate )
+		{
+			this.gate = gate;
+			selfCompleting = true;
+		}
+
+		@Override
+		public void load()
+		{
+			try
+			{
+				gate.await();
+			}
+			catch( InterruptedException e )
+			{
+			}
+		}
+
+		@Override
+		public void complete()
+		{
+		}
+	}
+}
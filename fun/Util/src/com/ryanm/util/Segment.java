@@ -1,15 +1,15 @@
 
 package com.ryanm.util;
 
-import org.lwjgl.util.vector.Vector2f;
-
 import com.ryanm.util.geom.LineUtils;
 
 /***/
 public class Segment
 {
-	private static final Vector2f p = new Vector2f(), q = new Vector2f(), r = new Vector2f(),
-			s = new Vector2f();
+	/**
+	 * Visit mark for {@link BucketGrid} queries
+	 */
+	int mark = 0;
 
 	/***/
 	public float ax;
@@ -73,12 +73,49 @@ public class Segment
 	 */
 	public boolean intersects( Segment seg )
 	{
-		p.set( ax, ay );
-		q.set( bx, by );
-		r.set( seg.ax, seg.ay );
-		s.set( seg.bx, seg.by );
+		return intersects( seg.ax, seg.ay, seg.bx, seg.by );
+	}
+
+	/**
+	 * Tests for segment intersection. Touching and collinear segments
+	 * do not count
+	 * 
+	 * @param cx
+	 * @param cy
+	 * @param dx
+	 * @param dy
+	 * @return <code>true</code> if the segments intersect, false
+	 *         otherwise
+	 */
+	public boolean intersects( float cx, float cy, float dx, float dy )
+	{
+		int c1 = LineUtils.relativeCCW( ax, ay, bx, by, cx, cy );
+		int c2 = LineUtils.relativeCCW( ax, ay, bx, by, dx, dy );
+		int c3 = LineUtils.relativeCCW( cx, cy, dx, dy, ax, ay );
+		int c4 = LineUtils.relativeCCW( cx, cy, dx, dy, bx, by );
+
+		return c1 * c2 == -1 && c3 * c4 == -1;
+	}
+
+	/**
+	 * Finds where this segment crosses an intersecting segment
+	 * 
+	 * @param cx
+	 * @param cy
+	 * @param dx
+	 * @param dy
+	 * @return The intersection point, as a fraction of the distance
+	 *         along the other segment. Undefined if the segments do not
+	 *         intersect
+	 */
+	public float intersection( float cx, float cy, float dx, float dy )
+	{
+		float rx = dx - cx;
+		float ry = dy - cy;
+		float sx = bx - ax;
+		float sy = by - ay;
 
-		return LineUtils.segmentsIntersect( p, q, r, s );
+		return ( ( ax - cx ) * sy - ( ay - cy ) * sx ) / ( rx * sy - ry * sx );
 	}
 
 	@Override
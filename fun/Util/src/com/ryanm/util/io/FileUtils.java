@@ -1,8 +1,14 @@
 
 package com.ryanm.util.io;
 
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -14,6 +20,31 @@ import java.util.Random;
  */
 public class FileUtils
 {
+	/**
+	 * Fills a buffer from a stream. Unlike reading into a byte array
+	 * and then putting that into the buffer, this doesn't need twice
+	 * the memory. The stream is not closed
+	 * 
+	 * @param is
+	 * @param dest
+	 *           The buffer to fill, from its position to its limit
+	 * @throws IOException
+	 *            If the stream ends before the buffer is full
+	 */
+	public static void readFully( InputStream is, ByteBuffer dest ) throws IOException
+	{
+		ReadableByteChannel ch =
+				is instanceof FileInputStream ? ( ( FileInputStream ) is ).getChannel()
+						: Channels.newChannel( is );
+
+		while( dest.hasRemaining() )
+		{
+			if( ch.read( dest ) < 0 )
+			{
+				throw new EOFException( dest.remaining() + " bytes short" );
+			}
+		}
+	}
 
 	/**
 	 * Finds the relative path from base to file. The file returned is